@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how {@link ArgbConverter} scales with the number of threads that work on a frame.
+ *
+ * <p>The frames are random NV21 data; the conversion does not branch on the values other than
+ * to clamp them, so their content hardly matters.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ArgbConverterBenchmark {
+
+    @Param({"1920x1080", "3840x2160"})
+    public String size;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private int mWidth;
+
+    private int mHeight;
+
+    private byte[] mNv21;
+
+    private ArgbConverter mConverter;
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        mWidth = Integer.parseInt(dimensions[0]);
+        mHeight = Integer.parseInt(dimensions[1]);
+        mNv21 = new byte[YuvConverter.getFrameSize(mWidth, mHeight)];
+        new Random(42).nextBytes(mNv21);
+        mConverter = new ArgbConverter(threads, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mConverter.close();
+    }
+
+    @Benchmark
+    public int[] convert() {
+        int[] argb = mConverter.convert(mNv21, mWidth, mHeight);
+        mConverter.release(argb);
+        return argb;
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AspectRatioBenchmark {
+
+    private final Size mSize = new Size(4032, 3024);
+
+    private final AspectRatio mRatio = AspectRatio.of(4, 3);
+
+    private int mWidth = 1920;
+
+    private int mHeight = 1080;
+
+    private String mString = "16:9";
+
+    @Benchmark
+    public AspectRatio of() {
+        return AspectRatio.of(mWidth, mHeight);
+    }
+
+    @Benchmark
+    public AspectRatio parse() {
+        return AspectRatio.parse(mString);
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return mRatio.matches(mSize);
+    }
+
+}
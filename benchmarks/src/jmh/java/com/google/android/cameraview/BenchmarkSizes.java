@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Size tables shaped like the ones reported by camera devices.
+ */
+class BenchmarkSizes {
+
+    private static final int[][] RATIOS = {
+            {4, 3}, {16, 9}, {1, 1}, {3, 2}, {5, 3}, {5, 4}, {11, 9}, {18, 9}, {19, 9}, {20, 9},
+            {37, 18}, {64, 27},
+    };
+
+    private BenchmarkSizes() {
+    }
+
+    /**
+     * @param count The number of distinct sizes.
+     * @return Sizes over a dozen aspect ratios in the shuffled order the HAL tends to use.
+     */
+    static List<Size> deviceSizes(int count) {
+        List<Size> sizes = new ArrayList<>(count);
+        for (int step = 1; sizes.size() < count; step++) {
+            for (int[] ratio : RATIOS) {
+                if (sizes.size() == count) {
+                    break;
+                }
+                int unit = 16 * step;
+                sizes.add(new Size(ratio[0] * unit, ratio[1] * unit));
+            }
+        }
+        Collections.shuffle(sizes, new Random(count));
+        return sizes;
+    }
+
+}
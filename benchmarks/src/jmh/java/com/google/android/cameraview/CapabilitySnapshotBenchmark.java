@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading {@link CameraCapabilities} from a {@link CapabilitySnapshot} with building
+ * them from the raw size lists, which is the part of a live query that happens in this library.
+ * The binder calls of a live query can only be measured on a device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CapabilitySnapshotBenchmark {
+
+    private static final String FINGERPRINT = "google/device/device:8.1.0/OPM1/1:user/release-keys";
+
+    private static final String[] CAMERA_IDS = {"0", "1"};
+
+    @Param({"20", "200"})
+    public int sizeCount;
+
+    private byte[] mSnapshot;
+
+    private int[][] mRawSizes;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Size> sizes = BenchmarkSizes.deviceSizes(sizeCount);
+        mRawSizes = new int[sizes.size()][];
+        for (int i = 0; i < mRawSizes.length; i++) {
+            mRawSizes[i] = new int[]{sizes.get(i).getWidth(), sizes.get(i).getHeight()};
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CapabilitySnapshot(CAMERA_IDS, build()).write(out, FINGERPRINT);
+        mSnapshot = out.toByteArray();
+    }
+
+    @Benchmark
+    public CapabilitySnapshot load() throws IOException {
+        return CapabilitySnapshot.read(new ByteArrayInputStream(mSnapshot), FINGERPRINT);
+    }
+
+    @Benchmark
+    public List<CameraCapabilities> build() {
+        List<CameraCapabilities> list = new ArrayList<>(CAMERA_IDS.length);
+        for (String id : CAMERA_IDS) {
+            SizeMap previewSizes = new SizeMap();
+            SizeMap pictureSizes = new SizeMap();
+            SizeMap yuvSizes = new SizeMap();
+            for (int[] size : mRawSizes) {
+                if (size[0] <= 1920 && size[1] <= 1080) {
+                    previewSizes.add(size[0], size[1]);
+                }
+                pictureSizes.add(size[0], size[1]);
+                yuvSizes.add(size[0], size[1]);
+            }
+            list.add(new CameraCapabilities(id, Constants.FACING_BACK, 1, 90, previewSizes,
+                    pictureSizes, yuvSizes, new int[]{0, 1, 3, 4}, true, true));
+        }
+        return list;
+    }
+
+}
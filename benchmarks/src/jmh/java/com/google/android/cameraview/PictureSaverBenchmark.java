@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link PictureSaver} against writing each picture with a
+ * {@link FileOutputStream} on the calling thread, as the demo app used to.
+ *
+ * <p>The files go to {@code /dev/shm} when it exists, so that the storage device does not
+ * dominate the numbers; set {@code -Dcameraview.benchmark.dir} to measure a real file system.
+ * One operation saves a batch of {@link #BATCH} pictures.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PictureSaverBenchmark {
+
+    private static final int BATCH = 8;
+
+    @Param({"524288", "4194304"})
+    public int pictureBytes;
+
+    @Param({"0", "1"})
+    public int fsyncPolicy;
+
+    private byte[] mPicture;
+
+    private File mDirectory;
+
+    private File[] mFiles;
+
+    private PictureSaver mSaver;
+
+    @Setup
+    public void setUp() throws IOException {
+        mPicture = new byte[pictureBytes];
+        new Random(42).nextBytes(mPicture);
+        mDirectory = createDirectory();
+        mFiles = new File[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            mFiles[i] = new File(mDirectory, "picture" + i + ".jpg");
+        }
+        mSaver = new PictureSaver(BATCH, fsyncPolicy, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mSaver.close();
+        for (File file : mFiles) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    public void pictureSaver() throws InterruptedException {
+        for (File file : mFiles) {
+            if (!mSaver.save(mPicture, file)) {
+                throw new IllegalStateException("Queue full");
+            }
+        }
+        if (!mSaver.awaitIdle(1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Timed out");
+        }
+    }
+
+    @Benchmark
+    public void fileOutputStream() throws IOException {
+        for (File file : mFiles) {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(mPicture);
+                if (fsyncPolicy != PictureSaver.FSYNC_NONE) {
+                    out.getFD().sync();
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static File createDirectory() throws IOException {
+        String path = System.getProperty("cameraview.benchmark.dir");
+        File parent;
+        if (path != null) {
+            parent = new File(path);
+        } else if (new File("/dev/shm").canWrite()) {
+            parent = new File("/dev/shm");
+        } else {
+            parent = new File(System.getProperty("java.io.tmpdir"));
+        }
+        File directory = new File(parent, "cameraview-benchmark-" + System.nanoTime());
+        if (!directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        return directory;
+    }
+
+}
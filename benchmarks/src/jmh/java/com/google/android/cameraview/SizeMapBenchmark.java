@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link SizeMap} with {@link LegacySizeMap} on size tables of different lengths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SizeMapBenchmark {
+
+    @Param({"20", "200", "400"})
+    public int sizeCount;
+
+    private Size[] mSizes;
+
+    private SizeMap mMap;
+
+    private LegacySizeMap mLegacyMap;
+
+    private AspectRatio mRatio;
+
+    @Setup
+    public void setUp() {
+        List<Size> sizes = BenchmarkSizes.deviceSizes(sizeCount);
+        mSizes = sizes.toArray(new Size[sizes.size()]);
+        mMap = new SizeMap();
+        mLegacyMap = new LegacySizeMap();
+        for (Size size : mSizes) {
+            mMap.add(size);
+            mLegacyMap.add(size);
+        }
+        mRatio = AspectRatio.of(16, 9);
+    }
+
+    @Benchmark
+    public SizeMap add() {
+        SizeMap map = new SizeMap();
+        for (Size size : mSizes) {
+            map.add(size);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public LegacySizeMap addLegacy() {
+        LegacySizeMap map = new LegacySizeMap();
+        for (Size size : mSizes) {
+            map.add(size);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public void ratios(Blackhole blackhole) {
+        for (AspectRatio ratio : mMap.ratios()) {
+            blackhole.consume(ratio);
+        }
+    }
+
+    @Benchmark
+    public void ratiosLegacy(Blackhole blackhole) {
+        for (AspectRatio ratio : mLegacyMap.ratios()) {
+            blackhole.consume(ratio);
+        }
+    }
+
+    @Benchmark
+    public Size sizes() {
+        return mMap.sizes(mRatio).last();
+    }
+
+    @Benchmark
+    public Size sizesLegacy() {
+        return mLegacyMap.sizes(mRatio).last();
+    }
+
+}
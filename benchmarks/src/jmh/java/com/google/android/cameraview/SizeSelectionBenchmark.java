@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The preview size selection that {@code Camera1} and {@code Camera2} run on every start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SizeSelectionBenchmark {
+
+    @Param({"20", "200", "400"})
+    public int sizeCount;
+
+    private SizeMap mSizes;
+
+    private AspectRatio mRatio = AspectRatio.of(18, 9);
+
+    private SizeSelector mCostBased = new CostBasedSizeSelector.Builder()
+            .setRatioTolerance(0.1f)
+            .setMaxPixels(8000000)
+            .build();
+
+    private int mSurfaceLonger = 2160;
+
+    private int mSurfaceShorter = 1080;
+
+    @Setup
+    public void setUp() {
+        mSizes = new SizeMap();
+        for (Size size : BenchmarkSizes.deviceSizes(sizeCount)) {
+            mSizes.add(size);
+        }
+    }
+
+    @Benchmark
+    public Size smallestCovering() {
+        return SizeSelection.select(SizeSelectors.smallestCovering(),
+                SizeSelectors.smallestCovering(), mSizes, mRatio, mSurfaceLonger, mSurfaceShorter);
+    }
+
+    @Benchmark
+    public Size costBased() {
+        return SizeSelection.select(mCostBased, SizeSelectors.smallestCovering(), mSizes, mRatio,
+                mSurfaceLonger, mSurfaceShorter);
+    }
+
+}
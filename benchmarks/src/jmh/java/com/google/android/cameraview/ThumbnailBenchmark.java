@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Measures the ways to get a thumbnail of a 12-megapixel picture: extracting the one in the EXIF
+ * segment, decoding the DC coefficients only, and decoding the whole picture.
+ *
+ * <p>The picture is a 4000x3000 4:2:0 image with gradients and noise, encoded by {@link ImageIO},
+ * with a 160x120 thumbnail in an EXIF segment like cameras write.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ThumbnailBenchmark {
+
+    private static final int WIDTH = 4000;
+
+    private static final int HEIGHT = 3000;
+
+    private ByteBuffer mJpeg;
+
+    private byte[] mArray;
+
+    @Setup
+    public void setUp() throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int noise = random.nextInt(24);
+                image.setRGB(x, y, Math.min(255, x * 255 / WIDTH + noise) << 16
+                        | Math.min(255, y * 255 / HEIGHT + noise) << 8
+                        | Math.min(255, (x + y) % 256 + noise));
+            }
+        }
+        BufferedImage small = new BufferedImage(160, 120, BufferedImage.TYPE_INT_RGB);
+        small.getGraphics().drawImage(image, 0, 0, 160, 120, null);
+        mArray = withExifThumbnail(encode(image), encode(small));
+        mJpeg = ByteBuffer.wrap(mArray);
+    }
+
+    @Benchmark
+    public byte[] exifThumbnail() {
+        return ExifThumbnail.extract(mJpeg);
+    }
+
+    @Benchmark
+    public DcThumbnail dcOnly() {
+        return DcThumbnail.decode(mArray);
+    }
+
+    @Benchmark
+    public BufferedImage fullDecode() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(mArray));
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Adds a big-endian EXIF segment after SOI whose IFD1 points to {@code thumbnail}.
+     */
+    private static byte[] withExifThumbnail(byte[] jpeg, byte[] thumbnail) {
+        int ifd1 = 8 + 2 + 4;
+        int data = ifd1 + 2 + 2 * 12 + 4;
+        ByteBuffer tiff = ByteBuffer.allocate(data + thumbnail.length);
+        tiff.put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(8);
+        // An empty IFD0, then IFD1
+        tiff.putShort((short) 0).putInt(ifd1);
+        tiff.putShort((short) 2);
+        tiff.putShort((short) 0x0201).putShort((short) 4).putInt(1).putInt(data);
+        tiff.putShort((short) 0x0202).putShort((short) 4).putInt(1).putInt(thumbnail.length);
+        tiff.putInt(0);
+        tiff.put(thumbnail);
+        int length = 2 + 6 + tiff.capacity();
+        ByteBuffer out = ByteBuffer.allocate(jpeg.length + 2 + length);
+        out.put(jpeg, 0, 2);
+        out.put((byte) 0xFF).put((byte) 0xE1).putShort((short) length);
+        out.put(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+        out.put(tiff.array());
+        out.put(jpeg, 2, jpeg.length - 2);
+        return out.array();
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link YuvConverter} against the per-sample copy that {@code Camera2} used to do.
+ *
+ * <p>The planes are synthetic direct buffers shaped like those of a camera: rows padded to
+ * 64 bytes, and chroma either as two views of one interleaved plane ({@code vu} and {@code uv}
+ * orders) or as separate planes ({@code planar}).</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YuvConverterBenchmark {
+
+    private static final int ROW_ALIGNMENT = 64;
+
+    @Param({"1280x720", "1920x1080", "3840x2160"})
+    public String size;
+
+    @Param({"vu", "uv", "planar"})
+    public String layout;
+
+    private int mWidth;
+
+    private int mHeight;
+
+    private ByteBuffer mY;
+
+    private ByteBuffer mU;
+
+    private ByteBuffer mV;
+
+    private int mYRowStride;
+
+    private int mUvRowStride;
+
+    private int mUvPixelStride;
+
+    private byte[] mOut;
+
+    private final YuvConverter mConverter = new YuvConverter();
+
+    @Setup
+    public void setUp() {
+        String[] dimensions = size.split("x");
+        mWidth = Integer.parseInt(dimensions[0]);
+        mHeight = Integer.parseInt(dimensions[1]);
+        Random random = new Random(42);
+        mYRowStride = align(mWidth);
+        mY = randomPlane(random, mYRowStride * (mHeight - 1) + mWidth);
+        int chromaWidth = (mWidth + 1) / 2;
+        int chromaHeight = (mHeight + 1) / 2;
+        if (layout.equals("planar")) {
+            mUvPixelStride = 1;
+            mUvRowStride = align(chromaWidth);
+            int length = mUvRowStride * (chromaHeight - 1) + chromaWidth;
+            mU = randomPlane(random, length);
+            mV = randomPlane(random, length);
+        } else {
+            mUvPixelStride = 2;
+            mUvRowStride = align(2 * chromaWidth);
+            ByteBuffer chroma = randomPlane(random,
+                    mUvRowStride * (chromaHeight - 1) + 2 * chromaWidth);
+            boolean vu = layout.equals("vu");
+            mV = view(chroma, vu ? 0 : 1, chroma.capacity() - 1);
+            mU = view(chroma, vu ? 1 : 0, chroma.capacity() - 1);
+        }
+        mOut = new byte[YuvConverter.getFrameSize(mWidth, mHeight)];
+    }
+
+    @Benchmark
+    public byte[] toNv21() {
+        mConverter.toNv21(mY, mYRowStride, mU, mV, mUvRowStride, mUvPixelStride, mWidth, mHeight,
+                mOut);
+        return mOut;
+    }
+
+    @Benchmark
+    public byte[] toI420() {
+        mConverter.toI420(mY, mYRowStride, mU, mV, mUvRowStride, mUvPixelStride, mWidth, mHeight,
+                mOut);
+        return mOut;
+    }
+
+    /**
+     * The copy that {@code Camera2} did before {@link YuvConverter}: bulk rows of Y, then one
+     * absolute read per chroma sample.
+     */
+    @Benchmark
+    public byte[] perSampleNv21() {
+        int offset = 0;
+        for (int row = 0; row < mHeight; row++) {
+            mY.position(row * mYRowStride);
+            mY.get(mOut, offset, mWidth);
+            offset += mWidth;
+        }
+        mY.position(0);
+        for (int row = 0; row < mHeight / 2; row++) {
+            int uIndex = row * mUvRowStride;
+            int vIndex = row * mUvRowStride;
+            for (int col = 0; col < mWidth / 2; col++) {
+                mOut[offset++] = mV.get(vIndex);
+                mOut[offset++] = mU.get(uIndex);
+                uIndex += mUvPixelStride;
+                vIndex += mUvPixelStride;
+            }
+        }
+        return mOut;
+    }
+
+    private static int align(int length) {
+        return (length + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT;
+    }
+
+    private static ByteBuffer randomPlane(Random random, int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        ByteBuffer plane = ByteBuffer.allocateDirect(length);
+        plane.put(data);
+        plane.flip();
+        return plane;
+    }
+
+    private static ByteBuffer view(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+
+}
@@ -20,11 +20,8 @@ import android.Manifest;
 import android.app.Dialog;
 import android.content.DialogInterface;
 import android.content.pm.PackageManager;
-import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
-import android.os.Handler;
-import android.os.HandlerThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.StringRes;
 import android.support.design.widget.FloatingActionButton;
@@ -44,17 +41,18 @@ import android.widget.Toast;
 
 import com.google.android.cameraview.AspectRatio;
 import com.google.android.cameraview.CameraView;
+import com.google.android.cameraview.PictureSaver;
+import com.google.android.cameraview.Releasable;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Set;
 
 
 /**
- * This demo app saves the taken picture to a constant file.
- * $ adb pull /sdcard/Android/data/com.google.android.cameraview.demo/files/Pictures/picture.jpg
+ * This demo app saves each picture to a new file.
+ * $ adb pull /sdcard/Android/data/com.google.android.cameraview.demo/files/Pictures/
  */
 public class MainActivity extends AppCompatActivity implements
         ActivityCompat.OnRequestPermissionsResultCallback,
@@ -66,6 +64,11 @@ public class MainActivity extends AppCompatActivity implements
 
     private static final String FRAGMENT_DIALOG = "dialog";
 
+    /**
+     * How long closing the camera may take before {@link #mCloseCheck} complains.
+     */
+    private static final long CLOSE_TIMEOUT_MS = 2000;
+
     private static final int[] FLASH_OPTIONS = {
             CameraView.FLASH_AUTO,
             CameraView.FLASH_OFF,
@@ -88,7 +91,15 @@ public class MainActivity extends AppCompatActivity implements
 
     private CameraView mCameraView;
 
-    private Handler mBackgroundHandler;
+    private PictureSaver mPictureSaver;
+
+    private final Runnable mCloseCheck = new Runnable() {
+        @Override
+        public void run() {
+            Log.w(TAG, "onCameraClosed was not called within " + CLOSE_TIMEOUT_MS
+                    + " ms of stop()");
+        }
+    };
 
     private View.OnClickListener mOnClickListener = new View.OnClickListener() {
         @Override
@@ -107,9 +118,12 @@ public class MainActivity extends AppCompatActivity implements
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        mPictureSaver = new PictureSaver(PictureSaver.DEFAULT_CAPACITY, PictureSaver.FSYNC_NONE,
+                mSaverListener);
         mCameraView = (CameraView) findViewById(R.id.camera);
         if (mCameraView != null) {
             mCameraView.addCallback(mCallback);
+            mCameraView.setPictureSaver(mPictureSaver);
         }
         FloatingActionButton fab = (FloatingActionButton) findViewById(R.id.take_picture);
         if (fab != null) {
@@ -145,6 +159,9 @@ public class MainActivity extends AppCompatActivity implements
 
     @Override
     protected void onPause() {
+        if (mCameraView.isCameraOpened()) {
+            mCameraView.postDelayed(mCloseCheck, CLOSE_TIMEOUT_MS);
+        }
         mCameraView.stop();
         super.onPause();
     }
@@ -152,14 +169,8 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (mBackgroundHandler != null) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-                mBackgroundHandler.getLooper().quitSafely();
-            } else {
-                mBackgroundHandler.getLooper().quit();
-            }
-            mBackgroundHandler = null;
-        }
+        // The pictures already queued are still written
+        mPictureSaver.close();
     }
 
     @Override
@@ -225,14 +236,19 @@ public class MainActivity extends AppCompatActivity implements
         }
     }
 
-    private Handler getBackgroundHandler() {
-        if (mBackgroundHandler == null) {
-            HandlerThread thread = new HandlerThread("background");
-            thread.start();
-            mBackgroundHandler = new Handler(thread.getLooper());
+    private final PictureSaver.Listener mSaverListener = new PictureSaver.Listener() {
+
+        @Override
+        public void onPictureSaved(@NonNull File file) {
+            Log.d(TAG, "Saved " + file);
         }
-        return mBackgroundHandler;
-    }
+
+        @Override
+        public void onPictureSaveFailed(@NonNull File file, @NonNull IOException e) {
+            Log.w(TAG, "Cannot write to " + file, e);
+        }
+
+    };
 
     private CameraView.Callback mCallback
             = new CameraView.Callback() {
@@ -245,6 +261,7 @@ public class MainActivity extends AppCompatActivity implements
         @Override
         public void onCameraClosed(CameraView cameraView) {
             Log.d(TAG, "onCameraClosed");
+            cameraView.removeCallbacks(mCloseCheck);
         }
 
         @Override
@@ -253,33 +270,25 @@ public class MainActivity extends AppCompatActivity implements
         }
 
         @Override
-        public void onPictureTaken(CameraView cameraView, final byte[] data) {
-            Log.d(TAG, "onPictureTaken " + data.length);
-            Toast.makeText(cameraView.getContext(), R.string.picture_taken, Toast.LENGTH_SHORT)
-                    .show();
-            getBackgroundHandler().post(new Runnable() {
-                @Override
-                public void run() {
-                    File file = new File(getExternalFilesDir(Environment.DIRECTORY_PICTURES),
-                            "picture.jpg");
-                    OutputStream os = null;
-                    try {
-                        os = new FileOutputStream(file);
-                        os.write(data);
-                        os.close();
-                    } catch (IOException e) {
-                        Log.w(TAG, "Cannot write to " + file, e);
-                    } finally {
-                        if (os != null) {
-                            try {
-                                os.close();
-                            } catch (IOException e) {
-                                // Ignore
-                            }
-                        }
-                    }
-                }
-            });
+        public void onPictureTaken(CameraView cameraView, ByteBuffer data,
+                Releasable releasable) {
+            Log.d(TAG, "onPictureTaken " + data.remaining());
+            File file = new File(getExternalFilesDir(Environment.DIRECTORY_PICTURES),
+                    "picture_" + System.currentTimeMillis() + ".jpg");
+            // The saver writes the camera's buffer directly and releases it afterwards
+            if (mPictureSaver.save(data, file, releasable)) {
+                Toast.makeText(cameraView.getContext(), R.string.picture_taken,
+                        Toast.LENGTH_SHORT).show();
+            } else {
+                releasable.release();
+                Toast.makeText(cameraView.getContext(), R.string.picture_dropped,
+                        Toast.LENGTH_SHORT).show();
+            }
+        }
+
+        @Override
+        public void onStorageCongestionChanged(CameraView cameraView, boolean congested) {
+            Log.d(TAG, "onStorageCongestionChanged " + congested);
         }
 
     };
@@ -17,18 +17,26 @@
 package com.google.android.cameraview;
 
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.os.Build;
+import android.os.Handler;
 import android.support.v4.util.SparseArrayCompat;
 import android.util.Log;
 import android.view.SurfaceHolder;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
-import java.util.SortedSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 @SuppressWarnings("deprecation")
@@ -48,62 +56,228 @@ class Camera1 extends CameraViewImpl {
         FLASH_MODES.put(Constants.FLASH_RED_EYE, Camera.Parameters.FLASH_MODE_RED_EYE);
     }
 
+    private static final Releasable NO_OP_RELEASABLE = new Releasable() {
+        @Override
+        public void release() {
+        }
+    };
+
+    /**
+     * Capabilities of the Camera1 devices, shared by all the instances in this process.
+     */
+    private static final CameraCapabilityCache sCapabilities = new CameraCapabilityCache();
+
+    /**
+     * Builds capabilities from {@link #mCameraParameters}, so it can only be used while the camera
+     * is open.
+     */
+    private final CameraCapabilityCache.Source mCapabilitySource
+            = new CameraCapabilityCache.Source() {
+
+        @Override
+        public String[] queryCameraIds() {
+            String[] ids = new String[Camera.getNumberOfCameras()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = String.valueOf(i);
+            }
+            return ids;
+        }
+
+        @Override
+        public CameraCapabilities queryCapabilities(String cameraId) {
+            SizeMap previewSizes = new SizeMap();
+            for (Camera.Size size : mCameraParameters.getSupportedPreviewSizes()) {
+                previewSizes.add(new Size(size.width, size.height));
+            }
+            SizeMap pictureSizes = new SizeMap();
+            for (Camera.Size size : mCameraParameters.getSupportedPictureSizes()) {
+                pictureSizes.add(new Size(size.width, size.height));
+            }
+            for (AspectRatio ratio : new ArrayList<>(previewSizes.ratios())) {
+                if (pictureSizes.sizes(ratio) == null) {
+                    previewSizes.remove(ratio);
+                }
+            }
+            return new CameraCapabilities(cameraId, mCameraInfo.facing,
+                    CameraCapabilities.HARDWARE_LEVEL_UNKNOWN, mCameraInfo.orientation,
+                    previewSizes, pictureSizes, new SizeMap(), new int[0],
+                    mCameraParameters.getSupportedFlashModes() != null, false);
+        }
+
+    };
+
     private int mCameraId;
 
     private final AtomicBoolean isPictureCaptureInProgress = new AtomicBoolean(false);
 
-    Camera mCamera;
+    volatile Camera mCamera;
 
-    private Camera.Parameters mCameraParameters;
+    private volatile Camera.Parameters mCameraParameters;
 
     private final Camera.CameraInfo mCameraInfo = new Camera.CameraInfo();
 
-    private final SizeMap mPreviewSizes = new SizeMap();
+    private SizeMap mPreviewSizes = new SizeMap();
 
-    private final SizeMap mPictureSizes = new SizeMap();
+    private SizeMap mPictureSizes = new SizeMap();
 
     private AspectRatio mAspectRatio;
 
     private boolean mShowingPreview;
 
-    private boolean mAutoFocus;
+    private volatile boolean mAutoFocus;
+
+    /**
+     * Whether {@link #mAutoFocus} has changed and is waiting to be applied by
+     * {@link #applyControls(int)}.
+     */
+    private volatile boolean mAutoFocusPending;
+
+    /**
+     * Whether the focus mode applied to {@link #mCameraParameters} is continuous. This is written
+     * on the camera thread, so that other threads need not read the parameters.
+     */
+    private volatile boolean mContinuousFocus;
 
     private int mFacing;
 
-    private int mFlash;
+    /**
+     * The requested flash mode. The camera thread applies it, and replaces it with the mode in
+     * effect if the camera does not support it.
+     */
+    private final AtomicInteger mFlash = new AtomicInteger(Constants.FLASH_OFF);
 
     private int mDisplayOrientation;
 
+    private boolean mPreviewFrameEnabled;
+
+    private Size mPreviewSize;
+
+    /**
+     * Whether continuous auto-focus has stopped moving, for fast capture. This is only known on
+     * API 16 and later.
+     */
+    private volatile boolean mFocusSettled;
+
+    /**
+     * The burst being taken, or {@code null}. This is only used on the camera thread.
+     */
+    private BurstTracker mBurst;
+
+    private int mBurstIntervalMs;
+
+    /**
+     * When the burst started, in {@link System#nanoTime()} units.
+     */
+    private long mBurstStartNanos;
+
+    private final Runnable mTakeBurstPicture = new Runnable() {
+        @Override
+        public void run() {
+            takeBurstPicture();
+        }
+    };
+
+    private final Camera.PreviewCallback mPreviewCallback = new Camera.PreviewCallback() {
+        @Override
+        public void onPreviewFrame(byte[] data, Camera camera) {
+            if (data == null) {
+                return;
+            }
+            if (mPreviewFrameEnabled && data.length == mFrameBufferPool.getBufferSize()) {
+                if (!shouldDeliverFrame()) {
+                    camera.addCallbackBuffer(data);
+                    return;
+                }
+                // Frames may keep the buffer after the callback returns
+                final Releasable releasable = mFrameBufferPool.hold(data);
+                if (releasable == null) {
+                    return; // From an earlier configuration
+                }
+                mCallback.onPreviewFrame(data, mPreviewSize.getWidth(), mPreviewSize.getHeight(),
+                        releasable);
+            }
+        }
+    };
+
     Camera1(Callback callback, PreviewImpl preview) {
         super(callback, preview);
+        mFrameBufferPool.setRecycler(new FrameBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                returnPreviewBuffer(buffer);
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                runOnCameraThread(command);
+            }
+        });
         preview.setCallback(new PreviewImpl.Callback() {
             @Override
             public void onSurfaceChanged() {
-                if (mCamera != null) {
-                    setUpPreview();
-                    adjustCameraParameters();
-                }
+                runOnCameraThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mCamera != null) {
+                            setUpPreview();
+                            // A new surface needs the preview to be restarted
+                            mPreviewSize = null;
+                            adjustCameraParameters();
+                        }
+                    }
+                });
             }
         });
     }
 
+    /**
+     * Opens the camera on the camera thread. Failures are reported through
+     * {@link Callback#onCameraError(Exception, int)}.
+     *
+     * @return Always {@code true}; there is no other implementation to fall back to.
+     */
     @Override
     boolean start() {
+        startCameraThread();
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                startInternal();
+            }
+        });
+        return true;
+    }
+
+    @Override
+    void stop() {
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                // Camera#release() closes the device synchronously
+                stopInternal();
+                quitCameraThread();
+            }
+        });
+        stopCameraThread();
+    }
+
+    private void startInternal() {
         chooseCamera();
         openCamera();
-        boolean isCameraOpened = isCameraOpened();
-        if (isCameraOpened) {
+        if (isCameraOpened()) {
             if (mPreview.isReady()) {
                 setUpPreview();
             }
             mShowingPreview = true;
             startPreview();
         }
-        return isCameraOpened;
     }
 
-    @Override
-    void stop() {
+    private void stopInternal() {
+        if (mBurst != null) {
+            mBurst.abort();
+            finishBurst();
+        }
         if (mCamera != null) {
             mCamera.stopPreview();
         }
@@ -144,8 +318,20 @@ class Camera1 extends CameraViewImpl {
         }
         mFacing = facing;
         if (isCameraOpened()) {
-            stop();
-            start();
+            mFacingSwitchLatency.begin();
+            runOnCameraThread(new Runnable() {
+                @Override
+                public void run() {
+                    // The camera thread and the frame buffers are kept
+                    stopInternal();
+                    startInternal();
+                    if (isCameraOpened()) {
+                        mFacingSwitchLatency.end();
+                    } else {
+                        mFacingSwitchLatency.cancel();
+                    }
+                }
+            });
         }
     }
 
@@ -154,15 +340,12 @@ class Camera1 extends CameraViewImpl {
         return mFacing;
     }
 
+    /**
+     * @return The ratios that have both preview and picture sizes.
+     */
     @Override
     Set<AspectRatio> getSupportedAspectRatios() {
-        SizeMap idealAspectRatios = mPreviewSizes;
-        for (AspectRatio aspectRatio : idealAspectRatios.ratios()) {
-            if (mPictureSizes.sizes(aspectRatio) == null) {
-                idealAspectRatios.remove(aspectRatio);
-            }
-        }
-        return idealAspectRatios.ratios();
+        return Collections.unmodifiableSet(mPreviewSizes.ratios());
     }
 
     @Override
@@ -177,13 +360,35 @@ class Camera1 extends CameraViewImpl {
                 throw new UnsupportedOperationException(ratio + " is not supported");
             } else {
                 mAspectRatio = ratio;
-                adjustCameraParameters();
+                mControlUpdates.requestUpdate(ControlUpdateBatcher.ASPECT_RATIO);
                 return true;
             }
         }
         return false;
     }
 
+    @Override
+    void onSizeConstraintsChanged() {
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (isCameraOpened()) {
+                    reconfigure();
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies new sizes to the opened camera and measures how long the camera takes to accept
+     * them. Camera1 does not tell when the first frame with the new sizes is shown.
+     */
+    private void reconfigure() {
+        mReconfigurationLatency.begin();
+        adjustCameraParameters();
+        mReconfigurationLatency.end();
+    }
+
     @Override
     AspectRatio getAspectRatio() {
         return mAspectRatio;
@@ -195,13 +400,13 @@ class Camera1 extends CameraViewImpl {
      * @param autoFocus default true
      */
     @Override
-    void setAutoFocus(boolean autoFocus) {
+    void setAutoFocus(final boolean autoFocus) {
         if (mAutoFocus == autoFocus) {
             return;
         }
-        if (setAutoFocusInternal(autoFocus)) {
-            setParameters();
-        }
+        mAutoFocus = autoFocus;
+        mAutoFocusPending = true;
+        mControlUpdates.requestUpdate(ControlUpdateBatcher.AUTO_FOCUS);
     }
 
     /**
@@ -232,11 +437,10 @@ class Camera1 extends CameraViewImpl {
 
     @Override
     boolean getAutoFocus() {
-        if (!isCameraOpened()) {
+        if (!isCameraOpened() || mAutoFocusPending) {
             return mAutoFocus;
         }
-        String focusMode = mCameraParameters.getFocusMode();
-        return focusMode != null && focusMode.contains("continuous");
+        return mContinuousFocus;
     }
 
     /**
@@ -244,6 +448,17 @@ class Camera1 extends CameraViewImpl {
      */
     @Override
     void manualFocus() {
+        if (!isCameraOpened())
+            return;
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                manualFocusInternal();
+            }
+        });
+    }
+
+    private void manualFocusInternal() {
         if (!isCameraOpened())
             return;
         try {
@@ -262,27 +477,120 @@ class Camera1 extends CameraViewImpl {
     }
 
     @Override
-    void setFlash(int flash) {
-        if (flash == mFlash) {
+    void setFlash(final int flash) {
+        if (mFlash.getAndSet(flash) == flash) {
             return;
         }
-        if (setFlashInternal(flash)) {
+        // Otherwise openCamera() applies it
+        if (isCameraOpened()) {
+            mControlUpdates.requestUpdate(ControlUpdateBatcher.FLASH);
+        }
+    }
+
+    @Override
+    void applyControls(int changes) {
+        if (!isCameraOpened()) {
+            return;
+        }
+        if ((changes & ControlUpdateBatcher.FLASH) != 0) {
+            if (!setFlashInternal()) {
+                changes &= ~ControlUpdateBatcher.FLASH;
+            }
+        }
+        if ((changes & ControlUpdateBatcher.ASPECT_RATIO) != 0) {
+            // Applies all the parameters at once
+            reconfigure();
+            return;
+        }
+        boolean changed = (changes & ControlUpdateBatcher.FLASH) != 0;
+        if ((changes & ControlUpdateBatcher.AUTO_FOCUS) != 0) {
+            changed |= setAutoFocusInternal();
+        }
+        if (changed) {
             setParameters();
         }
     }
 
     @Override
     int getFlash() {
-        return mFlash;
+        return mFlash.get();
     }
 
     @Override
-    void takePicture() {
-        if (!isCameraOpened()) {
-            throw new IllegalStateException(
-                    "Camera is not ready. Call start() before takePicture().");
+    void setPreviewFrameEnabled(boolean enabled) {
+        if (mPreviewFrameEnabled == enabled) {
+            return;
+        }
+        mPreviewFrameEnabled = enabled;
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (isCameraOpened()) {
+                    setUpPreviewCallback();
+                }
+            }
+        });
+    }
+
+    @Override
+    boolean isPreviewFrameEnabled() {
+        return mPreviewFrameEnabled;
+    }
+
+    /**
+     * Hands a preview buffer back to the camera once all the frames that share it are released.
+     * Buffers held while the camera was reopened were not queued to it, so they go to the current
+     * camera.
+     */
+    private void returnPreviewBuffer(byte[] data) {
+        if (mFrameBufferPool.unhold(data) && mCamera != null && mPreviewFrameEnabled) {
+            mCamera.addCallbackBuffer(data);
         }
-        if (getAutoFocus()) {
+    }
+
+    /**
+     * Installs {@link #mPreviewCallback} and queues all the pooled buffers to the camera, or
+     * removes the callback when preview frames are disabled.
+     */
+    private void setUpPreviewCallback() {
+        // This also drops the buffers that the camera still holds
+        mCamera.setPreviewCallbackWithBuffer(null);
+        if (!mPreviewFrameEnabled || mPreviewSize == null) {
+            return;
+        }
+        mFrameBufferPool.configure(mPreviewSize.getWidth() * mPreviewSize.getHeight()
+                * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8);
+        byte[] buffer;
+        while ((buffer = mFrameBufferPool.acquire()) != null) {
+            mCamera.addCallbackBuffer(buffer);
+        }
+        mCamera.setPreviewCallbackWithBuffer(mPreviewCallback);
+    }
+
+    /**
+     * Takes a picture once the camera is opened; right after {@link #start()}, the request waits
+     * for the camera on the camera thread. If the camera is not opened by then, this is reported
+     * as {@link CameraView#ERROR_TAKE_PICTURE}.
+     */
+    @Override
+    void takePicture() {
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (!isCameraOpened()) {
+                    mCallback.onCameraError(new IllegalStateException(
+                                    "Camera is not ready. Call start() before takePicture()."),
+                            CameraView.ERROR_TAKE_PICTURE);
+                    return;
+                }
+                mShutterLatency.begin();
+                takePictureWithFocus();
+            }
+        });
+    }
+
+    private void takePictureWithFocus() {
+        if (getAutoFocus() && !canSkipFocus()) {
             try {
                 mCamera.cancelAutoFocus();
                 mCamera.autoFocus(new Camera.AutoFocusCallback() {
@@ -293,6 +601,7 @@ class Camera1 extends CameraViewImpl {
                 });
             } catch (RuntimeException e) {
                 //auto focus may throw some exception
+                mShutterLatency.cancel();
                 mCallback.onCameraError(e, CameraView.ERROR_AUTO_FOCUS);
             }
         } else {
@@ -300,20 +609,33 @@ class Camera1 extends CameraViewImpl {
         }
     }
 
+    /**
+     * @return {@code true} if fast capture is enabled and continuous auto-focus has settled, so
+     * the picture can be taken without an auto-focus pass. Camera1 does not report the exposure
+     * state, so only the focus is checked.
+     */
+    private boolean canSkipFocus() {
+        return mFastCapture && mFocusSettled && Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE
+                .equals(mCameraParameters.getFocusMode());
+    }
+
     void takePictureInternal() {
         if (!isPictureCaptureInProgress.getAndSet(true)) {
             try {
+                final long issueStartNanos = System.nanoTime();
                 //The shutter callback can be used to trigger a sound to let the user know that image has been captured.
                 mCamera.takePicture(new Camera.ShutterCallback() {
                     @Override
                     public void onShutter() {
+                        mShutterLatency.end();
                         if (debug) Log.d(TAG, "onShutter");
                     }
                 }, null, null, new Camera.PictureCallback() {
                     @Override
                     public void onPictureTaken(byte[] data, Camera camera) {
                         isPictureCaptureInProgress.set(false);
-                        mCallback.onPictureTaken(data);
+                        // The array is owned by the caller from now on; nothing to give back
+                        mCallback.onPictureTaken(applyExifRotation(data), NO_OP_RELEASABLE);
                         camera.cancelAutoFocus();
                         try {
                             camera.startPreview();
@@ -322,34 +644,182 @@ class Camera1 extends CameraViewImpl {
                         }
                     }
                 });
+                mCaptureIssueLatency.record(System.nanoTime() - issueStartNanos);
             } catch (RuntimeException e) {
                 //takePicture may throw some exception
+                mShutterLatency.cancel();
                 mCallback.onCameraError(e, CameraView.ERROR_TAKE_PICTURE);
             }
+        } else {
+            mShutterLatency.cancel();
+            Log.w(TAG, "Cannot take a picture while another one or a burst is being taken.");
         }
     }
 
+    @Override
+    void takeBurst(final int count, final int intervalMs) {
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (!isCameraOpened()) {
+                    return;
+                }
+                if (isPictureCaptureInProgress.getAndSet(true)) {
+                    mCallback.onCameraError(
+                            new IllegalStateException("A picture is already being taken"),
+                            CameraView.ERROR_TAKE_PICTURE);
+                    return;
+                }
+                // Camera1 takes one picture at a time
+                mBurst = new BurstTracker(count, 1);
+                mBurstIntervalMs = intervalMs;
+                mBurstStartNanos = System.nanoTime();
+                takeBurstPicture();
+            }
+        });
+    }
+
+    /**
+     * Takes the next picture of {@link #mBurst}. As soon as it is delivered, the preview is
+     * restarted and the next picture is scheduled, without an auto-focus pass in between.
+     */
+    private void takeBurstPicture() {
+        final BurstTracker burst = mBurst;
+        if (burst == null) {
+            return;
+        }
+        burst.onIssued(1);
+        try {
+            mCamera.takePicture(null, null, null, new Camera.PictureCallback() {
+                @Override
+                public void onPictureTaken(byte[] data, Camera camera) {
+                    if (burst != mBurst) {
+                        return;
+                    }
+                    burst.onDelivered(System.nanoTime());
+                    mCallback.onPictureTaken(applyExifRotation(data), NO_OP_RELEASABLE);
+                    // The array is owned by the receiver from now on
+                    burst.onReleased();
+                    try {
+                        camera.startPreview();
+                    } catch (RuntimeException e) {
+                        mCallback.onCameraError(e, CameraView.ERROR_START_PREVIEW);
+                        burst.abort();
+                    }
+                    scheduleBurstPicture(burst);
+                }
+            });
+        } catch (RuntimeException e) {
+            mCallback.onCameraError(e, CameraView.ERROR_TAKE_PICTURE);
+            burst.abort();
+            finishBurst();
+        }
+    }
+
+    /**
+     * Schedules the next picture of {@code burst} at its turn. The turns that passed while the
+     * previous picture was being taken are dropped.
+     */
+    private void scheduleBurstPicture(BurstTracker burst) {
+        long delayMs = 0;
+        if (mBurstIntervalMs > 0 && burst.getRemaining() > 0) {
+            long now = System.nanoTime();
+            long interval = TimeUnit.MILLISECONDS.toNanos(mBurstIntervalMs);
+            long turn = mBurstStartNanos + (burst.getCount() - burst.getRemaining()) * interval;
+            while (burst.getRemaining() > 0 && turn + interval <= now) {
+                burst.onSkipped();
+                turn += interval;
+            }
+            delayMs = TimeUnit.NANOSECONDS.toMillis(Math.max(0, turn - now));
+        }
+        final Handler handler = mCameraHandler;
+        if (burst.getRemaining() == 0 || handler == null) {
+            burst.abort();
+            finishBurst();
+            return;
+        }
+        handler.postDelayed(mTakeBurstPicture, delayMs);
+    }
+
+    private void finishBurst() {
+        if (mBurst == null) {
+            return;
+        }
+        BurstResult result = mBurst.getResult();
+        mBurst = null;
+        final Handler handler = mCameraHandler;
+        if (handler != null) {
+            handler.removeCallbacks(mTakeBurstPicture);
+        }
+        isPictureCaptureInProgress.set(false);
+        mCallback.onBurstCompleted(result);
+    }
+
     /**
      * @param displayOrientation 竖屏模式下为0；逆时针选择为90；顺时针旋转为270
      */
     @Override
-    void setDisplayOrientation(int displayOrientation) {
+    void setDisplayOrientation(final int displayOrientation) {
         if (mDisplayOrientation == displayOrientation) {
             return;
         }
         mDisplayOrientation = displayOrientation;
-        if (isCameraOpened()) {
-            mCameraParameters.setRotation(calcCameraRotation(displayOrientation));
-            mCamera.setParameters(mCameraParameters);
-            final boolean needsToStopPreview = mShowingPreview && Build.VERSION.SDK_INT < 14;
-            if (needsToStopPreview) {
-                mCamera.stopPreview();
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (isCameraOpened()) {
+                    mCameraParameters.setRotation(calcPictureRotation(displayOrientation));
+                    setParameters();
+                    final boolean needsToStopPreview =
+                            mShowingPreview && Build.VERSION.SDK_INT < 14;
+                    if (needsToStopPreview) {
+                        mCamera.stopPreview();
+                    }
+                    mCamera.setDisplayOrientation(calcDisplayOrientation(displayOrientation));
+                    if (needsToStopPreview) {
+                        startPreview();
+                    }
+                }
             }
-            mCamera.setDisplayOrientation(calcDisplayOrientation(displayOrientation));
-            if (needsToStopPreview) {
-                startPreview();
+        });
+    }
+
+    @Override
+    void setExifRotation(boolean exifRotation) {
+        super.setExifRotation(exifRotation);
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (isCameraOpened()) {
+                    mCameraParameters.setRotation(calcPictureRotation(mDisplayOrientation));
+                    setParameters();
+                }
             }
+        });
+    }
+
+    /**
+     * @return The rotation that the camera applies to pictures; none with EXIF rotation, where
+     * the orientation tag is written when the picture arrives.
+     */
+    private int calcPictureRotation(int screenOrientationDegrees) {
+        return mExifRotation ? 0 : calcCameraRotation(screenOrientationDegrees);
+    }
+
+    /**
+     * Writes the rotation of a picture to its EXIF orientation tag if EXIF rotation is enabled.
+     * The tag is overwritten in place if the camera has written one.
+     */
+    private ByteBuffer applyExifRotation(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (!mExifRotation) {
+            return buffer;
         }
+        final int rotation = calcCameraRotation(mDisplayOrientation);
+        if (ExifOrientation.patch(buffer, rotation)) {
+            return buffer;
+        }
+        return ByteBuffer.wrap(ExifOrientation.insert(data, rotation));
     }
 
     /**
@@ -377,18 +847,16 @@ class Camera1 extends CameraViewImpl {
             mCameraParameters = mCamera.getParameters();
             if (mCameraParameters == null)
                 throw new RuntimeException("Camera unavailable: cameraParameters is null!");
-            // Supported preview sizes
-            mPreviewSizes.clear();
-            for (Camera.Size size : mCameraParameters.getSupportedPreviewSizes()) {
-                mPreviewSizes.add(new Size(size.width, size.height));
-            }
-            Log.i(TAG, "mPreviewSizes: " + mPreviewSizes.toString());
-            // Supported picture sizes;
-            mPictureSizes.clear();
-            for (Camera.Size size : mCameraParameters.getSupportedPictureSizes()) {
-                mPictureSizes.add(new Size(size.width, size.height));
+            if (Build.VERSION.SDK_INT >= 16) {
+                trackFocusMoves();
             }
-            Log.i(TAG, "mPictureSizes: " + mPictureSizes.toString());
+            // Supported preview and picture sizes; only walked the first time a camera is opened
+            CameraCapabilities capabilities =
+                    sCapabilities.get(String.valueOf(mCameraId), mCapabilitySource);
+            mPreviewSizes = capabilities.getPreviewSizes();
+            mPictureSizes = capabilities.getPictureSizes();
+            if (debug) Log.d(TAG, "mPreviewSizes: " + mPreviewSizes + ", mPictureSizes: "
+                    + mPictureSizes);
             // AspectRatio
             if (mAspectRatio == null) {
                 mAspectRatio = Constants.DEFAULT_ASPECT_RATIO;
@@ -451,22 +919,28 @@ class Camera1 extends CameraViewImpl {
         mAspectRatio = adjustAspectRatio(mAspectRatio);
 
         /* 选择最佳preview size */
-        SortedSet<Size> previewSizes = mPreviewSizes.sizes(mAspectRatio);
-        Size previewSize = chooseOptimalSize(previewSizes);
+        Size previewSize = chooseOptimalSize();
 
         // Always re-apply camera parameters
-        // Largest picture size in this ratio
-        final Size pictureSize = mPictureSizes.sizes(mAspectRatio).last();
-        if (mShowingPreview) {
+        final Size pictureSize = choosePictureSize(mPictureSizes, mAspectRatio);
+        // Only a new preview size needs the preview to be restarted
+        final boolean previewSizeChanged = !previewSize.equals(mPreviewSize);
+        final boolean restartPreview = mShowingPreview && previewSizeChanged;
+        if (restartPreview) {
             mCamera.stopPreview();
         }
         mCameraParameters.setPreviewSize(previewSize.getWidth(), previewSize.getHeight());
+        mCameraParameters.setPreviewFormat(ImageFormat.NV21);
         mCameraParameters.setPictureSize(pictureSize.getWidth(), pictureSize.getHeight());
-        mCameraParameters.setRotation(calcCameraRotation(mDisplayOrientation));
-        setAutoFocusInternal(mAutoFocus);
-        setFlashInternal(mFlash);
+        mCameraParameters.setRotation(calcPictureRotation(mDisplayOrientation));
+        setAutoFocusInternal();
+        setFlashInternal();
         setParameters();
-        if (mShowingPreview) {
+        mPreviewSize = previewSize;
+        if (previewSizeChanged) {
+            setUpPreviewCallback();
+        }
+        if (restartPreview) {
             startPreview();
         }
         if (debug) Log.d(TAG, "adjustCameraParameters, AspectRatio: " + mAspectRatio
@@ -475,42 +949,52 @@ class Camera1 extends CameraViewImpl {
     }
 
     /**
-     * choose optimal preview size according to mPreview(预览UI长宽) size and mDisplayOrientation（屏幕方向）
+     * choose optimal preview size according to mPreview(预览UI长宽) size
+     *
+     * <p>Preview sizes are in the sensor orientation, so the longer side of the surface is passed
+     * as the width whatever the display orientation is.</p>
      *
-     * @param sizes
      * @return
      */
-    @SuppressWarnings("SuspiciousNameCombination")
-    private Size chooseOptimalSize(SortedSet<Size> sizes) {
+    private Size chooseOptimalSize() {
         if (!mPreview.isReady()) { // Not yet laid out
-            return sizes.first(); // Return the smallest size
+            // Nothing to cover yet
+            return SizeSelection.select(mPreviewSizeSelector, SizeSelectors.smallestCovering(),
+                    mPreviewSizes, mAspectRatio, 0, 0);
         }
-        int desiredWidth;
-        int desiredHeight;
+        int surfaceLonger, surfaceShorter;
         final int surfaceWidth = mPreview.getWidth();
         final int surfaceHeight = mPreview.getHeight();
-        if (isLandscape(mDisplayOrientation)) {
-            desiredWidth = surfaceHeight;
-            desiredHeight = surfaceWidth;
+        if (surfaceWidth < surfaceHeight) {
+            surfaceLonger = surfaceHeight;
+            surfaceShorter = surfaceWidth;
         } else {
-            desiredWidth = surfaceWidth;
-            desiredHeight = surfaceHeight;
+            surfaceLonger = surfaceWidth;
+            surfaceShorter = surfaceHeight;
         }
-        Size result = null;
-        for (Size size : sizes) { // Iterate from small to large
-            if (desiredWidth <= size.getWidth() && desiredHeight <= size.getHeight()) {
-                return size;
+        return SizeSelection.select(mPreviewSizeSelector, SizeSelectors.smallestCovering(),
+                mPreviewSizes, mAspectRatio, surfaceLonger, surfaceShorter);
+    }
 
+    /**
+     * Keeps {@link #mFocusSettled} up to date while continuous auto-focus is running.
+     */
+    @TargetApi(16)
+    private void trackFocusMoves() {
+        mCamera.setAutoFocusMoveCallback(new Camera.AutoFocusMoveCallback() {
+            @Override
+            public void onAutoFocusMoving(boolean start, Camera camera) {
+                mFocusSettled = !start;
             }
-            result = size;
-        }
-        return result;
+        });
     }
 
     private void releaseCamera() {
+        mFocusSettled = false;
         if (mCamera != null) {
             mCamera.release();
             mCamera = null;
+            mPreviewSize = null;
             mCallback.onCameraClosed();
         }
     }
@@ -566,10 +1050,14 @@ class Camera1 extends CameraViewImpl {
     }
 
     /**
+     * Applies {@link #mAutoFocus} to {@link #mCameraParameters}.
+     *
      * @return {@code true} if {@link #mCameraParameters} was modified.
      */
-    private boolean setAutoFocusInternal(boolean autoFocus) {
-        mAutoFocus = autoFocus;
+    private boolean setAutoFocusInternal() {
+        // Cleared first, so that a request made meanwhile stays pending
+        mAutoFocusPending = false;
+        final boolean autoFocus = mAutoFocus;
         if (isCameraOpened()) {
             final List<String> modes = mCameraParameters.getSupportedFocusModes();
             if (autoFocus && modes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE)) {//持续对焦
@@ -581,6 +1069,8 @@ class Camera1 extends CameraViewImpl {
             } else {
                 mCameraParameters.setFocusMode(modes.get(0));
             }
+            final String focusMode = mCameraParameters.getFocusMode();
+            mContinuousFocus = focusMode != null && focusMode.contains("continuous");
             return true;
         } else {
             return false;
@@ -588,28 +1078,40 @@ class Camera1 extends CameraViewImpl {
     }
 
     /**
+     * Applies {@link #mFlash} to {@link #mCameraParameters}. An unsupported mode keeps the current
+     * one, or turns the flash off if the current one is not supported either.
+     *
      * @return {@code true} if {@link #mCameraParameters} was modified.
      */
-    private boolean setFlashInternal(int flash) {
-        if (isCameraOpened()) {
-            List<String> modes = mCameraParameters.getSupportedFlashModes();//off/auto/on/torch
-            String mode = FLASH_MODES.get(flash);
-            if (modes != null && modes.contains(mode)) {
-                mCameraParameters.setFlashMode(mode);
-                mFlash = flash;
-                return true;
-            }
-            String currentMode = FLASH_MODES.get(mFlash);
-            if (modes == null || !modes.contains(currentMode)) {
-                mCameraParameters.setFlashMode(Camera.Parameters.FLASH_MODE_OFF);
-                mFlash = Constants.FLASH_OFF;
-                return true;
-            }
-            return false;
-        } else {
-            mFlash = flash;
+    private boolean setFlashInternal() {
+        if (!isCameraOpened()) {
             return false;
         }
+        final int flash = mFlash.get();
+        List<String> modes = mCameraParameters.getSupportedFlashModes();//off/auto/on/torch
+        String mode = FLASH_MODES.get(flash);
+        if (modes != null && modes.contains(mode)) {
+            mCameraParameters.setFlashMode(mode);
+            return true;
+        }
+        String currentMode = mCameraParameters.getFlashMode();
+        final boolean changed = modes == null || !modes.contains(currentMode);
+        if (changed) {
+            mCameraParameters.setFlashMode(Camera.Parameters.FLASH_MODE_OFF);
+            currentMode = Camera.Parameters.FLASH_MODE_OFF;
+        }
+        // Report the mode in effect, unless another one has been requested meanwhile
+        mFlash.compareAndSet(flash, toFlash(currentMode));
+        return changed;
+    }
+
+    private static int toFlash(String mode) {
+        for (int i = 0, size = FLASH_MODES.size(); i < size; i++) {
+            if (FLASH_MODES.valueAt(i).equals(mode)) {
+                return FLASH_MODES.keyAt(i);
+            }
+        }
+        return Constants.FLASH_OFF;
     }
 
 }
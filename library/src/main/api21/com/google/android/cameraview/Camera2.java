@@ -19,11 +19,15 @@ package com.google.android.cameraview;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.graphics.YuvImage;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
@@ -31,15 +35,25 @@ import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.Image;
 import android.media.ImageReader;
 import android.media.MediaActionSound;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.util.Log;
 import android.util.SparseIntArray;
 import android.view.Surface;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
 
 @SuppressWarnings("MissingPermission")
 @TargetApi(21)
@@ -65,8 +79,77 @@ class Camera2 extends CameraViewImpl {
      */
     private static final int MAX_PREVIEW_HEIGHT = 1080;
 
+    /**
+     * {@link ImageReader#acquireLatestImage()} needs at least two images
+     */
+    private static final int FRAME_READER_MAX_IMAGES = 2;
+
+    /**
+     * The number of JPEG images {@link #mImageReader} holds when the capture memory budget
+     * allows.
+     */
+    private static final int PICTURE_READER_MAX_IMAGES = 2;
+
+    /**
+     * The JPEG quality of zero-shutter-lag pictures.
+     */
+    private static final int ZSL_JPEG_QUALITY = 95;
+
+    private static final Releasable NO_OP_RELEASABLE = new Releasable() {
+        @Override
+        public void release() {
+        }
+    };
+
+    private static final ZslRingBuffer.Recycler<Image> IMAGE_RECYCLER
+            = new ZslRingBuffer.Recycler<Image>() {
+        @Override
+        public void recycle(Image image) {
+            image.close();
+        }
+    };
+
+    /**
+     * Capabilities of the Camera2 devices, shared by all the instances in this process.
+     */
+    private static final CameraCapabilityCache sCapabilities = new CameraCapabilityCache();
+
+    private static boolean sAvailabilityCallbackRegistered;
+
+    /**
+     * The name of the file in the app-private storage that keeps {@link #sCapabilities} between
+     * processes.
+     */
+    private static final String CAPABILITY_SNAPSHOT_FILE = "cameraview_capabilities";
+
+    private static CapabilitySnapshotStore sSnapshotStore;
+
     private final CameraManager mCameraManager;
 
+    private final CameraCapabilityCache.Source mCapabilitySource
+            = new CameraCapabilityCache.Source() {
+
+        @Override
+        public String[] queryCameraIds() {
+            try {
+                return mCameraManager.getCameraIdList();
+            } catch (CameraAccessException e) {
+                throw new RuntimeException("Failed to get a list of camera devices", e);
+            }
+        }
+
+        @Override
+        public CameraCapabilities queryCapabilities(String cameraId) {
+            try {
+                return createCapabilities(cameraId,
+                        mCameraManager.getCameraCharacteristics(cameraId));
+            } catch (CameraAccessException e) {
+                throw new RuntimeException("Failed to get camera characteristics: " + cameraId, e);
+            }
+        }
+
+    };
+
     private final CameraDevice.StateCallback mCameraDeviceCallback
             = new CameraDevice.StateCallback() {
 
@@ -74,12 +157,19 @@ class Camera2 extends CameraViewImpl {
         public void onOpened(@NonNull CameraDevice camera) {
             mCamera = camera;
             mCallback.onCameraOpened();
+            validateCapabilities();
             startCaptureSession();
+            prefetchCapabilities();
+            saveCapabilitySnapshot();
         }
 
         @Override
         public void onClosed(@NonNull CameraDevice camera) {
             mCallback.onCameraClosed();
+            if (camera == mStoppedCamera) {
+                mStoppedCamera = null;
+                quitCameraThread();
+            }
         }
 
         @Override
@@ -106,11 +196,12 @@ class Camera2 extends CameraViewImpl {
                 return;
             }
             mCaptureSession = session;
+            closeRetiredReaders();
             updateAutoFocus();
             updateFlash();
             try {
                 mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(),
-                        mCaptureCallback, null);
+                        mCaptureCallback, mCameraHandler);
             } catch (CameraAccessException e) {
                 Log.e(TAG, "Failed to start camera preview because it couldn't access camera", e);
             } catch (IllegalStateException e) {
@@ -121,6 +212,8 @@ class Camera2 extends CameraViewImpl {
         @Override
         public void onConfigureFailed(@NonNull CameraCaptureSession session) {
             Log.e(TAG, "Failed to configure capture session.");
+            closeRetiredReaders();
+            mReconfigurationLatency.cancel();
         }
 
         @Override
@@ -134,13 +227,25 @@ class Camera2 extends CameraViewImpl {
 
     PictureCaptureCallback mCaptureCallback = new PictureCaptureCallback() {
 
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+            super.onCaptureCompleted(session, request, result);
+            mConvergence.update(isFocused(result), isExposed(result), System.nanoTime());
+            if (session == mCaptureSession) {
+                // The first frame of a reconfigured session or of the new camera
+                mReconfigurationLatency.end();
+                mFacingSwitchLatency.end();
+            }
+        }
+
         @Override
         public void onPrecaptureRequired() {
             mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
                     CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_START);
             setState(STATE_PRECAPTURE);
             try {
-                mCaptureSession.capture(mPreviewRequestBuilder.build(), this, null);
+                mCaptureSession.capture(mPreviewRequestBuilder.build(), this, mCameraHandler);
                 mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
                         CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
             } catch (CameraAccessException e) {
@@ -160,25 +265,146 @@ class Camera2 extends CameraViewImpl {
 
         @Override
         public void onImageAvailable(ImageReader reader) {
-            try (Image image = reader.acquireNextImage()) {
-                Image.Plane[] planes = image.getPlanes();
-                if (planes.length > 0) {
-                    ByteBuffer buffer = planes[0].getBuffer();
-                    byte[] data = new byte[buffer.remaining()];
-                    buffer.get(data);
-                    mCallback.onPictureTaken(data);
+            final Image image;
+            try {
+                image = reader.acquireNextImage();
+            } catch (IllegalStateException e) {
+                // Callbacks are still holding on to the previous pictures
+                Log.e(TAG, "Cannot acquire a picture; release the earlier ones first.", e);
+                mCallback.onCameraError(e, CameraView.ERROR_TAKE_PICTURE);
+                if (mBurst != null) {
+                    mBurst.onFailed();
+                    maybeFinishBurst();
+                }
+                return;
+            }
+            if (image == null) {
+                return;
+            }
+            Image.Plane[] planes = image.getPlanes();
+            if (planes.length == 0) {
+                image.close();
+                if (mBurst != null) {
+                    mBurst.onFailed();
+                    maybeFinishBurst();
+                }
+                return;
+            }
+            final BurstTracker burst = mBurst;
+            if (burst != null) {
+                burst.onDelivered(System.nanoTime());
+            }
+            ByteBuffer data = planes[0].getBuffer();
+            final boolean copied = mExifRotation && !ExifOrientation.patch(data,
+                    getJpegOrientation());
+            if (copied) {
+                // There is no orientation tag to overwrite; add one to a copy
+                byte[] jpeg = new byte[data.remaining()];
+                data.get(jpeg);
+                image.close();
+                data = ByteBuffer.wrap(ExifOrientation.insert(jpeg, getJpegOrientation()));
+            }
+            // Unless copied, hand out the plane buffer itself; the image is closed once it is
+            // released, and the reader is kept open until then
+            final DeferredReleasable references = copied ? null : mReaderReferences.get(reader);
+            if (references != null) {
+                references.acquire();
+            }
+            mCallback.onPictureTaken(data, new Releasable() {
+                @Override
+                public void release() {
+                    if (!copied) {
+                        image.close();
+                    }
+                    if (references != null) {
+                        references.releaseReference();
+                    }
+                    if (burst != null) {
+                        runOnCameraThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                onBurstPictureReleased(burst);
+                            }
+                        });
+                    }
+                }
+            });
+            maybeFinishBurst();
+        }
+
+    };
+
+    private final ImageReader.OnImageAvailableListener mOnFrameAvailableListener
+            = new ImageReader.OnImageAvailableListener() {
+
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            Image image = reader.acquireLatestImage();
+            if (image == null) {
+                return;
+            }
+            if (!shouldDeliverFrame()) {
+                image.close();
+                return;
+            }
+            final byte[] buffer = mFrameBufferPool.acquire();
+            final boolean copied;
+            try {
+                if (buffer == null) {
+                    return; // All buffers are in use; drop this frame
                 }
+                copied = copyToNv21(image, buffer);
+            } finally {
+                image.close();
+            }
+            if (!copied) {
+                mFrameBufferPool.release(buffer);
+                return;
             }
+            // Frames may keep the buffer after the callback returns
+            mCallback.onPreviewFrame(buffer, reader.getWidth(), reader.getHeight(),
+                    mFrameBufferPool.hold(buffer));
         }
 
     };
 
+    private final ImageReader.OnImageAvailableListener mOnZslFrameAvailableListener
+            = new ImageReader.OnImageAvailableListener() {
+
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            final Image image;
+            try {
+                image = reader.acquireNextImage();
+            } catch (IllegalStateException e) {
+                return; // The ring holds all the images; the next frame frees one
+            }
+            if (image == null) {
+                return;
+            }
+            if (reader != mZslReader) {
+                image.close();
+                return;
+            }
+            mZslRing.add(image, image.getTimestamp());
+        }
+
+    };
 
-    private String mCameraId;
+    /**
+     * The capabilities of the chosen camera, including its ID and sizes. They are immutable, and
+     * a new camera is published by replacing them at once, so other threads always see the sizes
+     * of one camera.
+     */
+    private volatile CameraCapabilities mCapabilities;
 
-    private CameraCharacteristics mCameraCharacteristics;
+    volatile CameraDevice mCamera;
 
-    CameraDevice mCamera;
+    /**
+     * The device closed by {@link #stop()}. Its camera thread quits once it reports
+     * {@link CameraDevice.StateCallback#onClosed(CameraDevice)}.
+     */
+    private CameraDevice mStoppedCamera;
 
     CameraCaptureSession mCaptureSession;
 
@@ -186,13 +412,88 @@ class Camera2 extends CameraViewImpl {
 
     private ImageReader mImageReader;
 
-    private final SizeMap mPreviewSizes = new SizeMap();
+    private ImageReader mFrameReader;
+
+    /**
+     * Only used on the camera thread.
+     */
+    private final YuvConverter mYuvConverter = new YuvConverter();
+
+    /**
+     * Readers replaced while a session was using them; see {@link #closeRetiredReaders()}.
+     */
+    private final List<ImageReader> mRetiredReaders = new ArrayList<>();
+
+    /**
+     * Defers closing a picture reader while its images are still handed out; see
+     * {@link #closeReader(ImageReader)}. Only used on the camera thread.
+     */
+    private final Map<ImageReader, DeferredReleasable> mReaderReferences = new HashMap<>();
+
+    private Surface mPreviewSurface;
+
+    /**
+     * The {@link SurfaceTexture} behind {@link #mPreviewSurface}.
+     */
+    private Object mPreviewSurfaceTexture;
+
+    /**
+     * The preview size of the latest session, or {@code null} if no session was started since the
+     * camera was opened.
+     */
+    private Size mSessionPreviewSize;
+
+    /**
+     * Receives full-resolution frames for zero-shutter-lag capture, or {@code null} while it is
+     * disabled.
+     */
+    private ImageReader mZslReader;
+
+    /**
+     * The latest frames of {@link #mZslReader}.
+     */
+    private ZslRingBuffer<Image> mZslRing;
+
+    /**
+     * Encodes zero-shutter-lag pictures off the camera thread.
+     */
+    private HandlerThread mZslThread;
+
+    private Handler mZslHandler;
+
+    /**
+     * The burst being taken, or {@code null}. This is only used on the camera thread.
+     */
+    private BurstTracker mBurst;
+
+    private int mBurstIntervalMs;
+
+    private final Runnable mIssueBurstRequests = new Runnable() {
+        @Override
+        public void run() {
+            issueBurstRequests();
+        }
+    };
+
+    private final CameraCaptureSession.CaptureCallback mBurstCaptureCallback
+            = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                @NonNull CaptureRequest request, @NonNull CaptureFailure failure) {
+            if (mBurst != null) {
+                mBurst.onFailed();
+                if (!maybeFinishBurst() && mBurstIntervalMs == 0) {
+                    issueBurstRequests();
+                }
+            }
+        }
+    };
 
-    private final SizeMap mPictureSizes = new SizeMap();
+    private boolean mPreviewFrameEnabled;
 
-    private int mFacing;
+    private volatile int mFacing;
 
-    private AspectRatio mAspectRatio = Constants.DEFAULT_ASPECT_RATIO;
+    private volatile AspectRatio mAspectRatio = Constants.DEFAULT_ASPECT_RATIO;
 
     private boolean mAutoFocus;
 
@@ -200,15 +501,45 @@ class Camera2 extends CameraViewImpl {
 
     private int mDisplayOrientation;
 
-    private MediaActionSound mActionSound;
+    private volatile MediaActionSound mActionSound;
+
+    /**
+     * The AF and AE state of the latest preview frame, for fast capture.
+     */
+    private final ConvergenceState mConvergence = new ConvergenceState();
+
+    /**
+     * Whether the focus was locked for the picture being taken, so that it has to be unlocked.
+     */
+    private boolean mFocusLocked;
+
+    /**
+     * The still capture request of the current device. It is kept up to date with the controls
+     * and the orientation, so that taking a picture does not have to set it up again.
+     */
+    private CaptureRequest.Builder mStillRequestBuilder;
+
+    /**
+     * The reader {@link #mStillRequestBuilder} targets.
+     */
+    private ImageReader mStillRequestReader;
 
     Camera2(Callback callback, PreviewImpl preview, Context context) {
         super(callback, preview);
         mCameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        registerAvailabilityCallback(
+                (CameraManager) context.getApplicationContext()
+                        .getSystemService(Context.CAMERA_SERVICE));
+        loadCapabilitySnapshot(context);
         mPreview.setCallback(new PreviewImpl.Callback() {
             @Override
             public void onSurfaceChanged() {
-                startCaptureSession();
+                runOnCameraThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        startCaptureSession();
+                    }
+                });
             }
         });
     }
@@ -225,13 +556,30 @@ class Camera2 extends CameraViewImpl {
             if (!chooseCameraIdByFacing())
                 return false;
             collectCameraInfo();
-            prepareImageReader();
-            startOpeningCamera();
-            loadMediaActionSound();
         } catch (RuntimeException e) {
             mCamera = null;
             mCallback.onCameraError(e, CameraView.ERROR_NO_PERMISSION);
+            return true;
+        }
+        if (mPreview.isReady()) {
+            // Lay out the preview for the sizes we already know while the camera is opening
+            Size previewSize = chooseOptimalSize();
+            mPreview.setBufferSize(previewSize.getWidth(), previewSize.getHeight());
         }
+        startCameraThread();
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    prepareImageReader();
+                    startOpeningCamera();
+                } catch (RuntimeException e) {
+                    mCamera = null;
+                    mCallback.onCameraError(e, CameraView.ERROR_NO_PERMISSION);
+                }
+            }
+        });
+        loadMediaActionSound();
         return true;
     }
 
@@ -243,6 +591,66 @@ class Camera2 extends CameraViewImpl {
 
     @Override
     void stop() {
+        final MediaActionSound actionSound = mActionSound;
+        mActionSound = null;
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                final CameraDevice camera = mCamera;
+                closeCamera();
+                if (actionSound != null) {
+                    actionSound.release();
+                }
+                if (camera == null) {
+                    if (mStoppedCamera == null) {
+                        quitCameraThread();
+                    }
+                } else {
+                    // The callbacks of the close are posted to this thread; keep it until then
+                    mStoppedCamera = camera;
+                }
+            }
+        });
+        stopCameraThread();
+    }
+
+    private void closeCamera() {
+        closeDevice();
+        if (mImageReader != null) {
+            closeReader(mImageReader);
+            mImageReader = null;
+        }
+        if (mFrameReader != null) {
+            mFrameReader.close();
+            mFrameReader = null;
+        }
+        releaseZslReader();
+        closeRetiredReaders();
+        stopZslThread();
+        if (mPreviewSurface != null) {
+            mPreviewSurface.release();
+            mPreviewSurface = null;
+            mPreviewSurfaceTexture = null;
+        }
+        mSessionPreviewSize = null;
+        mReconfigurationLatency.cancel();
+        mFacingSwitchLatency.cancel();
+    }
+
+    /**
+     * Closes the capture session and the camera device, but keeps everything that is not bound
+     * to the device: the readers, the preview surface and the frame buffers.
+     */
+    private void closeDevice() {
+        abortBurst();
+        mStillRequestBuilder = null;
+        mStillRequestReader = null;
+        mConvergence.reset();
+        mFocusLocked = false;
+        if (mZslRing != null) {
+            // These frames are from the camera being closed
+            mZslRing.clear();
+        }
         if (mCaptureSession != null) {
             mCaptureSession.close();
             mCaptureSession = null;
@@ -251,13 +659,29 @@ class Camera2 extends CameraViewImpl {
             mCamera.close();
             mCamera = null;
         }
-        if (mImageReader != null) {
-            mImageReader.close();
-            mImageReader = null;
+    }
+
+    /**
+     * Closes the readers replaced during a reconfiguration. They can only be closed once the
+     * session that uses them has been replaced.
+     */
+    private void closeRetiredReaders() {
+        for (ImageReader reader : mRetiredReaders) {
+            closeReader(reader);
         }
-        if (mActionSound != null) {
-            mActionSound.release();
-            mActionSound = null;
+        mRetiredReaders.clear();
+    }
+
+    /**
+     * Closes the reader, or, for a picture reader, once the pictures handed out from it have been
+     * released; their buffers belong to the reader.
+     */
+    private void closeReader(ImageReader reader) {
+        DeferredReleasable references = mReaderReferences.remove(reader);
+        if (references != null) {
+            references.release();
+        } else {
+            reader.close();
         }
     }
 
@@ -273,8 +697,43 @@ class Camera2 extends CameraViewImpl {
         }
         mFacing = facing;
         if (isCameraOpened()) {
-            stop();
-            start();
+            mFacingSwitchLatency.begin();
+            runOnCameraThread(new Runnable() {
+                @Override
+                public void run() {
+                    switchCamera();
+                }
+            });
+        }
+    }
+
+    /**
+     * Switches to the camera of {@link #mFacing}. Only the device and the session are
+     * re-created; the camera thread, the sounds, the preview surface, the frame buffers and, if
+     * the picture size allows, the still {@link ImageReader} are kept. This is called on the
+     * camera thread.
+     */
+    private void switchCamera() {
+        if (!isCameraOpened()) {
+            // Stopped in the meantime
+            mFacingSwitchLatency.cancel();
+            return;
+        }
+        try {
+            if (!chooseCameraIdByFacing()) {
+                // The camera is legacy; CameraView restarts and falls back to Camera1
+                mFacingSwitchLatency.cancel();
+                mCallback.onLegacyCamera();
+                return;
+            }
+            collectCameraInfo();
+            closeDevice();
+            prepareImageReaderIfNeeded();
+            startOpeningCamera();
+        } catch (RuntimeException e) {
+            mCamera = null;
+            mFacingSwitchLatency.cancel();
+            mCallback.onCameraError(e, CameraView.ERROR_NO_PERMISSION);
         }
     }
 
@@ -285,26 +744,67 @@ class Camera2 extends CameraViewImpl {
 
     @Override
     Set<AspectRatio> getSupportedAspectRatios() {
-        return mPreviewSizes.ratios();
+        final CameraCapabilities capabilities = mCapabilities;
+        if (capabilities == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(capabilities.getPreviewSizes().ratios());
     }
 
     @Override
     boolean setAspectRatio(AspectRatio ratio) {
-        if (ratio == null || ratio.equals(mAspectRatio) ||
-                !mPreviewSizes.ratios().contains(ratio)) {
+        final CameraCapabilities capabilities = mCapabilities;
+        if (ratio == null || ratio.equals(mAspectRatio) || capabilities == null ||
+                !capabilities.getPreviewSizes().ratios().contains(ratio)) {
             // TODO: Better error handling
             return false;
         }
         mAspectRatio = ratio;
-        prepareImageReader();
-        if (mCaptureSession != null) {
-            mCaptureSession.close();
-            mCaptureSession = null;
-            startCaptureSession();
-        }
+        mControlUpdates.requestUpdate(ControlUpdateBatcher.ASPECT_RATIO);
         return true;
     }
 
+    @Override
+    void onSizeConstraintsChanged() {
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                reconfigureSession();
+            }
+        });
+    }
+
+    /**
+     * Chooses the sizes again and applies them with as little disruption as possible. The still
+     * {@link ImageReader} is only replaced if the picture size has changed, and the session is
+     * only replaced if one of its outputs has. The current session keeps streaming to the same
+     * preview {@link Surface} until the camera switches to the new one.
+     */
+    private void reconfigureSession() {
+        if (!isCameraOpened()) {
+            return;
+        }
+        // The aspect ratio may have been checked against the camera before a facing switch
+        collectCameraInfo();
+        mReconfigurationLatency.begin();
+        boolean readerChanged = prepareImageReaderIfNeeded();
+        if (mSessionPreviewSize == null) {
+            // No session yet; the first one picks up the new sizes
+            mReconfigurationLatency.cancel();
+            return;
+        }
+        if (mCaptureSession != null && !readerChanged && !isZslReaderStale()
+                && chooseOptimalSize().equals(mSessionPreviewSize)) {
+            // Nothing to reconfigure
+            mReconfigurationLatency.end();
+            return;
+        }
+        // createCaptureSession() replaces the current session without draining it first, which
+        // is faster than closing it explicitly. Stop using it in the meantime.
+        mCaptureSession = null;
+        startCaptureSession();
+    }
+
     @Override
     AspectRatio getAspectRatio() {
         return mAspectRatio;
@@ -316,17 +816,7 @@ class Camera2 extends CameraViewImpl {
             return;
         }
         mAutoFocus = autoFocus;
-        if (mPreviewRequestBuilder != null) {
-            updateAutoFocus();
-            if (mCaptureSession != null) {
-                try {
-                    mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(),
-                            mCaptureCallback, null);
-                } catch (CameraAccessException e) {
-                    mAutoFocus = !mAutoFocus; // Revert
-                }
-            }
-        }
+        mControlUpdates.requestUpdate(ControlUpdateBatcher.AUTO_FOCUS);
     }
 
     @Override
@@ -359,11 +849,21 @@ class Camera2 extends CameraViewImpl {
      */
     @Override
     void manualFocus() {
-        if (!isCameraOpened())
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                manualFocusInternal();
+            }
+        });
+    }
+
+    private void manualFocusInternal() {
+        if (!isCameraOpened() || mCaptureSession == null)
             return;
         mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_START);
         try {
-            mCaptureSession.capture(mPreviewRequestBuilder.build(), mManualFocusCallBack, null);//may throw exception
+            mCaptureSession.capture(mPreviewRequestBuilder.build(), mManualFocusCallBack,
+                    mCameraHandler);//may throw exception
         } catch (CameraAccessException | IllegalArgumentException | IllegalStateException e) {
             Log.e(TAG, "Failed to lock focus.", e);
             mCallback.onCameraError(e, CameraView.ERROR_AUTO_FOCUS);
@@ -375,17 +875,41 @@ class Camera2 extends CameraViewImpl {
         if (mFlash == flash) {
             return;
         }
-        int saved = mFlash;
         mFlash = flash;
-        if (mPreviewRequestBuilder != null) {
+        mControlUpdates.requestUpdate(ControlUpdateBatcher.FLASH);
+    }
+
+    @Override
+    void applyControls(int changes) {
+        if ((changes & ControlUpdateBatcher.ASPECT_RATIO) != 0) {
+            // The new session picks up the other controls as well
+            reconfigureSession();
+            return;
+        }
+        if (mPreviewRequestBuilder == null) {
+            return;
+        }
+        if ((changes & ControlUpdateBatcher.AUTO_FOCUS) != 0) {
+            updateAutoFocus();
+        }
+        if ((changes & ControlUpdateBatcher.FLASH) != 0) {
             updateFlash();
-            if (mCaptureSession != null) {
-                try {
-                    mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(),
-                            mCaptureCallback, null);
-                } catch (CameraAccessException e) {
-                    mFlash = saved; // Revert
-                }
+        }
+        if (mStillRequestBuilder != null) {
+            if ((changes & ControlUpdateBatcher.AUTO_FOCUS) != 0) {
+                mStillRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
+                        mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE));
+            }
+            if ((changes & ControlUpdateBatcher.FLASH) != 0) {
+                updateStillFlash(mStillRequestBuilder);
+            }
+        }
+        if (mCaptureSession != null) {
+            try {
+                mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(),
+                        mCaptureCallback, mCameraHandler);
+            } catch (CameraAccessException | IllegalStateException e) {
+                Log.e(TAG, "Failed to update the camera controls.", e);
             }
         }
     }
@@ -396,129 +920,483 @@ class Camera2 extends CameraViewImpl {
     }
 
     @Override
-    void takePicture() {
-        if (mAutoFocus) {
-            lockFocus();
-        } else {
-            captureStillPicture();
+    void setPreviewFrameEnabled(boolean enabled) {
+        if (mPreviewFrameEnabled == enabled) {
+            return;
         }
+        mPreviewFrameEnabled = enabled;
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (mCaptureSession != null) {
+                    mCaptureSession.close();
+                    mCaptureSession = null;
+                    startCaptureSession();
+                }
+            }
+        });
+    }
+
+    @Override
+    boolean isPreviewFrameEnabled() {
+        return mPreviewFrameEnabled;
+    }
+
+    @Override
+    void takePicture() {
+        final long requestNanos = SystemClock.elapsedRealtimeNanos();
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (mCaptureSession == null) {
+                    return;
+                }
+                if (mBurst != null) {
+                    Log.w(TAG, "Cannot take a picture while a burst is in progress.");
+                    return;
+                }
+                mShutterLatency.begin();
+                if (takeZslPicture(requestNanos)) {
+                    return;
+                }
+                if (mAutoFocus && !canSkipFocusLock()) {
+                    lockFocus();
+                } else {
+                    captureStillPicture();
+                }
+            }
+        });
     }
 
     @Override
     void setDisplayOrientation(int displayOrientation) {
         mDisplayOrientation = displayOrientation;
         mPreview.setDisplayOrientation(mDisplayOrientation);
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                updateStillOrientation();
+            }
+        });
+    }
+
+    @Override
+    void setExifRotation(boolean exifRotation) {
+        super.setExifRotation(exifRotation);
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                updateStillOrientation();
+            }
+        });
+    }
+
+    /**
+     * Updates the rotation of the cached still capture request, if there is one.
+     */
+    private void updateStillOrientation() {
+        if (mStillRequestBuilder != null && mCapabilities != null) {
+            mStillRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION, getStillJpegOrientation());
+        }
     }
 
     Size getPictureSize() {
-        return mPictureSizes.sizes(mAspectRatio).last();
+        return choosePictureSize(mCapabilities.getPictureSizes(), mAspectRatio);
     }
 
     /**
-     * <p>Chooses a camera ID by the specified camera facing ({@link #mFacing}).</p>
-     * <p>This rewrites {@link #mCameraId}, {@link #mCameraCharacteristics}, and optionally
-     * {@link #mFacing}.</p>
+     * Invalidates {@link #sCapabilities} when a camera device is connected.
      */
-    private boolean chooseCameraIdByFacing() {
-        try {
-            int internalFacing = INTERNAL_FACINGS.get(mFacing);
-            final String[] ids = mCameraManager.getCameraIdList();
-            if (ids.length == 0) { // No camera
-                throw new RuntimeException("No camera available.");
-            }
-            for (String id : ids) {
-                CameraCharacteristics characteristics = mCameraManager.getCameraCharacteristics(id);
-                Integer level = characteristics.get(
-                        CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
-                if (level == null ||
-                        level == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY) {
-                    continue;
-                }
-                Integer internal = characteristics.get(CameraCharacteristics.LENS_FACING);
-                if (internal == null) {
-                    throw new NullPointerException("Unexpected state: LENS_FACING null");
-                }
-                if (internal == internalFacing) {
-                    mCameraId = id;
-                    mCameraCharacteristics = characteristics;
-                    return true;
-                }
+    private static synchronized void registerAvailabilityCallback(CameraManager manager) {
+        if (sAvailabilityCallbackRegistered) {
+            return;
+        }
+        manager.registerAvailabilityCallback(new CameraManager.AvailabilityCallback() {
+            @Override
+            public void onCameraAvailable(@NonNull String cameraId) {
+                sCapabilities.onCameraAvailabilityChanged(cameraId);
             }
-            // Not found, 兜底: 选中的camera不可用, 则默认用第一个camera
-            mCameraId = ids[0];
-            mCameraCharacteristics = mCameraManager.getCameraCharacteristics(mCameraId);
-            Integer level = mCameraCharacteristics.get(
-                    CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
-            if (CameraView.defaultCameraImpl != CameraView.CAMERA_IMPL_2
-                    && (level == null || level == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY)) {
-                //此时换用 Camera1
-                return false;
+
+            @Override
+            public void onCameraUnavailable(@NonNull String cameraId) {
+                sCapabilities.onCameraAvailabilityChanged(cameraId);
             }
-            Integer internal = mCameraCharacteristics.get(CameraCharacteristics.LENS_FACING);
-            if (internal == null) {
-                throw new NullPointerException("Unexpected state: LENS_FACING null");
+        }, new Handler(Looper.getMainLooper()));
+        sAvailabilityCallbackRegistered = true;
+    }
+
+    /**
+     * Seeds {@link #sCapabilities} from the snapshot saved by an earlier process, so that
+     * {@link #start()} does not need to wait for the camera system on a cold start.
+     */
+    private static synchronized void loadCapabilitySnapshot(Context context) {
+        if (sSnapshotStore != null) {
+            return;
+        }
+        sSnapshotStore = new CapabilitySnapshotStore(
+                new File(context.getApplicationContext().getFilesDir(), CAPABILITY_SNAPSHOT_FILE),
+                Build.FINGERPRINT);
+        CapabilitySnapshot snapshot = sSnapshotStore.load();
+        if (snapshot != null) {
+            sCapabilities.seed(snapshot);
+        }
+    }
+
+    /**
+     * Writes {@link #sCapabilities} to the app-private storage if they have changed. This is
+     * called on the camera thread.
+     */
+    private static void saveCapabilitySnapshot() {
+        CapabilitySnapshot snapshot = sCapabilities.takeSnapshotIfDirty();
+        if (snapshot != null) {
+            synchronized (Camera2.class) {
+                sSnapshotStore.save(snapshot);
             }
-            for (int i = 0, count = INTERNAL_FACINGS.size(); i < count; i++) {
-                if (INTERNAL_FACINGS.valueAt(i) == internal) {
-                    mFacing = INTERNAL_FACINGS.keyAt(i);
-                    return true;
-                }
+        }
+    }
+
+    /**
+     * Loads the capabilities of the other cameras, so that switching to them does not have to
+     * wait for the camera system. This is called on the camera thread.
+     */
+    private void prefetchCapabilities() {
+        try {
+            for (String id : sCapabilities.getCameraIds(mCapabilitySource)) {
+                sCapabilities.get(id, mCapabilitySource);
             }
-            // The operation can reach here when the only camera device is an external one.
-            // We treat it as facing back.
-            mFacing = Constants.FACING_BACK;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to prefetch camera capabilities.", e);
+        }
+    }
+
+    /**
+     * Checks the capabilities of the opened camera against the camera system. If the snapshot
+     * they came from is stale, the sizes are chosen again. This is called on the camera thread.
+     */
+    private void validateCapabilities() {
+        final String cameraId = mCapabilities.getCameraId();
+        CameraCapabilities capabilities = sCapabilities.validate(cameraId, mCapabilitySource);
+        if (capabilities == mCapabilities) {
+            return;
+        }
+        Log.w(TAG, "Capability snapshot is stale: " + cameraId);
+        mCapabilities = capabilities;
+        collectCameraInfo();
+        prepareImageReader();
+    }
+
+    /**
+     * <p>Chooses a camera ID by the specified camera facing ({@link #mFacing}).</p>
+     * <p>This rewrites {@link #mCapabilities}, and optionally {@link #mFacing}. Nothing is
+     * rewritten if it returns {@code false}.</p>
+     */
+    private boolean chooseCameraIdByFacing() {
+        final String[] ids = sCapabilities.getCameraIds(mCapabilitySource);
+        if (ids.length == 0) { // No camera
+            throw new RuntimeException("No camera available.");
+        }
+        for (String id : ids) {
+            CameraCapabilities capabilities = sCapabilities.get(id, mCapabilitySource);
+            if (isLegacy(capabilities)) {
+                continue;
+            }
+            if (capabilities.getFacing() == mFacing) {
+                mCapabilities = capabilities;
+                return true;
+            }
+        }
+        // Not found, 兜底: 选中的camera不可用, 则默认用第一个camera
+        CameraCapabilities capabilities = sCapabilities.get(ids[0], mCapabilitySource);
+        if (CameraView.defaultCameraImpl != CameraView.CAMERA_IMPL_2 && isLegacy(capabilities)) {
+            //此时换用 Camera1
+            return false;
+        }
+        mCapabilities = capabilities;
+        if (capabilities.getFacing() != CameraCapabilities.FACING_EXTERNAL) {
+            mFacing = capabilities.getFacing();
             return true;
-        } catch (CameraAccessException e) {
-            throw new RuntimeException("Failed to get a list of camera devices", e);
         }
+        // The operation can reach here when the only camera device is an external one.
+        // We treat it as facing back.
+        mFacing = Constants.FACING_BACK;
+        return true;
+    }
+
+    private static boolean isLegacy(CameraCapabilities capabilities) {
+        int level = capabilities.getHardwareLevel();
+        return level == CameraCapabilities.HARDWARE_LEVEL_UNKNOWN
+                || level == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY;
     }
 
     /**
-     * <p>Collects some information from {@link #mCameraCharacteristics}.</p>
-     * <p>This rewrites {@link #mPreviewSizes}, {@link #mPictureSizes}, and optionally,
-     * {@link #mAspectRatio}.</p>
+     * Builds {@link CameraCapabilities} from the characteristics of a camera device.
      */
-    private void collectCameraInfo() {
-        StreamConfigurationMap map = mCameraCharacteristics.get(
+    private CameraCapabilities createCapabilities(String cameraId,
+            CameraCharacteristics characteristics) {
+        Integer internal = characteristics.get(CameraCharacteristics.LENS_FACING);
+        if (internal == null) {
+            throw new NullPointerException("Unexpected state: LENS_FACING null");
+        }
+        int facing = CameraCapabilities.FACING_EXTERNAL;
+        for (int i = 0, count = INTERNAL_FACINGS.size(); i < count; i++) {
+            if (INTERNAL_FACINGS.valueAt(i) == internal) {
+                facing = INTERNAL_FACINGS.keyAt(i);
+                break;
+            }
+        }
+        Integer level = characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+        Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+        Boolean flashAvailable = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+        StreamConfigurationMap map = characteristics.get(
                 CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
         if (map == null) {
-            throw new IllegalStateException("Failed to get configuration map: " + mCameraId);
+            throw new IllegalStateException("Failed to get configuration map: " + cameraId);
         }
-        mPreviewSizes.clear();
-        for (android.util.Size size : map.getOutputSizes(mPreview.getOutputClass())) {
+        SizeMap previewSizes = new SizeMap();
+        for (android.util.Size size : map.getOutputSizes(SurfaceTexture.class)) {
             int width = size.getWidth();
             int height = size.getHeight();
             if (width <= MAX_PREVIEW_WIDTH && height <= MAX_PREVIEW_HEIGHT) {
-                mPreviewSizes.add(new Size(width, height));
+                previewSizes.add(width, height);
             }
         }
-        mPictureSizes.clear();
-        collectPictureSizes(mPictureSizes, map);
-        for (AspectRatio ratio : mPreviewSizes.ratios()) {
-            if (!mPictureSizes.ratios().contains(ratio)) {
-                mPreviewSizes.remove(ratio);
+        SizeMap pictureSizes = new SizeMap();
+        collectPictureSizes(pictureSizes, map);
+        for (AspectRatio ratio : new ArrayList<>(previewSizes.ratios())) {
+            if (!pictureSizes.ratios().contains(ratio)) {
+                previewSizes.remove(ratio);
             }
         }
+        SizeMap yuvSizes = new SizeMap();
+        android.util.Size[] outputSizes = map.getOutputSizes(ImageFormat.YUV_420_888);
+        if (outputSizes != null) {
+            for (android.util.Size size : outputSizes) {
+                yuvSizes.add(size.getWidth(), size.getHeight());
+            }
+        }
+        return new CameraCapabilities(cameraId, facing,
+                level == null ? CameraCapabilities.HARDWARE_LEVEL_UNKNOWN : level,
+                sensorOrientation == null ? 0 : sensorOrientation,
+                previewSizes, pictureSizes, yuvSizes,
+                afModes == null ? new int[0] : afModes,
+                flashAvailable != null && flashAvailable,
+                isRealtimeTimestampSource(characteristics));
+    }
 
-        if (!mPreviewSizes.ratios().contains(mAspectRatio)) {
-            mAspectRatio = mPreviewSizes.ratios().iterator().next();
+    /**
+     * <p>Collects some information from {@link #mCapabilities}.</p>
+     * <p>This optionally rewrites {@link #mAspectRatio}, so that the camera supports it.</p>
+     */
+    private void collectCameraInfo() {
+        final Set<AspectRatio> ratios = mCapabilities.getPreviewSizes().ratios();
+        if (!ratios.contains(mAspectRatio)) {
+            mAspectRatio = ratios.iterator().next();
         }
     }
 
     protected void collectPictureSizes(SizeMap sizes, StreamConfigurationMap map) {
         for (android.util.Size size : map.getOutputSizes(ImageFormat.JPEG)) {
-            mPictureSizes.add(new Size(size.getWidth(), size.getHeight()));
+            sizes.add(new Size(size.getWidth(), size.getHeight()));
+        }
+    }
+
+    /**
+     * Replaces {@link #mImageReader} unless it already has the current picture size and depth.
+     *
+     * @return {@code true} if the reader was replaced.
+     */
+    private boolean prepareImageReaderIfNeeded() {
+        Size size = getPictureSize();
+        if (mImageReader != null && mImageReader.getWidth() == size.getWidth()
+                && mImageReader.getHeight() == size.getHeight()
+                && mImageReader.getMaxImages() == CaptureMemoryBudget.imageCount(size,
+                mCaptureMemoryBudget, PICTURE_READER_MAX_IMAGES)) {
+            return false;
         }
+        prepareImageReader();
+        return true;
     }
 
     private void prepareImageReader() {
         if (mImageReader != null) {
-            mImageReader.close();
+            if (mSessionPreviewSize != null) {
+                // The current session may still be using it
+                mRetiredReaders.add(mImageReader);
+            } else {
+                closeReader(mImageReader);
+            }
+        }
+        Size size = getPictureSize();
+        int maxImages = CaptureMemoryBudget.imageCount(size, mCaptureMemoryBudget,
+                PICTURE_READER_MAX_IMAGES);
+        mImageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(),
+                ImageFormat.JPEG, maxImages);
+        mImageReader.setOnImageAvailableListener(mOnImageAvailableListener, mCameraHandler);
+        final ImageReader reader = mImageReader;
+        mReaderReferences.put(reader, new DeferredReleasable(new Releasable() {
+            @Override
+            public void release() {
+                reader.close();
+            }
+        }));
+    }
+
+    /**
+     * Prepares {@link #mFrameReader} and {@link #mFrameBufferPool} for preview frames of the
+     * specified size. The reader is only recreated when the size has changed.
+     */
+    private void prepareFrameReader(Size size) {
+        if (mFrameReader != null && mFrameReader.getWidth() == size.getWidth()
+                && mFrameReader.getHeight() == size.getHeight()) {
+            mFrameBufferPool.configure(mFrameBufferPool.getBufferSize());
+            return;
         }
-        Size largest = getPictureSize();
-        mImageReader = ImageReader.newInstance(largest.getWidth(), largest.getHeight(),
-                ImageFormat.JPEG, /* maxImages */ 2);
-        mImageReader.setOnImageAvailableListener(mOnImageAvailableListener, null);
+        if (mFrameReader != null) {
+            mRetiredReaders.add(mFrameReader);
+        }
+        mFrameReader = ImageReader.newInstance(size.getWidth(), size.getHeight(),
+                ImageFormat.YUV_420_888, FRAME_READER_MAX_IMAGES);
+        mFrameReader.setOnImageAvailableListener(mOnFrameAvailableListener, mCameraHandler);
+        mFrameBufferPool.configure(size.getWidth() * size.getHeight()
+                * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8);
+    }
+
+    /**
+     * Prepares {@link #mZslReader} and {@link #mZslRing} for the current picture size and capture
+     * memory budget, or releases them if zero-shutter-lag capture is disabled or no frame fits in
+     * what the still reader leaves of the budget. The reader holds one image more than the ring
+     * so that a new frame can be acquired while the ring is full.
+     *
+     * @return {@code true} if the session should stream to {@link #mZslReader}.
+     */
+    private boolean prepareZslReader() {
+        Size size = chooseZslSize();
+        int capacity = size == null ? 0 : chooseZslCapacity(size);
+        if (capacity == 0) {
+            releaseZslReader();
+            return false;
+        }
+        if (isZslReader(size, capacity)) {
+            return true;
+        }
+        releaseZslReader();
+        mZslRing = new ZslRingBuffer<>(capacity, IMAGE_RECYCLER);
+        mZslReader = ImageReader.newInstance(size.getWidth(), size.getHeight(),
+                ImageFormat.YUV_420_888, capacity + 1);
+        mZslReader.setOnImageAvailableListener(mOnZslFrameAvailableListener, mCameraHandler);
+        startZslThread();
+        return true;
+    }
+
+    /**
+     * @return {@code true} if {@link #prepareZslReader()} would replace or release the reader.
+     */
+    private boolean isZslReaderStale() {
+        Size size = chooseZslSize();
+        int capacity = size == null ? 0 : chooseZslCapacity(size);
+        if (capacity == 0) {
+            return mZslReader != null;
+        }
+        return !isZslReader(size, capacity);
+    }
+
+    private boolean isZslReader(Size size, int capacity) {
+        return mZslReader != null && mZslReader.getWidth() == size.getWidth()
+                && mZslReader.getHeight() == size.getHeight()
+                && mZslRing.getCapacity() == capacity;
+    }
+
+    /**
+     * @return The size of zero-shutter-lag frames, or {@code null} if zero-shutter-lag capture is
+     * disabled or the camera has no YUV output of the current aspect ratio.
+     */
+    private Size chooseZslSize() {
+        if (mZslCapacity == 0) {
+            return null;
+        }
+        final SizeMap yuvSizes = mCapabilities.getYuvSizes();
+        if (yuvSizes.sizes(mAspectRatio) == null) {
+            return null;
+        }
+        return choosePictureSize(yuvSizes, mAspectRatio);
+    }
+
+    /**
+     * The capture memory budget is shared: the still {@link ImageReader} gets its images first,
+     * and the ring gets what is left.
+     *
+     * @return The number of zero-shutter-lag frames of {@code size} to keep, or 0 if not even one
+     * fits in the budget.
+     */
+    private int chooseZslCapacity(Size size) {
+        final long budget = mCaptureMemoryBudget;
+        if (budget <= 0) {
+            return mZslCapacity;
+        }
+        final Size pictureSize = getPictureSize();
+        final long stillBytes = CaptureMemoryBudget.bytesPerImage(pictureSize)
+                * CaptureMemoryBudget.imageCount(pictureSize, budget, PICTURE_READER_MAX_IMAGES);
+        // The reader holds one frame more than the ring
+        return Math.max(0, CaptureMemoryBudget.fittingImageCount(size, budget - stillBytes,
+                mZslCapacity + 1) - 1);
+    }
+
+    /**
+     * @return {@code true} if the sensor timestamps of the camera use the
+     * {@link SystemClock#elapsedRealtimeNanos()} time base.
+     */
+    protected boolean isRealtimeTimestampSource(CameraCharacteristics characteristics) {
+        return false;
+    }
+
+    private void releaseZslReader() {
+        if (mZslRing != null) {
+            mZslRing.clear();
+            mZslRing = null;
+        }
+        if (mZslReader != null) {
+            if (mSessionPreviewSize != null) {
+                // The current session may still be using it
+                mRetiredReaders.add(mZslReader);
+            } else {
+                mZslReader.close();
+            }
+            mZslReader = null;
+        }
+    }
+
+    private void startZslThread() {
+        if (mZslThread != null) {
+            return;
+        }
+        mZslThread = new HandlerThread("CameraViewZsl");
+        mZslThread.start();
+        mZslHandler = new Handler(mZslThread.getLooper());
+    }
+
+    /**
+     * Lets the pictures being encoded finish and then terminates {@link #mZslThread}.
+     */
+    private void stopZslThread() {
+        if (mZslThread == null) {
+            return;
+        }
+        mZslThread.quitSafely();
+        mZslThread = null;
+        mZslHandler = null;
+    }
+
+    /**
+     * Copies a {@link ImageFormat#YUV_420_888} image into {@code out} in NV21 layout.
+     *
+     * @return {@code false} if {@code out} is too small for the image.
+     */
+    private boolean copyToNv21(Image image, byte[] out) {
+        Image.Plane[] planes = image.getPlanes();
+        return mYuvConverter.toNv21(planes[0].getBuffer(), planes[0].getRowStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(),
+                planes[1].getPixelStride(), image.getWidth(), image.getHeight(), out);
     }
 
     /**
@@ -526,10 +1404,11 @@ class Camera2 extends CameraViewImpl {
      * <p>The result will be processed in {@link #mCameraDeviceCallback}.</p>
      */
     private void startOpeningCamera() {
+        final String cameraId = mCapabilities.getCameraId();
         try {
-            mCameraManager.openCamera(mCameraId, mCameraDeviceCallback, null);
+            mCameraManager.openCamera(cameraId, mCameraDeviceCallback, mCameraHandler);
         } catch (CameraAccessException e) {
-            throw new RuntimeException("Failed to open camera: " + mCameraId, e);
+            throw new RuntimeException("Failed to open camera: " + cameraId, e);
         }
     }
 
@@ -547,12 +1426,24 @@ class Camera2 extends CameraViewImpl {
         }
         Size previewSize = chooseOptimalSize();
         mPreview.setBufferSize(previewSize.getWidth(), previewSize.getHeight());
-        Surface surface = mPreview.getSurface();
+        Surface surface = getPreviewSurface();
         try {
             mPreviewRequestBuilder = mCamera.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);//may throw exception
             mPreviewRequestBuilder.addTarget(surface);
-            mCamera.createCaptureSession(Arrays.asList(surface, mImageReader.getSurface()),
-                    mSessionCallback, null);
+            List<Surface> outputs = new ArrayList<>(4);
+            outputs.add(surface);
+            outputs.add(mImageReader.getSurface());
+            if (mPreviewFrameEnabled) {
+                prepareFrameReader(previewSize);
+                mPreviewRequestBuilder.addTarget(mFrameReader.getSurface());
+                outputs.add(mFrameReader.getSurface());
+            }
+            if (prepareZslReader()) {
+                mPreviewRequestBuilder.addTarget(mZslReader.getSurface());
+                outputs.add(mZslReader.getSurface());
+            }
+            mCamera.createCaptureSession(outputs, mSessionCallback, mCameraHandler);
+            mSessionPreviewSize = previewSize;
             flag = true;
         } catch (CameraAccessException | IllegalArgumentException | IllegalStateException e) {
             mCallback.onCameraError(new RuntimeException("Failed to start camera session"), CameraView.ERROR_START_SESSION);
@@ -561,7 +1452,26 @@ class Camera2 extends CameraViewImpl {
     }
 
     /**
-     * Chooses the optimal preview size based on {@link #mPreviewSizes} and the surface size.
+     * @return The {@link Surface} of the preview. It is kept across sessions as long as the
+     * {@link SurfaceTexture} does not change.
+     */
+    private Surface getPreviewSurface() {
+        Object texture = mPreview.getSurfaceTexture();
+        if (texture == null) {
+            return mPreview.getSurface();
+        }
+        if (mPreviewSurface == null || texture != mPreviewSurfaceTexture) {
+            if (mPreviewSurface != null) {
+                mPreviewSurface.release();
+            }
+            mPreviewSurface = mPreview.getSurface();
+            mPreviewSurfaceTexture = texture;
+        }
+        return mPreviewSurface;
+    }
+
+    /**
+     * Chooses the optimal preview size based on {@link #mCapabilities} and the surface size.
      *
      * @return The picked size for camera preview.
      */
@@ -576,16 +1486,8 @@ class Camera2 extends CameraViewImpl {
             surfaceLonger = surfaceWidth;
             surfaceShorter = surfaceHeight;
         }
-        SortedSet<Size> candidates = mPreviewSizes.sizes(mAspectRatio);
-
-        // Pick the smallest of those big enough
-        for (Size size : candidates) {
-            if (size.getWidth() >= surfaceLonger && size.getHeight() >= surfaceShorter) {
-                return size;
-            }
-        }
-        // If no size is big enough, pick the largest one.
-        return candidates.last();
+        return SizeSelection.select(mPreviewSizeSelector, SizeSelectors.smallestCovering(),
+                mCapabilities.getPreviewSizes(), mAspectRatio, surfaceLonger, surfaceShorter);
     }
 
     /**
@@ -593,8 +1495,7 @@ class Camera2 extends CameraViewImpl {
      */
     void updateAutoFocus() {
         if (mAutoFocus) {
-            int[] modes = mCameraCharacteristics.get(
-                    CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+            int[] modes = mCapabilities.getAfModes();
             // Auto focus is not supported
             if (modes == null || modes.length == 0 ||
                     (modes.length == 1 && modes[0] == CameraCharacteristics.CONTROL_AF_MODE_OFF)) {
@@ -649,6 +1550,195 @@ class Camera2 extends CameraViewImpl {
         }
     }
 
+    /**
+     * @return {@code true} if fast capture is enabled and the preview shows that focus and
+     * exposure have settled, so the picture can be taken without locking the focus first.
+     */
+    private boolean canSkipFocusLock() {
+        if (!mFastCapture || mFlash == Constants.FLASH_ON || mFlash == Constants.FLASH_RED_EYE) {
+            // A forced flash needs the precapture sequence to meter the flash
+            return false;
+        }
+        return mConvergence.isConverged(System.nanoTime());
+    }
+
+    private static boolean isFocused(CaptureResult result) {
+        Integer af = result.get(CaptureResult.CONTROL_AF_STATE);
+        return af != null && (af == CaptureResult.CONTROL_AF_STATE_PASSIVE_FOCUSED
+                || af == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED);
+    }
+
+    private static boolean isExposed(CaptureResult result) {
+        Integer ae = result.get(CaptureResult.CONTROL_AE_STATE);
+        return ae == null || ae == CaptureResult.CONTROL_AE_STATE_CONVERGED;
+    }
+
+    @Override
+    void takeBurst(final int count, final int intervalMs) {
+        runOnCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                if (mCaptureSession == null) {
+                    return;
+                }
+                if (mBurst != null) {
+                    mCallback.onCameraError(
+                            new IllegalStateException("A burst is already in progress"),
+                            CameraView.ERROR_TAKE_PICTURE);
+                    return;
+                }
+                // Every picture in flight holds one image of the reader
+                mBurst = new BurstTracker(count, mImageReader.getMaxImages());
+                mBurstIntervalMs = intervalMs;
+                final MediaActionSound actionSound = mActionSound;
+                if (actionSound != null) {
+                    actionSound.play(MediaActionSound.SHUTTER_CLICK);
+                }
+                issueBurstRequests();
+            }
+        });
+    }
+
+    /**
+     * Requests the next pictures of {@link #mBurst}. Without an interval, all the pictures that
+     * can be in flight are requested with one {@link CameraCaptureSession#captureBurst}, and more
+     * are requested as earlier ones are released. With an interval, one picture is requested per
+     * interval, or dropped if too many are in flight. The preview keeps running in between.
+     */
+    private void issueBurstRequests() {
+        final BurstTracker burst = mBurst;
+        if (burst == null) {
+            return;
+        }
+        try {
+            if (mBurstIntervalMs == 0) {
+                int available = burst.available();
+                if (available > 0) {
+                    mCaptureSession.captureBurst(
+                            Collections.nCopies(available, getStillCaptureRequest().build()),
+                            mBurstCaptureCallback, mCameraHandler);
+                    burst.onIssued(available);
+                }
+                return;
+            }
+            if (burst.available() > 0) {
+                mCaptureSession.capture(getStillCaptureRequest().build(),
+                        mBurstCaptureCallback, mCameraHandler);
+                burst.onIssued(1);
+            } else {
+                burst.onSkipped();
+            }
+            if (burst.getRemaining() > 0) {
+                mCameraHandler.postDelayed(mIssueBurstRequests, mBurstIntervalMs);
+            } else {
+                maybeFinishBurst();
+            }
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "Cannot capture a burst.", e);
+            mCallback.onCameraError(e, CameraView.ERROR_TAKE_PICTURE);
+            abortBurst();
+        }
+    }
+
+    private void onBurstPictureReleased(BurstTracker burst) {
+        burst.onReleased();
+        if (burst == mBurst && mBurstIntervalMs == 0) {
+            issueBurstRequests();
+        }
+    }
+
+    /**
+     * Reports {@link #mBurst} if all its pictures have been delivered or dropped.
+     *
+     * @return {@code true} if the burst is finished.
+     */
+    private boolean maybeFinishBurst() {
+        if (mBurst == null || !mBurst.isComplete()) {
+            return false;
+        }
+        BurstResult result = mBurst.getResult();
+        mBurst = null;
+        final Handler handler = mCameraHandler;
+        if (handler != null) {
+            handler.removeCallbacks(mIssueBurstRequests);
+        }
+        mCallback.onBurstCompleted(result);
+        return true;
+    }
+
+    private void abortBurst() {
+        if (mBurst != null) {
+            mBurst.abort();
+            maybeFinishBurst();
+        }
+    }
+
+    /**
+     * Takes the buffered frame closest to the capture request and encodes it on
+     * {@link #mZslThread}.
+     *
+     * @param requestNanos The time of the request in {@link SystemClock#elapsedRealtimeNanos()}.
+     * @return {@code false} if zero-shutter-lag capture is disabled or no frame is buffered yet.
+     */
+    private boolean takeZslPicture(long requestNanos) {
+        if (mZslRing == null) {
+            return false;
+        }
+        // Other time bases cannot be compared with the request; take the newest frame then
+        Image image = mZslRing.take(
+                mCapabilities.hasRealtimeTimestamps() ? requestNanos : Long.MAX_VALUE);
+        if (image == null) {
+            return false;
+        }
+        mShutterLatency.end();
+        final MediaActionSound actionSound = mActionSound;
+        if (actionSound != null) {
+            actionSound.play(MediaActionSound.SHUTTER_CLICK);
+        }
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final byte[] nv21 = new byte[YuvConverter.getFrameSize(width, height)];
+        try {
+            copyToNv21(image, nv21);
+        } finally {
+            // Give the image back to the ring right away; the copy is encoded later
+            image.close();
+        }
+        final int orientation = getJpegOrientation();
+        mZslHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                YuvImage yuv = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+                ByteArrayOutputStream out = new ByteArrayOutputStream(width * height / 4);
+                if (!yuv.compressToJpeg(new Rect(0, 0, width, height), ZSL_JPEG_QUALITY, out)) {
+                    mCallback.onCameraError(new RuntimeException("Failed to encode a picture"),
+                            CameraView.ERROR_TAKE_PICTURE);
+                    return;
+                }
+                byte[] jpeg = ExifOrientation.insert(out.toByteArray(), orientation);
+                mCallback.onPictureTaken(ByteBuffer.wrap(jpeg), NO_OP_RELEASABLE);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return The clockwise rotation of the picture for the current display orientation.
+     */
+    private int getJpegOrientation() {
+        int sensorOrientation = mCapabilities.getSensorOrientation();
+        return (sensorOrientation +
+                mDisplayOrientation * (mFacing == Constants.FACING_FRONT ? 1 : -1) + 360) % 360;
+    }
+
+    /**
+     * @return The rotation that the camera applies to pictures; none with EXIF rotation, where
+     * the orientation tag is written when the picture arrives.
+     */
+    private int getStillJpegOrientation() {
+        return mExifRotation ? 0 : getJpegOrientation();
+    }
+
     /**
      * Locks the focus as the first step for a still image capture.
      */
@@ -657,22 +1747,22 @@ class Camera2 extends CameraViewImpl {
                 CaptureRequest.CONTROL_AF_TRIGGER_START);
         try {
             mCaptureCallback.setState(PictureCaptureCallback.STATE_LOCKING);
-            mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback, null);//may throw exception
+            mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback,
+                    mCameraHandler);//may throw exception
+            mFocusLocked = true;
         } catch (CameraAccessException | IllegalArgumentException | IllegalStateException e) {
+            mShutterLatency.cancel();
             Log.e(TAG, "Failed to lock focus.", e);
             mCallback.onCameraError(e, CameraView.ERROR_AUTO_FOCUS);
         }
     }
 
     /**
-     * Captures a still picture.
+     * @return {@link #mStillRequestBuilder}, created if there is none for the current device and
+     * {@link #mImageReader} yet.
      */
-    void captureStillPicture() {
-        try {
-            if (mActionSound != null) {
-                mActionSound.play(MediaActionSound.SHUTTER_CLICK);//shutter sound
-            }
-
+    private CaptureRequest.Builder getStillCaptureRequest() throws CameraAccessException {
+        if (mStillRequestBuilder == null || mStillRequestReader != mImageReader) {
             CaptureRequest.Builder captureRequestBuilder = mCamera.createCaptureRequest(
                     CameraDevice.TEMPLATE_STILL_CAPTURE);
             captureRequestBuilder.addTarget(mImageReader.getSurface());
@@ -680,52 +1770,89 @@ class Camera2 extends CameraViewImpl {
             captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
                     mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE));
             //自动曝光
-            switch (mFlash) {
-                case Constants.FLASH_OFF:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON);
-                    captureRequestBuilder.set(CaptureRequest.FLASH_MODE,
-                            CaptureRequest.FLASH_MODE_OFF);
-                    break;
-                case Constants.FLASH_ON:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON_ALWAYS_FLASH);
-                    break;
-                case Constants.FLASH_TORCH:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON);
-                    captureRequestBuilder.set(CaptureRequest.FLASH_MODE,
-                            CaptureRequest.FLASH_MODE_TORCH);
-                    break;
-                case Constants.FLASH_AUTO:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
-                    break;
-                case Constants.FLASH_RED_EYE:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
-                    break;
-            }
+            updateStillFlash(captureRequestBuilder);
             // Calculate JPEG orientation.
-            @SuppressWarnings("ConstantConditions")
-            int sensorOrientation = mCameraCharacteristics.get(
-                    CameraCharacteristics.SENSOR_ORIENTATION);
             captureRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION,
-                    (sensorOrientation +
-                            mDisplayOrientation * (mFacing == Constants.FACING_FRONT ? 1 : -1) +
-                            360) % 360);
+                    getStillJpegOrientation());
+            mStillRequestBuilder = captureRequestBuilder;
+            mStillRequestReader = mImageReader;
+        }
+        return mStillRequestBuilder;
+    }
+
+    /**
+     * Applies {@link #mFlash} to a still capture request. The flash mode is always set, so that
+     * the request can be updated in place.
+     */
+    private void updateStillFlash(CaptureRequest.Builder captureRequestBuilder) {
+        switch (mFlash) {
+            case Constants.FLASH_OFF:
+                captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
+                        CaptureRequest.CONTROL_AE_MODE_ON);
+                captureRequestBuilder.set(CaptureRequest.FLASH_MODE,
+                        CaptureRequest.FLASH_MODE_OFF);
+                break;
+            case Constants.FLASH_ON:
+                captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
+                        CaptureRequest.CONTROL_AE_MODE_ON_ALWAYS_FLASH);
+                captureRequestBuilder.set(CaptureRequest.FLASH_MODE,
+                        CaptureRequest.FLASH_MODE_OFF);
+                break;
+            case Constants.FLASH_TORCH:
+                captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
+                        CaptureRequest.CONTROL_AE_MODE_ON);
+                captureRequestBuilder.set(CaptureRequest.FLASH_MODE,
+                        CaptureRequest.FLASH_MODE_TORCH);
+                break;
+            case Constants.FLASH_AUTO:
+            case Constants.FLASH_RED_EYE:
+                captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
+                        CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
+                captureRequestBuilder.set(CaptureRequest.FLASH_MODE,
+                        CaptureRequest.FLASH_MODE_OFF);
+                break;
+        }
+    }
+
+    /**
+     * Captures a still picture.
+     */
+    void captureStillPicture() {
+        try {
+            final MediaActionSound actionSound = mActionSound;
+            if (actionSound != null) {
+                actionSound.play(MediaActionSound.SHUTTER_CLICK);//shutter sound
+            }
+
+            final long issueStartNanos = System.nanoTime();
+            CaptureRequest request = getStillCaptureRequest().build();
             // Stop preview and capture a still picture.
             mCaptureSession.stopRepeating();
-            mCaptureSession.capture(captureRequestBuilder.build(),
+            mCaptureSession.capture(request,
                     new CameraCaptureSession.CaptureCallback() {
+                        @Override
+                        public void onCaptureStarted(@NonNull CameraCaptureSession session,
+                                @NonNull CaptureRequest request, long timestamp,
+                                long frameNumber) {
+                            mShutterLatency.end();
+                        }
+
                         @Override
                         public void onCaptureCompleted(@NonNull CameraCaptureSession session,
                                 @NonNull CaptureRequest request,
                                 @NonNull TotalCaptureResult result) {
-                            unlockFocus();
+                            if (mFocusLocked) {
+                                mFocusLocked = false;
+                                unlockFocus();
+                            } else {
+                                // Cancelling the AF trigger would make continuous AF scan again
+                                restartPreview();
+                            }
                         }
-                    }, null);
+                    }, mCameraHandler);
+            mCaptureIssueLatency.record(System.nanoTime() - issueStartNanos);
         } catch (CameraAccessException e) {
+            mShutterLatency.cancel();
             Log.e(TAG, "Cannot capture a still picture.", e);
             mCallback.onCameraError(e, CameraView.ERROR_TAKE_PICTURE);
         }
@@ -739,13 +1866,27 @@ class Camera2 extends CameraViewImpl {
         mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
                 CaptureRequest.CONTROL_AF_TRIGGER_CANCEL);
         try {
-            mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback, null);
+            mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback,
+                    mCameraHandler);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Failed to restart camera preview.", e);
+            mCallback.onCameraError(e, CameraView.ERROR_START_PREVIEW);
+            return;
+        }
+        restartPreview();
+    }
+
+    /**
+     * Restarts the repeating preview request after a still capture.
+     */
+    private void restartPreview() {
+        try {
             updateAutoFocus();
             updateFlash();
             mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
                     CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
             mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(), mCaptureCallback,
-                    null);
+                    mCameraHandler);
             mCaptureCallback.setState(PictureCaptureCallback.STATE_PREVIEW);
         } catch (CameraAccessException e) {
             Log.e(TAG, "Failed to restart camera preview.", e);
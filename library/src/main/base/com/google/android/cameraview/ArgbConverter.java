@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts NV21 frames to ARGB pixels on several cores.
+ *
+ * <p>A frame is split into stripes of rows, which the calling thread and a bounded pool of
+ * workers claim one at a time until none is left, so a worker that is busy or slow to start does
+ * not hold up the others. The colors are computed with integer-only fixed-point arithmetic,
+ * treating the frame as full-range BT.601 like JPEG does.</p>
+ *
+ * <p>{@link #convert(byte[], int, int)} writes to pooled buffers, so a steady stream of frames
+ * produces no large garbage. Conversions can run on several threads at a time.</p>
+ */
+public class ArgbConverter {
+
+    public static final int DEFAULT_BUFFER_COUNT = 2;
+
+    /**
+     * More stripes than threads even out the load when some cores are slower or busy.
+     */
+    private static final int STRIPES_PER_THREAD = 4;
+
+    private static final long IDLE_TIMEOUT_SECONDS = 10;
+
+    private final int mThreadCount;
+
+    private final int mBufferCount;
+
+    /**
+     * {@code null} when the calling thread does all the work.
+     */
+    private final ThreadPoolExecutor mExecutor;
+
+    private final ArrayDeque<int[]> mAvailable = new ArrayDeque<>();
+
+    /**
+     * Guarded by {@link #mAvailable}.
+     */
+    private int mBufferSize;
+
+    /**
+     * The number of buffers of {@link #mBufferSize} handed out or available. Guarded by
+     * {@link #mAvailable}.
+     */
+    private int mAllocatedCount;
+
+    /**
+     * Creates a converter that uses up to four cores, with {@link #DEFAULT_BUFFER_COUNT} buffers.
+     */
+    public ArgbConverter() {
+        this(Math.min(4, Runtime.getRuntime().availableProcessors()), DEFAULT_BUFFER_COUNT);
+    }
+
+    /**
+     * @param threadCount The number of threads that work on a frame, including the calling
+     *                    thread. The others are pooled, and exit when they are idle.
+     * @param bufferCount The number of buffers that {@link #convert(byte[], int, int)} can hand
+     *                    out at a time.
+     */
+    public ArgbConverter(int threadCount, int bufferCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        if (bufferCount < 1) {
+            throw new IllegalArgumentException("Buffer count must be positive: " + bufferCount);
+        }
+        mThreadCount = threadCount;
+        mBufferCount = bufferCount;
+        mExecutor = threadCount == 1 ? null : createExecutor(threadCount - 1);
+    }
+
+    private static ThreadPoolExecutor createExecutor(int threadCount) {
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount,
+                IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "ArgbConverter-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public int getThreadCount() {
+        return mThreadCount;
+    }
+
+    /**
+     * Converts a frame into a pooled buffer.
+     *
+     * @param nv21   The frame in NV21 format.
+     * @param width  The width of the frame.
+     * @param height The height of the frame.
+     * @return The pixels, row by row, or {@code null} if all the buffers are in use. Pass the
+     * buffer to {@link #release(int[])} when it is no longer used.
+     */
+    public int[] convert(@NonNull byte[] nv21, int width, int height) {
+        checkFrame(nv21, width, height);
+        final int[] argb = acquire(width * height);
+        if (argb != null) {
+            convert(nv21, width, height, argb);
+        }
+        return argb;
+    }
+
+    /**
+     * Converts a frame into {@code argb}, which must hold at least {@code width * height}
+     * pixels.
+     *
+     * @see #convert(byte[], int, int)
+     */
+    public void convert(@NonNull byte[] nv21, int width, int height, @NonNull int[] argb) {
+        checkFrame(nv21, width, height);
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("The output is too small for " + width + "x"
+                    + height + ": " + argb.length);
+        }
+        final Conversion conversion = new Conversion(nv21, width, height, argb, mThreadCount);
+        if (mExecutor != null) {
+            final int helpers = Math.min(mThreadCount - 1, conversion.stripeCount - 1);
+            try {
+                for (int i = 0; i < helpers; i++) {
+                    mExecutor.execute(conversion);
+                }
+            } catch (RejectedExecutionException e) {
+                // Closed; the calling thread converts the remaining stripes
+            }
+        }
+        conversion.run();
+        conversion.await();
+    }
+
+    /**
+     * Returns a buffer from {@link #convert(byte[], int, int)} to the pool. Buffers of an earlier
+     * frame size are dropped.
+     */
+    public void release(@NonNull int[] argb) {
+        synchronized (mAvailable) {
+            if (argb.length == mBufferSize && mAvailable.size() < mAllocatedCount) {
+                mAvailable.add(argb);
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads. Later conversions run on the calling thread alone.
+     */
+    public void close() {
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+        }
+    }
+
+    private int[] acquire(int size) {
+        synchronized (mAvailable) {
+            if (size != mBufferSize) {
+                mAvailable.clear();
+                mAllocatedCount = 0;
+                mBufferSize = size;
+            }
+            int[] buffer = mAvailable.poll();
+            if (buffer == null && mAllocatedCount < mBufferCount) {
+                buffer = new int[size];
+                mAllocatedCount++;
+            }
+            return buffer;
+        }
+    }
+
+    private static void checkFrame(byte[] nv21, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid frame size: " + width + "x" + height);
+        }
+        if (nv21.length < YuvConverter.getFrameSize(width, height)) {
+            throw new IllegalArgumentException("The frame is too small for " + width + "x"
+                    + height + ": " + nv21.length);
+        }
+    }
+
+    /**
+     * Converts the rows from {@code top} to {@code bottom}, exclusive. {@code top} is even, so
+     * that pairs of rows that share chroma samples are not split.
+     */
+    static void convertRows(byte[] nv21, int width, int height, int top, int bottom,
+            int[] argb) {
+        final int chromaStart = width * height;
+        final int chromaRowLength = 2 * ((width + 1) / 2);
+        for (int row = top; row < bottom; row++) {
+            int index = row * width;
+            final int end = index + width;
+            int chromaIndex = chromaStart + (row >> 1) * chromaRowLength;
+            while (index < end) {
+                final int cr = (nv21[chromaIndex++] & 0xFF) - 128;
+                final int cb = (nv21[chromaIndex++] & 0xFF) - 128;
+                final int r = (91881 * cr + 32768) >> 16;
+                final int g = (-22554 * cb - 46802 * cr + 32768) >> 16;
+                final int b = (116130 * cb + 32768) >> 16;
+                int luma = nv21[index] & 0xFF;
+                argb[index++] = 0xFF000000 | clamp(luma + r) << 16 | clamp(luma + g) << 8
+                        | clamp(luma + b);
+                if (index < end) {
+                    luma = nv21[index] & 0xFF;
+                    argb[index++] = 0xFF000000 | clamp(luma + r) << 16 | clamp(luma + g) << 8
+                            | clamp(luma + b);
+                }
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+    /**
+     * One frame being converted. Each thread that runs it claims stripes until none is left.
+     */
+    private static class Conversion implements Runnable {
+
+        final byte[] nv21;
+
+        final int width;
+
+        final int height;
+
+        final int[] argb;
+
+        final int stripeHeight;
+
+        final int stripeCount;
+
+        private final AtomicInteger mNextStripe = new AtomicInteger();
+
+        /**
+         * Guarded by this.
+         */
+        private int mFinishedCount;
+
+        Conversion(byte[] nv21, int width, int height, int[] argb, int threadCount) {
+            this.nv21 = nv21;
+            this.width = width;
+            this.height = height;
+            this.argb = argb;
+            final int pairs = (height + 1) / 2;
+            final int stripes = Math.min(pairs, threadCount * STRIPES_PER_THREAD);
+            stripeHeight = 2 * ((pairs + stripes - 1) / stripes);
+            stripeCount = (height + stripeHeight - 1) / stripeHeight;
+        }
+
+        @Override
+        public void run() {
+            int stripe;
+            while ((stripe = mNextStripe.getAndIncrement()) < stripeCount) {
+                final int top = stripe * stripeHeight;
+                convertRows(nv21, width, height, top, Math.min(height, top + stripeHeight),
+                        argb);
+                synchronized (this) {
+                    if (++mFinishedCount == stripeCount) {
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Waits for the stripes that other threads have claimed.
+         */
+        synchronized void await() {
+            boolean interrupted = false;
+            while (mFinishedCount < stripeCount) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import java.util.Locale;
+
+/**
+ * Immutable summary of a burst taken with {@link CameraView#takeBurst(int, int)}.
+ */
+public final class BurstResult {
+
+    private final int mRequestedCount;
+
+    private final int mDeliveredCount;
+
+    private final int mDroppedCount;
+
+    private final long mDurationNanos;
+
+    BurstResult(int requestedCount, int deliveredCount, int droppedCount, long durationNanos) {
+        mRequestedCount = requestedCount;
+        mDeliveredCount = deliveredCount;
+        mDroppedCount = droppedCount;
+        mDurationNanos = durationNanos;
+    }
+
+    /**
+     * @return The number of pictures the burst was asked for.
+     */
+    public int getRequestedCount() {
+        return mRequestedCount;
+    }
+
+    /**
+     * @return The number of pictures delivered to
+     * {@link CameraView.Callback#onPictureTaken(CameraView, java.nio.ByteBuffer, Releasable)}.
+     */
+    public int getDeliveredCount() {
+        return mDeliveredCount;
+    }
+
+    /**
+     * @return The number of pictures that were not taken, because the capture failed or because
+     * too many pictures were still held when it was their turn.
+     */
+    public int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return The rate at which pictures were delivered, from the first to the last, or 0 if
+     * fewer than two were delivered.
+     */
+    public float getFramesPerSecond() {
+        if (mDeliveredCount < 2 || mDurationNanos <= 0) {
+            return 0f;
+        }
+        return (mDeliveredCount - 1) * 1e9f / mDurationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "requested=%d delivered=%d dropped=%d fps=%.1f",
+                mRequestedCount, mDeliveredCount, mDroppedCount, getFramesPerSecond());
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+/**
+ * Keeps count of the pictures of a burst and bounds how many are in flight.
+ *
+ * <p>A picture is in flight from the moment it is requested until it fails or the receiver
+ * releases it, so that a slow receiver holds back the burst instead of exhausting the capture
+ * buffers. Pictures that cannot be requested in their turn are dropped.</p>
+ *
+ * <p>This class is not thread-safe; the camera backends use it on the camera thread.</p>
+ */
+class BurstTracker {
+
+    private final int mCount;
+
+    private final int mMaxInFlight;
+
+    private int mIssued;
+
+    private int mSkipped;
+
+    private int mFailed;
+
+    private int mDelivered;
+
+    private int mReleased;
+
+    private long mFirstDeliveryNanos;
+
+    private long mLastDeliveryNanos;
+
+    /**
+     * @param count       The number of pictures in the burst.
+     * @param maxInFlight The number of pictures that can be in flight at once.
+     */
+    BurstTracker(int count, int maxInFlight) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Count must be positive: " + count);
+        }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        mCount = count;
+        mMaxInFlight = maxInFlight;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return The number of pictures that can be requested now.
+     */
+    int available() {
+        return Math.min(getRemaining(), mMaxInFlight - getInFlight());
+    }
+
+    /**
+     * @return The number of pictures that have not been requested or dropped yet.
+     */
+    int getRemaining() {
+        return mCount - mIssued - mSkipped;
+    }
+
+    int getInFlight() {
+        return mIssued - mFailed - mReleased;
+    }
+
+    void onIssued(int count) {
+        if (count > available()) {
+            throw new IllegalStateException("Too many requests: " + count);
+        }
+        mIssued += count;
+    }
+
+    /**
+     * Drops the next picture without requesting it.
+     */
+    void onSkipped() {
+        if (getRemaining() == 0) {
+            throw new IllegalStateException("No pictures remaining");
+        }
+        mSkipped++;
+    }
+
+    /**
+     * Called when a requested picture will not be delivered.
+     */
+    void onFailed() {
+        mFailed++;
+    }
+
+    /**
+     * @param nanos The time of the delivery, in {@link System#nanoTime()} units.
+     * @return The index of the delivered picture within the burst, counting only the delivered
+     * ones.
+     */
+    int onDelivered(long nanos) {
+        if (mDelivered == 0) {
+            mFirstDeliveryNanos = nanos;
+        }
+        mLastDeliveryNanos = nanos;
+        return mDelivered++;
+    }
+
+    /**
+     * Called when the receiver has released a delivered picture.
+     */
+    void onReleased() {
+        mReleased++;
+    }
+
+    /**
+     * Drops the pictures that have not been requested yet and those that are still pending, e.g.
+     * when the camera is closed. The burst is complete afterwards.
+     */
+    void abort() {
+        mSkipped += getRemaining();
+        mFailed = mIssued - mDelivered;
+    }
+
+    /**
+     * @return {@code true} if every picture has been delivered or dropped.
+     */
+    boolean isComplete() {
+        return getRemaining() == 0 && mDelivered + mFailed == mIssued;
+    }
+
+    BurstResult getResult() {
+        return new BurstResult(mCount, mDelivered, mSkipped + mFailed,
+                mLastDeliveryNanos - mFirstDeliveryNanos);
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import java.util.Arrays;
+
+/**
+ * Immutable description of what a camera device supports. Instances are shared through
+ * {@link CameraCapabilityCache}, so the {@link SizeMap}s must not be modified.
+ */
+class CameraCapabilities {
+
+    /** The facing of a camera that is neither front nor back, such as an external one. */
+    static final int FACING_EXTERNAL = -1;
+
+    /** The hardware level of a camera that does not report it. */
+    static final int HARDWARE_LEVEL_UNKNOWN = -1;
+
+    private final String mCameraId;
+
+    private final int mFacing;
+
+    private final int mHardwareLevel;
+
+    private final int mSensorOrientation;
+
+    private final SizeMap mPreviewSizes;
+
+    private final SizeMap mPictureSizes;
+
+    private final SizeMap mYuvSizes;
+
+    private final int[] mAfModes;
+
+    private final boolean mFlashAvailable;
+
+    private final boolean mRealtimeTimestamps;
+
+    /**
+     * @param cameraId           The camera ID.
+     * @param facing             One of {@link Constants#FACING_BACK},
+     *                           {@link Constants#FACING_FRONT} and {@link #FACING_EXTERNAL}.
+     * @param hardwareLevel      The Camera2 hardware level, or {@link #HARDWARE_LEVEL_UNKNOWN}.
+     * @param sensorOrientation  The sensor orientation in degrees.
+     * @param previewSizes       The preview sizes; only ratios that also have picture sizes.
+     * @param pictureSizes       The picture sizes.
+     * @param yuvSizes           The Camera2 YUV output sizes, for zero-shutter-lag capture.
+     * @param afModes            The available Camera2 auto-focus modes.
+     * @param flashAvailable     Whether the camera has a flash unit.
+     * @param realtimeTimestamps Whether the sensor timestamps use the
+     *                           {@link android.os.SystemClock#elapsedRealtimeNanos()} time base.
+     */
+    CameraCapabilities(String cameraId, int facing, int hardwareLevel, int sensorOrientation,
+            SizeMap previewSizes, SizeMap pictureSizes, SizeMap yuvSizes, int[] afModes,
+            boolean flashAvailable, boolean realtimeTimestamps) {
+        mCameraId = cameraId;
+        mFacing = facing;
+        mHardwareLevel = hardwareLevel;
+        mSensorOrientation = sensorOrientation;
+        mPreviewSizes = previewSizes;
+        mPictureSizes = pictureSizes;
+        mYuvSizes = yuvSizes;
+        mAfModes = afModes.clone();
+        mFlashAvailable = flashAvailable;
+        mRealtimeTimestamps = realtimeTimestamps;
+    }
+
+    String getCameraId() {
+        return mCameraId;
+    }
+
+    int getFacing() {
+        return mFacing;
+    }
+
+    int getHardwareLevel() {
+        return mHardwareLevel;
+    }
+
+    int getSensorOrientation() {
+        return mSensorOrientation;
+    }
+
+    SizeMap getPreviewSizes() {
+        return mPreviewSizes;
+    }
+
+    SizeMap getPictureSizes() {
+        return mPictureSizes;
+    }
+
+    SizeMap getYuvSizes() {
+        return mYuvSizes;
+    }
+
+    int[] getAfModes() {
+        return mAfModes.clone();
+    }
+
+    boolean isFlashAvailable() {
+        return mFlashAvailable;
+    }
+
+    boolean hasRealtimeTimestamps() {
+        return mRealtimeTimestamps;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CameraCapabilities)) {
+            return false;
+        }
+        CameraCapabilities other = (CameraCapabilities) o;
+        return mCameraId.equals(other.mCameraId)
+                && mFacing == other.mFacing
+                && mHardwareLevel == other.mHardwareLevel
+                && mSensorOrientation == other.mSensorOrientation
+                && mFlashAvailable == other.mFlashAvailable
+                && mRealtimeTimestamps == other.mRealtimeTimestamps
+                && Arrays.equals(mAfModes, other.mAfModes)
+                && sameSizes(mPreviewSizes, other.mPreviewSizes)
+                && sameSizes(mPictureSizes, other.mPictureSizes)
+                && sameSizes(mYuvSizes, other.mYuvSizes);
+    }
+
+    @Override
+    public int hashCode() {
+        return mCameraId.hashCode() * 31 + mFacing;
+    }
+
+    private static boolean sameSizes(SizeMap a, SizeMap b) {
+        if (!a.ratios().equals(b.ratios())) {
+            return false;
+        }
+        for (AspectRatio ratio : a.ratios()) {
+            if (!a.sizes(ratio).equals(b.sizes(ratio))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "CameraCapabilities{" + mCameraId + ", facing=" + mFacing + ", level="
+                + mHardwareLevel + ", preview=" + mPreviewSizes + ", picture=" + mPictureSizes
+                + "}";
+    }
+
+}
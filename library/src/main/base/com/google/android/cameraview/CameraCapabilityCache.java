@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import android.support.v4.util.ArrayMap;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A process-wide cache of {@link CameraCapabilities} by camera ID. The capabilities of a camera
+ * device never change, so each ID is only queried once; the list of IDs is queried again when a
+ * camera that was not known before shows up.
+ */
+class CameraCapabilityCache {
+
+    /**
+     * Queries the camera system. Each call is expected to be expensive.
+     */
+    interface Source {
+
+        String[] queryCameraIds();
+
+        CameraCapabilities queryCapabilities(String cameraId);
+    }
+
+    private String[] mCameraIds;
+
+    private final ArrayMap<String, CameraCapabilities> mCapabilities = new ArrayMap<>();
+
+    /**
+     * The IDs whose capabilities came from a snapshot and have not been checked against the
+     * camera system yet.
+     */
+    private final Set<String> mUnvalidated = new HashSet<>();
+
+    /**
+     * Whether the live capabilities have differed from the snapshot or were queried without one.
+     */
+    private boolean mDirty;
+
+    /**
+     * @return The IDs of all the camera devices, queried from {@code source} if not cached.
+     */
+    synchronized String[] getCameraIds(Source source) {
+        if (mCameraIds == null) {
+            mCameraIds = source.queryCameraIds();
+            mDirty = true;
+        }
+        return mCameraIds.clone();
+    }
+
+    /**
+     * @return The capabilities of the camera, queried from {@code source} if not cached.
+     */
+    synchronized CameraCapabilities get(String cameraId, Source source) {
+        CameraCapabilities capabilities = mCapabilities.get(cameraId);
+        if (capabilities == null) {
+            capabilities = source.queryCapabilities(cameraId);
+            mCapabilities.put(cameraId, capabilities);
+            mDirty = true;
+        }
+        return capabilities;
+    }
+
+    /**
+     * Fills this cache from a snapshot. This does nothing if anything has been cached already.
+     * Entries from the snapshot are used right away, but should be checked with
+     * {@link #validate(String, Source)} once the camera is being opened.
+     *
+     * @return {@code true} if the snapshot was used.
+     */
+    synchronized boolean seed(CapabilitySnapshot snapshot) {
+        if (mCameraIds != null || !mCapabilities.isEmpty()) {
+            return false;
+        }
+        mCameraIds = snapshot.getCameraIds();
+        for (CameraCapabilities capabilities : snapshot.getCapabilities()) {
+            mCapabilities.put(capabilities.getCameraId(), capabilities);
+            mUnvalidated.add(capabilities.getCameraId());
+        }
+        return true;
+    }
+
+    /**
+     * Checks the cached capabilities of a camera against the camera system, once per ID, and
+     * replaces them if they differ.
+     *
+     * @return The up-to-date capabilities.
+     */
+    synchronized CameraCapabilities validate(String cameraId, Source source) {
+        CameraCapabilities cached = mCapabilities.get(cameraId);
+        if (cached == null || !mUnvalidated.remove(cameraId)) {
+            return get(cameraId, source);
+        }
+        CameraCapabilities live = source.queryCapabilities(cameraId);
+        if (live.equals(cached)) {
+            return cached;
+        }
+        mCapabilities.put(cameraId, live);
+        mDirty = true;
+        return live;
+    }
+
+    /**
+     * @return A snapshot of everything cached if it is not in the last snapshot yet, or
+     * {@code null} if nothing has changed.
+     */
+    synchronized CapabilitySnapshot takeSnapshotIfDirty() {
+        if (!mDirty || mCameraIds == null) {
+            return null;
+        }
+        mDirty = false;
+        List<CameraCapabilities> list = new ArrayList<>(mCapabilities.values());
+        return new CapabilitySnapshot(mCameraIds, list);
+    }
+
+    /**
+     * Called when the availability of a camera changes. A camera that is not in the cached ID
+     * list has just been connected, so the list is queried again next time.
+     */
+    synchronized void onCameraAvailabilityChanged(String cameraId) {
+        if (mCameraIds == null) {
+            return;
+        }
+        for (String id : mCameraIds) {
+            if (id.equals(cameraId)) {
+                return;
+            }
+        }
+        mCameraIds = null;
+        mCapabilities.remove(cameraId);
+        mUnvalidated.remove(cameraId);
+    }
+
+}
@@ -16,9 +16,14 @@
 
 package com.google.android.cameraview;
 
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.view.View;
 
+import java.nio.ByteBuffer;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 abstract class CameraViewImpl {
 
@@ -26,8 +31,99 @@ abstract class CameraViewImpl {
 
     protected final PreviewImpl mPreview;
 
+    protected final FrameBufferPool mFrameBufferPool =
+            new FrameBufferPool(FrameBufferPool.DEFAULT_CAPACITY);
+
+    protected volatile SizeSelector mPreviewSizeSelector = SizeSelectors.smallestCovering();
+
+    protected volatile SizeSelector mPictureSizeSelector = SizeSelectors.largest();
+
+    /**
+     * The memory for capture buffers in bytes, or 0 for no limit.
+     */
+    protected volatile long mCaptureMemoryBudget;
+
+    /**
+     * Whether {@link #takePicture()} may skip the focus lock when focus and exposure have settled.
+     */
+    protected volatile boolean mFastCapture;
+
+    /**
+     * The number of frames kept for zero-shutter-lag capture, or 0 if it is disabled.
+     */
+    protected volatile int mZslCapacity;
+
+    /**
+     * Whether pictures are captured unrotated and only tagged with their EXIF orientation.
+     */
+    protected volatile boolean mExifRotation;
+
+    /**
+     * Decides which preview frames are delivered, or {@code null} to deliver all of them.
+     */
+    private volatile FrameRateGovernor mFrameRateGovernor;
+
+    /**
+     * Measures aspect ratio and size changes from the request to the first frame with the new
+     * configuration.
+     */
+    protected final LatencyTracker mReconfigurationLatency = new LatencyTracker();
+
+    /**
+     * Measures facing switches from the request to the first frame of the new camera.
+     */
+    protected final LatencyTracker mFacingSwitchLatency = new LatencyTracker();
+
+    /**
+     * Measures the shutter lag from {@link #takePicture()} to the start of the exposure.
+     */
+    protected final LatencyTracker mShutterLatency = new LatencyTracker();
+
+    /**
+     * Measures how long it takes to hand a still capture request to the camera.
+     */
+    protected final LatencyTracker mCaptureIssueLatency = new LatencyTracker();
+
+    /**
+     * Coalesces flash, auto-focus and aspect ratio changes into one update of the camera.
+     */
+    protected final ControlUpdateBatcher mControlUpdates = new ControlUpdateBatcher(
+            new ControlUpdateBatcher.Target() {
+                @Override
+                public void applyControls(int changes) {
+                    CameraViewImpl.this.applyControls(changes);
+                }
+            },
+            new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    runOnCameraThread(command);
+                }
+            });
+
+    /**
+     * Serializes all the work on the camera device. This is {@code null} while the camera is not
+     * started.
+     */
+    protected volatile Handler mCameraHandler;
+
+    private HandlerThread mCameraThread;
+
+    /**
+     * The camera thread of the previous session; it may still be closing the device.
+     */
+    private HandlerThread mStoppingCameraThread;
+
+    /**
+     * The handler of {@link #mStoppingCameraThread} until the device is closed, or {@code null}.
+     * Guarded by {@link #mThreadLock}.
+     */
+    private Handler mStoppingHandler;
+
+    private final Object mThreadLock = new Object();
+
     CameraViewImpl(Callback callback, PreviewImpl preview) {
-        mCallback = callback;
+        mCallback = new MainThreadCallback(callback);
         mPreview = preview;
         //触摸对焦
         getView().setOnClickListener(new View.OnClickListener() {
@@ -42,6 +138,118 @@ abstract class CameraViewImpl {
         return mPreview.getView();
     }
 
+    /**
+     * Starts the camera thread unless it is already running. Work posted to the new thread only
+     * runs after the previous camera thread has finished closing the device.
+     */
+    void startCameraThread() {
+        if (mCameraThread != null) {
+            return;
+        }
+        mCameraThread = new CameraThread();
+        mCameraThread.start();
+        mCameraHandler = new Handler(mCameraThread.getLooper());
+        final HandlerThread previous = mStoppingCameraThread;
+        mStoppingCameraThread = null;
+        if (previous != null) {
+            mCameraHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        previous.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Detaches the camera thread from this instance. The thread keeps running the work posted to
+     * it until the implementation calls {@link #quitCameraThread()} on it, once the device is
+     * closed.
+     */
+    void stopCameraThread() {
+        if (mCameraThread == null) {
+            return;
+        }
+        synchronized (mThreadLock) {
+            mStoppingHandler = mCameraHandler;
+        }
+        mStoppingCameraThread = mCameraThread;
+        mCameraThread = null;
+        mCameraHandler = null;
+    }
+
+    /**
+     * Terminates the stopped camera thread that this is called on, after the work already posted
+     * to it. Work posted later runs on the caller, as there is no device left to talk to.
+     */
+    void quitCameraThread() {
+        if (!(Thread.currentThread() instanceof CameraThread)) {
+            // stop() ran right away, as the camera thread was not started
+            return;
+        }
+        final Looper looper = Looper.myLooper();
+        synchronized (mThreadLock) {
+            if (mStoppingHandler != null && mStoppingHandler.getLooper() == looper) {
+                mStoppingHandler = null;
+            }
+        }
+        // Looper.quit() drops pending messages, so quit behind them
+        new Handler(looper).post(new Runnable() {
+            @Override
+            public void run() {
+                looper.quit();
+            }
+        });
+    }
+
+    /**
+     * Runs {@code runnable} on the camera thread. It runs right away when called on the camera
+     * thread, or when the camera thread is not started and there is no device to talk to. Right
+     * after {@link #stopCameraThread()}, it is posted to the stopped camera thread, so that it
+     * runs after the device is closed without blocking the caller.
+     */
+    void runOnCameraThread(Runnable runnable) {
+        Handler handler = mCameraHandler;
+        if (handler == null) {
+            synchronized (mThreadLock) {
+                handler = mStoppingHandler;
+                if (handler != null && handler.getLooper() != Looper.myLooper()) {
+                    handler.post(runnable);
+                    return;
+                }
+            }
+            runnable.run();
+        } else if (handler.getLooper() == Looper.myLooper()) {
+            runnable.run();
+        } else {
+            handler.post(runnable);
+        }
+    }
+
+    /**
+     * Holds back control updates until {@link #endControlUpdate()}, so that they reach the camera
+     * at once.
+     */
+    void beginControlUpdate() {
+        mControlUpdates.begin();
+    }
+
+    void endControlUpdate() {
+        mControlUpdates.end();
+    }
+
+    /**
+     * Applies the current flash, auto-focus and aspect ratio settings to the camera in one
+     * update. This is called on the camera thread.
+     *
+     * @param changes The controls that have changed; see {@link ControlUpdateBatcher}.
+     */
+    abstract void applyControls(int changes);
+
     /**
      * @return {@code true} if the implementation was able to start the camera session.
      */
@@ -76,17 +284,178 @@ abstract class CameraViewImpl {
 
     abstract void takePicture();
 
+    /**
+     * Takes {@code count} pictures, one every {@code intervalMs} or as fast as possible if it is
+     * 0, and reports the result to {@link Callback#onBurstCompleted(BurstResult)}.
+     */
+    abstract void takeBurst(int count, int intervalMs);
+
     abstract void setDisplayOrientation(int displayOrientation);
 
+    /**
+     * Starts or stops delivering preview frames to {@link Callback#onPreviewFrame}.
+     */
+    abstract void setPreviewFrameEnabled(boolean enabled);
+
+    abstract boolean isPreviewFrameEnabled();
+
+    /**
+     * Sets the number of preallocated preview frame buffers. This takes effect the next time the
+     * preview is configured.
+     */
+    void setFrameBufferCount(int count) {
+        mFrameBufferPool.setCapacity(count);
+    }
+
+    int getFrameBufferCount() {
+        return mFrameBufferPool.getCapacity();
+    }
+
+    void setPreviewSizeSelector(SizeSelector selector) {
+        mPreviewSizeSelector = selector;
+        onSizeConstraintsChanged();
+    }
+
+    SizeSelector getPreviewSizeSelector() {
+        return mPreviewSizeSelector;
+    }
+
+    void setPictureSizeSelector(SizeSelector selector) {
+        mPictureSizeSelector = selector;
+        onSizeConstraintsChanged();
+    }
+
+    SizeSelector getPictureSizeSelector() {
+        return mPictureSizeSelector;
+    }
+
+    void setCaptureMemoryBudget(long bytes) {
+        mCaptureMemoryBudget = bytes;
+        onSizeConstraintsChanged();
+    }
+
+    long getCaptureMemoryBudget() {
+        return mCaptureMemoryBudget;
+    }
+
+    LatencyStats getReconfigurationLatency() {
+        return mReconfigurationLatency.getStats();
+    }
+
+    LatencyStats getFacingSwitchLatency() {
+        return mFacingSwitchLatency.getStats();
+    }
+
+    LatencyStats getShutterLatency() {
+        return mShutterLatency.getStats();
+    }
+
+    LatencyStats getCaptureIssueLatency() {
+        return mCaptureIssueLatency.getStats();
+    }
+
+    void setFastCapture(boolean fastCapture) {
+        mFastCapture = fastCapture;
+    }
+
+    boolean getFastCapture() {
+        return mFastCapture;
+    }
+
+    void setZslCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        mZslCapacity = capacity;
+        onSizeConstraintsChanged();
+    }
+
+    int getZslCapacity() {
+        return mZslCapacity;
+    }
+
+    /**
+     * Implementations override this to update the rotation of the pictures on the camera.
+     */
+    void setExifRotation(boolean exifRotation) {
+        mExifRotation = exifRotation;
+    }
+
+    boolean getExifRotation() {
+        return mExifRotation;
+    }
+
+    void setFrameRateGovernor(FrameRateGovernor governor) {
+        mFrameRateGovernor = governor;
+    }
+
+    FrameRateGovernor getFrameRateGovernor() {
+        return mFrameRateGovernor;
+    }
+
+    /**
+     * Implementations call this before they convert a preview frame.
+     *
+     * @return {@code false} if the frame is to be skipped.
+     */
+    boolean shouldDeliverFrame() {
+        final FrameRateGovernor governor = mFrameRateGovernor;
+        return governor == null || governor.shouldDeliver(System.nanoTime());
+    }
+
+    /**
+     * Chooses the picture size within {@link #mCaptureMemoryBudget}.
+     */
+    Size choosePictureSize(SizeMap pictureSizes, AspectRatio ratio) {
+        Size size = SizeSelection.select(mPictureSizeSelector, SizeSelectors.largest(),
+                pictureSizes, ratio, 0, 0);
+        return CaptureMemoryBudget.limitPictureSize(size, pictureSizes, mCaptureMemoryBudget);
+    }
+
+    /**
+     * Chooses the preview and picture sizes again if the camera is opened.
+     */
+    abstract void onSizeConstraintsChanged();
+
+    private static class CameraThread extends HandlerThread {
+
+        CameraThread() {
+            super("CameraViewImpl");
+        }
+
+    }
+
     interface Callback {
 
         void onCameraOpened();
 
         void onCameraClosed();
 
-        void onPictureTaken(byte[] data);
+        /**
+         * @param data       The JPEG data. It is only valid until {@code releasable} is released.
+         * @param releasable Gives the underlying buffer back to the camera implementation.
+         */
+        void onPictureTaken(ByteBuffer data, Releasable releasable);
+
+        /**
+         * @param data       A pooled NV21 buffer. It is only valid until {@code releasable} is
+         *                   released.
+         * @param releasable Gives the buffer back to the camera implementation.
+         */
+        void onPreviewFrame(byte[] data, int width, int height, Releasable releasable);
 
         void onCameraError(Exception e, @CameraView.Error int type);
+
+        /**
+         * Called after the last picture of a burst has been delivered or dropped.
+         */
+        void onBurstCompleted(BurstResult result);
+
+        /**
+         * Called when a facing switch chose a camera that only Camera1 can use. The receiver
+         * restarts the camera so that it falls back to Camera1.
+         */
+        void onLegacyCamera();
     }
 
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact binary snapshot of the {@link CameraCapabilities} of a device, so they can be used on
+ * a cold start before the camera system answers. A snapshot is tied to a build fingerprint and is
+ * ignored on any other build.
+ */
+class CapabilitySnapshot {
+
+    private static final int MAGIC = 0x43564353; // "CVCS"
+
+    private static final int VERSION = 2;
+
+    private final String[] mCameraIds;
+
+    private final List<CameraCapabilities> mCapabilities;
+
+    /**
+     * @param cameraIds    All the camera IDs.
+     * @param capabilities The capabilities of some or all of the cameras.
+     */
+    CapabilitySnapshot(String[] cameraIds, List<CameraCapabilities> capabilities) {
+        mCameraIds = cameraIds.clone();
+        mCapabilities = capabilities;
+    }
+
+    String[] getCameraIds() {
+        return mCameraIds.clone();
+    }
+
+    List<CameraCapabilities> getCapabilities() {
+        return mCapabilities;
+    }
+
+    /**
+     * Writes this snapshot to {@code out}. The stream is not closed.
+     */
+    void write(OutputStream out, String fingerprint) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeUTF(fingerprint);
+        data.writeShort(mCameraIds.length);
+        for (String id : mCameraIds) {
+            data.writeUTF(id);
+        }
+        data.writeShort(mCapabilities.size());
+        for (CameraCapabilities capabilities : mCapabilities) {
+            data.writeUTF(capabilities.getCameraId());
+            data.writeByte(capabilities.getFacing());
+            data.writeByte(capabilities.getHardwareLevel());
+            data.writeShort(capabilities.getSensorOrientation());
+            writeSizes(data, capabilities.getPreviewSizes());
+            writeSizes(data, capabilities.getPictureSizes());
+            writeSizes(data, capabilities.getYuvSizes());
+            int[] afModes = capabilities.getAfModes();
+            data.writeByte(afModes.length);
+            for (int mode : afModes) {
+                data.writeByte(mode);
+            }
+            data.writeBoolean(capabilities.isFlashAvailable());
+            data.writeBoolean(capabilities.hasRealtimeTimestamps());
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write(OutputStream, String)}.
+     *
+     * @return The snapshot, or {@code null} if it was written by another version of this class
+     * or on a build with another fingerprint.
+     * @throws IOException If the data is truncated, cannot be read or holds values that no camera
+     *                     reports, such as an empty size.
+     */
+    static CapabilitySnapshot read(InputStream in, String fingerprint) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readByte() != VERSION
+                || !fingerprint.equals(data.readUTF())) {
+            return null;
+        }
+        String[] ids = new String[data.readUnsignedShort()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = data.readUTF();
+        }
+        int count = data.readUnsignedShort();
+        List<CameraCapabilities> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = data.readUTF();
+            int facing = data.readByte();
+            if (facing != Constants.FACING_BACK && facing != Constants.FACING_FRONT
+                    && facing != CameraCapabilities.FACING_EXTERNAL) {
+                throw new IOException("Invalid facing: " + facing);
+            }
+            int hardwareLevel = data.readByte();
+            int sensorOrientation = data.readShort();
+            if (sensorOrientation < 0 || sensorOrientation >= 360 || sensorOrientation % 90 != 0) {
+                throw new IOException("Invalid sensor orientation: " + sensorOrientation);
+            }
+            SizeMap previewSizes = readSizes(data);
+            SizeMap pictureSizes = readSizes(data);
+            SizeMap yuvSizes = readSizes(data);
+            int[] afModes = new int[data.readUnsignedByte()];
+            for (int j = 0; j < afModes.length; j++) {
+                afModes[j] = data.readByte();
+            }
+            boolean flashAvailable = data.readBoolean();
+            boolean realtimeTimestamps = data.readBoolean();
+            list.add(new CameraCapabilities(id, facing, hardwareLevel, sensorOrientation,
+                    previewSizes, pictureSizes, yuvSizes, afModes, flashAvailable,
+                    realtimeTimestamps));
+        }
+        return new CapabilitySnapshot(ids, list);
+    }
+
+    /**
+     * Writes all the sizes as a flat table of unsigned 16-bit width/height pairs.
+     */
+    private static void writeSizes(DataOutputStream data, SizeMap sizes) throws IOException {
+        int count = 0;
+        for (AspectRatio ratio : sizes.ratios()) {
+            count += sizes.sizes(ratio).size();
+        }
+        data.writeShort(count);
+        for (AspectRatio ratio : sizes.ratios()) {
+            for (Size size : sizes.sizes(ratio)) {
+                data.writeShort(size.getWidth());
+                data.writeShort(size.getHeight());
+            }
+        }
+    }
+
+    private static SizeMap readSizes(DataInputStream data) throws IOException {
+        SizeMap sizes = new SizeMap();
+        for (int i = 0, count = data.readUnsignedShort(); i < count; i++) {
+            int width = data.readUnsignedShort();
+            int height = data.readUnsignedShort();
+            if (width == 0 || height == 0) {
+                throw new IOException("Invalid size: " + width + "x" + height);
+            }
+            sizes.add(width, height);
+        }
+        return sizes;
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Keeps a {@link CapabilitySnapshot} in a file in app-private storage.
+ */
+class CapabilitySnapshotStore {
+
+    private static final String TAG = "CapabilitySnapshot";
+
+    private final File mFile;
+
+    private final String mFingerprint;
+
+    /**
+     * @param file        The file to keep the snapshot in.
+     * @param fingerprint The build fingerprint; snapshots from other builds are ignored.
+     */
+    CapabilitySnapshotStore(File file, String fingerprint) {
+        mFile = file;
+        mFingerprint = fingerprint;
+    }
+
+    /**
+     * @return The stored snapshot, or {@code null} if there is none for this build. A snapshot
+     * that cannot be read is deleted.
+     */
+    CapabilitySnapshot load() {
+        if (!mFile.exists()) {
+            return null;
+        }
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(mFile));
+            return CapabilitySnapshot.read(in, mFingerprint);
+        } catch (IOException | RuntimeException e) {
+            // Truncated or corrupt; the next save writes a fresh one
+            Log.w(TAG, "Cannot read " + mFile, e);
+            //noinspection ResultOfMethodCallIgnored
+            mFile.delete();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the stored snapshot. The file is written to a temporary file first and renamed,
+     * so a crash never leaves a truncated snapshot behind.
+     */
+    void save(CapabilitySnapshot snapshot) {
+        File temp = new File(mFile.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            snapshot.write(out, mFingerprint);
+            out.close();
+            out = null;
+            if (!temp.renameTo(mFile)) {
+                throw new IOException("Cannot rename " + temp + " to " + mFile);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write " + mFile, e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+}
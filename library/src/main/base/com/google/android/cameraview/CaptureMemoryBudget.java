@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import java.util.List;
+import java.util.SortedSet;
+
+/**
+ * Limits the memory used for still capture. The picture size and the number of images the
+ * camera can hold are reduced until the capture buffers fit in the budget.
+ *
+ * @see CameraView#setCaptureMemoryBudget(CaptureMemoryBudget)
+ */
+public final class CaptureMemoryBudget {
+
+    /**
+     * The number of bytes a JPEG capture buffer is assumed to take per pixel. The camera sizes
+     * the buffers for the worst case of the encoder.
+     */
+    static final float BYTES_PER_PIXEL = 1.5f;
+
+    /**
+     * No limit; the default.
+     */
+    public static final CaptureMemoryBudget UNLIMITED = new CaptureMemoryBudget(0, 0f);
+
+    private final long mBytes;
+
+    private final float mMemoryClassFraction;
+
+    private CaptureMemoryBudget(long bytes, float memoryClassFraction) {
+        mBytes = bytes;
+        mMemoryClassFraction = memoryClassFraction;
+    }
+
+    /**
+     * @param bytes The memory for capture buffers in bytes.
+     */
+    public static CaptureMemoryBudget ofBytes(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Budget must be positive: " + bytes);
+        }
+        return new CaptureMemoryBudget(bytes, 0f);
+    }
+
+    /**
+     * @param fraction The memory for capture buffers as a fraction of
+     *                 {@link android.app.ActivityManager#getMemoryClass()}, e.g. 0.25.
+     */
+    public static CaptureMemoryBudget ofMemoryClass(float fraction) {
+        if (fraction <= 0 || fraction > 1) {
+            throw new IllegalArgumentException("Fraction must be in (0, 1]: " + fraction);
+        }
+        return new CaptureMemoryBudget(0, fraction);
+    }
+
+    /**
+     * @param memoryClass The memory class of the app in megabytes.
+     * @return The budget in bytes, or 0 if it is unlimited.
+     */
+    public long getBytes(int memoryClass) {
+        if (mMemoryClassFraction > 0) {
+            return (long) (mMemoryClassFraction * memoryClass * 1024 * 1024);
+        }
+        return mBytes;
+    }
+
+    @Override
+    public String toString() {
+        if (mMemoryClassFraction > 0) {
+            return "CaptureMemoryBudget(" + mMemoryClassFraction + " of memory class)";
+        }
+        return mBytes == 0 ? "CaptureMemoryBudget(unlimited)"
+                : "CaptureMemoryBudget(" + mBytes + " bytes)";
+    }
+
+    /**
+     * @return The estimated size of a capture buffer for {@code size}.
+     */
+    static long bytesPerImage(Size size) {
+        return (long) (BYTES_PER_PIXEL * size.getWidth() * size.getHeight());
+    }
+
+    /**
+     * Keeps {@code chosen} if one image of that size fits in {@code budget}; otherwise picks the
+     * largest size that fits, preferring the aspect ratio of {@code chosen}.
+     *
+     * @param chosen The size chosen by the {@link SizeSelector}.
+     * @param sizes  All the supported picture sizes.
+     * @param budget The budget in bytes, or 0 for no limit.
+     * @return The picture size to use; the smallest one if none fits.
+     */
+    static Size limitPictureSize(Size chosen, SizeMap sizes, long budget) {
+        if (budget <= 0 || bytesPerImage(chosen) <= budget) {
+            return chosen;
+        }
+        SortedSet<Size> sameRatio = sizes.sizes(AspectRatio.of(chosen.getWidth(),
+                chosen.getHeight()));
+        Size size = largestWithin(sameRatio, budget);
+        if (size != null) {
+            return size;
+        }
+        List<Size> all = sizes.allSizes();
+        size = largestWithin(all, budget);
+        return size != null ? size : all.get(0);
+    }
+
+    /**
+     * @param size      The picture size.
+     * @param budget    The budget in bytes, or 0 for no limit.
+     * @param maxImages The number of images to use when the budget allows.
+     * @return The number of images of {@code size} that fit in {@code budget}, from 1 to
+     * {@code maxImages}.
+     */
+    static int imageCount(Size size, long budget, int maxImages) {
+        if (budget <= 0) {
+            return maxImages;
+        }
+        long count = budget / Math.max(1, bytesPerImage(size));
+        return (int) Math.max(1, Math.min(maxImages, count));
+    }
+
+    /**
+     * @param size      The image size.
+     * @param bytes     The memory available in bytes.
+     * @param maxImages The number of images to use when the memory allows.
+     * @return The number of images of {@code size} that fit in {@code bytes}, from 0 to
+     * {@code maxImages}.
+     */
+    static int fittingImageCount(Size size, long bytes, int maxImages) {
+        if (bytes <= 0) {
+            return 0;
+        }
+        long count = bytes / Math.max(1, bytesPerImage(size));
+        return (int) Math.min(maxImages, count);
+    }
+
+    private static Size largestWithin(Iterable<Size> sizes, long budget) {
+        if (sizes == null) {
+            return null;
+        }
+        Size result = null;
+        for (Size size : sizes) { // From small to large
+            if (bytesPerImage(size) <= budget) {
+                result = size;
+            }
+        }
+        return result;
+    }
+
+}
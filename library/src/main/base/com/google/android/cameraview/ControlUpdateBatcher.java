@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Coalesces changes to the camera controls so that they reach the camera in one update.
+ *
+ * <p>Each change marks a control as dirty and schedules a flush unless one is already pending.
+ * Changes made between {@link #begin()} and {@link #end()} are only flushed at the end. A flush
+ * hands all the dirty controls to the {@link Target} at once.</p>
+ */
+class ControlUpdateBatcher {
+
+    static final int FLASH = 1;
+
+    static final int AUTO_FOCUS = 1 << 1;
+
+    static final int ASPECT_RATIO = 1 << 2;
+
+    interface Target {
+
+        /**
+         * Applies the current values of the controls in {@code changes} to the camera.
+         *
+         * @param changes A combination of {@link #FLASH}, {@link #AUTO_FOCUS} and
+         *                {@link #ASPECT_RATIO}.
+         */
+        void applyControls(int changes);
+
+    }
+
+    private final Target mTarget;
+
+    private final Executor mExecutor;
+
+    private int mDirty;
+
+    private int mDepth;
+
+    private boolean mScheduled;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            int changes;
+            synchronized (ControlUpdateBatcher.this) {
+                changes = mDirty;
+                mDirty = 0;
+                mScheduled = false;
+            }
+            if (changes != 0) {
+                mTarget.applyControls(changes);
+            }
+        }
+    };
+
+    /**
+     * @param target   Receives the coalesced changes.
+     * @param executor Runs the flushes; typically the camera thread.
+     */
+    ControlUpdateBatcher(Target target, Executor executor) {
+        mTarget = target;
+        mExecutor = executor;
+    }
+
+    /**
+     * Holds back the flushes until the matching {@link #end()}. Calls can be nested.
+     */
+    synchronized void begin() {
+        mDepth++;
+    }
+
+    void end() {
+        synchronized (this) {
+            if (mDepth == 0) {
+                throw new IllegalStateException("end() without begin()");
+            }
+            mDepth--;
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Marks controls as changed.
+     *
+     * @param changes A combination of {@link #FLASH}, {@link #AUTO_FOCUS} and
+     *                {@link #ASPECT_RATIO}.
+     */
+    void requestUpdate(int changes) {
+        synchronized (this) {
+            mDirty |= changes;
+        }
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        synchronized (this) {
+            if (mDepth > 0 || mDirty == 0 || mScheduled) {
+                return;
+            }
+            mScheduled = true;
+        }
+        mExecutor.execute(mFlush);
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks whether auto-focus and auto-exposure have settled, as reported by the most recent preview
+ * frames. A still capture can skip the focus lock and the precapture sequence while they have.
+ *
+ * <p>A state that has not been updated for {@link #MAX_AGE_NANOS} is not trusted, since the
+ * scene may have changed since then.</p>
+ */
+class ConvergenceState {
+
+    static final long MAX_AGE_NANOS = TimeUnit.MILLISECONDS.toNanos(300);
+
+    private boolean mFocused;
+
+    private boolean mExposed;
+
+    private long mUpdatedNanos;
+
+    /**
+     * @param focused Whether the focus is sharp and not scanning.
+     * @param exposed Whether the exposure has converged.
+     * @param nanos   The time of the frame, in {@link System#nanoTime()} units.
+     */
+    synchronized void update(boolean focused, boolean exposed, long nanos) {
+        mFocused = focused;
+        mExposed = exposed;
+        mUpdatedNanos = nanos;
+    }
+
+    /**
+     * @param nowNanos The current time, in {@link System#nanoTime()} units.
+     * @return {@code true} if both focus and exposure had settled in a recent frame.
+     */
+    synchronized boolean isConverged(long nowNanos) {
+        return mUpdatedNanos != 0 && nowNanos - mUpdatedNanos <= MAX_AGE_NANOS
+                && mFocused && mExposed;
+    }
+
+    /**
+     * Forgets the state, e.g. when the camera or its focus mode changes.
+     */
+    synchronized void reset() {
+        mFocused = false;
+        mExposed = false;
+        mUpdatedNanos = 0;
+    }
+
+}
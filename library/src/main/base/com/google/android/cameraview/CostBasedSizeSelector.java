@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * A {@link SizeSelector} that scores every candidate and chooses the cheapest one.
+ *
+ * <p>Sizes over the pixel, dimension or memory limits, and sizes whose aspect ratio is off by
+ * more than the tolerance, are never chosen unless nothing else is left. The cost of the others
+ * adds up</p>
+ * <ul>
+ * <li>the part of the requested area that the size does not cover,</li>
+ * <li>the pixels it has in excess of the requested area, as a measure of the bandwidth spent on
+ * them, and</li>
+ * <li>the difference from the requested aspect ratio,</li>
+ * </ul>
+ * <p>each multiplied by its weight. When nothing is requested to be covered, e.g. for pictures,
+ * the largest size within the limits wins.</p>
+ *
+ * <pre>
+ * SizeSelector selector = new CostBasedSizeSelector.Builder()
+ *         .setTargetSize(1920, 1080)
+ *         .setMaxPixels(8000000)
+ *         .setMemoryBudget(32 * 1024 * 1024)
+ *         .build();
+ * </pre>
+ */
+public class CostBasedSizeSelector implements SizeSelector {
+
+    private final float mRatioTolerance;
+
+    private final long mMaxPixels;
+
+    private final int mMaxWidth;
+
+    private final int mMaxHeight;
+
+    private final long mMemoryBudget;
+
+    private final float mBytesPerPixel;
+
+    private final int mTargetWidth;
+
+    private final int mTargetHeight;
+
+    private final float mCoverageWeight;
+
+    private final float mPixelWeight;
+
+    private final float mRatioWeight;
+
+    private CostBasedSizeSelector(Builder builder) {
+        mRatioTolerance = builder.mRatioTolerance;
+        mMaxPixels = builder.mMaxPixels;
+        mMaxWidth = builder.mMaxWidth;
+        mMaxHeight = builder.mMaxHeight;
+        mMemoryBudget = builder.mMemoryBudget;
+        mBytesPerPixel = builder.mBytesPerPixel;
+        mTargetWidth = builder.mTargetWidth;
+        mTargetHeight = builder.mTargetHeight;
+        mCoverageWeight = builder.mCoverageWeight;
+        mPixelWeight = builder.mPixelWeight;
+        mRatioWeight = builder.mRatioWeight;
+    }
+
+    @NonNull
+    @Override
+    public Size select(@NonNull List<Size> candidates, @NonNull AspectRatio ratio, int width,
+            int height) {
+        if (mTargetWidth > 0) {
+            width = mTargetWidth;
+            height = mTargetHeight;
+        }
+        long largest = SizeSelectors.pixels(candidates.get(candidates.size() - 1));
+        Size best = null;
+        double bestCost = Double.MAX_VALUE;
+        for (Size size : candidates) {
+            if (!isAllowed(size, ratio)) {
+                continue;
+            }
+            double cost = cost(size, ratio, width, height, largest);
+            if (cost < bestCost) {
+                best = size;
+                bestCost = cost;
+            }
+        }
+        if (best == null) {
+            // Nothing is within the limits; the smallest size is the closest
+            return SizeSelectors.ofRatio(candidates, ratio).get(0);
+        }
+        return best;
+    }
+
+    private boolean isAllowed(Size size, AspectRatio ratio) {
+        long pixels = SizeSelectors.pixels(size);
+        return SizeSelectors.ratioError(size, ratio) <= mRatioTolerance
+                && (mMaxPixels <= 0 || pixels <= mMaxPixels)
+                && (mMaxWidth <= 0 || size.getWidth() <= mMaxWidth)
+                && (mMaxHeight <= 0 || size.getHeight() <= mMaxHeight)
+                && (mMemoryBudget <= 0 || pixels * mBytesPerPixel <= mMemoryBudget);
+    }
+
+    private double cost(Size size, AspectRatio ratio, int width, int height, long largest) {
+        double ratioCost = mRatioWeight * SizeSelectors.ratioError(size, ratio);
+        long pixels = SizeSelectors.pixels(size);
+        if (width <= 0 || height <= 0) {
+            return ratioCost - (double) pixels / largest;
+        }
+        double coverage = Math.min(1.0, Math.min((double) size.getWidth() / width,
+                (double) size.getHeight() / height));
+        long target = (long) width * height;
+        double excess = Math.max(0, pixels - target) / (double) target;
+        return mCoverageWeight * (1 - coverage) + mPixelWeight * excess + ratioCost;
+    }
+
+    /**
+     * Builds a {@link CostBasedSizeSelector}. The limits are off by default.
+     */
+    public static class Builder {
+
+        private float mRatioTolerance = 0f;
+
+        private long mMaxPixels;
+
+        private int mMaxWidth;
+
+        private int mMaxHeight;
+
+        private long mMemoryBudget;
+
+        private float mBytesPerPixel = 1.5f;
+
+        private int mTargetWidth;
+
+        private int mTargetHeight;
+
+        private float mCoverageWeight = 100f;
+
+        private float mPixelWeight = 1f;
+
+        private float mRatioWeight = 10f;
+
+        /**
+         * Allows sizes whose aspect ratio differs from the requested one by up to
+         * {@code tolerance} (e.g. 0.05 for 5%). By default, only the exact ratio is allowed.
+         * Other ratios are only offered when the camera does not have the requested one.
+         */
+        public Builder setRatioTolerance(float tolerance) {
+            if (tolerance < 0) {
+                throw new IllegalArgumentException("Tolerance must not be negative: " + tolerance);
+            }
+            mRatioTolerance = tolerance;
+            return this;
+        }
+
+        /**
+         * Limits the number of pixels, e.g. to what the pipeline can process at the frame rate.
+         */
+        public Builder setMaxPixels(long maxPixels) {
+            mMaxPixels = maxPixels;
+            return this;
+        }
+
+        /**
+         * Limits the dimensions, e.g. to what a video or image encoder accepts.
+         */
+        public Builder setMaxSize(int maxWidth, int maxHeight) {
+            mMaxWidth = maxWidth;
+            mMaxHeight = maxHeight;
+            return this;
+        }
+
+        /**
+         * Limits the memory of one image to {@code bytes}.
+         *
+         * @see #setBytesPerPixel(float)
+         */
+        public Builder setMemoryBudget(long bytes) {
+            mMemoryBudget = bytes;
+            return this;
+        }
+
+        /**
+         * Sets the memory an image takes per pixel, for {@link #setMemoryBudget(long)}. The
+         * default is 1.5 bytes, as in YUV 4:2:0 and the worst case of a JPEG buffer.
+         */
+        public Builder setBytesPerPixel(float bytesPerPixel) {
+            mBytesPerPixel = bytesPerPixel;
+            return this;
+        }
+
+        /**
+         * Sets the size to cover instead of the one requested by the camera; for example, the
+         * smallest picture size the app can work with.
+         */
+        public Builder setTargetSize(int width, int height) {
+            mTargetWidth = width;
+            mTargetHeight = height;
+            return this;
+        }
+
+        /**
+         * Sets the weights of the costs.
+         *
+         * @param coverage The cost of not covering the target at all; the default is 100.
+         * @param pixels   The cost of each target area worth of excess pixels; the default is 1.
+         * @param ratio    The cost of a 100% aspect ratio difference; the default is 10.
+         */
+        public Builder setWeights(float coverage, float pixels, float ratio) {
+            mCoverageWeight = coverage;
+            mPixelWeight = pixels;
+            mRatioWeight = ratio;
+            return this;
+        }
+
+        public CostBasedSizeSelector build() {
+            return new CostBasedSizeSelector(this);
+        }
+
+    }
+
+}
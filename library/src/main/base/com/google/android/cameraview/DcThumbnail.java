@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * A picture at an eighth of its size, decoded from the DC coefficients of its JPEG image alone.
+ * Each pixel is the average of an 8x8 block of the picture, so no inverse DCT is needed.
+ */
+final class DcThumbnail {
+
+    final int mWidth;
+
+    final int mHeight;
+
+    /**
+     * ARGB pixels in rows.
+     */
+    final int[] mPixels;
+
+    private DcThumbnail(int width, int height, int[] pixels) {
+        mWidth = width;
+        mHeight = height;
+        mPixels = pixels;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the image is malformed or not supported.
+     */
+    static DcThumbnail decode(byte[] jpeg) {
+        final JpegImage image = JpegImage.readDcOnly(jpeg);
+        final JpegImage.Component[] components = image.getComponents();
+        if (components.length != 1 && components.length != 3) {
+            throw new IllegalArgumentException(
+                    "Unsupported number of color components: " + components.length);
+        }
+        final int width = (image.getWidth() + 7) / 8;
+        final int height = (image.getHeight() + 7) / 8;
+        final int maxH = image.getMcuWidth() / 8;
+        final int maxV = image.getMcuHeight() / 8;
+        final int[][] samples = new int[components.length][];
+        for (int c = 0; c < components.length; c++) {
+            samples[c] = toSamples(components[c], image.getQuantTables());
+        }
+        final int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int luma = sample(components[0], samples[0], x, y, maxH, maxV);
+                if (components.length == 1) {
+                    pixels[y * width + x] = 0xFF000000 | luma << 16 | luma << 8 | luma;
+                    continue;
+                }
+                final int cb = sample(components[1], samples[1], x, y, maxH, maxV) - 128;
+                final int cr = sample(components[2], samples[2], x, y, maxH, maxV) - 128;
+                // JFIF YCbCr to RGB in 16.16 fixed point
+                final int r = clamp(luma + ((91881 * cr + 32768) >> 16));
+                final int g = clamp(luma + ((-22554 * cb - 46802 * cr + 32768) >> 16));
+                final int b = clamp(luma + ((116130 * cb + 32768) >> 16));
+                pixels[y * width + x] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+        return new DcThumbnail(width, height, pixels);
+    }
+
+    /**
+     * @return The average sample value of each block.
+     */
+    private static int[] toSamples(JpegImage.Component component, int[][] quantTables) {
+        final int[] table = quantTables[component.mQuantTable];
+        if (table == null) {
+            throw new IllegalArgumentException("Missing quantization table");
+        }
+        final short[] dc = component.mCoefficients;
+        final int[] samples = new int[dc.length];
+        for (int i = 0; i < dc.length; i++) {
+            // The DC coefficient is 8 times the average of the level-shifted samples
+            samples[i] = clamp(((dc[i] * table[0] + 4) >> 3) + 128);
+        }
+        return samples;
+    }
+
+    private static int sample(JpegImage.Component component, int[] samples, int x, int y,
+            int maxH, int maxV) {
+        final int bx = x * component.mHorizontalSampling / maxH;
+        final int by = y * component.mVerticalSampling / maxV;
+        return samples[by * component.mBlocksWide + bx];
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+/**
+ * Releases a resource once it is no longer in use: after {@link #release()} has been called and
+ * every reference taken with {@link #acquire()} has been given back with
+ * {@link #releaseReference()}.
+ */
+class DeferredReleasable implements Releasable {
+
+    private final Releasable mTarget;
+
+    // Guarded by this
+
+    private int mReferences;
+
+    private boolean mReleaseRequested;
+
+    /**
+     * @param target The resource to be released after the last reference.
+     */
+    DeferredReleasable(Releasable target) {
+        mTarget = target;
+    }
+
+    synchronized void acquire() {
+        mReferences++;
+    }
+
+    void releaseReference() {
+        synchronized (this) {
+            if (mReferences == 0) {
+                throw new IllegalStateException("No reference to release");
+            }
+            mReferences--;
+            if (mReferences > 0 || !mReleaseRequested) {
+                return;
+            }
+        }
+        mTarget.release();
+    }
+
+    /**
+     * Releases the resource now, or after the last reference if any are held. Only the first call
+     * has an effect.
+     */
+    @Override
+    public void release() {
+        synchronized (this) {
+            if (mReleaseRequested) {
+                return;
+            }
+            mReleaseRequested = true;
+            if (mReferences > 0) {
+                return;
+            }
+        }
+        mTarget.release();
+    }
+
+}
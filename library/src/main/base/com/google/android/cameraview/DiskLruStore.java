@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps byte arrays in the files of a directory, up to a total size. The least recently used
+ * files are deleted first. The order of use survives restarts through the modification times of
+ * the files.
+ */
+class DiskLruStore {
+
+    private static final String TAG = "DiskLruStore";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Keys are used as file names.
+     */
+    private static final Pattern KEY = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]{0,119}");
+
+    private final File mDirectory;
+
+    private final long mMaxBytes;
+
+    /**
+     * The size of each file, from the least to the most recently used.
+     */
+    private final LinkedHashMap<String, Long> mSizes = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long mBytes;
+
+    /**
+     * @param directory The directory of the files; it is created if needed. Other files in it are
+     *                  counted against {@code maxBytes} and may be deleted.
+     * @param maxBytes  The total size of the files.
+     */
+    DiskLruStore(File directory, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Size must be positive: " + maxBytes);
+        }
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // Left over from a write that did not finish
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            } else if (file.isFile()) {
+                mSizes.put(file.getName(), file.length());
+                mBytes += file.length();
+            }
+        }
+        trimToSize();
+    }
+
+    /**
+     * @return The data, or {@code null} if there is none for {@code key} or it cannot be read.
+     */
+    synchronized byte[] get(String key) {
+        final File file = getFile(key);
+        if (mSizes.get(key) == null) {
+            return null;
+        }
+        try {
+            final byte[] data = readFully(file);
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + file, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the data for {@code key} and deletes the least recently used files that do not
+     * fit anymore.
+     *
+     * @return {@code false} if the data could not be written.
+     */
+    synchronized boolean put(String key, byte[] data) {
+        final File file = getFile(key);
+        final File temp = new File(mDirectory, key + TEMP_SUFFIX);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            out.write(data);
+            out.close();
+            out = null;
+            remove(key);
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to rename " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + file, e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Already failing
+                }
+            }
+        }
+        mSizes.put(key, (long) data.length);
+        mBytes += data.length;
+        trimToSize();
+        return true;
+    }
+
+    synchronized void remove(String key) {
+        final Long size = mSizes.remove(key);
+        if (size != null) {
+            mBytes -= size;
+            //noinspection ResultOfMethodCallIgnored
+            getFile(key).delete();
+        }
+    }
+
+    synchronized long getBytes() {
+        return mBytes;
+    }
+
+    private void trimToSize() {
+        final Iterator<Map.Entry<String, Long>> iterator = mSizes.entrySet().iterator();
+        while (mBytes > mMaxBytes && iterator.hasNext()) {
+            final Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            mBytes -= eldest.getValue();
+            //noinspection ResultOfMethodCallIgnored
+            new File(mDirectory, eldest.getKey()).delete();
+        }
+    }
+
+    private File getFile(String key) {
+        checkKey(key);
+        return new File(mDirectory, key);
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code key} cannot be used as a file name.
+     */
+    static void checkKey(String key) {
+        if (!KEY.matcher(key).matches() || key.endsWith(TEMP_SUFFIX)) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final long length = file.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + file);
+            }
+            final byte[] data = new byte[(int) length];
+            int offset = 0;
+            while (offset < data.length) {
+                final int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                offset += read;
+            }
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+}
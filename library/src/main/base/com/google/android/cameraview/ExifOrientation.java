@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads and writes the EXIF orientation of JPEG images without decoding them.
+ *
+ * <p>{@link #patch(ByteBuffer, int)} rewrites the orientation tag of an existing EXIF segment in
+ * place; only the two bytes of the tag value change. {@link #insert(byte[], int)} adds a segment
+ * to images that have none.</p>
+ */
+class ExifOrientation {
+
+    private static final int MARKER_SOS = 0xDA;
+
+    private static final int MARKER_EOI = 0xD9;
+
+    private static final int MARKER_APP1 = 0xE1;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+
+    private static final int TYPE_SHORT = 3;
+
+    /**
+     * Set in the result of {@link #findOrientationValue(ByteBuffer)} for big-endian TIFF data.
+     */
+    private static final int BIG_ENDIAN_FLAG = 1 << 31;
+
+    /**
+     * The APP1 segment written by {@link #insert(byte[], int)}: the marker, the length, the EXIF
+     * header, a big-endian TIFF header and an IFD with the orientation as its only entry.
+     */
+    private static final int APP1_SIZE = 2 + 2 + 6 + 8 + 2 + 12 + 4;
+
+    private ExifOrientation() {
+    }
+
+    /**
+     * @param degrees The clockwise rotation needed to display the image upright; a multiple of
+     *                90.
+     * @return The value of the EXIF orientation tag.
+     */
+    static int fromDegrees(int degrees) {
+        switch ((degrees % 360 + 360) % 360) {
+            case 90:
+                return 6;
+            case 180:
+                return 3;
+            case 270:
+                return 8;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * @param orientation The value of the EXIF orientation tag.
+     * @return The clockwise rotation in degrees, or 0 for values that are not a plain rotation.
+     */
+    static int toDegrees(int orientation) {
+        switch (orientation) {
+            case 6:
+                return 90;
+            case 3:
+                return 180;
+            case 8:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Overwrites the orientation tag of the EXIF segment of a JPEG image.
+     *
+     * @param jpeg    The JPEG image, from its position to its limit. Neither is changed.
+     * @param degrees The clockwise rotation needed to display the image upright.
+     * @return {@code false} if the image has no EXIF orientation tag to overwrite or the buffer is
+     * read-only; the image is not modified then.
+     */
+    static boolean patch(ByteBuffer jpeg, int degrees) {
+        if (jpeg.isReadOnly()) {
+            return false;
+        }
+        int offset = findOrientationValue(jpeg);
+        if (offset == -1) {
+            return false;
+        }
+        int value = fromDegrees(degrees);
+        boolean bigEndian = (offset & BIG_ENDIAN_FLAG) != 0;
+        offset &= ~BIG_ENDIAN_FLAG;
+        jpeg.put(offset, (byte) (bigEndian ? value >> 8 : value));
+        jpeg.put(offset + 1, (byte) (bigEndian ? value : value >> 8));
+        return true;
+    }
+
+    /**
+     * @return The value of the EXIF orientation tag, or 0 if there is none.
+     */
+    static int read(ByteBuffer jpeg) {
+        int offset = findOrientationValue(jpeg);
+        if (offset == -1) {
+            return 0;
+        }
+        boolean bigEndian = (offset & BIG_ENDIAN_FLAG) != 0;
+        offset &= ~BIG_ENDIAN_FLAG;
+        return getShort(jpeg, offset, bigEndian);
+    }
+
+    /**
+     * Finds the first IFD of the EXIF segment and the orientation tag in it. All offsets are
+     * checked against the segment, so that malformed images are only rejected.
+     *
+     * @return The absolute index of the value of the orientation tag, with
+     * {@link #BIG_ENDIAN_FLAG} set for big-endian data, or -1 if there is no such tag.
+     */
+    private static int findOrientationValue(ByteBuffer jpeg) {
+        final int tiff = findTiffHeader(jpeg);
+        if (tiff == -1) {
+            return -1;
+        }
+        final int end = getExifEnd(jpeg, tiff);
+        final int ifd = getFirstIfd(jpeg, tiff, end);
+        if (ifd == -1) {
+            return -1;
+        }
+        final boolean bigEndian = isBigEndian(jpeg, tiff);
+        int count = getShort(jpeg, ifd, bigEndian);
+        int entry = ifd + 2;
+        for (int i = 0; i < count && entry + 12 <= end; i++, entry += 12) {
+            if (getShort(jpeg, entry, bigEndian) != TAG_ORIENTATION) {
+                continue;
+            }
+            if (getShort(jpeg, entry + 2, bigEndian) != TYPE_SHORT
+                    || getInt(jpeg, entry + 4, bigEndian) != 1) {
+                return -1;
+            }
+            return (entry + 8) | (bigEndian ? BIG_ENDIAN_FLAG : 0);
+        }
+        return -1;
+    }
+
+    /**
+     * Walks the marker segments up to the image data.
+     *
+     * @return The absolute index of the TIFF header in the EXIF segment, or -1 if there is none.
+     */
+    static int findTiffHeader(ByteBuffer jpeg) {
+        final int start = jpeg.position();
+        final int limit = jpeg.limit();
+        if (limit - start < 4 || (jpeg.get(start) & 0xFF) != 0xFF
+                || (jpeg.get(start + 1) & 0xFF) != 0xD8) {
+            return -1;
+        }
+        int position = start + 2;
+        while (position + 4 <= limit) {
+            if ((jpeg.get(position) & 0xFF) != 0xFF) {
+                return -1;
+            }
+            int marker = jpeg.get(position + 1) & 0xFF;
+            if (marker == 0xFF) {
+                position++; // Fill byte
+                continue;
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                return -1;
+            }
+            int length = getShort(jpeg, position + 2, true);
+            int end = position + 2 + length;
+            if (length < 2 || end > limit) {
+                return -1;
+            }
+            if (marker == MARKER_APP1 && isExifHeader(jpeg, position + 4, end)) {
+                return position + 10;
+            }
+            position = end;
+        }
+        return -1;
+    }
+
+    /**
+     * @param tiff The result of {@link #findTiffHeader(ByteBuffer)}.
+     * @return The absolute index of the end of the EXIF segment.
+     */
+    static int getExifEnd(ByteBuffer jpeg, int tiff) {
+        // The segment length is before "Exif\0\0" and counts itself
+        return tiff - 8 + getShort(jpeg, tiff - 8, true);
+    }
+
+    private static boolean isExifHeader(ByteBuffer jpeg, int index, int end) {
+        return index + 6 <= end && jpeg.get(index) == 'E' && jpeg.get(index + 1) == 'x'
+                && jpeg.get(index + 2) == 'i' && jpeg.get(index + 3) == 'f'
+                && jpeg.get(index + 4) == 0 && jpeg.get(index + 5) == 0;
+    }
+
+    /**
+     * Checks the TIFF header.
+     *
+     * @return The absolute index of the first IFD, or -1 if the header is malformed.
+     */
+    static int getFirstIfd(ByteBuffer jpeg, int tiff, int end) {
+        if (tiff + 8 > end) {
+            return -1;
+        }
+        final byte order = jpeg.get(tiff);
+        if (order != jpeg.get(tiff + 1) || order != 'M' && order != 'I') {
+            return -1;
+        }
+        final boolean bigEndian = order == 'M';
+        if (getShort(jpeg, tiff + 2, bigEndian) != 42) {
+            return -1;
+        }
+        return getIfd(jpeg, tiff, end, getInt(jpeg, tiff + 4, bigEndian));
+    }
+
+    /**
+     * @param offset An IFD offset from the TIFF data.
+     * @return The absolute index of the IFD, or -1 if it is not within the segment.
+     */
+    static int getIfd(ByteBuffer jpeg, int tiff, int end, int offset) {
+        long ifdOffset = offset & 0xFFFFFFFFL;
+        if (ifdOffset < 8 || tiff + ifdOffset + 2 > end) {
+            return -1;
+        }
+        return (int) (tiff + ifdOffset);
+    }
+
+    /**
+     * @param tiff An index checked by {@link #getFirstIfd(ByteBuffer, int, int)}.
+     */
+    static boolean isBigEndian(ByteBuffer jpeg, int tiff) {
+        return jpeg.get(tiff) == 'M';
+    }
+
+    static int getShort(ByteBuffer data, int index, boolean bigEndian) {
+        int b0 = data.get(index) & 0xFF;
+        int b1 = data.get(index + 1) & 0xFF;
+        return bigEndian ? b0 << 8 | b1 : b1 << 8 | b0;
+    }
+
+    static int getInt(ByteBuffer data, int index, boolean bigEndian) {
+        int s0 = getShort(data, index, bigEndian);
+        int s1 = getShort(data, index + 2, bigEndian);
+        return bigEndian ? s0 << 16 | s1 : s1 << 16 | s0;
+    }
+
+    /**
+     * Adds an EXIF segment with the orientation to a JPEG image that has none, such as the output
+     * of {@link android.graphics.YuvImage#compressToJpeg}. The segment goes after the JFIF
+     * segment, if there is one.
+     *
+     * @param jpeg    The JPEG image without an EXIF segment.
+     * @param degrees The clockwise rotation needed to display the image upright.
+     * @return A new JPEG image.
+     */
+    static byte[] insert(byte[] jpeg, int degrees) {
+        if (jpeg.length < 4 || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != 0xD8) {
+            throw new IllegalArgumentException("Not a JPEG image");
+        }
+        int position = 2;
+        if ((jpeg[2] & 0xFF) == 0xFF && (jpeg[3] & 0xFF) == 0xE0) {
+            position += 2 + ((jpeg[4] & 0xFF) << 8 | (jpeg[5] & 0xFF));
+        }
+        byte[] out = new byte[jpeg.length + APP1_SIZE];
+        System.arraycopy(jpeg, 0, out, 0, position);
+        int i = position;
+        out[i++] = (byte) 0xFF;
+        out[i++] = (byte) 0xE1;
+        i = putShort(out, i, APP1_SIZE - 2);
+        out[i++] = 'E';
+        out[i++] = 'x';
+        out[i++] = 'i';
+        out[i++] = 'f';
+        out[i++] = 0;
+        out[i++] = 0;
+        // TIFF header; offsets are relative to here
+        out[i++] = 'M';
+        out[i++] = 'M';
+        i = putShort(out, i, 42);
+        i = putInt(out, i, 8);
+        // IFD0
+        i = putShort(out, i, 1);
+        i = putShort(out, i, TAG_ORIENTATION);
+        i = putShort(out, i, TYPE_SHORT);
+        i = putInt(out, i, 1);
+        i = putShort(out, i, fromDegrees(degrees));
+        i = putShort(out, i, 0);
+        i = putInt(out, i, 0);
+        System.arraycopy(jpeg, position, out, i, jpeg.length - position);
+        return out;
+    }
+
+    private static int putShort(byte[] out, int index, int value) {
+        out[index] = (byte) (value >> 8);
+        out[index + 1] = (byte) value;
+        return index + 2;
+    }
+
+    private static int putInt(byte[] out, int index, int value) {
+        index = putShort(out, index, value >>> 16);
+        return putShort(out, index, value);
+    }
+
+}
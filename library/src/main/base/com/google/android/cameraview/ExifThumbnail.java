@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Extracts the thumbnail that cameras embed in the EXIF segment of their pictures.
+ */
+class ExifThumbnail {
+
+    private static final int TAG_JPEG_OFFSET = 0x0201;
+
+    private static final int TAG_JPEG_LENGTH = 0x0202;
+
+    private static final int TYPE_SHORT = 3;
+
+    private static final int TYPE_LONG = 4;
+
+    private ExifThumbnail() {
+    }
+
+    /**
+     * @param jpeg The JPEG image, from its position to its limit. Neither is changed.
+     * @return A copy of the JPEG thumbnail in the second IFD of the EXIF segment, or {@code null}
+     * if there is none.
+     */
+    static byte[] extract(ByteBuffer jpeg) {
+        final int tiff = ExifOrientation.findTiffHeader(jpeg);
+        if (tiff == -1) {
+            return null;
+        }
+        final int end = ExifOrientation.getExifEnd(jpeg, tiff);
+        final int ifd0 = ExifOrientation.getFirstIfd(jpeg, tiff, end);
+        if (ifd0 == -1) {
+            return null;
+        }
+        final boolean bigEndian = ExifOrientation.isBigEndian(jpeg, tiff);
+        // The offset of the next IFD follows the entries
+        final int next = ifd0 + 2 + 12 * ExifOrientation.getShort(jpeg, ifd0, bigEndian);
+        if (next + 4 > end) {
+            return null;
+        }
+        final int ifd1 = ExifOrientation.getIfd(jpeg, tiff, end,
+                ExifOrientation.getInt(jpeg, next, bigEndian));
+        if (ifd1 == -1) {
+            return null;
+        }
+        long offset = -1;
+        long length = -1;
+        final int count = ExifOrientation.getShort(jpeg, ifd1, bigEndian);
+        int entry = ifd1 + 2;
+        for (int i = 0; i < count && entry + 12 <= end; i++, entry += 12) {
+            final int tag = ExifOrientation.getShort(jpeg, entry, bigEndian);
+            if (tag == TAG_JPEG_OFFSET) {
+                offset = getValue(jpeg, entry, bigEndian);
+            } else if (tag == TAG_JPEG_LENGTH) {
+                length = getValue(jpeg, entry, bigEndian);
+            }
+        }
+        if (offset < 8 || length < 4 || tiff + offset + length > end) {
+            return null;
+        }
+        final int start = (int) (tiff + offset);
+        if ((jpeg.get(start) & 0xFF) != 0xFF || (jpeg.get(start + 1) & 0xFF) != 0xD8) {
+            return null;
+        }
+        final byte[] thumbnail = new byte[(int) length];
+        final ByteBuffer source = jpeg.duplicate();
+        source.position(start);
+        source.get(thumbnail);
+        return thumbnail;
+    }
+
+    /**
+     * @return The unsigned value of a LONG or SHORT entry with a count of 1, or -1.
+     */
+    private static long getValue(ByteBuffer jpeg, int entry, boolean bigEndian) {
+        final int type = ExifOrientation.getShort(jpeg, entry + 2, bigEndian);
+        if (ExifOrientation.getInt(jpeg, entry + 4, bigEndian) != 1) {
+            return -1;
+        }
+        if (type == TYPE_LONG) {
+            return ExifOrientation.getInt(jpeg, entry + 8, bigEndian) & 0xFFFFFFFFL;
+        } else if (type == TYPE_SHORT) {
+            return ExifOrientation.getShort(jpeg, entry + 8, bigEndian);
+        }
+        return -1;
+    }
+
+}
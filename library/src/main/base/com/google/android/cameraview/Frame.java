@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A preview frame shared by several consumers without copying.
+ *
+ * <p>Each consumer gets its own handle with a read-only view of the same pooled buffer, and has
+ * to {@link #release()} it, possibly on another thread and after its callback has returned. The
+ * buffer goes back to the camera when the last handle is released, so holding on to frames makes
+ * the camera drop frames.</p>
+ */
+public class Frame implements Releasable {
+
+    private final ByteBuffer mData;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final Releasable mReference;
+
+    private final LeakDetector.Token mLeakToken;
+
+    private final AtomicBoolean mReleased = new AtomicBoolean();
+
+    Frame(ByteBuffer data, int width, int height, Releasable reference,
+            @Nullable LeakDetector leakDetector) {
+        mData = data;
+        mWidth = width;
+        mHeight = height;
+        mReference = reference;
+        mLeakToken = leakDetector == null ? null : leakDetector.track(this, "A Frame");
+    }
+
+    /**
+     * Creates handles to one frame.
+     *
+     * @param data         The frame in NV21 format.
+     * @param releasable   Gives the buffer back; released after the last handle.
+     * @param count        The number of handles.
+     * @param leakDetector Reports handles that are garbage collected without being released, or
+     *                     {@code null}.
+     */
+    static Frame[] share(byte[] data, int width, int height, Releasable releasable, int count,
+            @Nullable LeakDetector leakDetector) {
+        final RefCountedReleasable references = new RefCountedReleasable(releasable, count);
+        final ByteBuffer buffer = ByteBuffer.wrap(data, 0, YuvConverter.getFrameSize(width, height))
+                .asReadOnlyBuffer();
+        final Frame[] frames = new Frame[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = new Frame(buffer.duplicate(), width, height, references.newReference(),
+                    leakDetector);
+        }
+        return frames;
+    }
+
+    /**
+     * @return A read-only view of the frame in NV21 format. It is only valid until this handle is
+     * released.
+     */
+    @NonNull
+    public ByteBuffer getData() {
+        return mData;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void release() {
+        if (mReleased.getAndSet(true)) {
+            return;
+        }
+        if (mLeakToken != null) {
+            mLeakToken.close();
+        }
+        mReference.release();
+    }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Runs an {@link Analyzer} on preview frames on its own thread, so that a slow analyzer does not
+ * hold up the camera.
+ *
+ * <p>Waiting frames are {@link Frame shared frames}, not copies, so they keep buffers of the
+ * camera; {@link #getHeldFrameLimit()} tells how many. When frames arrive faster than the analyzer
+ * takes them, the {@link Backpressure backpressure strategy} decides which ones are dropped, and
+ * the drops are counted.</p>
+ *
+ * <p>An exception thrown by the analyzer does not stop the analysis: the frame is released, the
+ * failure is counted and reported to the {@link ErrorListener}, and the next frame is
+ * analyzed.</p>
+ */
+public class FrameAnalysis {
+
+    /**
+     * Keeps only the newest frame waiting; a frame that is replaced before the analyzer takes it is
+     * dropped. The analyzer always sees the most recent frame.
+     */
+    public static final int BACKPRESSURE_KEEP_LATEST = 0;
+
+    /**
+     * Makes the camera thread wait until the analyzer takes the waiting frame, so no frame is
+     * dropped here. The camera drops frames itself while it waits, and the other callbacks of the
+     * camera thread are delayed too.
+     */
+    public static final int BACKPRESSURE_BLOCK = 1;
+
+    /**
+     * Queues frames up to a capacity, in order; a frame that arrives while the queue is full is
+     * dropped.
+     */
+    public static final int BACKPRESSURE_QUEUE = 2;
+
+    /** How frames are dropped when the analyzer is slower than the camera. */
+    @IntDef({BACKPRESSURE_KEEP_LATEST, BACKPRESSURE_BLOCK, BACKPRESSURE_QUEUE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Backpressure {
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    /**
+     * Analyzes preview frames.
+     */
+    public interface Analyzer {
+
+        /**
+         * Called on the analysis thread for each frame that is not dropped.
+         *
+         * @param data   A read-only view of the frame in NV21 format. It is only valid until this
+         *               method returns.
+         * @param width  The width of the frame.
+         * @param height The height of the frame.
+         */
+        void analyze(@NonNull ByteBuffer data, int width, int height);
+
+    }
+
+    interface ErrorListener {
+
+        /**
+         * Called on the analysis thread when the analyzer throws. The frame has been released and
+         * the analysis goes on.
+         */
+        void onAnalyzerError(@NonNull RuntimeException e);
+
+    }
+
+    private final Analyzer mAnalyzer;
+
+    private final int mBackpressure;
+
+    private final int mQueueCapacity;
+
+    private final Object mLock = new Object();
+
+    private volatile FrameRateGovernor mFrameRateGovernor;
+
+    private volatile ErrorListener mErrorListener;
+
+    /**
+     * Guarded by {@link #mLock}.
+     */
+    private final ArrayDeque<Frame> mQueue = new ArrayDeque<>();
+
+    /**
+     * Guarded by {@link #mLock}.
+     */
+    private long mAnalyzedCount;
+
+    /**
+     * Guarded by {@link #mLock}.
+     */
+    private long mDroppedCount;
+
+    /**
+     * Guarded by {@link #mLock}.
+     */
+    private long mFailedCount;
+
+    /**
+     * Guarded by {@link #mLock}.
+     */
+    private boolean mClosed;
+
+    /**
+     * @param analyzer      Analyzes the frames.
+     * @param backpressure  One of {@link #BACKPRESSURE_KEEP_LATEST}, {@link #BACKPRESSURE_BLOCK}
+     *                      and {@link #BACKPRESSURE_QUEUE}.
+     * @param queueCapacity The number of frames that can wait with {@link #BACKPRESSURE_QUEUE};
+     *                      ignored otherwise.
+     */
+    FrameAnalysis(@NonNull Analyzer analyzer, @Backpressure int backpressure, int queueCapacity) {
+        if (backpressure != BACKPRESSURE_KEEP_LATEST && backpressure != BACKPRESSURE_BLOCK
+                && backpressure != BACKPRESSURE_QUEUE) {
+            throw new IllegalArgumentException("Unknown backpressure strategy: " + backpressure);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + queueCapacity);
+        }
+        mAnalyzer = analyzer;
+        mBackpressure = backpressure;
+        mQueueCapacity = backpressure == BACKPRESSURE_QUEUE ? queueCapacity : 1;
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processFrames();
+            }
+        }, "FrameAnalysis");
+        thread.start();
+    }
+
+    /**
+     * @param governor Receives the time each analysis takes, or {@code null}.
+     */
+    void setFrameRateGovernor(FrameRateGovernor governor) {
+        mFrameRateGovernor = governor;
+    }
+
+    /**
+     * @param listener Receives the exceptions of the analyzer, or {@code null}.
+     */
+    void setErrorListener(ErrorListener listener) {
+        mErrorListener = listener;
+    }
+
+    @Backpressure
+    public int getBackpressure() {
+        return mBackpressure;
+    }
+
+    /**
+     * @return The number of frames this analysis can hold at a time: the waiting ones and the one
+     * being analyzed.
+     */
+    public int getHeldFrameLimit() {
+        return mQueueCapacity + 1;
+    }
+
+    /**
+     * @return The number of frames that have been analyzed, including the failed ones.
+     */
+    public long getAnalyzedFrameCount() {
+        synchronized (mLock) {
+            return mAnalyzedCount;
+        }
+    }
+
+    /**
+     * @return The number of frames that were dropped because the analyzer was busy.
+     */
+    public long getDroppedFrameCount() {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+
+    /**
+     * @return The number of frames on which the analyzer threw an exception.
+     */
+    public long getFailedFrameCount() {
+        synchronized (mLock) {
+            return mFailedCount;
+        }
+    }
+
+    /**
+     * Hands a frame to the analyzer. With {@link #BACKPRESSURE_BLOCK}, this waits for the analyzer
+     * to take the previous frame.
+     *
+     * @param frame Released by this analysis, whether it is analyzed or dropped.
+     * @return {@code false} if the frame was dropped or this analysis is closed.
+     */
+    boolean offer(Frame frame) {
+        synchronized (mLock) {
+            if (mClosed) {
+                frame.release();
+                return false;
+            }
+            if (mBackpressure == BACKPRESSURE_KEEP_LATEST && !mQueue.isEmpty()) {
+                dropLocked(mQueue.poll());
+            } else if (mBackpressure == BACKPRESSURE_QUEUE && mQueue.size() >= mQueueCapacity) {
+                dropLocked(frame);
+                return false;
+            } else if (mBackpressure == BACKPRESSURE_BLOCK) {
+                try {
+                    while (!mQueue.isEmpty() && !mClosed) {
+                        mLock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropLocked(frame);
+                    return false;
+                }
+                if (mClosed) {
+                    frame.release();
+                    return false;
+                }
+            }
+            mQueue.add(frame);
+            mLock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Stops the analysis. The frame being analyzed is finished, and the waiting ones are dropped.
+     */
+    void close() {
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            while (!mQueue.isEmpty()) {
+                dropLocked(mQueue.poll());
+            }
+            mLock.notifyAll();
+        }
+    }
+
+    private void dropLocked(Frame frame) {
+        frame.release();
+        mDroppedCount++;
+    }
+
+    private void processFrames() {
+        while (true) {
+            final Frame frame;
+            synchronized (mLock) {
+                while (mQueue.isEmpty() && !mClosed) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        // Only close() ends the analysis
+                    }
+                }
+                if (mClosed) {
+                    return;
+                }
+                frame = mQueue.poll();
+                // Wake up a producer that waits with BACKPRESSURE_BLOCK
+                mLock.notifyAll();
+            }
+            final long startNanos = System.nanoTime();
+            RuntimeException error = null;
+            try {
+                mAnalyzer.analyze(frame.getData(), frame.getWidth(), frame.getHeight());
+            } catch (RuntimeException e) {
+                // Keep this thread going; a producer that waits with BACKPRESSURE_BLOCK needs it
+                error = e;
+            } finally {
+                final FrameRateGovernor governor = mFrameRateGovernor;
+                if (governor != null) {
+                    governor.reportLatency(System.nanoTime() - startNanos);
+                }
+                frame.release();
+                synchronized (mLock) {
+                    mAnalyzedCount++;
+                    if (error != null) {
+                        mFailedCount++;
+                    }
+                }
+            }
+            final ErrorListener listener = mErrorListener;
+            if (error != null && listener != null) {
+                listener.onAnalyzerError(error);
+            }
+        }
+    }
+
+}
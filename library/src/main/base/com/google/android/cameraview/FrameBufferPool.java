@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * A fixed-size pool of preallocated buffers for preview frames.
+ *
+ * <p>All the buffers, and the {@link Releasable} that gives each one back, are allocated in
+ * {@link #configure(int)}; {@link #acquire()}, {@link #hold(byte[])} and the releasables never
+ * allocate, so the pool adds no garbage to a steady preview stream.</p>
+ *
+ * <p>A buffer that {@link Frame frames} share is {@link #hold(byte[]) held} until its last frame
+ * is released, so that {@link #configure(int)} does not hand it out again meanwhile.</p>
+ */
+class FrameBufferPool {
+
+    static final int DEFAULT_CAPACITY = 3;
+
+    interface Recycler {
+
+        /**
+         * Called when the frames that held {@code buffer} have all been released.
+         */
+        void recycle(byte[] buffer);
+
+    }
+
+    private final ArrayDeque<byte[]> mAvailable = new ArrayDeque<>();
+
+    private byte[][] mBuffers = new byte[0][];
+
+    private boolean[] mHeld = new boolean[0];
+
+    private BufferReleasable[] mReleasables = new BufferReleasable[0];
+
+    private volatile Recycler mRecycler;
+
+    private volatile Executor mRecyclerExecutor;
+
+    private int mCapacity;
+
+    private int mBufferSize;
+
+    private int mAllocationCount;
+
+    FrameBufferPool(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Sets the number of buffers in this pool. This takes effect on the next call to
+     * {@link #configure(int)}.
+     *
+     * @param capacity The number of buffers; must be at least 1.
+     */
+    synchronized void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        mCapacity = capacity;
+    }
+
+    /**
+     * Sets where the releasables of {@link #hold(byte[])} send their buffers. By default, they
+     * are {@link #release(byte[]) released} to this pool on the thread that releases the frame.
+     *
+     * @param recycler Receives the buffers instead of this pool.
+     * @param executor Runs {@code recycler}, or {@code null} to run it on the releasing thread.
+     */
+    void setRecycler(@Nullable Recycler recycler, @Nullable Executor executor) {
+        mRecycler = recycler;
+        mRecyclerExecutor = executor;
+    }
+
+    synchronized int getCapacity() {
+        return mCapacity;
+    }
+
+    synchronized int getBufferSize() {
+        return mBufferSize;
+    }
+
+    /**
+     * Prepares the pool to hand out buffers of {@code bufferSize} bytes. Buffers are only
+     * reallocated when the size or the capacity has changed; otherwise all the existing buffers
+     * that are not {@link #hold(byte[]) held} become available again.
+     *
+     * @param bufferSize The size of each buffer in bytes.
+     */
+    synchronized void configure(int bufferSize) {
+        if (bufferSize != mBufferSize || mBuffers.length != mCapacity) {
+            mBuffers = new byte[mCapacity][];
+            mHeld = new boolean[mCapacity];
+            mReleasables = new BufferReleasable[mCapacity];
+            for (int i = 0; i < mCapacity; i++) {
+                mBuffers[i] = new byte[bufferSize];
+                mReleasables[i] = new BufferReleasable(mBuffers[i]);
+            }
+            mAllocationCount += mCapacity;
+            mBufferSize = bufferSize;
+        }
+        mAvailable.clear();
+        for (int i = 0; i < mBuffers.length; i++) {
+            if (!mHeld[i]) {
+                mAvailable.add(mBuffers[i]);
+            }
+        }
+    }
+
+    /**
+     * @return A free buffer, or {@code null} if all the buffers are in use.
+     */
+    synchronized byte[] acquire() {
+        return mAvailable.poll();
+    }
+
+    /**
+     * Returns a buffer to this pool. Buffers from an earlier configuration are dropped.
+     *
+     * @param buffer The buffer previously obtained from {@link #acquire()}.
+     */
+    synchronized void release(byte[] buffer) {
+        final int index = indexOf(buffer);
+        if (index == -1) {
+            return;
+        }
+        mHeld[index] = false;
+        if (!mAvailable.contains(buffer)) {
+            mAvailable.add(buffer);
+        }
+    }
+
+    /**
+     * Marks a buffer as shared by frames, which keeps it out of {@link #configure(int)} until it
+     * is released or {@link #unhold(byte[]) unheld}.
+     *
+     * @return The releasable to hand out with the frames, which passes the buffer to the
+     * {@link Recycler} once released; the same instance every time for a given buffer. This is
+     * {@code null} if the buffer is from an earlier configuration.
+     */
+    @Nullable
+    synchronized Releasable hold(byte[] buffer) {
+        final int index = indexOf(buffer);
+        if (index == -1) {
+            return null;
+        }
+        mHeld[index] = true;
+        return mReleasables[index];
+    }
+
+    /**
+     * Clears the mark of {@link #hold(byte[])} without making the buffer available, for a buffer
+     * that goes back to the camera instead.
+     *
+     * @return {@code false} if the buffer is from an earlier configuration and has to be dropped.
+     */
+    synchronized boolean unhold(byte[] buffer) {
+        final int index = indexOf(buffer);
+        if (index == -1) {
+            return false;
+        }
+        mHeld[index] = false;
+        return true;
+    }
+
+    synchronized int getAvailableCount() {
+        return mAvailable.size();
+    }
+
+    private int indexOf(byte[] buffer) {
+        for (int i = 0; i < mBuffers.length; i++) {
+            if (mBuffers[i] == buffer) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The total number of buffers this pool has allocated since it was created.
+     */
+    synchronized int getAllocationCount() {
+        return mAllocationCount;
+    }
+
+    /**
+     * Gives back one buffer; it also serves as the task that runs on the recycler's executor.
+     */
+    private class BufferReleasable implements Releasable, Runnable {
+
+        private final byte[] mBuffer;
+
+        BufferReleasable(byte[] buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        public void release() {
+            final Executor executor = mRecyclerExecutor;
+            if (executor != null) {
+                executor.execute(this);
+            } else {
+                run();
+            }
+        }
+
+        @Override
+        public void run() {
+            final Recycler recycler = mRecycler;
+            if (recycler != null) {
+                recycler.recycle(mBuffer);
+            } else {
+                FrameBufferPool.this.release(mBuffer);
+            }
+        }
+
+    }
+
+}
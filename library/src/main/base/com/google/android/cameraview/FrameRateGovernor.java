@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which preview frames are delivered, so that frame consumers run at a target rate and
+ * within a share of the time.
+ *
+ * <p>The interval between delivered frames is the longer of the one of the target rate and the
+ * average time it takes to process a frame divided by the budget. With a budget of 0.25, an
+ * analyzer that takes 20 ms gets a frame every 80 ms at most. The camera asks before it converts
+ * a frame, so skipped frames cost nothing.</p>
+ *
+ * <p>Frames are paced on a schedule rather than by the time since the last one, with a tolerance
+ * of half the interval of the camera, so that jitter does not halve the rate.</p>
+ */
+public class FrameRateGovernor {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The weight of a new sample in the moving averages is 1 / 2^{@value}.
+     */
+    private static final int AVERAGE_SHIFT = 3;
+
+    private final float mTargetFrameRate;
+
+    private final float mCpuBudget;
+
+    private final long mTargetIntervalNanos;
+
+    // All the following fields are guarded by this
+
+    private long mAverageLatencyNanos = -1;
+
+    private long mSourceIntervalNanos = -1;
+
+    private long mLastFrameNanos;
+
+    private long mNextDueNanos;
+
+    private boolean mStarted;
+
+    private long mDeliveredCount;
+
+    private long mSkippedCount;
+
+    /**
+     * @param targetFrameRate The highest rate at which frames are delivered, per second.
+     * @param cpuBudget       The share of the time that processing the frames may take, above 0;
+     *                        1 lets a consumer be busy all the time.
+     */
+    public FrameRateGovernor(float targetFrameRate, float cpuBudget) {
+        if (!(targetFrameRate > 0)) {
+            throw new IllegalArgumentException("Invalid frame rate: " + targetFrameRate);
+        }
+        if (!(cpuBudget > 0)) {
+            throw new IllegalArgumentException("Invalid CPU budget: " + cpuBudget);
+        }
+        mTargetFrameRate = targetFrameRate;
+        mCpuBudget = cpuBudget;
+        mTargetIntervalNanos = (long) (NANOS_PER_SECOND / (double) targetFrameRate);
+    }
+
+    public float getTargetFrameRate() {
+        return mTargetFrameRate;
+    }
+
+    public float getCpuBudget() {
+        return mCpuBudget;
+    }
+
+    /**
+     * Reports how long it took to process a delivered frame. {@link CameraView} reports the time
+     * of its {@link FrameAnalysis}; other consumers can report theirs.
+     */
+    public synchronized void reportLatency(long latencyNanos) {
+        if (latencyNanos < 0) {
+            return;
+        }
+        mAverageLatencyNanos = average(mAverageLatencyNanos, latencyNanos);
+    }
+
+    /**
+     * @return The current interval between delivered frames.
+     */
+    public synchronized long getIntervalNanos() {
+        if (mAverageLatencyNanos <= 0) {
+            return mTargetIntervalNanos;
+        }
+        return Math.max(mTargetIntervalNanos, (long) (mAverageLatencyNanos / (double) mCpuBudget));
+    }
+
+    public synchronized long getDeliveredFrameCount() {
+        return mDeliveredCount;
+    }
+
+    public synchronized long getSkippedFrameCount() {
+        return mSkippedCount;
+    }
+
+    /**
+     * Called for each frame of the camera.
+     *
+     * @param nowNanos The current time, in {@link System#nanoTime()} units.
+     * @return {@code true} if the frame is to be delivered.
+     */
+    synchronized boolean shouldDeliver(long nowNanos) {
+        final long interval = getIntervalNanos();
+        if (mStarted) {
+            // Only gaps shorter than the interval matter for the tolerance; this keeps a stall of
+            // the camera from widening it
+            mSourceIntervalNanos = average(mSourceIntervalNanos,
+                    Math.min(nowNanos - mLastFrameNanos, interval));
+        }
+        mLastFrameNanos = nowNanos;
+        if (mStarted) {
+            final long tolerance = Math.min(mSourceIntervalNanos, interval) / 2;
+            if (nowNanos + tolerance < mNextDueNanos) {
+                mSkippedCount++;
+                return false;
+            }
+        }
+        // Keep to the schedule, unless it has fallen behind by a whole interval
+        if (mStarted && nowNanos - mNextDueNanos < interval) {
+            mNextDueNanos += interval;
+        } else {
+            mNextDueNanos = nowNanos + interval;
+        }
+        mStarted = true;
+        mDeliveredCount++;
+        return true;
+    }
+
+    private static long average(long average, long sample) {
+        if (average < 0) {
+            return sample;
+        }
+        return average + ((sample - average) >> AVERAGE_SHIFT);
+    }
+
+}
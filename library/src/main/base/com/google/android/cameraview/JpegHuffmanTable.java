@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * A Huffman table of a JPEG image, with the lookup structures to decode and encode with it.
+ */
+final class JpegHuffmanTable {
+
+    /**
+     * Codes up to this length are decoded with a single table lookup.
+     */
+    static final int LOOKAHEAD_BITS = 9;
+
+    private static final int MAX_CODE_LENGTH = 16;
+
+    /**
+     * The number of codes of each length; index 0 is unused.
+     */
+    final int[] mBits;
+
+    /**
+     * The symbols in the order of their codes.
+     */
+    final int[] mValues;
+
+    /**
+     * The length of the code in the upper bits and the symbol in the lower 8 bits, for each
+     * {@link #LOOKAHEAD_BITS}-bit prefix; 0 for prefixes of longer codes.
+     */
+    final int[] mLookahead = new int[1 << LOOKAHEAD_BITS];
+
+    /**
+     * The largest code of each length, or -1 if there is none.
+     */
+    final int[] mMaxCode = new int[MAX_CODE_LENGTH + 1];
+
+    /**
+     * Added to a code of each length to get the index of its symbol in {@link #mValues}.
+     */
+    final int[] mValueOffset = new int[MAX_CODE_LENGTH + 1];
+
+    /**
+     * The code of each symbol.
+     */
+    final int[] mCodes = new int[256];
+
+    /**
+     * The length of the code of each symbol, or 0 if the symbol has no code.
+     */
+    final int[] mLengths = new int[256];
+
+    /**
+     * @param bits   The number of codes of each length from 1 to 16, at indices 1 to 16.
+     * @param values The symbols in the order of their codes.
+     */
+    JpegHuffmanTable(int[] bits, int[] values) {
+        mBits = bits;
+        mValues = values;
+        int code = 0;
+        int k = 0;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            mValueOffset[length] = k - code;
+            for (int i = 0; i < bits[length]; i++, k++, code++) {
+                if (k >= values.length || code >= 1 << length) {
+                    throw new IllegalArgumentException("Bad Huffman table");
+                }
+                int symbol = values[k];
+                mCodes[symbol] = code;
+                mLengths[symbol] = length;
+                if (length <= LOOKAHEAD_BITS) {
+                    int shift = LOOKAHEAD_BITS - length;
+                    int prefix = code << shift;
+                    for (int j = 0; j < 1 << shift; j++) {
+                        mLookahead[prefix | j] = length << 8 | symbol;
+                    }
+                }
+            }
+            mMaxCode[length] = bits[length] > 0 ? code - 1 : -1;
+            code <<= 1;
+        }
+    }
+
+    /**
+     * Builds the table with the shortest codes for the symbol frequencies, as described in Annex
+     * K.2 of the JPEG specification.
+     *
+     * @param frequencies The number of occurrences of each of the 256 symbols.
+     */
+    static JpegHuffmanTable optimal(int[] frequencies) {
+        // One more symbol reserves the code of all ones, which is not allowed
+        final int[] freq = new int[257];
+        System.arraycopy(frequencies, 0, freq, 0, 256);
+        freq[256] = 1;
+        boolean empty = true;
+        for (int i = 0; i < 256; i++) {
+            if (freq[i] != 0) {
+                empty = false;
+                break;
+            }
+        }
+        if (empty) {
+            freq[0] = 1;
+        }
+        final int[] codeSize = new int[257];
+        final int[] others = new int[257];
+        for (int i = 0; i < 257; i++) {
+            others[i] = -1;
+        }
+        while (true) {
+            // The least frequent symbol, and the next one; ties go to the larger symbol
+            int c1 = -1;
+            long v = Long.MAX_VALUE;
+            for (int i = 0; i < 257; i++) {
+                if (freq[i] != 0 && freq[i] <= v) {
+                    v = freq[i];
+                    c1 = i;
+                }
+            }
+            int c2 = -1;
+            v = Long.MAX_VALUE;
+            for (int i = 0; i < 257; i++) {
+                if (freq[i] != 0 && freq[i] <= v && i != c1) {
+                    v = freq[i];
+                    c2 = i;
+                }
+            }
+            if (c2 < 0) {
+                break;
+            }
+            freq[c1] += freq[c2];
+            freq[c2] = 0;
+            codeSize[c1]++;
+            while (others[c1] >= 0) {
+                c1 = others[c1];
+                codeSize[c1]++;
+            }
+            others[c1] = c2;
+            codeSize[c2]++;
+            while (others[c2] >= 0) {
+                c2 = others[c2];
+                codeSize[c2]++;
+            }
+        }
+        final int[] bits = new int[33];
+        for (int i = 0; i < 257; i++) {
+            if (codeSize[i] != 0) {
+                bits[codeSize[i]]++;
+            }
+        }
+        // Shorten the codes that are longer than allowed
+        for (int i = 32; i > MAX_CODE_LENGTH; i--) {
+            while (bits[i] > 0) {
+                int j = i - 2;
+                while (bits[j] == 0) {
+                    j--;
+                }
+                bits[i] -= 2;
+                bits[i - 1]++;
+                bits[j + 1] += 2;
+                bits[j]--;
+            }
+        }
+        // Drop the reserved symbol, which has the longest code
+        int longest = MAX_CODE_LENGTH;
+        while (bits[longest] == 0) {
+            longest--;
+        }
+        bits[longest]--;
+        int count = 0;
+        for (int i = 1; i <= MAX_CODE_LENGTH; i++) {
+            count += bits[i];
+        }
+        final int[] values = new int[count];
+        int k = 0;
+        for (int length = 1; length <= 32; length++) {
+            for (int symbol = 0; symbol < 256; symbol++) {
+                if (codeSize[symbol] == length) {
+                    values[k++] = symbol;
+                }
+            }
+        }
+        final int[] tableBits = new int[MAX_CODE_LENGTH + 1];
+        System.arraycopy(bits, 1, tableBits, 1, MAX_CODE_LENGTH);
+        return new JpegHuffmanTable(tableBits, values);
+    }
+
+}
@@ -0,0 +1,939 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The quantized DCT coefficients of a JPEG image, with what is needed to write them back without
+ * going through pixels.
+ *
+ * <p>Only sequential, Huffman-coded, 8-bit images with a single scan are supported, which is what
+ * cameras produce. The coefficients of each component are kept in natural order for whole MCUs.
+ * Images are written with optimized Huffman tables and without restart markers. APPn and COM
+ * segments are kept as they are.</p>
+ */
+final class JpegImage {
+
+    private static final int TEM = 0x01;
+    private static final int SOF0 = 0xC0;
+    private static final int SOF1 = 0xC1;
+    private static final int DHT = 0xC4;
+    private static final int JPG = 0xC8;
+    private static final int DAC = 0xCC;
+    private static final int SOF15 = 0xCF;
+    private static final int RST0 = 0xD0;
+    private static final int RST7 = 0xD7;
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int DQT = 0xDB;
+    private static final int DRI = 0xDD;
+    private static final int APP0 = 0xE0;
+    private static final int APP15 = 0xEF;
+    private static final int COM = 0xFE;
+
+    /**
+     * The natural index of each coefficient in zigzag order.
+     */
+    static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10,
+            17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34,
+            27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36,
+            29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46,
+            53, 60, 61, 54, 47, 55, 62, 63,
+    };
+
+    /**
+     * A color component and its coefficients.
+     */
+    static final class Component {
+
+        final int mId;
+
+        final int mHorizontalSampling;
+
+        final int mVerticalSampling;
+
+        final int mQuantTable;
+
+        final int mBlocksWide;
+
+        final int mBlocksHigh;
+
+        /**
+         * 64 coefficients per block in natural order, with the blocks in rows. Images read with
+         * {@link #readDcOnly(byte[])} only have the DC coefficient of each block.
+         */
+        final short[] mCoefficients;
+
+        Component(int id, int horizontalSampling, int verticalSampling, int quantTable,
+                int blocksWide, int blocksHigh, short[] coefficients) {
+            mId = id;
+            mHorizontalSampling = horizontalSampling;
+            mVerticalSampling = verticalSampling;
+            mQuantTable = quantTable;
+            mBlocksWide = blocksWide;
+            mBlocksHigh = blocksHigh;
+            mCoefficients = coefficients;
+        }
+
+    }
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final Component[] mComponents;
+
+    /**
+     * Up to four quantization tables in natural order; {@code null} for undefined ones.
+     */
+    private final int[][] mQuantTables;
+
+    /**
+     * Whether each quantization table has 16-bit values.
+     */
+    private final boolean[] mQuantTables16Bit;
+
+    /**
+     * The APPn and COM segments, each with its marker.
+     */
+    private final List<byte[]> mMetadata;
+
+    private final int mMcuWidth;
+
+    private final int mMcuHeight;
+
+    private final boolean mDcOnly;
+
+    JpegImage(int width, int height, Component[] components, int[][] quantTables,
+            boolean[] quantTables16Bit, List<byte[]> metadata) {
+        this(width, height, components, quantTables, quantTables16Bit, metadata, false);
+    }
+
+    private JpegImage(int width, int height, Component[] components, int[][] quantTables,
+            boolean[] quantTables16Bit, List<byte[]> metadata, boolean dcOnly) {
+        mDcOnly = dcOnly;
+        mWidth = width;
+        mHeight = height;
+        mComponents = components;
+        mQuantTables = quantTables;
+        mQuantTables16Bit = quantTables16Bit;
+        mMetadata = metadata;
+        int maxH = 1;
+        int maxV = 1;
+        for (Component component : components) {
+            maxH = Math.max(maxH, component.mHorizontalSampling);
+            maxV = Math.max(maxV, component.mVerticalSampling);
+        }
+        mMcuWidth = 8 * maxH;
+        mMcuHeight = 8 * maxV;
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    int getMcuWidth() {
+        return mMcuWidth;
+    }
+
+    int getMcuHeight() {
+        return mMcuHeight;
+    }
+
+    Component[] getComponents() {
+        return mComponents;
+    }
+
+    int[][] getQuantTables() {
+        return mQuantTables;
+    }
+
+    boolean[] getQuantTables16Bit() {
+        return mQuantTables16Bit;
+    }
+
+    List<byte[]> getMetadata() {
+        return mMetadata;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the image is malformed or not supported.
+     */
+    static JpegImage read(byte[] jpeg) {
+        return read(jpeg, false);
+    }
+
+    /**
+     * Reads only the DC coefficient of each block, which is the average of its samples. This
+     * still has to go through all the entropy-coded data, but skips storing the rest. The image
+     * cannot be written.
+     *
+     * @throws IllegalArgumentException if the image is malformed or not supported.
+     */
+    static JpegImage readDcOnly(byte[] jpeg) {
+        return read(jpeg, true);
+    }
+
+    private static JpegImage read(byte[] jpeg, boolean dcOnly) {
+        try {
+            return new Reader(jpeg, dcOnly).read();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated JPEG image", e);
+        }
+    }
+
+    /**
+     * @param sizeHint The expected size of the image in bytes.
+     */
+    byte[] write(int sizeHint) {
+        if (mDcOnly) {
+            throw new IllegalStateException("The image only has DC coefficients");
+        }
+        final int count = mComponents.length;
+        final int tableCount = count > 1 ? 2 : 1;
+        final int[][] dcFrequencies = new int[tableCount][256];
+        final int[][] acFrequencies = new int[tableCount][256];
+        encodeScan(null, null, null, dcFrequencies, acFrequencies);
+        final JpegHuffmanTable[] dcTables = new JpegHuffmanTable[tableCount];
+        final JpegHuffmanTable[] acTables = new JpegHuffmanTable[tableCount];
+        for (int t = 0; t < tableCount; t++) {
+            dcTables[t] = JpegHuffmanTable.optimal(dcFrequencies[t]);
+            acTables[t] = JpegHuffmanTable.optimal(acFrequencies[t]);
+        }
+
+        final Writer out = new Writer(Math.max(sizeHint, 1024));
+        out.writeMarker(SOI);
+        for (byte[] segment : mMetadata) {
+            out.writeBytes(segment);
+        }
+        boolean has16Bit = false;
+        for (int t = 0; t < mQuantTables.length; t++) {
+            if (mQuantTables[t] == null) {
+                continue;
+            }
+            final boolean is16Bit = mQuantTables16Bit[t];
+            has16Bit |= is16Bit;
+            out.writeMarker(DQT);
+            out.writeShort(2 + 1 + (is16Bit ? 128 : 64));
+            out.writeByte((is16Bit ? 1 << 4 : 0) | t);
+            for (int k = 0; k < 64; k++) {
+                final int value = mQuantTables[t][ZIGZAG[k]];
+                if (is16Bit) {
+                    out.writeShort(value);
+                } else {
+                    out.writeByte(value);
+                }
+            }
+        }
+        // Baseline only allows 8-bit quantization tables
+        out.writeMarker(has16Bit ? SOF1 : SOF0);
+        out.writeShort(8 + 3 * count);
+        out.writeByte(8);
+        out.writeShort(mHeight);
+        out.writeShort(mWidth);
+        out.writeByte(count);
+        for (Component component : mComponents) {
+            out.writeByte(component.mId);
+            out.writeByte(component.mHorizontalSampling << 4 | component.mVerticalSampling);
+            out.writeByte(component.mQuantTable);
+        }
+        int dhtLength = 2;
+        for (int t = 0; t < tableCount; t++) {
+            dhtLength += 2 * 17 + dcTables[t].mValues.length + acTables[t].mValues.length;
+        }
+        out.writeMarker(DHT);
+        out.writeShort(dhtLength);
+        for (int t = 0; t < tableCount; t++) {
+            writeHuffmanTable(out, t, dcTables[t]);
+            writeHuffmanTable(out, 1 << 4 | t, acTables[t]);
+        }
+        out.writeMarker(SOS);
+        out.writeShort(6 + 2 * count);
+        out.writeByte(count);
+        for (int c = 0; c < count; c++) {
+            final int t = Math.min(c, tableCount - 1);
+            out.writeByte(mComponents[c].mId);
+            out.writeByte(t << 4 | t);
+        }
+        out.writeByte(0);
+        out.writeByte(63);
+        out.writeByte(0);
+        encodeScan(out, dcTables, acTables, null, null);
+        out.flushBits();
+        out.writeMarker(EOI);
+        return out.toByteArray();
+    }
+
+    private static void writeHuffmanTable(Writer out, int classAndId, JpegHuffmanTable table) {
+        out.writeByte(classAndId);
+        for (int length = 1; length <= 16; length++) {
+            out.writeByte(table.mBits[length]);
+        }
+        for (int value : table.mValues) {
+            out.writeByte(value);
+        }
+    }
+
+    /**
+     * Entropy-codes the coefficients to {@code out}, or only counts the symbols if {@code out} is
+     * {@code null}. The first component uses the tables at index 0, the others at index 1.
+     */
+    private void encodeScan(Writer out, JpegHuffmanTable[] dcTables, JpegHuffmanTable[] acTables,
+            int[][] dcFrequencies, int[][] acFrequencies) {
+        final int count = mComponents.length;
+        final int[] predictors = new int[count];
+        final int mcusWide = (mWidth + mMcuWidth - 1) / mMcuWidth;
+        final int mcusHigh = (mHeight + mMcuHeight - 1) / mMcuHeight;
+        for (int mcuY = 0; mcuY < mcusHigh; mcuY++) {
+            for (int mcuX = 0; mcuX < mcusWide; mcuX++) {
+                for (int c = 0; c < count; c++) {
+                    final Component component = mComponents[c];
+                    final int t = c == 0 ? 0 : 1;
+                    final int h = component.mHorizontalSampling;
+                    final int v = component.mVerticalSampling;
+                    final short[] coefficients = component.mCoefficients;
+                    for (int by = 0; by < v; by++) {
+                        for (int bx = 0; bx < h; bx++) {
+                            final int offset = ((mcuY * v + by) * component.mBlocksWide
+                                    + mcuX * h + bx) * 64;
+                            final int dc = coefficients[offset];
+                            final int diff = dc - predictors[c];
+                            predictors[c] = dc;
+                            if (out == null) {
+                                countBlock(coefficients, offset, diff, dcFrequencies[t],
+                                        acFrequencies[t]);
+                            } else {
+                                encodeBlock(out, coefficients, offset, diff, dcTables[t],
+                                        acTables[t]);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void countBlock(short[] coefficients, int offset, int diff,
+            int[] dcFrequencies, int[] acFrequencies) {
+        dcFrequencies[category(diff)]++;
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            final int value = coefficients[offset + ZIGZAG[k]];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                acFrequencies[0xF0]++;
+                run -= 16;
+            }
+            acFrequencies[run << 4 | category(value)]++;
+            run = 0;
+        }
+        if (run > 0) {
+            acFrequencies[0]++;
+        }
+    }
+
+    private static void encodeBlock(Writer out, short[] coefficients, int offset, int diff,
+            JpegHuffmanTable dcTable, JpegHuffmanTable acTable) {
+        int size = category(diff);
+        out.writeBits(dcTable.mCodes[size], dcTable.mLengths[size]);
+        if (size != 0) {
+            out.writeBits(diff < 0 ? diff - 1 : diff, size);
+        }
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            final int value = coefficients[offset + ZIGZAG[k]];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                out.writeBits(acTable.mCodes[0xF0], acTable.mLengths[0xF0]);
+                run -= 16;
+            }
+            size = category(value);
+            final int symbol = run << 4 | size;
+            out.writeBits(acTable.mCodes[symbol], acTable.mLengths[symbol]);
+            out.writeBits(value < 0 ? value - 1 : value, size);
+            run = 0;
+        }
+        if (run > 0) {
+            out.writeBits(acTable.mCodes[0], acTable.mLengths[0]);
+        }
+    }
+
+    /**
+     * @return The number of bits of the magnitude of {@code value}.
+     */
+    private static int category(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value < 0 ? -value : value);
+    }
+
+    /**
+     * Parses the segments of an image and decodes its scan.
+     */
+    private static final class Reader {
+
+        private final byte[] mData;
+
+        private int mPosition;
+
+        private final List<byte[]> mMetadata = new ArrayList<>();
+
+        private final int[][] mQuantTables = new int[4][];
+
+        private final boolean[] mQuantTables16Bit = new boolean[4];
+
+        private final JpegHuffmanTable[] mDcTables = new JpegHuffmanTable[4];
+
+        private final JpegHuffmanTable[] mAcTables = new JpegHuffmanTable[4];
+
+        private int mRestartInterval;
+
+        private int mWidth;
+
+        private int mHeight;
+
+        private int mMcuWidth;
+
+        private int mMcuHeight;
+
+        private Component[] mComponents;
+
+        private boolean mScanned;
+
+        private final boolean mDcOnly;
+
+        Reader(byte[] data, boolean dcOnly) {
+            mData = data;
+            mDcOnly = dcOnly;
+        }
+
+        JpegImage read() {
+            if (mData.length < 4 || u8(0) != 0xFF || u8(1) != SOI) {
+                throw new IllegalArgumentException("Not a JPEG image");
+            }
+            mPosition = 2;
+            while (true) {
+                final int marker = nextMarker();
+                if (marker == EOI) {
+                    break;
+                }
+                if (marker >= RST0 && marker <= RST7 || marker == TEM) {
+                    // Markers without a segment
+                    continue;
+                }
+                final int length = u16(mPosition);
+                final int start = mPosition + 2;
+                final int end = mPosition + length;
+                if (length < 2 || end > mData.length) {
+                    throw new IllegalArgumentException("Truncated JPEG image");
+                }
+                if (marker >= APP0 && marker <= APP15 || marker == COM) {
+                    mMetadata.add(Arrays.copyOfRange(mData, mPosition - 2, end));
+                } else if (marker == DQT) {
+                    readQuantTables(start, end);
+                } else if (marker == DHT) {
+                    readHuffmanTables(start, end);
+                } else if (marker == SOF0 || marker == SOF1) {
+                    readFrame(start, end);
+                } else if (marker == DRI) {
+                    mRestartInterval = u16(start);
+                } else if (marker == SOS) {
+                    mPosition = readScan(start, end);
+                    continue;
+                } else if (marker > SOF1 && marker <= SOF15 && marker != DHT && marker != JPG
+                        && marker != DAC) {
+                    throw new IllegalArgumentException(
+                            "Unsupported JPEG coding process: SOF" + (marker - SOF0));
+                }
+                // Any other segment is dropped
+                mPosition = end;
+            }
+            if (!mScanned) {
+                throw new IllegalArgumentException("JPEG image without a scan");
+            }
+            return new JpegImage(mWidth, mHeight, mComponents, mQuantTables, mQuantTables16Bit,
+                    mMetadata, mDcOnly);
+        }
+
+        /**
+         * @return The next marker, skipping fill bytes. {@link #mPosition} is moved past it.
+         */
+        private int nextMarker() {
+            if (u8(mPosition) != 0xFF) {
+                throw new IllegalArgumentException("Corrupt JPEG image");
+            }
+            while (u8(mPosition) == 0xFF) {
+                mPosition++;
+            }
+            return u8(mPosition++);
+        }
+
+        private void readQuantTables(int position, int end) {
+            while (position < end) {
+                final int pqTq = u8(position++);
+                final int table = pqTq & 0x0F;
+                final boolean is16Bit = pqTq >> 4 != 0;
+                if (table > 3) {
+                    throw new IllegalArgumentException("Bad quantization table: " + table);
+                }
+                final int[] values = new int[64];
+                for (int k = 0; k < 64; k++) {
+                    values[ZIGZAG[k]] = is16Bit ? u16(position) : u8(position);
+                    position += is16Bit ? 2 : 1;
+                }
+                mQuantTables[table] = values;
+                mQuantTables16Bit[table] = is16Bit;
+            }
+        }
+
+        private void readHuffmanTables(int position, int end) {
+            while (position < end) {
+                final int tcTh = u8(position++);
+                final int table = tcTh & 0x0F;
+                if (table > 3 || tcTh >> 4 > 1) {
+                    throw new IllegalArgumentException("Bad Huffman table: " + tcTh);
+                }
+                final int[] bits = new int[17];
+                int count = 0;
+                for (int length = 1; length <= 16; length++) {
+                    bits[length] = u8(position++);
+                    count += bits[length];
+                }
+                if (count > 256) {
+                    throw new IllegalArgumentException("Bad Huffman table");
+                }
+                final int[] values = new int[count];
+                for (int i = 0; i < count; i++) {
+                    values[i] = u8(position++);
+                }
+                final JpegHuffmanTable huffmanTable = new JpegHuffmanTable(bits, values);
+                if (tcTh >> 4 == 0) {
+                    mDcTables[table] = huffmanTable;
+                } else {
+                    mAcTables[table] = huffmanTable;
+                }
+            }
+        }
+
+        private void readFrame(int position, int end) {
+            if (mComponents != null) {
+                throw new IllegalArgumentException("JPEG image with several frames");
+            }
+            final int precision = u8(position);
+            if (precision != 8) {
+                throw new IllegalArgumentException("Unsupported sample precision: " + precision);
+            }
+            mHeight = u16(position + 1);
+            mWidth = u16(position + 3);
+            final int count = u8(position + 5);
+            if (mWidth == 0 || mHeight == 0) {
+                throw new IllegalArgumentException(
+                        "Unsupported image size: " + mWidth + "x" + mHeight);
+            }
+            if (count < 1 || count > 4 || position + 6 + 3 * count > end) {
+                throw new IllegalArgumentException("Bad JPEG frame");
+            }
+            final int[] ids = new int[count];
+            final int[] h = new int[count];
+            final int[] v = new int[count];
+            final int[] quantTables = new int[count];
+            int maxH = 1;
+            int maxV = 1;
+            for (int c = 0; c < count; c++) {
+                final int offset = position + 6 + 3 * c;
+                ids[c] = u8(offset);
+                // A single component is not interleaved, so its MCU is one block
+                h[c] = count == 1 ? 1 : u8(offset + 1) >> 4;
+                v[c] = count == 1 ? 1 : u8(offset + 1) & 0x0F;
+                quantTables[c] = u8(offset + 2);
+                if (h[c] < 1 || h[c] > 4 || v[c] < 1 || v[c] > 4 || quantTables[c] > 3) {
+                    throw new IllegalArgumentException("Bad JPEG frame");
+                }
+                maxH = Math.max(maxH, h[c]);
+                maxV = Math.max(maxV, v[c]);
+            }
+            mMcuWidth = 8 * maxH;
+            mMcuHeight = 8 * maxV;
+            final int mcusWide = (mWidth + mMcuWidth - 1) / mMcuWidth;
+            final int mcusHigh = (mHeight + mMcuHeight - 1) / mMcuHeight;
+            mComponents = new Component[count];
+            for (int c = 0; c < count; c++) {
+                final int blocksWide = mcusWide * h[c];
+                final int blocksHigh = mcusHigh * v[c];
+                mComponents[c] = new Component(ids[c], h[c], v[c], quantTables[c], blocksWide,
+                        blocksHigh, new short[blocksWide * blocksHigh * (mDcOnly ? 1 : 64)]);
+            }
+        }
+
+        /**
+         * @return The position of the marker that follows the entropy-coded data.
+         */
+        private int readScan(int position, int end) {
+            if (mComponents == null) {
+                throw new IllegalArgumentException("JPEG scan before the frame");
+            }
+            final int count = u8(position);
+            if (mScanned || count != mComponents.length) {
+                throw new IllegalArgumentException("Multiple JPEG scans are not supported");
+            }
+            if (position + 1 + 2 * count + 3 > end) {
+                throw new IllegalArgumentException("Bad JPEG scan");
+            }
+            final Component[] components = new Component[count];
+            final JpegHuffmanTable[] dcTables = new JpegHuffmanTable[count];
+            final JpegHuffmanTable[] acTables = new JpegHuffmanTable[count];
+            for (int i = 0; i < count; i++) {
+                final int id = u8(position + 1 + 2 * i);
+                final int tables = u8(position + 2 + 2 * i);
+                for (Component component : mComponents) {
+                    if (component.mId == id) {
+                        components[i] = component;
+                    }
+                }
+                if (components[i] == null || (tables >> 4) > 3 || (tables & 0x0F) > 3) {
+                    throw new IllegalArgumentException("Bad JPEG scan");
+                }
+                dcTables[i] = mDcTables[tables >> 4];
+                acTables[i] = mAcTables[tables & 0x0F];
+                if (dcTables[i] == null || acTables[i] == null) {
+                    throw new IllegalArgumentException("Missing Huffman table");
+                }
+            }
+            final int spectral = position + 1 + 2 * count;
+            if (u8(spectral) != 0 || u8(spectral + 1) != 63 || u8(spectral + 2) != 0) {
+                throw new IllegalArgumentException("Unsupported JPEG scan");
+            }
+            mScanned = true;
+
+            final BitReader reader = new BitReader(mData, end);
+            final int[] predictors = new int[count];
+            final int mcusWide = (mWidth + mMcuWidth - 1) / mMcuWidth;
+            final int mcusHigh = (mHeight + mMcuHeight - 1) / mMcuHeight;
+            int untilRestart = mRestartInterval;
+            int restart = 0;
+            for (int mcuY = 0; mcuY < mcusHigh; mcuY++) {
+                for (int mcuX = 0; mcuX < mcusWide; mcuX++) {
+                    if (mRestartInterval != 0) {
+                        if (untilRestart == 0) {
+                            reader.restart(restart);
+                            restart = (restart + 1) & 7;
+                            Arrays.fill(predictors, 0);
+                            untilRestart = mRestartInterval;
+                        }
+                        untilRestart--;
+                    }
+                    for (int i = 0; i < count; i++) {
+                        final Component component = components[i];
+                        final int h = component.mHorizontalSampling;
+                        final int v = component.mVerticalSampling;
+                        for (int by = 0; by < v; by++) {
+                            for (int bx = 0; bx < h; bx++) {
+                                final int block = (mcuY * v + by) * component.mBlocksWide
+                                        + mcuX * h + bx;
+                                if (mDcOnly) {
+                                    predictors[i] = decodeDc(reader, component.mCoefficients,
+                                            block, predictors[i], dcTables[i], acTables[i]);
+                                } else {
+                                    predictors[i] = decodeBlock(reader, component.mCoefficients,
+                                            block * 64, predictors[i], dcTables[i], acTables[i]);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            // Skip to the next marker that is not a restart marker
+            int next = reader.getPosition();
+            while (u8(next) != 0xFF || u8(next + 1) == 0 || u8(next + 1) == 0xFF
+                    || (u8(next + 1) >= RST0 && u8(next + 1) <= RST7)) {
+                next++;
+            }
+            return next;
+        }
+
+        /**
+         * @return The DC coefficient of the block, which predicts the next one.
+         */
+        private static int decodeBlock(BitReader reader, short[] coefficients, int offset,
+                int predictor, JpegHuffmanTable dcTable, JpegHuffmanTable acTable) {
+            int size = reader.decode(dcTable);
+            final int dc = predictor + (size == 0 ? 0 : reader.receiveExtend(size));
+            coefficients[offset] = (short) dc;
+            for (int k = 1; k < 64; k++) {
+                final int symbol = reader.decode(acTable);
+                final int run = symbol >> 4;
+                size = symbol & 0x0F;
+                if (size == 0) {
+                    if (run != 15) {
+                        break;
+                    }
+                    k += 15;
+                    continue;
+                }
+                k += run;
+                if (k > 63) {
+                    throw new IllegalArgumentException("Corrupt JPEG data");
+                }
+                coefficients[offset + ZIGZAG[k]] = (short) reader.receiveExtend(size);
+            }
+            return dc;
+        }
+
+        /**
+         * Like {@link #decodeBlock}, but only stores the DC coefficient and skips the others.
+         */
+        private static int decodeDc(BitReader reader, short[] coefficients, int block,
+                int predictor, JpegHuffmanTable dcTable, JpegHuffmanTable acTable) {
+            int size = reader.decode(dcTable);
+            final int dc = predictor + (size == 0 ? 0 : reader.receiveExtend(size));
+            coefficients[block] = (short) dc;
+            for (int k = 1; k < 64; k++) {
+                final int symbol = reader.decode(acTable);
+                size = symbol & 0x0F;
+                if (size == 0) {
+                    if (symbol >> 4 != 15) {
+                        break;
+                    }
+                    k += 15;
+                    continue;
+                }
+                k += symbol >> 4;
+                reader.skipBits(size);
+            }
+            return dc;
+        }
+
+        private int u8(int position) {
+            return mData[position] & 0xFF;
+        }
+
+        private int u16(int position) {
+            return (mData[position] & 0xFF) << 8 | (mData[position + 1] & 0xFF);
+        }
+
+    }
+
+    /**
+     * Reads the bits of entropy-coded data, removing stuffed bytes.
+     */
+    private static final class BitReader {
+
+        private final byte[] mData;
+
+        private int mPosition;
+
+        /**
+         * The next bits, starting from the most significant one.
+         */
+        private int mBuffer;
+
+        private int mBitCount;
+
+        /**
+         * Whether a marker ends the data; zeros are read after it.
+         */
+        private boolean mAtMarker;
+
+        BitReader(byte[] data, int position) {
+            mData = data;
+            mPosition = position;
+        }
+
+        int getPosition() {
+            return mPosition;
+        }
+
+        private void fill() {
+            while (mBitCount <= 24) {
+                int b = 0;
+                if (!mAtMarker) {
+                    if (mPosition >= mData.length) {
+                        throw new IllegalArgumentException("Truncated JPEG image");
+                    }
+                    b = mData[mPosition] & 0xFF;
+                    if (b == 0xFF) {
+                        if (mPosition + 1 >= mData.length) {
+                            throw new IllegalArgumentException("Truncated JPEG image");
+                        }
+                        if (mData[mPosition + 1] == 0) {
+                            mPosition += 2;
+                        } else {
+                            mAtMarker = true;
+                            b = 0;
+                        }
+                    } else {
+                        mPosition++;
+                    }
+                }
+                mBuffer |= b << (24 - mBitCount);
+                mBitCount += 8;
+            }
+        }
+
+        int decode(JpegHuffmanTable table) {
+            if (mBitCount < 16) {
+                fill();
+            }
+            final int entry = table.mLookahead[mBuffer >>> (32 - JpegHuffmanTable.LOOKAHEAD_BITS)];
+            if (entry != 0) {
+                skip(entry >> 8);
+                return entry & 0xFF;
+            }
+            for (int length = JpegHuffmanTable.LOOKAHEAD_BITS + 1; length <= 16; length++) {
+                final int code = mBuffer >>> (32 - length);
+                if (code <= table.mMaxCode[length]) {
+                    skip(length);
+                    return table.mValues[code + table.mValueOffset[length]];
+                }
+            }
+            throw new IllegalArgumentException("Corrupt JPEG data");
+        }
+
+        int receiveExtend(int size) {
+            if (mBitCount < size) {
+                fill();
+            }
+            final int value = mBuffer >>> (32 - size);
+            skip(size);
+            return value < 1 << (size - 1) ? value - (1 << size) + 1 : value;
+        }
+
+        void skipBits(int count) {
+            if (mBitCount < count) {
+                fill();
+            }
+            skip(count);
+        }
+
+        private void skip(int count) {
+            mBuffer <<= count;
+            mBitCount -= count;
+        }
+
+        /**
+         * Discards the bits left before a restart marker and reads the marker.
+         */
+        void restart(int expected) {
+            mBuffer = 0;
+            mBitCount = 0;
+            mAtMarker = false;
+            while (mPosition + 1 < mData.length && (mData[mPosition + 1] & 0xFF) == 0xFF) {
+                mPosition++;
+            }
+            if (mPosition + 1 >= mData.length || (mData[mPosition] & 0xFF) != 0xFF
+                    || (mData[mPosition + 1] & 0xFF) != RST0 + expected) {
+                throw new IllegalArgumentException("Missing restart marker");
+            }
+            mPosition += 2;
+        }
+
+    }
+
+    /**
+     * Writes bytes and entropy-coded bits to a growing array.
+     */
+    private static final class Writer {
+
+        private byte[] mData;
+
+        private int mSize;
+
+        private int mBuffer;
+
+        private int mBitCount;
+
+        Writer(int capacity) {
+            mData = new byte[capacity];
+        }
+
+        private void ensureCapacity(int extra) {
+            if (mSize + extra > mData.length) {
+                mData = Arrays.copyOf(mData, Math.max(mData.length * 2, mSize + extra));
+            }
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            mData[mSize++] = (byte) value;
+        }
+
+        void writeShort(int value) {
+            ensureCapacity(2);
+            mData[mSize++] = (byte) (value >> 8);
+            mData[mSize++] = (byte) value;
+        }
+
+        void writeMarker(int marker) {
+            writeShort(0xFF00 | marker);
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, mData, mSize, bytes.length);
+            mSize += bytes.length;
+        }
+
+        /**
+         * Writes the lower {@code count} bits of {@code bits}, stuffing a zero after each 0xFF.
+         */
+        void writeBits(int bits, int count) {
+            mBuffer = mBuffer << count | (bits & ((1 << count) - 1));
+            mBitCount += count;
+            while (mBitCount >= 8) {
+                final int b = (mBuffer >> (mBitCount - 8)) & 0xFF;
+                ensureCapacity(2);
+                mData[mSize++] = (byte) b;
+                if (b == 0xFF) {
+                    mData[mSize++] = 0;
+                }
+                mBitCount -= 8;
+            }
+            mBuffer &= (1 << mBitCount) - 1;
+        }
+
+        /**
+         * Pads the last byte with ones.
+         */
+        void flushBits() {
+            if (mBitCount > 0) {
+                writeBits(0x7F, 8 - mBitCount);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(mData, mSize);
+        }
+
+    }
+
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rotates and crops JPEG images without decoding them to pixels, the way {@code jpegtran} does.
+ *
+ * <p>The quantized DCT coefficients are moved between blocks and some of them change their sign,
+ * so no quality is lost, and it takes a fraction of the time of decoding and encoding the image.
+ * The price is that crops snap to the MCU grid, which is 8 or 16 pixels for pictures from
+ * cameras. Also, when a rotation would move a partial MCU at the right or bottom edge of the image
+ * to the left or top, that MCU is trimmed, like {@code jpegtran -trim} does.</p>
+ *
+ * <p>Only sequential images with a single scan are supported, which is what cameras produce.
+ * Metadata segments are kept; when an image is rotated, its EXIF orientation is set to normal.</p>
+ *
+ * <p>A 12-megapixel picture takes about 40 MB of memory while it is transformed, so the default
+ * pool runs two transformations at a time.</p>
+ */
+public class JpegTransformer {
+
+    /**
+     * Receives the outcome of a transformation, on the thread that ran it.
+     */
+    public interface Listener {
+
+        void onJpegTransformed(@NonNull byte[] jpeg);
+
+        void onJpegTransformFailed(@NonNull IllegalArgumentException e);
+
+    }
+
+    private static final int DEFAULT_THREAD_COUNT = 2;
+
+    private static final long IDLE_TIMEOUT_SECONDS = 10;
+
+    /**
+     * The source index of each coefficient of a block and whether it is negated, for each
+     * multiple of 90 degrees. Transposing the coefficients transposes the block, and negating the
+     * odd horizontal or vertical frequencies mirrors it.
+     */
+    private static final int[][] COEFFICIENT_SOURCES = new int[4][64];
+
+    private static final boolean[][] COEFFICIENT_NEGATED = new boolean[4][64];
+
+    static {
+        for (int row = 0; row < 8; row++) {
+            for (int column = 0; column < 8; column++) {
+                final int i = row * 8 + column;
+                final int transposed = column * 8 + row;
+                COEFFICIENT_SOURCES[0][i] = i;
+                // 90: transpose, then mirror horizontally
+                COEFFICIENT_SOURCES[1][i] = transposed;
+                COEFFICIENT_NEGATED[1][i] = (column & 1) != 0;
+                // 180: mirror both ways
+                COEFFICIENT_SOURCES[2][i] = i;
+                COEFFICIENT_NEGATED[2][i] = ((row + column) & 1) != 0;
+                // 270: transpose, then mirror vertically
+                COEFFICIENT_SOURCES[3][i] = transposed;
+                COEFFICIENT_NEGATED[3][i] = (row & 1) != 0;
+            }
+        }
+    }
+
+    private final Executor mExecutor;
+
+    /**
+     * Creates a transformer with a pool of two threads, which exit when they are idle.
+     */
+    public JpegTransformer() {
+        this(createDefaultExecutor());
+    }
+
+    /**
+     * @param executor Runs the transformations.
+     */
+    public JpegTransformer(@NonNull Executor executor) {
+        mExecutor = executor;
+    }
+
+    private static Executor createDefaultExecutor() {
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_THREAD_COUNT,
+                DEFAULT_THREAD_COUNT, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                return new Thread(runnable, "JpegTransformer-" + count.incrementAndGet());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Rotates an image in the background.
+     *
+     * @see #transform(byte[], int)
+     */
+    public void submit(@NonNull byte[] jpeg, int rotation, @NonNull Listener listener) {
+        checkRotation(rotation);
+        execute(jpeg, rotation, 0, 0, -1, -1, listener);
+    }
+
+    /**
+     * Crops and rotates an image in the background.
+     *
+     * @see #transform(byte[], int, int, int, int, int)
+     */
+    public void submit(@NonNull byte[] jpeg, int rotation, int left, int top, int width,
+            int height, @NonNull Listener listener) {
+        checkRotation(rotation);
+        checkCropSize(width, height);
+        execute(jpeg, rotation, left, top, width, height, listener);
+    }
+
+    private void execute(final byte[] jpeg, final int rotation, final int left, final int top,
+            final int width, final int height, final Listener listener) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final byte[] result;
+                try {
+                    result = transform(JpegImage.read(jpeg), jpeg.length, rotation, left, top,
+                            width, height);
+                } catch (IllegalArgumentException e) {
+                    listener.onJpegTransformFailed(e);
+                    return;
+                }
+                listener.onJpegTransformed(result);
+            }
+        });
+    }
+
+    /**
+     * Rotates an image.
+     *
+     * @param jpeg     The image.
+     * @param rotation The clockwise rotation in degrees; a multiple of 90.
+     * @return The rotated image.
+     * @throws IllegalArgumentException if the image is malformed or not supported.
+     */
+    @NonNull
+    public static byte[] transform(@NonNull byte[] jpeg, int rotation) {
+        checkRotation(rotation);
+        return transform(JpegImage.read(jpeg), jpeg.length, rotation, 0, 0, -1, -1);
+    }
+
+    /**
+     * Crops and then rotates an image. The crop is in the coordinates of the image before the
+     * rotation. Its top left corner moves up and left to the MCU grid.
+     *
+     * @param jpeg     The image.
+     * @param rotation The clockwise rotation in degrees; a multiple of 90.
+     * @return The cropped and rotated image.
+     * @throws IllegalArgumentException if the image is malformed or not supported, or if the crop
+     *                                  is not within the image.
+     */
+    @NonNull
+    public static byte[] transform(@NonNull byte[] jpeg, int rotation, int left, int top,
+            int width, int height) {
+        checkRotation(rotation);
+        checkCropSize(width, height);
+        return transform(JpegImage.read(jpeg), jpeg.length, rotation, left, top, width, height);
+    }
+
+    /**
+     * @return The clockwise rotation from the EXIF orientation of an image, or 0 if it has none.
+     * Passing it to {@link #transform(byte[], int)} makes the image upright.
+     */
+    public static int getExifRotation(@NonNull byte[] jpeg) {
+        return ExifOrientation.toDegrees(ExifOrientation.read(ByteBuffer.wrap(jpeg)));
+    }
+
+    private static void checkRotation(int rotation) {
+        if (rotation % 90 != 0) {
+            throw new IllegalArgumentException("Rotation must be a multiple of 90: " + rotation);
+        }
+    }
+
+    private static void checkCropSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Empty crop: " + width + "x" + height);
+        }
+    }
+
+    /**
+     * @param width A negative width and height select the whole image.
+     */
+    private static byte[] transform(JpegImage image, int sizeHint, int rotation, int left,
+            int top, int width, int height) {
+        final int imageWidth = image.getWidth();
+        final int imageHeight = image.getHeight();
+        if (width < 0) {
+            width = imageWidth;
+            height = imageHeight;
+        }
+        if (left < 0 || top < 0 || left + width > imageWidth || top + height > imageHeight) {
+            throw new IllegalArgumentException("Crop " + width + "x" + height + "+" + left + "+"
+                    + top + " is not within " + imageWidth + "x" + imageHeight);
+        }
+        final int quarter = (rotation / 90 % 4 + 4) % 4;
+        final int mcuWidth = image.getMcuWidth();
+        final int mcuHeight = image.getMcuHeight();
+        final int x = left / mcuWidth * mcuWidth;
+        final int y = top / mcuHeight * mcuHeight;
+        width += left - x;
+        height += top - y;
+        // The edges that end up at the left or the top must be made of whole MCUs
+        if (quarter == 2 || quarter == 3) {
+            width = alignToMcus(x, width, imageWidth, mcuWidth);
+        }
+        if (quarter == 1 || quarter == 2) {
+            height = alignToMcus(y, height, imageHeight, mcuHeight);
+        }
+        final boolean transposed = (quarter & 1) != 0;
+        final int mcusWide = (width + mcuWidth - 1) / mcuWidth;
+        final int mcusHigh = (height + mcuHeight - 1) / mcuHeight;
+        final int[] sources = COEFFICIENT_SOURCES[quarter];
+        final boolean[] negated = COEFFICIENT_NEGATED[quarter];
+
+        final JpegImage.Component[] inputs = image.getComponents();
+        final JpegImage.Component[] outputs = new JpegImage.Component[inputs.length];
+        for (int c = 0; c < inputs.length; c++) {
+            final JpegImage.Component input = inputs[c];
+            final int h = input.mHorizontalSampling;
+            final int v = input.mVerticalSampling;
+            final int regionWide = mcusWide * h;
+            final int regionHigh = mcusHigh * v;
+            final int x0 = x / mcuWidth * h;
+            final int y0 = y / mcuHeight * v;
+            final int blocksWide = transposed ? regionHigh : regionWide;
+            final int blocksHigh = transposed ? regionWide : regionHigh;
+            final short[] in = input.mCoefficients;
+            final short[] out = new short[blocksWide * blocksHigh * 64];
+            for (int by = 0; by < blocksHigh; by++) {
+                for (int bx = 0; bx < blocksWide; bx++) {
+                    final int sx;
+                    final int sy;
+                    switch (quarter) {
+                        case 1:
+                            sx = by;
+                            sy = regionHigh - 1 - bx;
+                            break;
+                        case 2:
+                            sx = regionWide - 1 - bx;
+                            sy = regionHigh - 1 - by;
+                            break;
+                        case 3:
+                            sx = regionWide - 1 - by;
+                            sy = bx;
+                            break;
+                        default:
+                            sx = bx;
+                            sy = by;
+                            break;
+                    }
+                    final int source = ((y0 + sy) * input.mBlocksWide + x0 + sx) * 64;
+                    final int target = (by * blocksWide + bx) * 64;
+                    if (quarter == 0) {
+                        System.arraycopy(in, source, out, target, 64);
+                        continue;
+                    }
+                    for (int i = 0; i < 64; i++) {
+                        final short value = in[source + sources[i]];
+                        out[target + i] = negated[i] ? (short) -value : value;
+                    }
+                }
+            }
+            outputs[c] = new JpegImage.Component(input.mId, transposed ? v : h,
+                    transposed ? h : v, input.mQuantTable, blocksWide, blocksHigh, out);
+        }
+
+        final int[][] quantTables = image.getQuantTables().clone();
+        if (transposed) {
+            for (int t = 0; t < quantTables.length; t++) {
+                if (quantTables[t] != null) {
+                    quantTables[t] = transpose(quantTables[t]);
+                }
+            }
+        }
+        final JpegImage result = new JpegImage(transposed ? height : width,
+                transposed ? width : height, outputs, quantTables, image.getQuantTables16Bit(),
+                image.getMetadata());
+        final byte[] jpeg = result.write(sizeHint);
+        if (quarter != 0) {
+            ExifOrientation.patch(ByteBuffer.wrap(jpeg), 0);
+        }
+        return jpeg;
+    }
+
+    /**
+     * Extends a span to whole MCUs if the image has them, or else drops its partial MCU at the
+     * edge of the image. Spans shorter than an MCU are kept as they are.
+     */
+    private static int alignToMcus(int start, int length, int imageLength, int mcuLength) {
+        final int aligned = (length + mcuLength - 1) / mcuLength * mcuLength;
+        if (start + aligned <= imageLength) {
+            return aligned;
+        }
+        return aligned > mcuLength ? aligned - mcuLength : length;
+    }
+
+    private static int[] transpose(int[] table) {
+        final int[] transposed = new int[64];
+        for (int row = 0; row < 8; row++) {
+            for (int column = 0; column < 8; column++) {
+                transposed[row * 8 + column] = table[column * 8 + row];
+            }
+        }
+        return transposed;
+    }
+
+}
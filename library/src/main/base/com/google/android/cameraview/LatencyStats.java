@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import java.util.Locale;
+
+/**
+ * Immutable summary of the measured latencies of a camera operation.
+ */
+public final class LatencyStats {
+
+    static final LatencyStats EMPTY = new LatencyStats(0, 0, 0, 0, 0);
+
+    private final int mCount;
+
+    private final long mLastNanos;
+
+    private final long mMinNanos;
+
+    private final long mMaxNanos;
+
+    private final long mTotalNanos;
+
+    LatencyStats(int count, long lastNanos, long minNanos, long maxNanos, long totalNanos) {
+        mCount = count;
+        mLastNanos = lastNanos;
+        mMinNanos = minNanos;
+        mMaxNanos = maxNanos;
+        mTotalNanos = totalNanos;
+    }
+
+    /**
+     * @return The number of measurements.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return The latest measurement in milliseconds, or 0 if there is none.
+     */
+    public float getLastMillis() {
+        return toMillis(mLastNanos);
+    }
+
+    public float getMinMillis() {
+        return toMillis(mMinNanos);
+    }
+
+    public float getMaxMillis() {
+        return toMillis(mMaxNanos);
+    }
+
+    public float getAverageMillis() {
+        return mCount == 0 ? 0f : toMillis(mTotalNanos / mCount);
+    }
+
+    private static float toMillis(long nanos) {
+        return nanos / 1000000f;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "n=%d last=%.1fms avg=%.1fms min=%.1fms max=%.1fms",
+                mCount, getLastMillis(), getAverageMillis(), getMinMillis(), getMaxMillis());
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+/**
+ * Accumulates latency measurements of one camera operation.
+ *
+ * <p>An operation is measured from {@link #begin()} to {@link #end()}. Both can be called from
+ * any thread.</p>
+ */
+class LatencyTracker {
+
+    private long mStartNanos;
+
+    private int mCount;
+
+    private long mLastNanos;
+
+    private long mMinNanos;
+
+    private long mMaxNanos;
+
+    private long mTotalNanos;
+
+    /**
+     * Starts a measurement. A measurement that has not ended yet is discarded.
+     */
+    synchronized void begin() {
+        mStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Ends the current measurement. This does nothing if there is none.
+     *
+     * @return {@code true} if a measurement was recorded.
+     */
+    boolean end() {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (mStartNanos == 0) {
+                return false;
+            }
+            long start = mStartNanos;
+            mStartNanos = 0;
+            record(now - start);
+            return true;
+        }
+    }
+
+    /**
+     * @return Whether a measurement has begun and not ended yet.
+     */
+    synchronized boolean isMeasuring() {
+        return mStartNanos != 0;
+    }
+
+    /**
+     * Discards the current measurement, if any.
+     */
+    synchronized void cancel() {
+        mStartNanos = 0;
+    }
+
+    synchronized void record(long nanos) {
+        if (mCount == 0 || nanos < mMinNanos) {
+            mMinNanos = nanos;
+        }
+        if (nanos > mMaxNanos) {
+            mMaxNanos = nanos;
+        }
+        mCount++;
+        mLastNanos = nanos;
+        mTotalNanos += nanos;
+    }
+
+    synchronized LatencyStats getStats() {
+        if (mCount == 0) {
+            return LatencyStats.EMPTY;
+        }
+        return new LatencyStats(mCount, mLastNanos, mMinNanos, mMaxNanos, mTotalNanos);
+    }
+
+    synchronized void reset() {
+        mStartNanos = 0;
+        mCount = 0;
+        mLastNanos = 0;
+        mMinNanos = 0;
+        mMaxNanos = 0;
+        mTotalNanos = 0;
+    }
+
+}
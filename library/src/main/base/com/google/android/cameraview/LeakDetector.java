@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Finds objects that become unreachable before they are closed.
+ *
+ * <p>Each tracked object gets a {@link Token} that records where it was created. If the garbage
+ * collector finds the object while its token is still open, the {@link Listener} receives that
+ * place the next time an object is tracked or {@link #poll()} is called. Tracking costs a stack
+ * trace per object, so it is meant for debug builds.</p>
+ */
+class LeakDetector {
+
+    interface Listener {
+
+        /**
+         * @param allocationSite Where the leaked object was created.
+         */
+        void onLeak(@NonNull Throwable allocationSite);
+
+    }
+
+    private final Listener mListener;
+
+    private final ReferenceQueue<Object> mQueue = new ReferenceQueue<>();
+
+    /**
+     * Keeps the open tokens reachable, so that they are enqueued.
+     */
+    private final Set<Token> mOpenTokens = Collections.synchronizedSet(new HashSet<Token>());
+
+    LeakDetector(@NonNull Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Starts tracking {@code object}.
+     *
+     * @param description Describes the object in the report.
+     * @return The token to close when the object is properly released.
+     */
+    Token track(@NonNull Object object, @NonNull String description) {
+        poll();
+        final Token token = new Token(object, description);
+        mOpenTokens.add(token);
+        return token;
+    }
+
+    /**
+     * Reports the tracked objects that have been garbage collected without being closed.
+     */
+    void poll() {
+        Reference<?> reference;
+        while ((reference = mQueue.poll()) != null) {
+            final Token token = (Token) reference;
+            if (mOpenTokens.remove(token)) {
+                mListener.onLeak(token.mAllocationSite);
+            }
+        }
+    }
+
+    final class Token extends PhantomReference<Object> {
+
+        private final Throwable mAllocationSite;
+
+        Token(Object object, String description) {
+            super(object, mQueue);
+            mAllocationSite = new Throwable(description + " was created here and never released");
+        }
+
+        void close() {
+            if (mOpenTokens.remove(this)) {
+                clear();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Forwards the events of a {@link CameraViewImpl} that happen on the camera thread to the main
+ * thread. Preview frames are not forwarded; they stay on the thread that produced them.
+ */
+class MainThreadCallback implements CameraViewImpl.Callback {
+
+    private final CameraViewImpl.Callback mCallback;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    MainThreadCallback(CameraViewImpl.Callback callback) {
+        mCallback = callback;
+    }
+
+    @Override
+    public void onCameraOpened() {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onCameraOpened();
+            }
+        });
+    }
+
+    @Override
+    public void onCameraClosed() {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onCameraClosed();
+            }
+        });
+    }
+
+    @Override
+    public void onPictureTaken(final ByteBuffer data, final Releasable releasable) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onPictureTaken(data, releasable);
+            }
+        });
+    }
+
+    @Override
+    public void onPreviewFrame(byte[] data, int width, int height, Releasable releasable) {
+        mCallback.onPreviewFrame(data, width, height, releasable);
+    }
+
+    @Override
+    public void onCameraError(final Exception e, @CameraView.Error final int type) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onCameraError(e, type);
+            }
+        });
+    }
+
+    @Override
+    public void onBurstCompleted(final BurstResult result) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onBurstCompleted(result);
+            }
+        });
+    }
+
+    @Override
+    public void onLegacyCamera() {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.onLegacyCamera();
+            }
+        });
+    }
+
+    private void post(Runnable runnable) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            runnable.run();
+        } else {
+            mMainHandler.post(runnable);
+        }
+    }
+
+}
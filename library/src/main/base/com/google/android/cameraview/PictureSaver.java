@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes pictures to files on a background thread.
+ *
+ * <p>Pictures are queued up to a fixed capacity. Each one is written through a
+ * {@link FileChannel} to a temporary file next to its destination, which is then renamed, so that
+ * a file is either complete or absent. When the queue fills up faster than the storage can write,
+ * the {@link BackpressureListener} is told so that the app can slow down, and
+ * {@link #save(ByteBuffer, File, Releasable)} starts rejecting pictures.</p>
+ *
+ * <p>The {@link Listener} and the {@link BackpressureListener} are called on the writer thread,
+ * except that congestion may be reported on the thread that calls
+ * {@link #save(ByteBuffer, File, Releasable)}.</p>
+ */
+public class PictureSaver {
+
+    /**
+     * Files are not synced; a crash of the device may lose the latest pictures.
+     */
+    public static final int FSYNC_NONE = 0;
+
+    /**
+     * The data of each file is synced before it is renamed into place.
+     */
+    public static final int FSYNC_DATA = 1;
+
+    /**
+     * The data and the metadata of each file are synced before it is renamed into place.
+     */
+    public static final int FSYNC_ALL = 2;
+
+    /** How files are synced before they are renamed into place. */
+    @IntDef({FSYNC_NONE, FSYNC_DATA, FSYNC_ALL})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface FsyncPolicy {
+    }
+
+    public static final int DEFAULT_CAPACITY = 8;
+
+    /**
+     * The size of the direct buffer that heap data is staged through.
+     */
+    private static final int STAGING_BUFFER_SIZE = 256 * 1024;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Releasable NO_OP_RELEASABLE = new Releasable() {
+        @Override
+        public void release() {
+        }
+    };
+
+    /**
+     * Stops the writer thread.
+     */
+    private static final Job QUIT = new Job(null, null, null);
+
+    /**
+     * Receives the outcome of each picture.
+     */
+    public interface Listener {
+
+        void onPictureSaved(@NonNull File file);
+
+        void onPictureSaveFailed(@NonNull File file, @NonNull IOException e);
+
+    }
+
+    /**
+     * Receives changes of the congestion state of a {@link PictureSaver}.
+     */
+    public interface BackpressureListener {
+
+        /**
+         * @param congested {@code true} when the queue has filled up to three quarters of its
+         *                  capacity, {@code false} when it has drained to a quarter again.
+         */
+        void onBackpressureChanged(boolean congested);
+
+    }
+
+    private final int mCapacity;
+
+    private final int mFsyncPolicy;
+
+    private final Listener mListener;
+
+    private final BlockingQueue<Job> mQueue;
+
+    private final Thread mThread;
+
+    private final Object mLock = new Object();
+
+    private volatile BackpressureListener mBackpressureListener;
+
+    /**
+     * Guarded by {@link #mLock}; includes the picture being written.
+     */
+    private int mPending;
+
+    /**
+     * Guarded by {@link #mLock}.
+     */
+    private boolean mCongested;
+
+    /**
+     * Guarded by {@link #mLock}.
+     */
+    private boolean mClosed;
+
+    /**
+     * Only used on the writer thread.
+     */
+    private ByteBuffer mStagingBuffer;
+
+    /**
+     * @param capacity    The number of pictures that can wait to be written.
+     * @param fsyncPolicy One of {@link #FSYNC_NONE}, {@link #FSYNC_DATA} and {@link #FSYNC_ALL}.
+     * @param listener    Receives the outcome of each picture, or {@code null}.
+     */
+    public PictureSaver(int capacity, @FsyncPolicy int fsyncPolicy, Listener listener) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (fsyncPolicy != FSYNC_NONE && fsyncPolicy != FSYNC_DATA && fsyncPolicy != FSYNC_ALL) {
+            throw new IllegalArgumentException("Unknown fsync policy: " + fsyncPolicy);
+        }
+        mCapacity = capacity;
+        mFsyncPolicy = fsyncPolicy;
+        mListener = listener;
+        // One more slot, so that close() can always enqueue QUIT
+        mQueue = new ArrayBlockingQueue<>(capacity + 1);
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processQueue();
+            }
+        }, "PictureSaver");
+        mThread.start();
+    }
+
+    public void setBackpressureListener(BackpressureListener listener) {
+        mBackpressureListener = listener;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return The number of pictures waiting or being written.
+     */
+    public int getPendingCount() {
+        synchronized (mLock) {
+            return mPending;
+        }
+    }
+
+    /**
+     * @return {@code true} if the storage is falling behind.
+     * @see BackpressureListener
+     */
+    public boolean isCongested() {
+        synchronized (mLock) {
+            return mCongested;
+        }
+    }
+
+    /**
+     * Queues a picture to be written to {@code file}, replacing the file if it exists.
+     *
+     * @param data       The picture, from its position to its limit. It is not copied, so it must
+     *                   not change until {@code releasable} is released.
+     * @param file       The destination.
+     * @param releasable Released once the data has been written or failed to be written.
+     * @return {@code false} if the queue is full or this saver is closed. The picture is not
+     * queued then, and the caller still has to release it.
+     */
+    public boolean save(@NonNull ByteBuffer data, @NonNull File file,
+            @NonNull Releasable releasable) {
+        boolean congested;
+        synchronized (mLock) {
+            if (mClosed || mPending == mCapacity) {
+                return false;
+            }
+            mQueue.add(new Job(data.slice(), file, releasable));
+            mPending++;
+            congested = !mCongested && mPending >= getHighWatermark();
+            if (congested) {
+                mCongested = true;
+            }
+        }
+        if (congested) {
+            notifyBackpressure(true);
+        }
+        return true;
+    }
+
+    /**
+     * Queues a picture to be written to {@code file}. The array must not change afterwards.
+     *
+     * @see #save(ByteBuffer, File, Releasable)
+     */
+    public boolean save(@NonNull byte[] data, @NonNull File file) {
+        return save(ByteBuffer.wrap(data), file, NO_OP_RELEASABLE);
+    }
+
+    /**
+     * Waits until all the queued pictures have been written.
+     *
+     * @return {@code false} if the timeout elapsed first.
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (mLock) {
+            while (mPending > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(mLock, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting pictures. The writer thread finishes the queued ones and then terminates.
+     */
+    public void close() {
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            mQueue.add(QUIT);
+        }
+    }
+
+    private int getHighWatermark() {
+        return Math.max(1, mCapacity * 3 / 4);
+    }
+
+    private int getLowWatermark() {
+        return mCapacity / 4;
+    }
+
+    private void processQueue() {
+        while (true) {
+            final Job job;
+            try {
+                job = mQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (job == QUIT) {
+                return;
+            }
+            try {
+                write(job.data, job.file);
+                if (mListener != null) {
+                    mListener.onPictureSaved(job.file);
+                }
+            } catch (IOException e) {
+                if (mListener != null) {
+                    mListener.onPictureSaveFailed(job.file, e);
+                }
+            } finally {
+                job.releasable.release();
+                onJobFinished();
+            }
+        }
+    }
+
+    private void onJobFinished() {
+        boolean relieved;
+        synchronized (mLock) {
+            mPending--;
+            relieved = mCongested && mPending <= getLowWatermark();
+            if (relieved) {
+                mCongested = false;
+            }
+            mLock.notifyAll();
+        }
+        if (relieved) {
+            notifyBackpressure(false);
+        }
+    }
+
+    private void notifyBackpressure(boolean congested) {
+        final BackpressureListener listener = mBackpressureListener;
+        if (listener != null) {
+            listener.onBackpressureChanged(congested);
+        }
+    }
+
+    /**
+     * Writes {@code data} to a temporary file and renames it to {@code file}.
+     */
+    private void write(ByteBuffer data, File file) throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(temp);
+        boolean done = false;
+        try {
+            FileChannel channel = out.getChannel();
+            if (data.isDirect()) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            } else {
+                writeStaged(channel, data);
+            }
+            if (mFsyncPolicy != FSYNC_NONE) {
+                channel.force(mFsyncPolicy == FSYNC_ALL);
+            }
+            out.close();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Cannot rename " + temp + " to " + file);
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes heap data through {@link #mStagingBuffer}. A channel would otherwise copy it into a
+     * temporary direct buffer of the full size on every write.
+     */
+    private void writeStaged(FileChannel channel, ByteBuffer data) throws IOException {
+        if (mStagingBuffer == null) {
+            mStagingBuffer = ByteBuffer.allocateDirect(STAGING_BUFFER_SIZE);
+        }
+        final ByteBuffer staging = mStagingBuffer;
+        final int limit = data.limit();
+        while (data.hasRemaining()) {
+            data.limit(Math.min(limit, data.position() + staging.capacity()));
+            staging.clear();
+            staging.put(data);
+            data.limit(limit);
+            staging.flip();
+            while (staging.hasRemaining()) {
+                channel.write(staging);
+            }
+        }
+    }
+
+    private static class Job {
+
+        final ByteBuffer data;
+
+        final File file;
+
+        final Releasable releasable;
+
+        Job(ByteBuffer data, File file, Releasable releasable) {
+            this.data = data;
+            this.file = file;
+            this.releasable = releasable;
+        }
+
+    }
+
+}
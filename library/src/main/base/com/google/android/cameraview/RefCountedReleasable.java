@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares a single {@link Releasable} among a fixed number of users. The underlying resource is
+ * released when every reference handed out by {@link #newReference()} has been released.
+ */
+class RefCountedReleasable {
+
+    private final Releasable mTarget;
+
+    private final AtomicInteger mCount;
+
+    /**
+     * @param target The resource to be released after the last user.
+     * @param count  The number of users. The target is released immediately if this is 0.
+     */
+    RefCountedReleasable(Releasable target, int count) {
+        mTarget = target;
+        mCount = new AtomicInteger(count);
+        if (count <= 0) {
+            target.release();
+        }
+    }
+
+    /**
+     * @return A new {@link Releasable} that gives back one of the references.
+     */
+    Releasable newReference() {
+        return new Releasable() {
+
+            private final AtomicBoolean mReleased = new AtomicBoolean();
+
+            @Override
+            public void release() {
+                if (!mReleased.getAndSet(true) && mCount.decrementAndGet() == 0) {
+                    mTarget.release();
+                }
+            }
+
+        };
+    }
+
+}
@@ -13,21 +13,45 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package com.google.android.cameraview;
 
-import android.support.v4.util.ArrayMap;
+import android.support.annotation.NonNull;
 
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 import java.util.Set;
 import java.util.SortedSet;
-import java.util.TreeSet;
 
 /**
  * A collection class that automatically groups {@link Size}s by their {@link AspectRatio}s.
+ *
+ * <p>Sizes are kept as packed {@code long}s ({@code width << 32 | height}) in one sorted array
+ * per aspect ratio, and the ratios are found through a small open-addressing table keyed by the
+ * reduced ratio, so {@link #add(Size)} does one GCD and no scan over the other ratios. The sets
+ * returned by {@link #ratios()} and {@link #sizes(AspectRatio)}, and the lists returned by
+ * {@link #sizeList(AspectRatio)}, are read-only views.</p>
  */
 class SizeMap {
 
-    private final ArrayMap<AspectRatio, SortedSet<Size>> mRatios = new ArrayMap<>();
+    private static final int INITIAL_CAPACITY = 8;
+
+    /** The buckets in insertion order. */
+    private Bucket[] mBuckets = new Bucket[INITIAL_CAPACITY];
+
+    private int mBucketCount;
+
+    /** Open-addressing table from a reduced ratio to its index in {@link #mBuckets} plus one. */
+    private int[] mTable = new int[INITIAL_CAPACITY * 2];
+
+    private final Set<AspectRatio> mRatioView = new RatioView();
 
     /**
      * Add a new {@link Size} to this collection.
@@ -36,22 +60,23 @@ class SizeMap {
      * @return {@code true} if it is added, {@code false} if it already exists and is not added.
      */
     public boolean add(Size size) {
-        for (AspectRatio ratio : mRatios.keySet()) {
-            if (ratio.matches(size)) {
-                final SortedSet<Size> sizes = mRatios.get(ratio);
-                if (sizes.contains(size)) {
-                    return false;
-                } else {
-                    sizes.add(size);
-                    return true;
-                }
-            }
+        return add(size.getWidth(), size.getHeight());
+    }
+
+    /**
+     * Add a new size to this collection without creating a {@link Size}.
+     *
+     * @return {@code true} if it is added, {@code false} if it already exists and is not added.
+     */
+    boolean add(int width, int height) {
+        int gcd = gcd(width, height);
+        long key = pack(width / gcd, height / gcd);
+        Bucket bucket = find(key);
+        if (bucket == null) {
+            bucket = new Bucket(key, AspectRatio.of(width / gcd, height / gcd));
+            insert(bucket);
         }
-        // None of the existing ratio matches the provided size; add a new key
-        SortedSet<Size> sizes = new TreeSet<>();
-        sizes.add(size);
-        mRatios.put(AspectRatio.of(size.getWidth(), size.getHeight()), sizes);
-        return true;
+        return bucket.add(pack(width, height));
     }
 
     /**
@@ -60,27 +85,443 @@ class SizeMap {
      * @param ratio The aspect ratio to be removed.
      */
     public void remove(AspectRatio ratio) {
-        mRatios.remove(ratio);
+        Bucket bucket = find(ratio);
+        if (bucket == null) {
+            return;
+        }
+        int index = indexOf(bucket);
+        System.arraycopy(mBuckets, index + 1, mBuckets, index, mBucketCount - index - 1);
+        mBuckets[--mBucketCount] = null;
+        rehash(mTable.length);
     }
 
     Set<AspectRatio> ratios() {
-        return mRatios.keySet();
+        return mRatioView;
     }
 
+    /**
+     * @return The sizes of the specified aspect ratio in ascending order, or {@code null} if
+     * there is none.
+     */
     SortedSet<Size> sizes(AspectRatio ratio) {
-        return mRatios.get(ratio);
+        Bucket bucket = find(ratio);
+        return bucket == null ? null : bucket.mView;
+    }
+
+    /**
+     * @return A read-only list view of {@link #sizes(AspectRatio)}, or {@code null} if there is
+     * none. The view belongs to the ratio, so this does not allocate.
+     */
+    List<Size> sizeList(AspectRatio ratio) {
+        Bucket bucket = find(ratio);
+        return bucket == null ? null : bucket.mList;
+    }
+
+    /**
+     * @return {@code true} if {@code size} is in this collection.
+     */
+    boolean contains(Size size) {
+        int width = size.getWidth();
+        int height = size.getHeight();
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        int gcd = gcd(width, height);
+        Bucket bucket = find(pack(width / gcd, height / gcd));
+        return bucket != null
+                && Arrays.binarySearch(bucket.mSizes, 0, bucket.mCount, pack(width, height)) >= 0;
+    }
+
+    /**
+     * @return All the sizes of all the aspect ratios, from small to large.
+     */
+    List<Size> allSizes() {
+        int count = 0;
+        for (int i = 0; i < mBucketCount; i++) {
+            count += mBuckets[i].mCount;
+        }
+        List<Size> sizes = new ArrayList<>(count);
+        for (int i = 0; i < mBucketCount; i++) {
+            sizes.addAll(mBuckets[i].mView);
+        }
+        Collections.sort(sizes);
+        return sizes;
     }
 
     void clear() {
-        mRatios.clear();
+        Arrays.fill(mBuckets, null);
+        Arrays.fill(mTable, 0);
+        mBucketCount = 0;
     }
 
     boolean isEmpty() {
-        return mRatios.isEmpty();
+        return mBucketCount == 0;
     }
 
     @Override
     public String toString() {
-        return mRatios.toString();
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < mBucketCount; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(mBuckets[i].mRatio).append('=').append(mBuckets[i].mView);
+        }
+        return builder.append('}').toString();
+    }
+
+    private Bucket find(AspectRatio ratio) {
+        return ratio == null ? null : find(pack(ratio.getX(), ratio.getY()));
     }
+
+    private Bucket find(long key) {
+        int mask = mTable.length - 1;
+        for (int slot = hash(key) & mask; mTable[slot] != 0; slot = (slot + 1) & mask) {
+            Bucket bucket = mBuckets[mTable[slot] - 1];
+            if (bucket.mKey == key) {
+                return bucket;
+            }
+        }
+        return null;
+    }
+
+    private void insert(Bucket bucket) {
+        if (mBucketCount == mBuckets.length) {
+            mBuckets = Arrays.copyOf(mBuckets, mBucketCount * 2);
+        }
+        mBuckets[mBucketCount++] = bucket;
+        if (mBucketCount * 2 > mTable.length) {
+            rehash(mTable.length * 2);
+        } else {
+            put(mTable, bucket.mKey, mBucketCount);
+        }
+    }
+
+    private void rehash(int capacity) {
+        mTable = new int[capacity];
+        for (int i = 0; i < mBucketCount; i++) {
+            put(mTable, mBuckets[i].mKey, i + 1);
+        }
+    }
+
+    private static void put(int[] table, long key, int value) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = value;
+    }
+
+    private int indexOf(Bucket bucket) {
+        for (int i = 0; i < mBucketCount; i++) {
+            if (mBuckets[i] == bucket) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long pack(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+
+    private static int width(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    private static int height(long packed) {
+        return (int) packed;
+    }
+
+    private static int hash(long key) {
+        // AspectRatio.hashCode(), with the high bits folded in for the small table
+        int x = width(key);
+        int y = height(key);
+        int h = y ^ ((x << (Integer.SIZE / 2)) | (x >>> (Integer.SIZE / 2)));
+        return h ^ (h >>> 16);
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int c = b;
+            b = a % b;
+            a = c;
+        }
+        return a;
+    }
+
+    /**
+     * All the sizes of one aspect ratio. Within a ratio, the packed values sort in the same order
+     * as the areas, so {@link #mSizes} is also in {@link Size} order.
+     */
+    private static class Bucket {
+
+        final long mKey;
+
+        final AspectRatio mRatio;
+
+        long[] mSizes = new long[4];
+
+        int mCount;
+
+        /**
+         * {@link Size} instances for {@link #mSizes}, created lazily for the views. Maps shared
+         * between threads are read concurrently, so the array is only published once it is
+         * complete; threads that race build equal arrays.
+         */
+        volatile Size[] mInstances;
+
+        final SortedSet<Size> mView = new SizeView(this, 0, Long.MAX_VALUE);
+
+        final List<Size> mList = new SizeList(this);
+
+        Bucket(long key, AspectRatio ratio) {
+            mKey = key;
+            mRatio = ratio;
+        }
+
+        boolean add(long size) {
+            int index = Arrays.binarySearch(mSizes, 0, mCount, size);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (mCount == mSizes.length) {
+                mSizes = Arrays.copyOf(mSizes, mCount * 2);
+            }
+            System.arraycopy(mSizes, index, mSizes, index + 1, mCount - index);
+            mSizes[index] = size;
+            mCount++;
+            mInstances = null;
+            return true;
+        }
+
+        Size get(int index) {
+            Size[] instances = mInstances;
+            if (instances == null) {
+                instances = new Size[mCount];
+                for (int i = 0; i < mCount; i++) {
+                    instances[i] = new Size(width(mSizes[i]), height(mSizes[i]));
+                }
+                mInstances = instances;
+            }
+            return instances[index];
+        }
+
+        /**
+         * @return The index of the first size whose area is not less than {@code area}.
+         */
+        int lowerBound(long area) {
+            int low = 0;
+            int high = mCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                long value = mSizes[mid];
+                if ((long) width(value) * height(value) < area) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+    }
+
+    /**
+     * A read-only list view of all the sizes of a {@link Bucket}.
+     */
+    private static class SizeList extends AbstractList<Size> implements RandomAccess {
+
+        private final Bucket mBucket;
+
+        SizeList(Bucket bucket) {
+            mBucket = bucket;
+        }
+
+        @Override
+        public Size get(int index) {
+            if (index < 0 || index >= mBucket.mCount) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+            }
+            return mBucket.get(index);
+        }
+
+        @Override
+        public int size() {
+            return mBucket.mCount;
+        }
+
+    }
+
+    /**
+     * A read-only view of the sizes of a {@link Bucket} whose areas are in {@code [from, to)}.
+     */
+    private static class SizeView extends AbstractSet<Size> implements SortedSet<Size> {
+
+        private final Bucket mBucket;
+
+        private final long mFromArea;
+
+        private final long mToArea;
+
+        SizeView(Bucket bucket, long fromArea, long toArea) {
+            mBucket = bucket;
+            mFromArea = fromArea;
+            mToArea = toArea;
+        }
+
+        private int start() {
+            return mBucket.lowerBound(mFromArea);
+        }
+
+        private int end() {
+            return mBucket.lowerBound(mToArea);
+        }
+
+        @Override
+        public int size() {
+            return Math.max(0, end() - start());
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Size)) {
+                return false;
+            }
+            Size size = (Size) o;
+            long area = area(size);
+            return area >= mFromArea && area < mToArea && Arrays.binarySearch(mBucket.mSizes, 0,
+                    mBucket.mCount, pack(size.getWidth(), size.getHeight())) >= 0;
+        }
+
+        @NonNull
+        @Override
+        public Iterator<Size> iterator() {
+            final int start = start();
+            final int end = end();
+            return new Iterator<Size>() {
+
+                private int mIndex = start;
+
+                @Override
+                public boolean hasNext() {
+                    return mIndex < end;
+                }
+
+                @Override
+                public Size next() {
+                    if (mIndex >= end) {
+                        throw new NoSuchElementException();
+                    }
+                    return mBucket.get(mIndex++);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+
+            };
+        }
+
+        @Override
+        public boolean add(Size size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Comparator<? super Size> comparator() {
+            return null;
+        }
+
+        @NonNull
+        @Override
+        public SortedSet<Size> subSet(Size fromElement, Size toElement) {
+            return new SizeView(mBucket, Math.max(mFromArea, area(fromElement)),
+                    Math.min(mToArea, area(toElement)));
+        }
+
+        @NonNull
+        @Override
+        public SortedSet<Size> headSet(Size toElement) {
+            return new SizeView(mBucket, mFromArea, Math.min(mToArea, area(toElement)));
+        }
+
+        @NonNull
+        @Override
+        public SortedSet<Size> tailSet(Size fromElement) {
+            return new SizeView(mBucket, Math.max(mFromArea, area(fromElement)), mToArea);
+        }
+
+        @Override
+        public Size first() {
+            int start = start();
+            if (start >= end()) {
+                throw new NoSuchElementException();
+            }
+            return mBucket.get(start);
+        }
+
+        @Override
+        public Size last() {
+            int end = end();
+            if (end <= start()) {
+                throw new NoSuchElementException();
+            }
+            return mBucket.get(end - 1);
+        }
+
+        private static long area(Size size) {
+            return (long) size.getWidth() * size.getHeight();
+        }
+
+    }
+
+    /**
+     * A read-only view of the aspect ratios in insertion order.
+     */
+    private class RatioView extends AbstractSet<AspectRatio> {
+
+        @Override
+        public int size() {
+            return mBucketCount;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof AspectRatio && find((AspectRatio) o) != null;
+        }
+
+        @NonNull
+        @Override
+        public Iterator<AspectRatio> iterator() {
+            return new Iterator<AspectRatio>() {
+
+                private int mIndex;
+
+                @Override
+                public boolean hasNext() {
+                    return mIndex < mBucketCount;
+                }
+
+                @Override
+                public AspectRatio next() {
+                    if (mIndex >= mBucketCount) {
+                        throw new NoSuchElementException();
+                    }
+                    return mBuckets[mIndex++].mRatio;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+
+            };
+        }
+
+    }
+
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import java.util.List;
+
+/**
+ * The size selection logic shared by the camera backends.
+ */
+class SizeSelection {
+
+    private SizeSelection() {
+    }
+
+    /**
+     * Runs {@code selector} on the sizes of {@code ratio}, or on all the sizes in {@code sizes} if
+     * there are none of that ratio. A size of another ratio is replaced by the choice of
+     * {@code fallback}.
+     *
+     * @param fallback The default selector, which is trusted to keep to the candidates.
+     * @throws IllegalStateException If the selector returns a size that is not supported.
+     */
+    static Size select(SizeSelector selector, SizeSelector fallback, SizeMap sizes,
+            AspectRatio ratio, int width, int height) {
+        List<Size> candidates = sizes.sizeList(ratio);
+        final boolean ofRatio = candidates != null;
+        if (!ofRatio) {
+            candidates = sizes.allSizes();
+        }
+        Size size = selector.select(candidates, ratio, width, height);
+        //noinspection ConstantConditions
+        if (size == null || !sizes.contains(size)) {
+            throw new IllegalStateException(selector + " chose an unsupported size: " + size);
+        }
+        if (ofRatio && !ratio.matches(size) && selector != fallback) {
+            return fallback.select(candidates, ratio, width, height);
+        }
+        return size;
+    }
+
+    /**
+     * Picks the smallest size that covers {@code width} x {@code height}.
+     *
+     * @param candidates The sizes to choose from, from small to large.
+     * @param width      The minimum width.
+     * @param height     The minimum height.
+     * @return The smallest size big enough, or the largest one if no size is big enough.
+     */
+    static Size chooseCovering(List<Size> candidates, int width, int height) {
+        for (Size size : candidates) {
+            if (size.getWidth() >= width && size.getHeight() >= height) {
+                return size;
+            }
+        }
+        return candidates.get(candidates.size() - 1);
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * Chooses the preview or picture size among the sizes supported by the camera.
+ *
+ * @see SizeSelectors
+ * @see CostBasedSizeSelector
+ * @see CameraView#setPreviewSizeSelector(SizeSelector)
+ * @see CameraView#setPictureSizeSelector(SizeSelector)
+ */
+public interface SizeSelector {
+
+    /**
+     * Chooses one of the {@code candidates}.
+     *
+     * <p>Sizes are in the sensor orientation, so the width is the longer side. This is called on
+     * the camera thread.</p>
+     *
+     * @param candidates The supported sizes of {@code ratio}, or all of them if the camera does
+     *                   not have that ratio, from small to large. This is never empty.
+     * @param ratio      The aspect ratio set on the {@link CameraView}.
+     * @param width      The width the size should cover, or 0 if there is none; this is the
+     *                   longer side of the preview surface when choosing a preview size.
+     * @param height     The height the size should cover, or 0 if there is none.
+     * @return One of the {@code candidates}. If another supported size is returned, the
+     * default selector chooses instead.
+     */
+    @NonNull
+    Size select(@NonNull List<Size> candidates, @NonNull AspectRatio ratio, int width,
+            int height);
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Built-in {@link SizeSelector}s.
+ *
+ * <p>Selectors are only given the sizes of the requested aspect ratio when the camera has it,
+ * and all the sizes otherwise; see {@link SizeSelector#select}. Except for
+ * {@link #closestRatio(float)}, these then pick among all of them.</p>
+ */
+public final class SizeSelectors {
+
+    private static final SizeSelector SMALLEST_COVERING = new SizeSelector() {
+        @NonNull
+        @Override
+        public Size select(@NonNull List<Size> candidates, @NonNull AspectRatio ratio, int width,
+                int height) {
+            return SizeSelection.chooseCovering(ofRatio(candidates, ratio), width, height);
+        }
+    };
+
+    private static final SizeSelector LARGEST = new SizeSelector() {
+        @NonNull
+        @Override
+        public Size select(@NonNull List<Size> candidates, @NonNull AspectRatio ratio, int width,
+                int height) {
+            List<Size> sizes = ofRatio(candidates, ratio);
+            return sizes.get(sizes.size() - 1);
+        }
+    };
+
+    private SizeSelectors() {
+    }
+
+    /**
+     * Chooses the smallest size that covers the requested width and height, or the largest one if
+     * none does. This is the default for preview sizes.
+     */
+    public static SizeSelector smallestCovering() {
+        return SMALLEST_COVERING;
+    }
+
+    /**
+     * Chooses the smallest size that covers {@code width} x {@code height}, or the largest one if
+     * none does. This is useful for picture sizes, where there is nothing to cover otherwise.
+     */
+    public static SizeSelector smallestCovering(final int width, final int height) {
+        return new SizeSelector() {
+            @NonNull
+            @Override
+            public Size select(@NonNull List<Size> candidates, @NonNull AspectRatio ratio,
+                    int ignoredWidth, int ignoredHeight) {
+                return SizeSelection.chooseCovering(ofRatio(candidates, ratio), width, height);
+            }
+        };
+    }
+
+    /**
+     * Chooses the largest size. This is the default for picture sizes.
+     */
+    public static SizeSelector largest() {
+        return LARGEST;
+    }
+
+    /**
+     * Chooses the largest size with at most {@code megapixels} million pixels, or the smallest
+     * size if all of them are larger.
+     */
+    public static SizeSelector maxMegapixels(final float megapixels) {
+        if (megapixels <= 0) {
+            throw new IllegalArgumentException("Megapixels must be positive: " + megapixels);
+        }
+        final long maxPixels = (long) (megapixels * 1000000);
+        return new SizeSelector() {
+            @NonNull
+            @Override
+            public Size select(@NonNull List<Size> candidates, @NonNull AspectRatio ratio,
+                    int width, int height) {
+                List<Size> sizes = ofRatio(candidates, ratio);
+                for (int i = sizes.size() - 1; i > 0; i--) {
+                    if (pixels(sizes.get(i)) <= maxPixels) {
+                        return sizes.get(i);
+                    }
+                }
+                return sizes.get(0);
+            }
+        };
+    }
+
+    /**
+     * Chooses the size whose aspect ratio is closest to the requested one, as long as it differs
+     * by at most {@code tolerance} (e.g. 0.05 for 5%), when the camera does not have the
+     * requested ratio. The largest size wins among equally close ones. If no size is within the
+     * tolerance, this behaves like {@link #largest()}.
+     */
+    public static SizeSelector closestRatio(final float tolerance) {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("Tolerance must not be negative: " + tolerance);
+        }
+        return new SizeSelector() {
+            @NonNull
+            @Override
+            public Size select(@NonNull List<Size> candidates, @NonNull AspectRatio ratio,
+                    int width, int height) {
+                Size best = null;
+                float bestError = Float.MAX_VALUE;
+                for (Size size : candidates) {
+                    float error = ratioError(size, ratio);
+                    if (error <= tolerance && error <= bestError) {
+                        best = size;
+                        bestError = error;
+                    }
+                }
+                return best != null ? best : LARGEST.select(candidates, ratio, width, height);
+            }
+        };
+    }
+
+    /**
+     * @return The relative difference between the aspect ratio of {@code size} and
+     * {@code ratio}.
+     */
+    static float ratioError(Size size, AspectRatio ratio) {
+        float target = ratio.toFloat();
+        return Math.abs((float) size.getWidth() / size.getHeight() - target) / target;
+    }
+
+    static long pixels(Size size) {
+        return (long) size.getWidth() * size.getHeight();
+    }
+
+    /**
+     * @return The {@code candidates} of the specified aspect ratio, or all of them if there is
+     * none.
+     */
+    static List<Size> ofRatio(List<Size> candidates, AspectRatio ratio) {
+        List<Size> sizes = null;
+        for (Size size : candidates) {
+            if (ratio.matches(size)) {
+                if (sizes == null) {
+                    sizes = new ArrayList<>();
+                }
+                sizes.add(size);
+            }
+        }
+        return sizes != null ? sizes : candidates;
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.support.v4.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps small versions of pictures for a review strip, in memory and on disk, keyed by an id that
+ * the app gives each capture.
+ *
+ * <p>A thumbnail is made from the one that cameras embed in the EXIF segment of their pictures,
+ * which takes a few milliseconds instead of the hundreds that decoding a picture takes. Pictures
+ * without one are decoded at an eighth of their size from their DC coefficients, which skips the
+ * inverse DCT. Either way, the thumbnail is rotated upright by the EXIF orientation.</p>
+ *
+ * <p>The methods decode images and access files, so call them on a background thread.</p>
+ */
+public class ThumbnailCache {
+
+    private static final int DISK_JPEG_QUALITY = 85;
+
+    private final LruCache<String, Bitmap> mMemory;
+
+    private final DiskLruStore mDisk;
+
+    /**
+     * @param memoryBytes The size of the bitmaps kept in memory.
+     * @param directory   The directory for thumbnails on disk, or {@code null} to keep them in
+     *                    memory only. Other files in it may be deleted.
+     * @param diskBytes   The size of the thumbnails kept on disk.
+     */
+    public ThumbnailCache(int memoryBytes, @Nullable File directory, long diskBytes) {
+        if (memoryBytes <= 0) {
+            throw new IllegalArgumentException("Size must be positive: " + memoryBytes);
+        }
+        mMemory = new LruCache<String, Bitmap>(memoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        mDisk = directory == null ? null : new DiskLruStore(directory, diskBytes);
+    }
+
+    /**
+     * @return The thumbnail of a capture from memory or disk, or {@code null} if there is none.
+     */
+    @WorkerThread
+    @Nullable
+    public Bitmap get(@NonNull String captureId) {
+        Bitmap bitmap = mMemory.get(captureId);
+        if (bitmap != null || mDisk == null) {
+            return bitmap;
+        }
+        final byte[] encoded = mDisk.get(captureId);
+        if (encoded == null) {
+            return null;
+        }
+        bitmap = BitmapFactory.decodeByteArray(encoded, 0, encoded.length);
+        if (bitmap != null) {
+            mMemory.put(captureId, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Makes the thumbnail of a picture and keeps it in memory and on disk.
+     *
+     * @param captureId Identifies the picture. With a directory, it is used as a file name, so it
+     *                  may only contain letters, digits, '.', '_' and '-'.
+     * @param jpeg      The picture, from its position to its limit. Neither is changed.
+     * @return The thumbnail, or {@code null} if the picture cannot be decoded.
+     */
+    @WorkerThread
+    @Nullable
+    public Bitmap put(@NonNull String captureId, @NonNull ByteBuffer jpeg) {
+        if (mDisk != null) {
+            DiskLruStore.checkKey(captureId);
+        }
+        byte[] encoded = ExifThumbnail.extract(jpeg);
+        Bitmap bitmap = null;
+        if (encoded != null) {
+            bitmap = BitmapFactory.decodeByteArray(encoded, 0, encoded.length);
+        }
+        if (bitmap == null) {
+            encoded = null;
+            final DcThumbnail thumbnail;
+            try {
+                thumbnail = DcThumbnail.decode(toArray(jpeg));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            bitmap = Bitmap.createBitmap(thumbnail.mPixels, thumbnail.mWidth, thumbnail.mHeight,
+                    Bitmap.Config.ARGB_8888);
+        }
+        final int rotation = ExifOrientation.toDegrees(ExifOrientation.read(jpeg));
+        if (rotation != 0) {
+            final Matrix matrix = new Matrix();
+            matrix.postRotate(rotation);
+            bitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(),
+                    matrix, true);
+            encoded = null;
+        }
+        mMemory.put(captureId, bitmap);
+        if (mDisk != null) {
+            if (encoded == null) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                bitmap.compress(Bitmap.CompressFormat.JPEG, DISK_JPEG_QUALITY, out);
+                encoded = out.toByteArray();
+            }
+            mDisk.put(captureId, encoded);
+        }
+        return bitmap;
+    }
+
+    public void remove(@NonNull String captureId) {
+        mMemory.remove(captureId);
+        if (mDisk != null) {
+            mDisk.remove(captureId);
+        }
+    }
+
+    /**
+     * Drops the bitmaps in memory, for example when the app is trimming its memory.
+     */
+    public void evictMemory() {
+        mMemory.evictAll();
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        final byte[] array = new byte[buffer.remaining()];
+        buffer.duplicate().get(array);
+        return array;
+    }
+
+}
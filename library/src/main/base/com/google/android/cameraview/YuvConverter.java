@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packs the planes of a {@link android.graphics.ImageFormat#YUV_420_888} image into NV21 or I420
+ * arrays supplied by the caller.
+ *
+ * <p>Rows are read with bulk {@link ByteBuffer#get(byte[], int, int)} calls rather than one
+ * call per sample. When the chroma planes are two views of one interleaved plane, as most camera
+ * HALs produce them, each chroma row is read with a single call; in VU order it lands in an NV21
+ * array as it is. A converter keeps scratch rows for the other cases, so it allocates nothing
+ * once it has seen the widest image, and it must be confined to one thread.</p>
+ *
+ * <p>The planes are read from the position of their buffers, and the positions are restored
+ * afterwards.</p>
+ */
+public class YuvConverter {
+
+    /** The U and V planes do not share memory. */
+    private static final int SEPARATE = 0;
+
+    /** The U and V planes are views of one plane of V, U pairs. */
+    private static final int INTERLEAVED_VU = 1;
+
+    /** The U and V planes are views of one plane of U, V pairs. */
+    private static final int INTERLEAVED_UV = 2;
+
+    private byte[] mURow = new byte[0];
+
+    private byte[] mVRow = new byte[0];
+
+    /**
+     * @return The number of bytes of an NV21 or I420 image of the specified size.
+     */
+    public static int getFrameSize(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * Copies an image into {@code out} in NV21 layout: the Y plane followed by interleaved V and
+     * U samples.
+     *
+     * @param y             The Y plane.
+     * @param yRowStride    The row stride of the Y plane.
+     * @param u             The U plane.
+     * @param v             The V plane.
+     * @param uvRowStride   The row stride of the U and V planes.
+     * @param uvPixelStride The pixel stride of the U and V planes.
+     * @return {@code false} if {@code out} is too small for the image.
+     */
+    public boolean toNv21(@NonNull ByteBuffer y, int yRowStride, @NonNull ByteBuffer u,
+            @NonNull ByteBuffer v, int uvRowStride, int uvPixelStride, int width, int height,
+            @NonNull byte[] out) {
+        if (out.length < getFrameSize(width, height)) {
+            return false;
+        }
+        final int yPosition = y.position();
+        final int uPosition = u.position();
+        final int vPosition = v.position();
+        try {
+            copyPlane(y, yPosition, yRowStride, width, height, out, 0);
+            final int chromaWidth = (width + 1) / 2;
+            final int chromaHeight = (height + 1) / 2;
+            final int rowLength = 2 * chromaWidth;
+            int offset = width * height;
+            final int interleaving = getInterleaving(u, uPosition, v, vPosition, uvPixelStride);
+            if (interleaving == INTERLEAVED_VU) {
+                for (int row = 0; row < chromaHeight; row++) {
+                    readInterleavedRow(v, vPosition, u, uPosition, row * uvRowStride, out, offset,
+                            rowLength);
+                    offset += rowLength;
+                }
+            } else if (interleaving == INTERLEAVED_UV) {
+                for (int row = 0; row < chromaHeight; row++) {
+                    readInterleavedRow(u, uPosition, v, vPosition, row * uvRowStride, out, offset,
+                            rowLength);
+                    for (int i = offset; i < offset + rowLength; i += 2) {
+                        final byte sample = out[i];
+                        out[i] = out[i + 1];
+                        out[i + 1] = sample;
+                    }
+                    offset += rowLength;
+                }
+            } else {
+                final int span = (chromaWidth - 1) * uvPixelStride + 1;
+                final byte[] uRow = ensureURow(span);
+                final byte[] vRow = ensureVRow(span);
+                for (int row = 0; row < chromaHeight; row++) {
+                    readRow(u, uPosition + row * uvRowStride, uRow, span);
+                    readRow(v, vPosition + row * uvRowStride, vRow, span);
+                    interleave(vRow, uRow, uvPixelStride, chromaWidth, out, offset);
+                    offset += rowLength;
+                }
+            }
+            return true;
+        } finally {
+            y.position(yPosition);
+            u.position(uPosition);
+            v.position(vPosition);
+        }
+    }
+
+    /**
+     * Copies an image into {@code out} in I420 layout: the Y plane followed by the U plane and
+     * the V plane.
+     *
+     * @return {@code false} if {@code out} is too small for the image.
+     * @see #toNv21(ByteBuffer, int, ByteBuffer, ByteBuffer, int, int, int, int, byte[])
+     */
+    public boolean toI420(@NonNull ByteBuffer y, int yRowStride, @NonNull ByteBuffer u,
+            @NonNull ByteBuffer v, int uvRowStride, int uvPixelStride, int width, int height,
+            @NonNull byte[] out) {
+        if (out.length < getFrameSize(width, height)) {
+            return false;
+        }
+        final int yPosition = y.position();
+        final int uPosition = u.position();
+        final int vPosition = v.position();
+        try {
+            copyPlane(y, yPosition, yRowStride, width, height, out, 0);
+            final int chromaWidth = (width + 1) / 2;
+            final int chromaHeight = (height + 1) / 2;
+            int uOffset = width * height;
+            int vOffset = uOffset + chromaWidth * chromaHeight;
+            if (uvPixelStride == 1) {
+                copyPlane(u, uPosition, uvRowStride, chromaWidth, chromaHeight, out, uOffset);
+                copyPlane(v, vPosition, uvRowStride, chromaWidth, chromaHeight, out, vOffset);
+                return true;
+            }
+            final int interleaving = getInterleaving(u, uPosition, v, vPosition, uvPixelStride);
+            if (interleaving != SEPARATE) {
+                final int rowLength = 2 * chromaWidth;
+                final byte[] row = ensureURow(rowLength);
+                // Samples of the plane that comes first in memory are at even indices
+                int evenOffset = interleaving == INTERLEAVED_UV ? uOffset : vOffset;
+                int oddOffset = interleaving == INTERLEAVED_UV ? vOffset : uOffset;
+                for (int r = 0; r < chromaHeight; r++) {
+                    if (interleaving == INTERLEAVED_UV) {
+                        readInterleavedRow(u, uPosition, v, vPosition, r * uvRowStride, row, 0,
+                                rowLength);
+                    } else {
+                        readInterleavedRow(v, vPosition, u, uPosition, r * uvRowStride, row, 0,
+                                rowLength);
+                    }
+                    for (int col = 0; col < chromaWidth; col++) {
+                        out[evenOffset + col] = row[2 * col];
+                        out[oddOffset + col] = row[2 * col + 1];
+                    }
+                    evenOffset += chromaWidth;
+                    oddOffset += chromaWidth;
+                }
+                return true;
+            }
+            final int span = (chromaWidth - 1) * uvPixelStride + 1;
+            final byte[] uRow = ensureURow(span);
+            final byte[] vRow = ensureVRow(span);
+            for (int row = 0; row < chromaHeight; row++) {
+                readRow(u, uPosition + row * uvRowStride, uRow, span);
+                readRow(v, vPosition + row * uvRowStride, vRow, span);
+                for (int col = 0; col < chromaWidth; col++) {
+                    out[uOffset + col] = uRow[col * uvPixelStride];
+                    out[vOffset + col] = vRow[col * uvPixelStride];
+                }
+                uOffset += chromaWidth;
+                vOffset += chromaWidth;
+            }
+            return true;
+        } finally {
+            y.position(yPosition);
+            u.position(uPosition);
+            v.position(vPosition);
+        }
+    }
+
+    /**
+     * Writes pairs of samples of {@code first} and {@code second} to {@code out}. The loop for a
+     * pixel stride of 1 is separate, since the JIT compiles a constant stride much better.
+     */
+    private static void interleave(byte[] first, byte[] second, int pixelStride, int count,
+            byte[] out, int offset) {
+        if (pixelStride == 1) {
+            for (int i = 0; i < count; i++) {
+                out[offset + 2 * i] = first[i];
+                out[offset + 2 * i + 1] = second[i];
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                out[offset + 2 * i] = first[i * pixelStride];
+                out[offset + 2 * i + 1] = second[i * pixelStride];
+            }
+        }
+    }
+
+    /**
+     * Copies a plane with a pixel stride of 1, in one call if its rows are not padded.
+     */
+    private static void copyPlane(ByteBuffer plane, int position, int rowStride, int width,
+            int height, byte[] out, int offset) {
+        if (rowStride == width) {
+            readRow(plane, position, out, offset, width * height);
+            return;
+        }
+        for (int row = 0; row < height; row++) {
+            readRow(plane, position + row * rowStride, out, offset, width);
+            offset += width;
+        }
+    }
+
+    private static void readRow(ByteBuffer plane, int start, byte[] out, int length) {
+        readRow(plane, start, out, 0, length);
+    }
+
+    private static void readRow(ByteBuffer plane, int start, byte[] out, int offset, int length) {
+        plane.position(start);
+        plane.get(out, offset, length);
+    }
+
+    /**
+     * Reads a row of an interleaved chroma plane through the view that starts first. That view
+     * ends at its own last sample, so the last sample of the last row comes from {@code second}.
+     */
+    private static void readInterleavedRow(ByteBuffer first, int firstPosition, ByteBuffer second,
+            int secondPosition, int rowOffset, byte[] out, int offset, int length) {
+        final int start = firstPosition + rowOffset;
+        final int available = Math.min(length, first.limit() - start);
+        readRow(first, start, out, offset, available);
+        if (available < length) {
+            out[offset + length - 1] = second.get(secondPosition + rowOffset + length - 2);
+        }
+    }
+
+    /**
+     * Finds out whether the U and V planes are views of one interleaved plane.
+     */
+    private static int getInterleaving(ByteBuffer u, int uPosition, ByteBuffer v, int vPosition,
+            int pixelStride) {
+        if (pixelStride != 2) {
+            return SEPARATE;
+        }
+        if (isSameByte(v, vPosition + 1, u, uPosition)) {
+            return INTERLEAVED_VU;
+        }
+        if (isSameByte(u, uPosition + 1, v, vPosition)) {
+            return INTERLEAVED_UV;
+        }
+        return SEPARATE;
+    }
+
+    /**
+     * Checks whether two indices of two buffers refer to the same memory, by changing the byte in
+     * {@code a} and reading the one in {@code b}. The byte is restored.
+     */
+    private static boolean isSameByte(ByteBuffer a, int aIndex, ByteBuffer b, int bIndex) {
+        if (a.isReadOnly() || aIndex >= a.limit() || bIndex >= b.limit()) {
+            return false;
+        }
+        final byte saved = a.get(aIndex);
+        final byte probe = (byte) ~saved;
+        a.put(aIndex, probe);
+        final boolean same = b.get(bIndex) == probe;
+        a.put(aIndex, saved);
+        return same;
+    }
+
+    private byte[] ensureURow(int length) {
+        if (mURow.length < length) {
+            mURow = new byte[length];
+        }
+        return mURow;
+    }
+
+    private byte[] ensureVRow(int length) {
+        if (mVRow.length < length) {
+            mVRow = new byte[length];
+        }
+        return mVRow;
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+/**
+ * A fixed-size ring of recent frames for zero-shutter-lag capture.
+ *
+ * <p>Frames are added in timestamp order. When the ring is full, adding a frame hands the oldest
+ * one to the {@link Recycler}. The storage is allocated once, so a steady stream of frames
+ * produces no garbage.</p>
+ *
+ * @param <T> The type of the frames.
+ */
+class ZslRingBuffer<T> {
+
+    interface Recycler<T> {
+
+        /**
+         * Called when a frame leaves the ring without being taken.
+         */
+        void recycle(T frame);
+
+    }
+
+    private final Object[] mFrames;
+
+    private final long[] mTimestamps;
+
+    private final Recycler<T> mRecycler;
+
+    /**
+     * The index of the oldest frame.
+     */
+    private int mHead;
+
+    private int mSize;
+
+    ZslRingBuffer(int capacity, Recycler<T> recycler) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        mFrames = new Object[capacity];
+        mTimestamps = new long[capacity];
+        mRecycler = recycler;
+    }
+
+    int getCapacity() {
+        return mFrames.length;
+    }
+
+    synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Adds a frame, recycling the oldest one if the ring is full.
+     *
+     * @param frame     The frame.
+     * @param timestamp The timestamp of the frame; not older than the frames already added.
+     */
+    synchronized void add(T frame, long timestamp) {
+        if (mSize == mFrames.length) {
+            recycle(mHead);
+            mHead = (mHead + 1) % mFrames.length;
+            mSize--;
+        }
+        int index = (mHead + mSize) % mFrames.length;
+        mFrames[index] = frame;
+        mTimestamps[index] = timestamp;
+        mSize++;
+    }
+
+    /**
+     * Removes the frame whose timestamp is closest to {@code timestamp}. Of two frames equally
+     * close, the newer one is taken.
+     *
+     * @param timestamp The time of the capture request.
+     * @return The frame, which is now owned by the caller, or {@code null} if the ring is empty.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized T take(long timestamp) {
+        if (mSize == 0) {
+            return null;
+        }
+        int best = 0;
+        long bestDistance = Long.MAX_VALUE;
+        for (int i = 0; i < mSize; i++) {
+            long distance = Math.abs(mTimestamps[(mHead + i) % mFrames.length] - timestamp);
+            if (distance <= bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        int index = (mHead + best) % mFrames.length;
+        T frame = (T) mFrames[index];
+        // Close the gap by moving the newer frames down
+        for (int i = best; i < mSize - 1; i++) {
+            int to = (mHead + i) % mFrames.length;
+            int from = (mHead + i + 1) % mFrames.length;
+            mFrames[to] = mFrames[from];
+            mTimestamps[to] = mTimestamps[from];
+        }
+        mSize--;
+        mFrames[(mHead + mSize) % mFrames.length] = null;
+        return frame;
+    }
+
+    /**
+     * Recycles all the frames.
+     */
+    synchronized void clear() {
+        while (mSize > 0) {
+            recycle(mHead);
+            mHead = (mHead + 1) % mFrames.length;
+            mSize--;
+        }
+        mHead = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recycle(int index) {
+        T frame = (T) mFrames[index];
+        mFrames[index] = null;
+        mRecycler.recycle(frame);
+    }
+
+}
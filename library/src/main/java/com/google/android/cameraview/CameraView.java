@@ -17,6 +17,7 @@
 package com.google.android.cameraview;
 
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.os.Build;
@@ -34,8 +35,10 @@ import android.widget.FrameLayout;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class CameraView extends FrameLayout {
 
@@ -80,12 +83,13 @@ public class CameraView extends FrameLayout {
     public static final int ERROR_TAKE_PICTURE = 13;
     public static final int ERROR_AUTO_FOCUS = 14;
     public static final int ERROR_START_PREVIEW = 15;
+    public static final int ERROR_ANALYZE_FRAME = 16;
     //error for camera2
     public static final int ERROR_START_SESSION = 21;
     public static final int ERROR_CAMERA_INTERNAL = 22;//camera2内部错误,@see CameraDevice.StateCallback
 
     @IntDef({ERROR_NO_PERMISSION, ERROR_SET_PARAMS, ERROR_TAKE_PICTURE, ERROR_AUTO_FOCUS, ERROR_START_PREVIEW,
-            ERROR_START_SESSION, ERROR_CAMERA_INTERNAL})
+            ERROR_ANALYZE_FRAME, ERROR_START_SESSION, ERROR_CAMERA_INTERNAL})
     @Retention(RetentionPolicy.SOURCE)
     public @interface Error {
     }
@@ -99,8 +103,16 @@ public class CameraView extends FrameLayout {
 
     private final CallbackBridge mCallbacks;
 
+    private FrameAnalysis mFrameAnalysis;
+
+    private FrameConsumer mFrameAnalysisConsumer;
+
     private boolean mAdjustViewBounds;
 
+    private CaptureMemoryBudget mCaptureMemoryBudget = CaptureMemoryBudget.UNLIMITED;
+
+    private PictureSaver mPictureSaver;
+
     private final DisplayOrientationDetector mDisplayOrientationDetector;
 
     public CameraView(Context context) {
@@ -274,9 +286,11 @@ public class CameraView extends FrameLayout {
         SavedState ss = (SavedState) state;
         super.onRestoreInstanceState(ss.getSuperState());
         setFacing(ss.facing);
-        setAspectRatio(ss.ratio);
-        setAutoFocus(ss.autoFocus);
-        setFlash(ss.flash);
+        edit()
+                .aspectRatio(ss.ratio)
+                .autoFocus(ss.autoFocus)
+                .flash(ss.flash)
+                .apply();
     }
 
     /**
@@ -287,9 +301,27 @@ public class CameraView extends FrameLayout {
         if (!mImpl.start()) {
             //store the state ,and restore this state after fall back o Camera1
             Parcelable state = onSaveInstanceState();
+            final int frameBufferCount = mImpl.getFrameBufferCount();
+            final boolean previewFrameEnabled = mImpl.isPreviewFrameEnabled();
+            final SizeSelector previewSizeSelector = mImpl.getPreviewSizeSelector();
+            final SizeSelector pictureSizeSelector = mImpl.getPictureSizeSelector();
+            final long captureMemoryBudget = mImpl.getCaptureMemoryBudget();
+            final boolean fastCapture = mImpl.getFastCapture();
+            final int zslCapacity = mImpl.getZslCapacity();
+            final boolean exifRotation = mImpl.getExifRotation();
+            final FrameRateGovernor frameRateGovernor = mImpl.getFrameRateGovernor();
             // Camera2 uses legacy hardware layer; fall back to Camera1
             mImpl = new Camera1(mCallbacks, createPreviewImpl(getContext()));
             onRestoreInstanceState(state);
+            mImpl.setFrameBufferCount(frameBufferCount);
+            mImpl.setPreviewFrameEnabled(previewFrameEnabled);
+            mImpl.setPreviewSizeSelector(previewSizeSelector);
+            mImpl.setPictureSizeSelector(pictureSizeSelector);
+            mImpl.setCaptureMemoryBudget(captureMemoryBudget);
+            mImpl.setFastCapture(fastCapture);
+            mImpl.setZslCapacity(zslCapacity);
+            mImpl.setExifRotation(exifRotation);
+            mImpl.setFrameRateGovernor(frameRateGovernor);
             mImpl.start();
         }
         if (debug) Log.d(TAG, "camera start: " + mImpl);
@@ -330,6 +362,246 @@ public class CameraView extends FrameLayout {
         mCallbacks.remove(callback);
     }
 
+    /**
+     * Add a new callback for preview frames. Frames are only produced while at least one frame
+     * callback is registered.
+     *
+     * @param callback The {@link FrameCallback} to add.
+     * @see #removeFrameCallback(FrameCallback)
+     */
+    public void addFrameCallback(@NonNull FrameCallback callback) {
+        mCallbacks.addFrameCallback(callback);
+        mImpl.setPreviewFrameEnabled(true);
+    }
+
+    /**
+     * Remove a callback for preview frames.
+     *
+     * @param callback The {@link FrameCallback} to remove.
+     * @see #addFrameCallback(FrameCallback)
+     */
+    public void removeFrameCallback(@NonNull FrameCallback callback) {
+        mCallbacks.removeFrameCallback(callback);
+        if (!mCallbacks.wantsFrames()) {
+            mImpl.setPreviewFrameEnabled(false);
+        }
+    }
+
+    /**
+     * Add a new consumer of shared preview frames. Unlike a {@link FrameCallback}, a consumer can
+     * keep a frame after its callback returns, and all the consumers share one buffer. Frames are
+     * only produced while at least one frame callback or consumer is registered.
+     *
+     * @param consumer The {@link FrameConsumer} to add.
+     * @see #removeFrameConsumer(FrameConsumer)
+     */
+    public void addFrameConsumer(@NonNull FrameConsumer consumer) {
+        mCallbacks.addFrameConsumer(consumer);
+        mImpl.setPreviewFrameEnabled(true);
+    }
+
+    /**
+     * Remove a consumer of shared preview frames.
+     *
+     * @param consumer The {@link FrameConsumer} to remove.
+     * @see #addFrameConsumer(FrameConsumer)
+     */
+    public void removeFrameConsumer(@NonNull FrameConsumer consumer) {
+        mCallbacks.removeFrameConsumer(consumer);
+        if (!mCallbacks.wantsFrames()) {
+            mImpl.setPreviewFrameEnabled(false);
+        }
+    }
+
+    /**
+     * Sets the number of preallocated buffers used for preview frames. More buffers let the
+     * camera keep producing frames while a {@link FrameCallback} is slow. This takes effect the
+     * next time the preview is configured.
+     *
+     * @param count The number of buffers. The default is 3.
+     */
+    public void setFrameBufferCount(int count) {
+        mImpl.setFrameBufferCount(count);
+    }
+
+    /**
+     * @return The number of preallocated buffers used for preview frames.
+     */
+    public int getFrameBufferCount() {
+        return mImpl.getFrameBufferCount();
+    }
+
+    /**
+     * Runs {@code analyzer} on preview frames on a dedicated thread, replacing the previous
+     * analyzer. Frames are dropped with {@link FrameAnalysis#BACKPRESSURE_KEEP_LATEST} when the
+     * analyzer is slow.
+     *
+     * @param analyzer The {@link FrameAnalysis.Analyzer}, or {@code null} to stop the analysis.
+     * @see #setFrameAnalyzer(FrameAnalysis.Analyzer, int, int)
+     */
+    public void setFrameAnalyzer(@Nullable FrameAnalysis.Analyzer analyzer) {
+        setFrameAnalyzer(analyzer, FrameAnalysis.BACKPRESSURE_KEEP_LATEST,
+                FrameAnalysis.DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Runs {@code analyzer} on preview frames on a dedicated thread, replacing the previous
+     * analyzer. The camera is not held up by the analyzer unless {@code backpressure} is
+     * {@link FrameAnalysis#BACKPRESSURE_BLOCK}. Waiting frames keep buffers of the camera, so the
+     * {@link #setFrameBufferCount(int) frame buffer count} is raised to leave the camera two of
+     * them. An exception thrown by the analyzer is reported to
+     * {@link Callback#onCameraError} as {@link #ERROR_ANALYZE_FRAME}.
+     *
+     * @param analyzer      The {@link FrameAnalysis.Analyzer}, or {@code null} to stop the
+     *                      analysis.
+     * @param backpressure  How frames are dropped when the analyzer is slower than the camera.
+     * @param queueCapacity The number of frames that can wait with
+     *                      {@link FrameAnalysis#BACKPRESSURE_QUEUE}.
+     */
+    public void setFrameAnalyzer(@Nullable FrameAnalysis.Analyzer analyzer,
+            @FrameAnalysis.Backpressure int backpressure, int queueCapacity) {
+        final FrameAnalysis analysis = analyzer == null ? null
+                : new FrameAnalysis(analyzer, backpressure, queueCapacity);
+        if (mFrameAnalysis != null) {
+            removeFrameConsumer(mFrameAnalysisConsumer);
+            mFrameAnalysis.close();
+            mFrameAnalysis = null;
+            mFrameAnalysisConsumer = null;
+        }
+        if (analysis == null) {
+            return;
+        }
+        final int bufferCount = analysis.getHeldFrameLimit() + 2;
+        if (getFrameBufferCount() < bufferCount) {
+            setFrameBufferCount(bufferCount);
+        }
+        analysis.setFrameRateGovernor(mImpl.getFrameRateGovernor());
+        analysis.setErrorListener(new FrameAnalysis.ErrorListener() {
+            @Override
+            public void onAnalyzerError(@NonNull final RuntimeException e) {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mCallbacks.onCameraError(e, ERROR_ANALYZE_FRAME);
+                    }
+                });
+            }
+        });
+        mFrameAnalysis = analysis;
+        mFrameAnalysisConsumer = new FrameConsumer() {
+            @Override
+            public void onFrame(CameraView cameraView, Frame frame) {
+                analysis.offer(frame);
+            }
+        };
+        addFrameConsumer(mFrameAnalysisConsumer);
+    }
+
+    /**
+     * @return The current frame analysis, which counts the analyzed and dropped frames, or
+     * {@code null} if there is no analyzer.
+     */
+    @Nullable
+    public FrameAnalysis getFrameAnalysis() {
+        return mFrameAnalysis;
+    }
+
+    /**
+     * Limits the rate of preview frames. The camera skips frames before it converts them, so all
+     * the {@link FrameCallback frame callbacks}, {@link FrameConsumer frame consumers} and the
+     * frame analyzer see the same, slower stream. The governor adapts to the time the
+     * {@link #setFrameAnalyzer(FrameAnalysis.Analyzer) frame analyzer} takes.
+     *
+     * @param governor The {@link FrameRateGovernor}, or {@code null} to deliver every frame.
+     */
+    public void setFrameRateGovernor(@Nullable FrameRateGovernor governor) {
+        mImpl.setFrameRateGovernor(governor);
+        if (mFrameAnalysis != null) {
+            mFrameAnalysis.setFrameRateGovernor(governor);
+        }
+    }
+
+    /**
+     * @return The {@link FrameRateGovernor}, or {@code null} if every frame is delivered.
+     */
+    @Nullable
+    public FrameRateGovernor getFrameRateGovernor() {
+        return mImpl.getFrameRateGovernor();
+    }
+
+    /**
+     * Sets how the preview size is chosen among the sizes supported by the camera. The default
+     * is {@link SizeSelectors#smallestCovering()}.
+     *
+     * @param selector The {@link SizeSelector} to use.
+     * @see SizeSelectors
+     * @see CostBasedSizeSelector
+     */
+    public void setPreviewSizeSelector(@NonNull SizeSelector selector) {
+        mImpl.setPreviewSizeSelector(selector);
+    }
+
+    /**
+     * @return The {@link SizeSelector} for the preview size.
+     */
+    @NonNull
+    public SizeSelector getPreviewSizeSelector() {
+        return mImpl.getPreviewSizeSelector();
+    }
+
+    /**
+     * Sets how the picture size is chosen among the sizes supported by the camera. The default
+     * is {@link SizeSelectors#largest()}. A smaller size that is still sufficient makes captures
+     * faster and uses less memory.
+     *
+     * @param selector The {@link SizeSelector} to use.
+     * @see SizeSelectors
+     * @see CostBasedSizeSelector
+     */
+    public void setPictureSizeSelector(@NonNull SizeSelector selector) {
+        mImpl.setPictureSizeSelector(selector);
+    }
+
+    /**
+     * @return The {@link SizeSelector} for the picture size.
+     */
+    @NonNull
+    public SizeSelector getPictureSizeSelector() {
+        return mImpl.getPictureSizeSelector();
+    }
+
+    /**
+     * Limits the memory used for still capture. When the capture buffers for the chosen picture
+     * size do not fit, fewer images are buffered and then a smaller picture size is used. The
+     * budget also covers the zero-shutter-lag ring, which gets what the capture buffers leave.
+     *
+     * @param budget The {@link CaptureMemoryBudget}. The default is
+     *               {@link CaptureMemoryBudget#UNLIMITED}.
+     * @see #getCaptureMemoryBudgetBytes()
+     */
+    public void setCaptureMemoryBudget(@NonNull CaptureMemoryBudget budget) {
+        ActivityManager activityManager =
+                (ActivityManager) getContext().getSystemService(Context.ACTIVITY_SERVICE);
+        mCaptureMemoryBudget = budget;
+        mImpl.setCaptureMemoryBudget(budget.getBytes(activityManager.getMemoryClass()));
+    }
+
+    /**
+     * @return The {@link CaptureMemoryBudget}.
+     */
+    @NonNull
+    public CaptureMemoryBudget getCaptureMemoryBudget() {
+        return mCaptureMemoryBudget;
+    }
+
+    /**
+     * @return The memory for still capture in bytes as resolved on this device, or 0 if it is
+     * unlimited.
+     */
+    public long getCaptureMemoryBudgetBytes() {
+        return mImpl.getCaptureMemoryBudget();
+    }
+
     /**
      * @param adjustViewBounds {@code true} if you want the CameraView to adjust its bounds to
      *                         preserve the aspect ratio of camera.
@@ -448,18 +720,287 @@ public class CameraView extends FrameLayout {
         return mImpl.getFlash();
     }
 
+    /**
+     * @return The time it took to apply aspect ratio and size changes, from the request until the
+     * camera produced the first frame with the new configuration.
+     */
+    @NonNull
+    public LatencyStats getReconfigurationLatency() {
+        return mImpl.getReconfigurationLatency();
+    }
+
+    /**
+     * @return The time it took to switch cameras with {@link #setFacing(int)}, from the request
+     * until the new camera produced its first frame.
+     */
+    @NonNull
+    public LatencyStats getFacingSwitchLatency() {
+        return mImpl.getFacingSwitchLatency();
+    }
+
+    /**
+     * @return The shutter lag of {@link #takePicture()}, from the call until the exposure of the
+     * picture started.
+     */
+    @NonNull
+    public LatencyStats getShutterLatency() {
+        return mImpl.getShutterLatency();
+    }
+
+    /**
+     * @return The time it took to set up and issue the still capture request of
+     * {@link #takePicture()}, once the camera was ready to take the picture.
+     */
+    @NonNull
+    public LatencyStats getCaptureIssueLatency() {
+        return mImpl.getCaptureIssueLatency();
+    }
+
+    /**
+     * Enables or disables fast capture. With fast capture, {@link #takePicture()} skips the focus
+     * lock and the exposure metering when the preview shows that focus and exposure have already
+     * settled, which shortens the shutter lag. Otherwise the picture is taken as usual.
+     *
+     * @param fastCapture {@code true} to enable fast capture. The default is {@code false}.
+     */
+    public void setFastCapture(boolean fastCapture) {
+        mImpl.setFastCapture(fastCapture);
+    }
+
+    /**
+     * @return {@code true} if fast capture is enabled.
+     * @see #setFastCapture(boolean)
+     */
+    public boolean getFastCapture() {
+        return mImpl.getFastCapture();
+    }
+
+    /**
+     * Enables zero-shutter-lag capture. The camera keeps streaming full-resolution frames into a
+     * ring of {@code count} frames, and {@link #takePicture()} encodes the frame closest to the
+     * time of the call instead of starting a new capture. This trades memory and power for a
+     * shutter lag of nearly zero. The ring is sized down to fit in what the still capture buffers
+     * leave of the capture memory budget, and is disabled if not even one frame fits.
+     *
+     * <p>This is only supported by Camera2, and only for aspect ratios that the camera offers as
+     * YUV output. Otherwise pictures are taken as usual. The additional stream may exceed the
+     * stream combinations that some devices support.</p>
+     *
+     * @param count The number of frames to keep, or 0 to disable zero-shutter-lag capture. The
+     *              default is 0.
+     * @see #setCaptureMemoryBudget(CaptureMemoryBudget)
+     */
+    public void setZeroShutterLagFrameCount(int count) {
+        mImpl.setZslCapacity(count);
+    }
+
+    /**
+     * @return The number of frames kept for zero-shutter-lag capture, or 0 if it is disabled.
+     */
+    public int getZeroShutterLagFrameCount() {
+        return mImpl.getZslCapacity();
+    }
+
+    /**
+     * Enables or disables EXIF rotation. With EXIF rotation, the camera does not rotate the
+     * pictures; they are delivered as captured with the rotation written to their EXIF orientation
+     * tag instead. This saves the camera from rotating the pixels, but viewers that ignore the tag
+     * show the pictures sideways.
+     *
+     * <p>The tag is overwritten in place when the camera already writes one. Otherwise a small
+     * EXIF segment is added, which copies the picture once.</p>
+     *
+     * @param exifRotation {@code true} to enable EXIF rotation. The default is {@code false}.
+     */
+    public void setExifRotation(boolean exifRotation) {
+        mImpl.setExifRotation(exifRotation);
+    }
+
+    /**
+     * @return {@code true} if EXIF rotation is enabled.
+     * @see #setExifRotation(boolean)
+     */
+    public boolean getExifRotation() {
+        return mImpl.getExifRotation();
+    }
+
+    /**
+     * Starts a set of changes to the camera controls that are applied to the camera in a single
+     * update. For example:
+     *
+     * <pre>
+     * cameraView.edit()
+     *         .flash(CameraView.FLASH_AUTO)
+     *         .autoFocus(true)
+     *         .apply();
+     * </pre>
+     *
+     * @return An {@link Editor}; nothing changes until {@link Editor#apply()}.
+     */
+    @NonNull
+    public Editor edit() {
+        return new Editor();
+    }
+
+    /**
+     * Reports the congestion of {@code saver} to
+     * {@link Callback#onStorageCongestionChanged(CameraView, boolean)}, so that the app can
+     * slow down taking pictures while the storage falls behind.
+     *
+     * @param saver The {@link PictureSaver} that the app saves pictures with, or {@code null}.
+     */
+    public void setPictureSaver(@Nullable PictureSaver saver) {
+        if (mPictureSaver != null) {
+            mPictureSaver.setBackpressureListener(null);
+        }
+        mPictureSaver = saver;
+        if (saver != null) {
+            saver.setBackpressureListener(new PictureSaver.BackpressureListener() {
+                @Override
+                public void onBackpressureChanged(final boolean congested) {
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mCallbacks.onStorageCongestionChanged(congested);
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    @Nullable
+    public PictureSaver getPictureSaver() {
+        return mPictureSaver;
+    }
+
+    /**
+     * @return {@code true} if the {@link PictureSaver} is falling behind.
+     * @see #setPictureSaver(PictureSaver)
+     */
+    public boolean isStorageCongested() {
+        return mPictureSaver != null && mPictureSaver.isCongested();
+    }
+
     /**
      * Take a picture. The result will be returned to
-     * {@link Callback#onPictureTaken(CameraView, byte[])}.
+     * {@link Callback#onPictureTaken(CameraView, ByteBuffer, Releasable)}, which calls
+     * {@link Callback#onPictureTaken(CameraView, byte[])} unless it is overridden.
      */
     public void takePicture() {
         mImpl.takePicture();
     }
 
+    /**
+     * Takes a burst of pictures. Each picture is delivered in order to
+     * {@link Callback#onPictureTaken(CameraView, ByteBuffer, Releasable)}, and then
+     * {@link Callback#onBurstCompleted(CameraView, BurstResult)} reports how many were delivered
+     * or dropped and the achieved rate.
+     *
+     * <p>Only a few pictures are in flight at once. A picture stays in flight until it is
+     * released, so release them quickly to keep the burst going. A picture whose turn comes while
+     * too many are in flight is dropped.</p>
+     *
+     * @param count      The number of pictures.
+     * @param intervalMs The time between pictures in milliseconds, or 0 to take them as fast as
+     *                   the camera can.
+     */
+    public void takeBurst(int count, int intervalMs) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Count must be positive: " + count);
+        }
+        if (intervalMs < 0) {
+            throw new IllegalArgumentException("Interval must not be negative: " + intervalMs);
+        }
+        mImpl.takeBurst(count, intervalMs);
+    }
+
+    /**
+     * Collects changes to the camera controls and applies them at once.
+     *
+     * @see #edit()
+     */
+    public final class Editor {
+
+        private Integer mFlash;
+
+        private Boolean mAutoFocus;
+
+        private AspectRatio mAspectRatio;
+
+        Editor() {
+        }
+
+        /**
+         * @see CameraView#setFlash(int)
+         */
+        @NonNull
+        public Editor flash(@Flash int flash) {
+            mFlash = flash;
+            return this;
+        }
+
+        /**
+         * @see CameraView#setAutoFocus(boolean)
+         */
+        @NonNull
+        public Editor autoFocus(boolean autoFocus) {
+            mAutoFocus = autoFocus;
+            return this;
+        }
+
+        /**
+         * @see CameraView#setAspectRatio(AspectRatio)
+         */
+        @NonNull
+        public Editor aspectRatio(@NonNull AspectRatio ratio) {
+            mAspectRatio = ratio;
+            return this;
+        }
+
+        /**
+         * Applies the changes to the camera in one update.
+         */
+        public void apply() {
+            mImpl.beginControlUpdate();
+            try {
+                if (mAspectRatio != null) {
+                    setAspectRatio(mAspectRatio);
+                }
+                if (mAutoFocus != null) {
+                    setAutoFocus(mAutoFocus);
+                }
+                if (mFlash != null) {
+                    setFlash(mFlash);
+                }
+            } finally {
+                mImpl.endControlUpdate();
+            }
+        }
+
+    }
+
     private class CallbackBridge implements CameraViewImpl.Callback {
 
         private final ArrayList<Callback> mCallbacks = new ArrayList<>();
 
+        private final CopyOnWriteArrayList<FrameCallback> mFrameCallbacks =
+                new CopyOnWriteArrayList<>();
+
+        private final CopyOnWriteArrayList<FrameConsumer> mFrameConsumers =
+                new CopyOnWriteArrayList<>();
+
+        /**
+         * Reports frames that consumers never release, in debug builds.
+         */
+        private final LeakDetector mLeakDetector = !debug ? null
+                : new LeakDetector(new LeakDetector.Listener() {
+                    @Override
+                    public void onLeak(@NonNull Throwable allocationSite) {
+                        Log.w(TAG, "A FrameConsumer did not release a frame", allocationSite);
+                    }
+                });
+
         private boolean mRequestLayoutOnOpen;
 
         CallbackBridge() {
@@ -473,6 +1014,26 @@ public class CameraView extends FrameLayout {
             mCallbacks.remove(callback);
         }
 
+        public void addFrameCallback(FrameCallback callback) {
+            mFrameCallbacks.addIfAbsent(callback);
+        }
+
+        public void removeFrameCallback(FrameCallback callback) {
+            mFrameCallbacks.remove(callback);
+        }
+
+        public void addFrameConsumer(FrameConsumer consumer) {
+            mFrameConsumers.addIfAbsent(consumer);
+        }
+
+        public void removeFrameConsumer(FrameConsumer consumer) {
+            mFrameConsumers.remove(consumer);
+        }
+
+        public boolean wantsFrames() {
+            return !mFrameCallbacks.isEmpty() || !mFrameConsumers.isEmpty();
+        }
+
         @Override
         public void onCameraOpened() {
             if (mRequestLayoutOnOpen) {
@@ -499,9 +1060,64 @@ public class CameraView extends FrameLayout {
         }
 
         @Override
-        public void onPictureTaken(byte[] data) {
+        public void onPictureTaken(ByteBuffer data, Releasable releasable) {
+            final RefCountedReleasable references =
+                    new RefCountedReleasable(releasable, mCallbacks.size());
             for (Callback callback : mCallbacks) {
-                callback.onPictureTaken(CameraView.this, data);
+                callback.onPictureTaken(CameraView.this, data.asReadOnlyBuffer(),
+                        references.newReference());
+            }
+        }
+
+        @Override
+        public void onBurstCompleted(BurstResult result) {
+            for (Callback callback : mCallbacks) {
+                callback.onBurstCompleted(CameraView.this, result);
+            }
+        }
+
+        @Override
+        public void onLegacyCamera() {
+            if (!mImpl.isCameraOpened()) {
+                // Stopped in the meantime
+                return;
+            }
+            // start() falls back to Camera1 for the new facing
+            mImpl.stop();
+            start();
+        }
+
+        public void onStorageCongestionChanged(boolean congested) {
+            for (Callback callback : mCallbacks) {
+                callback.onStorageCongestionChanged(CameraView.this, congested);
+            }
+        }
+
+        @Override
+        public void onPreviewFrame(byte[] data, int width, int height, Releasable releasable) {
+            // The frame callbacks only use the data while they run
+            if (!mFrameCallbacks.isEmpty()) {
+                for (FrameCallback callback : mFrameCallbacks) {
+                    callback.onPreviewFrame(CameraView.this, data, width, height);
+                }
+            }
+            final int count = mFrameConsumers.size();
+            if (count == 0) {
+                releasable.release();
+                return;
+            }
+            final Frame[] frames = Frame.share(data, width, height, releasable, count,
+                    mLeakDetector);
+            // Consumers added or removed meanwhile are skipped or leave their frames unused
+            int i = 0;
+            for (FrameConsumer consumer : mFrameConsumers) {
+                if (i == frames.length) {
+                    break;
+                }
+                consumer.onFrame(CameraView.this, frames[i++]);
+            }
+            for (; i < frames.length; i++) {
+                frames[i].release();
             }
         }
 
@@ -562,7 +1178,8 @@ public class CameraView extends FrameLayout {
     }
 
     /**
-     * Callback for monitoring events about {@link CameraView}.
+     * Callback for monitoring events about {@link CameraView}. All the methods are called on the
+     * main thread.
      */
     @SuppressWarnings("UnusedParameters")
     public abstract static class Callback {
@@ -601,6 +1218,85 @@ public class CameraView extends FrameLayout {
          */
         public void onPictureTaken(CameraView cameraView, byte[] data) {
         }
+
+        /**
+         * Called when a picture is taken. The buffer is handed out without copying and it stays
+         * valid until {@code releasable} is released. Release it as soon as possible; the camera
+         * can only hold a couple of pictures at a time.
+         *
+         * <p>The default implementation copies the data and calls
+         * {@link #onPictureTaken(CameraView, byte[])}.</p>
+         *
+         * @param cameraView The associated {@link CameraView}.
+         * @param data       JPEG data, from its position to its limit.
+         * @param releasable Must be released when the data is no longer used.
+         */
+        public void onPictureTaken(CameraView cameraView, ByteBuffer data,
+                Releasable releasable) {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            releasable.release();
+            onPictureTaken(cameraView, bytes);
+        }
+
+        /**
+         * Called after the last picture of a burst has been delivered or dropped.
+         *
+         * @param cameraView The associated {@link CameraView}.
+         * @param result     The number of pictures delivered and dropped, and the achieved rate.
+         * @see #takeBurst(int, int)
+         */
+        public void onBurstCompleted(CameraView cameraView, BurstResult result) {
+        }
+
+        /**
+         * Called when the {@link PictureSaver} set with {@link #setPictureSaver(PictureSaver)}
+         * starts or stops falling behind.
+         *
+         * @param cameraView The associated {@link CameraView}.
+         * @param congested  {@code true} if pictures are queued faster than they can be written.
+         */
+        public void onStorageCongestionChanged(CameraView cameraView, boolean congested) {
+        }
+    }
+
+    /**
+     * Callback for receiving preview frames from {@link CameraView}.
+     *
+     * @see #addFrameCallback(FrameCallback)
+     */
+    public interface FrameCallback {
+
+        /**
+         * Called for each preview frame. This is called on the camera thread, not the main
+         * thread; a slow callback holds up the camera.
+         *
+         * @param cameraView The associated {@link CameraView}.
+         * @param data       The frame in NV21 format. The buffer is reused for later frames, so it
+         *                   is only valid until this method returns.
+         * @param width      The width of the frame.
+         * @param height     The height of the frame.
+         */
+        void onPreviewFrame(CameraView cameraView, byte[] data, int width, int height);
+    }
+
+    /**
+     * Consumer of preview frames from {@link CameraView} that are shared with other consumers.
+     *
+     * @see #addFrameConsumer(FrameConsumer)
+     */
+    public interface FrameConsumer {
+
+        /**
+         * Called for each preview frame on the camera thread. The consumer owns {@code frame}: it
+         * may keep it and use it on any thread, and it has to {@link Frame#release() release} it.
+         * The camera only reuses the buffer once every consumer has released its frame, and
+         * drops frames while it runs out of buffers.
+         *
+         * @param cameraView The associated {@link CameraView}.
+         * @param frame      The frame, in NV21 format.
+         */
+        void onFrame(CameraView cameraView, Frame frame);
     }
 
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ArgbConverterTest {
+
+    @Test
+    public void testMatchesReference() {
+        for (int threads : new int[]{1, 3}) {
+            ArgbConverter converter = new ArgbConverter(threads, 1);
+            try {
+                assertMatchesReference(converter, 64, 48);
+                assertMatchesReference(converter, 33, 17);
+                assertMatchesReference(converter, 1, 1);
+            } finally {
+                converter.close();
+            }
+        }
+    }
+
+    @Test
+    public void testThreadCountsAgree() {
+        byte[] nv21 = randomFrame(321, 241);
+        int[] expected = new int[321 * 241];
+        ArgbConverter.convertRows(nv21, 321, 241, 0, 241, expected);
+        for (int threads : new int[]{1, 2, 4, 8}) {
+            ArgbConverter converter = new ArgbConverter(threads, 1);
+            int[] argb = new int[321 * 241];
+            converter.convert(nv21, 321, 241, argb);
+            converter.close();
+            assertThat(argb, is(expected));
+        }
+    }
+
+    @Test
+    public void testGray() {
+        byte[] nv21 = new byte[YuvConverter.getFrameSize(4, 2)];
+        for (int i = 0; i < 8; i++) {
+            nv21[i] = (byte) (i * 32);
+        }
+        for (int i = 8; i < nv21.length; i++) {
+            nv21[i] = (byte) 128;
+        }
+        int[] argb = new int[8];
+        new ArgbConverter(1, 1).convert(nv21, 4, 2, argb);
+        for (int i = 0; i < 8; i++) {
+            assertThat(argb[i], is(0xFF000000 | i * 32 * 0x010101));
+        }
+    }
+
+    @Test
+    public void testPooledBuffers() {
+        ArgbConverter converter = new ArgbConverter(2, 2);
+        byte[] nv21 = randomFrame(16, 8);
+        int[] first = converter.convert(nv21, 16, 8);
+        int[] second = converter.convert(nv21, 16, 8);
+        assertThat(first, is(notNullValue()));
+        assertThat(second, is(notNullValue()));
+        assertThat(converter.convert(nv21, 16, 8), is(nullValue()));
+        converter.release(first);
+        assertThat(converter.convert(nv21, 16, 8), is(sameInstance(first)));
+        converter.close();
+    }
+
+    @Test
+    public void testPoolDropsBuffersOfOtherSizes() {
+        ArgbConverter converter = new ArgbConverter(1, 1);
+        int[] small = converter.convert(randomFrame(16, 8), 16, 8);
+        int[] large = converter.convert(randomFrame(32, 16), 32, 16);
+        assertThat(large.length, is(32 * 16));
+        converter.release(small);
+        assertThat(converter.convert(randomFrame(32, 16), 32, 16), is(nullValue()));
+        converter.release(large);
+        assertThat(converter.convert(randomFrame(32, 16), 32, 16), is(sameInstance(large)));
+    }
+
+    @Test
+    public void testConvertsAfterClose() {
+        ArgbConverter converter = new ArgbConverter(4, 1);
+        converter.close();
+        assertMatchesReference(converter, 64, 48);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFrameTooSmall() {
+        new ArgbConverter(1, 1).convert(new byte[16 * 8], 16, 8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutputTooSmall() {
+        new ArgbConverter(1, 1).convert(randomFrame(16, 8), 16, 8, new int[16 * 8 - 1]);
+    }
+
+    private static void assertMatchesReference(ArgbConverter converter, int width, int height) {
+        byte[] nv21 = randomFrame(width, height);
+        int[] argb = new int[width * height];
+        converter.convert(nv21, width, height, argb);
+        int chromaRowLength = 2 * ((width + 1) / 2);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int chroma = width * height + y / 2 * chromaRowLength + x / 2 * 2;
+                int expected = reference(nv21[y * width + x] & 0xFF, nv21[chroma + 1] & 0xFF,
+                        nv21[chroma] & 0xFF);
+                int actual = argb[y * width + x];
+                assertThat(actual >>> 24, is(0xFF));
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int difference = ((actual >> shift) & 0xFF) - ((expected >> shift) & 0xFF);
+                    assertTrue("Pixel " + x + "," + y, Math.abs(difference) <= 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * The JFIF conversion in floating point.
+     */
+    private static int reference(int luma, int cb, int cr) {
+        double r = luma + 1.402 * (cr - 128);
+        double g = luma - 0.344136 * (cb - 128) - 0.714136 * (cr - 128);
+        double b = luma + 1.772 * (cb - 128);
+        return 0xFF000000 | toByte(r) << 16 | toByte(g) << 8 | toByte(b);
+    }
+
+    private static int toByte(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    private static byte[] randomFrame(int width, int height) {
+        byte[] nv21 = new byte[YuvConverter.getFrameSize(width, height)];
+        new Random(width * 31 + height).nextBytes(nv21);
+        return nv21;
+    }
+
+}
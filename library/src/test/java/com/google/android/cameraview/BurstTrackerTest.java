@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class BurstTrackerTest {
+
+    private static final long MILLIS = 1000000L;
+
+    @Test
+    public void testPipelined() {
+        BurstTracker tracker = new BurstTracker(5, 2);
+        assertThat(tracker.available(), is(2));
+        tracker.onIssued(2);
+        assertThat(tracker.available(), is(0));
+        assertThat(tracker.onDelivered(100 * MILLIS), is(0));
+        // Delivered but not released yet
+        assertThat(tracker.available(), is(0));
+        tracker.onReleased();
+        assertThat(tracker.available(), is(1));
+        tracker.onIssued(1);
+        assertThat(tracker.onDelivered(200 * MILLIS), is(1));
+        assertThat(tracker.onDelivered(300 * MILLIS), is(2));
+        tracker.onReleased();
+        tracker.onReleased();
+        assertThat(tracker.getRemaining(), is(2));
+        assertThat(tracker.available(), is(2));
+        tracker.onIssued(2);
+        tracker.onDelivered(400 * MILLIS);
+        assertThat(tracker.isComplete(), is(false));
+        tracker.onDelivered(500 * MILLIS);
+        assertThat(tracker.isComplete(), is(true));
+        BurstResult result = tracker.getResult();
+        assertThat(result.getRequestedCount(), is(5));
+        assertThat(result.getDeliveredCount(), is(5));
+        assertThat(result.getDroppedCount(), is(0));
+        assertThat(result.getFramesPerSecond(), is(10f));
+    }
+
+    @Test
+    public void testDrops() {
+        BurstTracker tracker = new BurstTracker(4, 1);
+        tracker.onIssued(1);
+        // The receiver holds the first picture past the turn of the second one
+        tracker.onSkipped();
+        tracker.onDelivered(0);
+        tracker.onReleased();
+        tracker.onIssued(1);
+        tracker.onFailed();
+        assertThat(tracker.available(), is(1));
+        tracker.onIssued(1);
+        tracker.onDelivered(250 * MILLIS);
+        assertThat(tracker.isComplete(), is(true));
+        BurstResult result = tracker.getResult();
+        assertThat(result.getDeliveredCount(), is(2));
+        assertThat(result.getDroppedCount(), is(2));
+        assertThat(result.getFramesPerSecond(), is(4f));
+    }
+
+    @Test
+    public void testSingleDelivery() {
+        BurstTracker tracker = new BurstTracker(1, 1);
+        tracker.onIssued(1);
+        tracker.onDelivered(MILLIS);
+        assertThat(tracker.isComplete(), is(true));
+        assertThat(tracker.getResult().getFramesPerSecond(), is(0f));
+    }
+
+    @Test
+    public void testAbort() {
+        BurstTracker tracker = new BurstTracker(5, 2);
+        tracker.onIssued(2);
+        tracker.onDelivered(0);
+        tracker.abort();
+        assertThat(tracker.isComplete(), is(true));
+        assertThat(tracker.getResult().getDeliveredCount(), is(1));
+        assertThat(tracker.getResult().getDroppedCount(), is(4));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTooManyInFlight() {
+        BurstTracker tracker = new BurstTracker(3, 2);
+        tracker.onIssued(3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCount() {
+        new BurstTracker(0, 1);
+    }
+
+}
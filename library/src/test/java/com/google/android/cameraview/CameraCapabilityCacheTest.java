@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class CameraCapabilityCacheTest {
+
+    @Test
+    public void testQueriedOncePerId() {
+        CameraCapabilityCache cache = new CameraCapabilityCache();
+        CountingSource source = new CountingSource("0", "1");
+        // Start, flip the facing back and forth, then stop and resume
+        for (int i = 0; i < 5; i++) {
+            for (String id : cache.getCameraIds(source)) {
+                cache.get(id, source);
+            }
+        }
+        assertThat(source.idQueries, is(1));
+        assertThat(source.queries.get("0"), is(1));
+        assertThat(source.queries.get("1"), is(1));
+    }
+
+    @Test
+    public void testSameInstance() {
+        CameraCapabilityCache cache = new CameraCapabilityCache();
+        CountingSource source = new CountingSource("0");
+        assertThat(cache.get("0", source), is(sameInstance(cache.get("0", source))));
+    }
+
+    @Test
+    public void testAvailabilityOfKnownCamera() {
+        CameraCapabilityCache cache = new CameraCapabilityCache();
+        CountingSource source = new CountingSource("0", "1");
+        cache.getCameraIds(source);
+        cache.get("0", source);
+        // Opening and closing our own camera changes its availability
+        cache.onCameraAvailabilityChanged("0");
+        cache.getCameraIds(source);
+        cache.get("0", source);
+        assertThat(source.idQueries, is(1));
+        assertThat(source.queries.get("0"), is(1));
+    }
+
+    @Test
+    public void testAvailabilityOfNewCamera() {
+        CameraCapabilityCache cache = new CameraCapabilityCache();
+        CountingSource source = new CountingSource("0");
+        assertThat(cache.getCameraIds(source).length, is(1));
+        source.ids = new String[]{"0", "2"};
+        cache.onCameraAvailabilityChanged("2");
+        assertThat(cache.getCameraIds(source).length, is(2));
+        assertThat(source.idQueries, is(2));
+    }
+
+    private static class CountingSource implements CameraCapabilityCache.Source {
+
+        String[] ids;
+
+        int idQueries;
+
+        final Map<String, Integer> queries = new HashMap<>();
+
+        CountingSource(String... ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public String[] queryCameraIds() {
+            idQueries++;
+            return ids.clone();
+        }
+
+        @Override
+        public CameraCapabilities queryCapabilities(String cameraId) {
+            Integer count = queries.get(cameraId);
+            queries.put(cameraId, count == null ? 1 : count + 1);
+            SizeMap sizes = new SizeMap();
+            sizes.add(new Size(640, 480));
+            return new CameraCapabilities(cameraId, Constants.FACING_BACK, 1, 90, sizes, sizes,
+                    sizes, new int[]{0}, false, false);
+        }
+
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class CapabilitySnapshotTest {
+
+    private static final String FINGERPRINT = "google/sailfish/sailfish:8.1.0/OPM1/1:user/release-keys";
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        CameraCapabilities back = capabilities("0", Constants.FACING_BACK, 640, 480);
+        CameraCapabilities front = new CameraCapabilities("1", Constants.FACING_FRONT, 0, 270,
+                sizes(1280, 720, 640, 360), sizes(1920, 1080, 4032, 2268),
+                sizes(1920, 1080, 1280, 720), new int[]{0, 1, 4}, false, true);
+        CapabilitySnapshot snapshot = new CapabilitySnapshot(new String[]{"0", "1"},
+                Arrays.asList(back, front));
+        CapabilitySnapshot read = CapabilitySnapshot.read(
+                new ByteArrayInputStream(write(snapshot, FINGERPRINT)), FINGERPRINT);
+        assertThat(read, is(notNullValue()));
+        assertThat(read.getCameraIds(), is(new String[]{"0", "1"}));
+        assertThat(read.getCapabilities().size(), is(2));
+        assertThat(read.getCapabilities().get(0), is(back));
+        assertThat(read.getCapabilities().get(1), is(front));
+        assertThat(read.getCapabilities().get(1).getAfModes(), is(new int[]{0, 1, 4}));
+        assertThat(read.getCapabilities().get(1).getSensorOrientation(), is(270));
+        assertThat(read.getCapabilities().get(1).getYuvSizes().allSizes().size(), is(2));
+        assertThat(read.getCapabilities().get(1).hasRealtimeTimestamps(), is(true));
+    }
+
+    @Test
+    public void testOtherFingerprint() throws IOException {
+        CapabilitySnapshot snapshot = new CapabilitySnapshot(new String[]{"0"},
+                Arrays.asList(capabilities("0", Constants.FACING_BACK, 640, 480)));
+        byte[] data = write(snapshot, FINGERPRINT);
+        assertThat(CapabilitySnapshot.read(new ByteArrayInputStream(data), "other"),
+                is(nullValue()));
+    }
+
+    @Test
+    public void testNotASnapshot() throws IOException {
+        byte[] data = "not a snapshot".getBytes("UTF-8");
+        assertThat(CapabilitySnapshot.read(new ByteArrayInputStream(data), FINGERPRINT),
+                is(nullValue()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testEmptySize() throws IOException {
+        CapabilitySnapshot.read(new ByteArrayInputStream(
+                raw(Constants.FACING_BACK, 90, 640, 0)), FINGERPRINT);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFacing() throws IOException {
+        CapabilitySnapshot.read(new ByteArrayInputStream(raw(7, 90, 640, 480)), FINGERPRINT);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidSensorOrientation() throws IOException {
+        CapabilitySnapshot.read(new ByteArrayInputStream(
+                raw(Constants.FACING_BACK, -90, 640, 480)), FINGERPRINT);
+    }
+
+    @Test
+    public void testValidRawSnapshot() throws IOException {
+        CapabilitySnapshot read = CapabilitySnapshot.read(new ByteArrayInputStream(
+                raw(Constants.FACING_BACK, 90, 640, 480)), FINGERPRINT);
+        assertThat(read.getCapabilities().get(0).getPreviewSizes().allSizes().size(), is(1));
+    }
+
+    @Test
+    public void testStore() {
+        File file = new File(mTemporaryFolder.getRoot(), "capabilities");
+        CapabilitySnapshotStore store = new CapabilitySnapshotStore(file, FINGERPRINT);
+        assertThat(store.load(), is(nullValue()));
+        CameraCapabilities back = capabilities("0", Constants.FACING_BACK, 640, 480);
+        store.save(new CapabilitySnapshot(new String[]{"0"}, Arrays.asList(back)));
+        assertThat(store.load().getCapabilities().get(0), is(back));
+        assertThat(new CapabilitySnapshotStore(file, "other").load(), is(nullValue()));
+    }
+
+    @Test
+    public void testSeedAndValidate() {
+        CameraCapabilities seeded = capabilities("0", Constants.FACING_BACK, 640, 480);
+        CameraCapabilityCache cache = new CameraCapabilityCache();
+        assertThat(cache.seed(new CapabilitySnapshot(new String[]{"0"}, Arrays.asList(seeded))),
+                is(true));
+        FixedSource source = new FixedSource(
+                capabilities("0", Constants.FACING_BACK, 640, 480));
+        // The snapshot is used without asking the camera system
+        assertThat(cache.getCameraIds(source), is(new String[]{"0"}));
+        assertThat(cache.get("0", source), is(sameInstance(seeded)));
+        assertThat(source.queries, is(0));
+        // Validation only queries once and keeps the snapshot when it is up to date
+        assertThat(cache.validate("0", source), is(sameInstance(seeded)));
+        assertThat(cache.validate("0", source), is(sameInstance(seeded)));
+        assertThat(source.queries, is(1));
+        assertThat(cache.takeSnapshotIfDirty(), is(nullValue()));
+    }
+
+    @Test
+    public void testValidateStale() {
+        CameraCapabilities seeded = capabilities("0", Constants.FACING_BACK, 640, 480);
+        CameraCapabilityCache cache = new CameraCapabilityCache();
+        cache.seed(new CapabilitySnapshot(new String[]{"0"}, Arrays.asList(seeded)));
+        // e.g. a system update added a preview size
+        CameraCapabilities live = capabilities("0", Constants.FACING_BACK, 1280, 960);
+        assertThat(live, is(not(seeded)));
+        assertThat(cache.validate("0", new FixedSource(live)), is(sameInstance(live)));
+        CapabilitySnapshot snapshot = cache.takeSnapshotIfDirty();
+        assertThat(snapshot.getCapabilities().get(0), is(sameInstance(live)));
+        assertThat(cache.takeSnapshotIfDirty(), is(nullValue()));
+    }
+
+    @Test
+    public void testSeedAfterQuery() {
+        CameraCapabilityCache cache = new CameraCapabilityCache();
+        FixedSource source = new FixedSource(capabilities("0", Constants.FACING_BACK, 640, 480));
+        cache.get("0", source);
+        CameraCapabilities seeded = capabilities("0", Constants.FACING_FRONT, 640, 480);
+        assertThat(cache.seed(new CapabilitySnapshot(new String[]{"0"}, Arrays.asList(seeded))),
+                is(false));
+        assertThat(cache.get("0", source).getFacing(), is(Constants.FACING_BACK));
+    }
+
+    private static byte[] write(CapabilitySnapshot snapshot, String fingerprint)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.write(out, fingerprint);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a snapshot of one camera with one size in each table, the way
+     * {@link CapabilitySnapshot#write} lays it out, but without checking the values.
+     */
+    private static byte[] raw(int facing, int sensorOrientation, int width, int height)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CapabilitySnapshot empty = new CapabilitySnapshot(new String[]{"0"},
+                Collections.<CameraCapabilities>emptyList());
+        empty.write(out, FINGERPRINT);
+        byte[] header = out.toByteArray();
+        out.reset();
+        // Everything up to the count of capabilities, which is the last field of an empty one
+        out.write(header, 0, header.length - 2);
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeShort(1);
+        data.writeUTF("0");
+        data.writeByte(facing);
+        data.writeByte(1);
+        data.writeShort(sensorOrientation);
+        for (int i = 0; i < 3; i++) {
+            data.writeShort(1);
+            data.writeShort(width);
+            data.writeShort(height);
+        }
+        data.writeByte(0);
+        data.writeBoolean(false);
+        data.writeBoolean(false);
+        data.flush();
+        return out.toByteArray();
+    }
+
+    private static CameraCapabilities capabilities(String id, int facing, int width, int height) {
+        return new CameraCapabilities(id, facing, 1, 90, sizes(width, height),
+                sizes(width, height, 4032, 3024), sizes(width, height), new int[]{0, 4}, true,
+                false);
+    }
+
+    private static SizeMap sizes(int... dimensions) {
+        SizeMap map = new SizeMap();
+        for (int i = 0; i < dimensions.length; i += 2) {
+            map.add(new Size(dimensions[i], dimensions[i + 1]));
+        }
+        return map;
+    }
+
+    private static class FixedSource implements CameraCapabilityCache.Source {
+
+        final CameraCapabilities capabilities;
+
+        int queries;
+
+        FixedSource(CameraCapabilities capabilities) {
+            this.capabilities = capabilities;
+        }
+
+        @Override
+        public String[] queryCameraIds() {
+            queries++;
+            return new String[]{capabilities.getCameraId()};
+        }
+
+        @Override
+        public CameraCapabilities queryCapabilities(String cameraId) {
+            queries++;
+            return capabilities;
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class CaptureMemoryBudgetTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private static final Size SIZE_12MP = new Size(4032, 3024);
+
+    @Test
+    public void testBytes() {
+        assertThat(CaptureMemoryBudget.ofBytes(64 * MB).getBytes(256), is(64 * MB));
+        assertThat(CaptureMemoryBudget.ofMemoryClass(0.25f).getBytes(192), is(48 * MB));
+        assertThat(CaptureMemoryBudget.UNLIMITED.getBytes(192), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFraction() {
+        CaptureMemoryBudget.ofMemoryClass(1.5f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBytes() {
+        CaptureMemoryBudget.ofBytes(0);
+    }
+
+    @Test
+    public void testBytesPerImage() {
+        // 12 MP at 1.5 bytes per pixel
+        assertThat(CaptureMemoryBudget.bytesPerImage(SIZE_12MP), is(18289152L));
+    }
+
+    @Test
+    public void testImageCount() {
+        assertThat(CaptureMemoryBudget.imageCount(SIZE_12MP, 0, 2), is(2));
+        assertThat(CaptureMemoryBudget.imageCount(SIZE_12MP, 40 * MB, 2), is(2));
+        assertThat(CaptureMemoryBudget.imageCount(SIZE_12MP, 20 * MB, 2), is(1));
+        // Never below one image
+        assertThat(CaptureMemoryBudget.imageCount(SIZE_12MP, MB, 2), is(1));
+    }
+
+    @Test
+    public void testFittingImageCount() {
+        assertThat(CaptureMemoryBudget.fittingImageCount(SIZE_12MP, 40 * MB, 2), is(2));
+        assertThat(CaptureMemoryBudget.fittingImageCount(SIZE_12MP, 20 * MB, 2), is(1));
+        // Unlike imageCount(), nothing is left over
+        assertThat(CaptureMemoryBudget.fittingImageCount(SIZE_12MP, MB, 2), is(0));
+        assertThat(CaptureMemoryBudget.fittingImageCount(SIZE_12MP, 0, 2), is(0));
+        assertThat(CaptureMemoryBudget.fittingImageCount(SIZE_12MP, -MB, 2), is(0));
+    }
+
+    @Test
+    public void testPictureSizeWithinBudget() {
+        SizeMap sizes = SizeSelectorsTest.sizes();
+        assertThat(CaptureMemoryBudget.limitPictureSize(SIZE_12MP, sizes, 0), is(SIZE_12MP));
+        assertThat(CaptureMemoryBudget.limitPictureSize(SIZE_12MP, sizes, 20 * MB),
+                is(SIZE_12MP));
+    }
+
+    @Test
+    public void testPictureSizeOverBudget() {
+        SizeMap sizes = SizeSelectorsTest.sizes();
+        // 2592x1944 takes 7.2 MB
+        assertThat(CaptureMemoryBudget.limitPictureSize(SIZE_12MP, sizes, 8 * MB),
+                is(new Size(2592, 1944)));
+        // Nothing of 4:3 fits but 16:9 1280x720 does
+        sizes.remove(AspectRatio.of(4, 3));
+        sizes.add(SIZE_12MP);
+        assertThat(CaptureMemoryBudget.limitPictureSize(SIZE_12MP, sizes, 2 * MB),
+                is(new Size(1280, 720)));
+        // Nothing fits at all
+        assertThat(CaptureMemoryBudget.limitPictureSize(SIZE_12MP, sizes, MB),
+                is(new Size(1280, 720)));
+    }
+
+    @Test
+    public void testLowRamDevice() {
+        // A quarter of a 96 MB memory class with high-resolution sizes available
+        SizeMap sizes = SizeSelectorsTest.sizes();
+        sizes.add(new Size(8064, 6048));
+        long budget = CaptureMemoryBudget.ofMemoryClass(0.25f).getBytes(96);
+        Size size = CaptureMemoryBudget.limitPictureSize(new Size(8064, 6048), sizes, budget);
+        assertThat(size, is(SIZE_12MP));
+        assertThat(CaptureMemoryBudget.imageCount(size, budget, 2), is(1));
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+public class ControlUpdateBatcherTest {
+
+    private static final int ALL = ControlUpdateBatcher.FLASH | ControlUpdateBatcher.AUTO_FOCUS
+            | ControlUpdateBatcher.ASPECT_RATIO;
+
+    @Test
+    public void testBurstIsCoalesced() {
+        FakeBackend backend = new FakeBackend();
+        QueueExecutor cameraThread = new QueueExecutor();
+        ControlUpdateBatcher batcher = new ControlUpdateBatcher(backend, cameraThread);
+        // Like onRestoreInstanceState before the transactions were added
+        batcher.requestUpdate(ControlUpdateBatcher.ASPECT_RATIO);
+        batcher.requestUpdate(ControlUpdateBatcher.AUTO_FOCUS);
+        batcher.requestUpdate(ControlUpdateBatcher.FLASH);
+        assertThat(cameraThread.size(), is(1));
+        cameraThread.runAll();
+        assertThat(backend.roundTrips, is(1));
+        assertThat(backend.lastChanges, is(ALL));
+    }
+
+    @Test
+    public void testTransaction() {
+        FakeBackend backend = new FakeBackend();
+        // The camera thread runs everything right away
+        ControlUpdateBatcher batcher = new ControlUpdateBatcher(backend, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        batcher.begin();
+        batcher.requestUpdate(ControlUpdateBatcher.FLASH);
+        batcher.requestUpdate(ControlUpdateBatcher.AUTO_FOCUS);
+        assertThat(backend.roundTrips, is(0));
+        batcher.end();
+        assertThat(backend.roundTrips, is(1));
+        assertThat(backend.lastChanges,
+                is(ControlUpdateBatcher.FLASH | ControlUpdateBatcher.AUTO_FOCUS));
+    }
+
+    @Test
+    public void testNestedTransactions() {
+        FakeBackend backend = new FakeBackend();
+        QueueExecutor cameraThread = new QueueExecutor();
+        ControlUpdateBatcher batcher = new ControlUpdateBatcher(backend, cameraThread);
+        batcher.begin();
+        batcher.begin();
+        batcher.requestUpdate(ControlUpdateBatcher.FLASH);
+        batcher.end();
+        assertThat(cameraThread.size(), is(0));
+        batcher.requestUpdate(ControlUpdateBatcher.ASPECT_RATIO);
+        batcher.end();
+        cameraThread.runAll();
+        assertThat(backend.roundTrips, is(1));
+        assertThat(backend.lastChanges,
+                is(ControlUpdateBatcher.FLASH | ControlUpdateBatcher.ASPECT_RATIO));
+    }
+
+    @Test
+    public void testChangesAfterFlush() {
+        FakeBackend backend = new FakeBackend();
+        QueueExecutor cameraThread = new QueueExecutor();
+        ControlUpdateBatcher batcher = new ControlUpdateBatcher(backend, cameraThread);
+        batcher.requestUpdate(ControlUpdateBatcher.FLASH);
+        cameraThread.runAll();
+        batcher.requestUpdate(ControlUpdateBatcher.AUTO_FOCUS);
+        cameraThread.runAll();
+        assertThat(backend.roundTrips, is(2));
+        assertThat(backend.lastChanges, is(ControlUpdateBatcher.AUTO_FOCUS));
+    }
+
+    @Test
+    public void testEmptyTransaction() {
+        FakeBackend backend = new FakeBackend();
+        QueueExecutor cameraThread = new QueueExecutor();
+        ControlUpdateBatcher batcher = new ControlUpdateBatcher(backend, cameraThread);
+        batcher.begin();
+        batcher.end();
+        assertThat(cameraThread.size(), is(0));
+        assertThat(backend.roundTrips, is(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEndWithoutBegin() {
+        new ControlUpdateBatcher(new FakeBackend(), new QueueExecutor()).end();
+    }
+
+    /**
+     * Counts the updates that would each be one setRepeatingRequest or setParameters call.
+     */
+    private static class FakeBackend implements ControlUpdateBatcher.Target {
+
+        int roundTrips;
+
+        int lastChanges;
+
+        @Override
+        public void applyControls(int changes) {
+            roundTrips++;
+            lastChanges = changes;
+        }
+
+    }
+
+    private static class QueueExecutor implements Executor {
+
+        private final ArrayDeque<Runnable> mQueue = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            mQueue.add(command);
+        }
+
+        int size() {
+            return mQueue.size();
+        }
+
+        void runAll() {
+            while (!mQueue.isEmpty()) {
+                mQueue.poll().run();
+            }
+        }
+
+    }
+
+}
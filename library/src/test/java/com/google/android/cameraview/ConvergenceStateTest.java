@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class ConvergenceStateTest {
+
+    private static final long NOW = 1000000000L;
+
+    @Test
+    public void testInitiallyNotConverged() {
+        ConvergenceState state = new ConvergenceState();
+        assertThat(state.isConverged(NOW), is(false));
+    }
+
+    @Test
+    public void testConverged() {
+        ConvergenceState state = new ConvergenceState();
+        state.update(true, true, NOW);
+        assertThat(state.isConverged(NOW), is(true));
+        state.update(true, false, NOW);
+        assertThat(state.isConverged(NOW), is(false));
+        state.update(false, true, NOW);
+        assertThat(state.isConverged(NOW), is(false));
+    }
+
+    @Test
+    public void testStale() {
+        ConvergenceState state = new ConvergenceState();
+        state.update(true, true, NOW);
+        assertThat(state.isConverged(NOW + ConvergenceState.MAX_AGE_NANOS), is(true));
+        assertThat(state.isConverged(NOW + ConvergenceState.MAX_AGE_NANOS + 1), is(false));
+    }
+
+    @Test
+    public void testReset() {
+        ConvergenceState state = new ConvergenceState();
+        state.update(true, true, NOW);
+        state.reset();
+        assertThat(state.isConverged(NOW), is(false));
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import static com.google.android.cameraview.SizeSelectorsTest.select;
+import static com.google.android.cameraview.SizeSelectorsTest.sizes;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class CostBasedSizeSelectorTest {
+
+    private static final AspectRatio RATIO_4_3 = AspectRatio.of(4, 3);
+
+    private static final AspectRatio RATIO_16_9 = AspectRatio.of(16, 9);
+
+    @Test
+    public void testDefaults() {
+        SizeSelector selector = new CostBasedSizeSelector.Builder().build();
+        // Preview: the smallest that covers the surface
+        assertThat(select(selector, sizes(), RATIO_16_9, 1920, 1080), is(new Size(1920, 1080)));
+        assertThat(select(selector, sizes(), RATIO_16_9, 1000, 500), is(new Size(1280, 720)));
+        // Picture: the largest
+        assertThat(select(selector, sizes(), RATIO_4_3, 0, 0), is(new Size(4032, 3024)));
+    }
+
+    @Test
+    public void testTargetSize() {
+        SizeSelector selector = new CostBasedSizeSelector.Builder()
+                .setTargetSize(1600, 1200)
+                .build();
+        assertThat(select(selector, sizes(), RATIO_4_3, 0, 0), is(new Size(2592, 1944)));
+    }
+
+    @Test
+    public void testUnderCoverageBeatsBandwidth() {
+        // Covering 90% costs less than 4 times the pixels when coverage is cheap
+        SizeSelector selector = new CostBasedSizeSelector.Builder()
+                .setWeights(10f, 1f, 10f)
+                .build();
+        assertThat(select(selector, sizes(), RATIO_4_3, 1400, 1050), is(new Size(1280, 960)));
+    }
+
+    @Test
+    public void testMaxPixels() {
+        SizeSelector selector = new CostBasedSizeSelector.Builder()
+                .setMaxPixels(6000000)
+                .build();
+        assertThat(select(selector, sizes(), RATIO_4_3, 0, 0), is(new Size(2592, 1944)));
+    }
+
+    @Test
+    public void testMaxSize() {
+        SizeSelector selector = new CostBasedSizeSelector.Builder()
+                .setMaxSize(1920, 1088)
+                .build();
+        assertThat(select(selector, sizes(), RATIO_16_9, 3840, 2160), is(new Size(1920, 1080)));
+    }
+
+    @Test
+    public void testMemoryBudget() {
+        SizeSelector selector = new CostBasedSizeSelector.Builder()
+                .setMemoryBudget(4 * 1024 * 1024)
+                .setBytesPerPixel(3f)
+                .build();
+        assertThat(select(selector, sizes(), RATIO_4_3, 0, 0), is(new Size(1280, 960)));
+    }
+
+    @Test
+    public void testNothingAllowed() {
+        SizeSelector selector = new CostBasedSizeSelector.Builder()
+                .setMaxPixels(1000)
+                .build();
+        assertThat(select(selector, sizes(), RATIO_4_3, 0, 0), is(new Size(640, 480)));
+    }
+
+    @Test
+    public void testRatioTolerance() {
+        SizeMap map = sizes();
+        map.add(new Size(2340, 1080)); // 19.5:9
+        AspectRatio ratio = AspectRatio.of(2, 1);
+        SizeSelector exact = new CostBasedSizeSelector.Builder().build();
+        // No size has the exact ratio; fall back to the smallest one
+        assertThat(select(exact, map, ratio, 2000, 1000), is(new Size(640, 480)));
+        SizeSelector tolerant = new CostBasedSizeSelector.Builder()
+                .setRatioTolerance(0.1f)
+                .build();
+        assertThat(select(tolerant, map, ratio, 2000, 1000), is(new Size(2340, 1080)));
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+public class DcThumbnailTest {
+
+    @Test
+    public void testColor() throws IOException {
+        assertAverages(BufferedImage.TYPE_INT_RGB, 64, 48, 4);
+    }
+
+    @Test
+    public void testGray() throws IOException {
+        assertAverages(BufferedImage.TYPE_BYTE_GRAY, 40, 24, 2);
+    }
+
+    @Test
+    public void testPartialBlocks() throws IOException {
+        DcThumbnail thumbnail = DcThumbnail.decode(encode(image(BufferedImage.TYPE_INT_RGB,
+                50, 30)));
+        assertThat(thumbnail.mWidth, is(7));
+        assertThat(thumbnail.mHeight, is(4));
+        assertThat(thumbnail.mPixels.length, is(28));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformed() {
+        DcThumbnail.decode(new byte[]{(byte) 0xFF, (byte) 0xD8, 0, 0});
+    }
+
+    /**
+     * Checks that each pixel is the average of its block in the decoded image.
+     */
+    private static void assertAverages(int type, int width, int height, int tolerance)
+            throws IOException {
+        byte[] jpeg = encode(image(type, width, height));
+        Raster decoded = ImageIO.read(new ByteArrayInputStream(jpeg)).getRaster();
+        DcThumbnail thumbnail = DcThumbnail.decode(jpeg);
+        assertThat(thumbnail.mWidth, is(width / 8));
+        assertThat(thumbnail.mHeight, is(height / 8));
+        int bands = decoded.getNumBands();
+        int maxDifference = 0;
+        for (int by = 0; by < height / 8; by++) {
+            for (int bx = 0; bx < width / 8; bx++) {
+                int pixel = thumbnail.mPixels[by * thumbnail.mWidth + bx];
+                assertThat(pixel >>> 24, is(0xFF));
+                for (int band = 0; band < bands; band++) {
+                    int sum = 0;
+                    for (int y = 0; y < 8; y++) {
+                        for (int x = 0; x < 8; x++) {
+                            sum += decoded.getSample(bx * 8 + x, by * 8 + y, band);
+                        }
+                    }
+                    // Red, green and blue; gray images have the same value in all three
+                    int value = pixel >> (bands == 1 ? 0 : 16 - 8 * band) & 0xFF;
+                    maxDifference = Math.max(maxDifference, Math.abs(value - sum / 64));
+                }
+            }
+        }
+        assertThat(maxDifference <= tolerance ? tolerance : maxDifference, is(tolerance));
+    }
+
+    /**
+     * Flat 16x16 tiles, so that each block has a single color even with subsampled chroma. The
+     * colors are close, because the decoder smooths chroma across the tiles.
+     */
+    private static BufferedImage image(int type, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        WritableRaster raster = image.getRaster();
+        Random random = new Random(width * 31 + height);
+        for (int ty = 0; ty < height; ty += 16) {
+            for (int tx = 0; tx < width; tx += 16) {
+                int[] color = new int[raster.getNumBands()];
+                for (int band = 0; band < color.length; band++) {
+                    color[band] = 96 + random.nextInt(64);
+                }
+                for (int y = ty; y < Math.min(ty + 16, height); y++) {
+                    for (int x = tx; x < Math.min(tx + 16, width); x++) {
+                        raster.setPixel(x, y, color);
+                    }
+                }
+            }
+        }
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+}
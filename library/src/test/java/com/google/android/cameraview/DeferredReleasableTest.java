@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class DeferredReleasableTest {
+
+    @Test
+    public void testReleasedImmediatelyWithoutReferences() {
+        CountingReleasable target = new CountingReleasable();
+        DeferredReleasable deferred = new DeferredReleasable(target);
+        deferred.release();
+        assertThat(target.count, is(1));
+    }
+
+    @Test
+    public void testReleaseWaitsForLastReference() {
+        CountingReleasable target = new CountingReleasable();
+        DeferredReleasable deferred = new DeferredReleasable(target);
+        deferred.acquire();
+        deferred.acquire();
+        deferred.release();
+        deferred.releaseReference();
+        assertThat(target.count, is(0));
+        deferred.releaseReference();
+        assertThat(target.count, is(1));
+    }
+
+    @Test
+    public void testReferencesAloneDoNotRelease() {
+        CountingReleasable target = new CountingReleasable();
+        DeferredReleasable deferred = new DeferredReleasable(target);
+        deferred.acquire();
+        deferred.releaseReference();
+        assertThat(target.count, is(0));
+        deferred.release();
+        assertThat(target.count, is(1));
+    }
+
+    @Test
+    public void testReleaseIsIdempotent() {
+        CountingReleasable target = new CountingReleasable();
+        DeferredReleasable deferred = new DeferredReleasable(target);
+        deferred.release();
+        deferred.release();
+        assertThat(target.count, is(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnbalancedReleaseReference() {
+        new DeferredReleasable(new CountingReleasable()).releaseReference();
+    }
+
+    private static class CountingReleasable implements Releasable {
+
+        int count;
+
+        @Override
+        public void release() {
+            count++;
+        }
+
+    }
+
+}
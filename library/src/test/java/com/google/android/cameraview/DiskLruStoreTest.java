@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+public class DiskLruStoreTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testPutGet() throws IOException {
+        DiskLruStore store = new DiskLruStore(mTemporaryFolder.newFolder(), 100);
+        assertThat(store.get("a"), is(nullValue()));
+        assertThat(store.put("a", new byte[]{1, 2, 3}), is(true));
+        assertThat(store.get("a"), is(new byte[]{1, 2, 3}));
+        assertThat(store.put("a", new byte[]{4}), is(true));
+        assertThat(store.get("a"), is(new byte[]{4}));
+        assertThat(store.getBytes(), is(1L));
+        store.remove("a");
+        assertThat(store.get("a"), is(nullValue()));
+        assertThat(store.getBytes(), is(0L));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws IOException {
+        DiskLruStore store = new DiskLruStore(mTemporaryFolder.newFolder(), 30);
+        store.put("a", new byte[10]);
+        store.put("b", new byte[10]);
+        store.put("c", new byte[10]);
+        store.get("a");
+        store.put("d", new byte[10]);
+        assertThat(store.get("b"), is(nullValue()));
+        assertThat(store.get("a").length, is(10));
+        assertThat(store.get("c").length, is(10));
+        assertThat(store.get("d").length, is(10));
+        assertThat(store.getBytes(), is(30L));
+    }
+
+    @Test
+    public void testEvictsOversizedEntry() throws IOException {
+        DiskLruStore store = new DiskLruStore(mTemporaryFolder.newFolder(), 10);
+        store.put("a", new byte[11]);
+        assertThat(store.get("a"), is(nullValue()));
+        assertThat(store.getBytes(), is(0L));
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        File directory = mTemporaryFolder.newFolder();
+        DiskLruStore store = new DiskLruStore(directory, 100);
+        store.put("a", new byte[]{1});
+        store.put("b", new byte[]{2, 3});
+        assertThat(new File(directory, "c.tmp").createNewFile(), is(true));
+        store = new DiskLruStore(directory, 100);
+        assertThat(store.getBytes(), is(3L));
+        assertThat(store.get("b"), is(new byte[]{2, 3}));
+        assertThat(new File(directory, "c.tmp").exists(), is(false));
+        // Reopening with less room drops the least recently used files
+        File[] files = directory.listFiles();
+        assertThat(files.length, is(2));
+        assertThat(new File(directory, "a").setLastModified(1000), is(true));
+        assertThat(new File(directory, "b").setLastModified(2000), is(true));
+        store = new DiskLruStore(directory, 2);
+        assertThat(store.get("a"), is(nullValue()));
+        assertThat(store.getBytes(), is(2L));
+    }
+
+    @Test
+    public void testRejectsInvalidKeys() throws IOException {
+        DiskLruStore store = new DiskLruStore(mTemporaryFolder.newFolder(), 100);
+        String[] keys = {"", "../a", "a/b", ".hidden", "a.tmp"};
+        for (String key : keys) {
+            try {
+                store.put(key, new byte[1]);
+                throw new AssertionError("Accepted " + key);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        DiskLruStore.checkKey("IMG_20161017-123456.jpg");
+    }
+
+}
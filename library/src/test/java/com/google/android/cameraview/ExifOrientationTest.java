@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class ExifOrientationTest {
+
+    private static final byte[] JFIF = {
+            (byte) 0xFF, (byte) 0xD8,
+            (byte) 0xFF, (byte) 0xE0, 0, 6, 'J', 'F', 'I', 'F',
+            (byte) 0xFF, (byte) 0xD9,
+    };
+
+    @Test
+    public void testFromDegrees() {
+        assertThat(ExifOrientation.fromDegrees(0), is(1));
+        assertThat(ExifOrientation.fromDegrees(90), is(6));
+        assertThat(ExifOrientation.fromDegrees(180), is(3));
+        assertThat(ExifOrientation.fromDegrees(270), is(8));
+        assertThat(ExifOrientation.fromDegrees(-90), is(8));
+        assertThat(ExifOrientation.fromDegrees(450), is(6));
+    }
+
+    @Test
+    public void testInsertAfterJfif() {
+        byte[] out = ExifOrientation.insert(JFIF, 90);
+        assertThat(out.length, is(JFIF.length + 36));
+        // SOI and APP0 are kept
+        for (int i = 0; i < 10; i++) {
+            assertThat(out[i], is(JFIF[i]));
+        }
+        assertThat(out[10] & 0xFF, is(0xFF));
+        assertThat(out[11] & 0xFF, is(0xE1));
+        assertThat(readShort(out, 12), is(34));
+        assertThat(new String(out, 14, 4), is("Exif"));
+        assertThat(new String(out, 20, 2), is("MM"));
+        assertThat(readShort(out, 28), is(1));
+        assertThat(readShort(out, 30), is(0x0112));
+        assertThat(readShort(out, 38), is(6));
+        // EOI follows
+        assertThat(out[out.length - 2] & 0xFF, is(0xFF));
+        assertThat(out[out.length - 1] & 0xFF, is(0xD9));
+    }
+
+    @Test
+    public void testInsertWithoutJfif() {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9};
+        byte[] out = ExifOrientation.insert(jpeg, 180);
+        assertThat(out[3] & 0xFF, is(0xE1));
+        assertThat(readShort(out, 2 + 28), is(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotJpeg() {
+        ExifOrientation.insert(new byte[]{1, 2, 3, 4}, 0);
+    }
+
+    @Test
+    public void testPatchLittleEndian() {
+        byte[] jpeg = jpegWithExif(false, 0x010F, 0x0112, 0x0131);
+        byte[] original = jpeg.clone();
+        ByteBuffer buffer = ByteBuffer.wrap(jpeg);
+        assertThat(ExifOrientation.read(buffer), is(1));
+        assertThat(ExifOrientation.patch(buffer, 270), is(true));
+        assertThat(ExifOrientation.read(buffer), is(8));
+        assertThat(ExifOrientation.toDegrees(ExifOrientation.read(buffer)), is(270));
+        assertThat(buffer.position(), is(0));
+        assertThat(countDifferences(original, jpeg), is(1));
+    }
+
+    @Test
+    public void testPatchBigEndian() {
+        byte[] jpeg = jpegWithExif(true, 0x0100, 0x0101, 0x0112);
+        byte[] original = jpeg.clone();
+        ByteBuffer buffer = ByteBuffer.wrap(jpeg);
+        assertThat(ExifOrientation.patch(buffer, 90), is(true));
+        assertThat(ExifOrientation.read(buffer), is(6));
+        assertThat(countDifferences(original, jpeg), is(1));
+    }
+
+    @Test
+    public void testPatchSkipsOtherApp1() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        byte[] xmp = "http://ns.adobe.com/xap/1.0/\0<x/>".getBytes();
+        writeSegment(out, 0xE1, xmp);
+        byte[] exif = jpegWithExif(true, 0x0112);
+        out.write(exif, 2, exif.length - 2);
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        assertThat(ExifOrientation.patch(buffer, 180), is(true));
+        assertThat(ExifOrientation.read(buffer), is(3));
+    }
+
+    @Test
+    public void testPatchRespectsPosition() {
+        byte[] exif = jpegWithExif(false, 0x0112);
+        byte[] padded = new byte[exif.length + 5];
+        System.arraycopy(exif, 0, padded, 5, exif.length);
+        ByteBuffer buffer = ByteBuffer.wrap(padded);
+        buffer.position(5);
+        assertThat(ExifOrientation.patch(buffer, 90), is(true));
+        assertThat(buffer.position(), is(5));
+        assertThat(ExifOrientation.read(buffer), is(6));
+    }
+
+    @Test
+    public void testPatchInsertedSegment() {
+        ByteBuffer buffer = ByteBuffer.wrap(ExifOrientation.insert(JFIF, 0));
+        assertThat(ExifOrientation.patch(buffer, 270), is(true));
+        assertThat(ExifOrientation.read(buffer), is(8));
+    }
+
+    @Test
+    public void testPatchDirectBuffer() {
+        byte[] exif = jpegWithExif(true, 0x0112);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(exif.length);
+        buffer.put(exif);
+        buffer.flip();
+        assertThat(ExifOrientation.patch(buffer, 180), is(true));
+        assertThat(ExifOrientation.read(buffer), is(3));
+    }
+
+    @Test
+    public void testPatchWithoutExif() {
+        byte[] original = JFIF.clone();
+        ByteBuffer buffer = ByteBuffer.wrap(JFIF.clone());
+        assertThat(ExifOrientation.patch(buffer, 90), is(false));
+        assertThat(buffer.array(), is(original));
+        assertThat(ExifOrientation.read(buffer), is(0));
+    }
+
+    @Test
+    public void testPatchWithoutOrientationTag() {
+        ByteBuffer buffer = ByteBuffer.wrap(jpegWithExif(false, 0x010F, 0x0110));
+        assertThat(ExifOrientation.patch(buffer, 90), is(false));
+    }
+
+    @Test
+    public void testPatchTruncated() {
+        byte[] exif = jpegWithExif(false, 0x010F, 0x0112);
+        for (int length = 0; length < exif.length - 2; length++) {
+            ByteBuffer buffer = ByteBuffer.wrap(exif, 0, length);
+            assertThat(ExifOrientation.patch(buffer, 90), is(false));
+        }
+    }
+
+    @Test
+    public void testPatchStopsAtImageData() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        writeSegment(out, 0xDA, new byte[]{1, 2, 3});
+        byte[] exif = jpegWithExif(false, 0x0112);
+        out.write(exif, 2, exif.length - 2);
+        assertThat(ExifOrientation.patch(ByteBuffer.wrap(out.toByteArray()), 90), is(false));
+    }
+
+    @Test
+    public void testPatchBadIfdOffset() {
+        byte[] exif = jpegWithExif(true, 0x0112);
+        // The IFD offset of the TIFF header, which starts after SOI, the marker and "Exif\0\0"
+        exif[2 + 4 + 6 + 7] = 0x7F;
+        assertThat(ExifOrientation.patch(ByteBuffer.wrap(exif), 90), is(false));
+    }
+
+    /**
+     * Builds a JPEG image with an EXIF segment whose IFD0 has an entry for each of {@code tags}.
+     * The orientation is 1 and the other entries are ASCII strings.
+     */
+    private static byte[] jpegWithExif(boolean bigEndian, int... tags) {
+        ByteBuffer tiff = ByteBuffer.allocate(8 + 2 + 12 * tags.length + 4);
+        tiff.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        tiff.put((byte) (bigEndian ? 'M' : 'I')).put((byte) (bigEndian ? 'M' : 'I'));
+        tiff.putShort((short) 42).putInt(8);
+        tiff.putShort((short) tags.length);
+        for (int tag : tags) {
+            tiff.putShort((short) tag);
+            if (tag == 0x0112) {
+                tiff.putShort((short) 3).putInt(1).putShort((short) 1).putShort((short) 0);
+            } else {
+                tiff.putShort((short) 2).putInt(4).put(new byte[]{'a', 'b', 'c', 0});
+            }
+        }
+        tiff.putInt(0);
+        ByteArrayOutputStream app1 = new ByteArrayOutputStream();
+        app1.write('E');
+        app1.write('x');
+        app1.write('i');
+        app1.write('f');
+        app1.write(0);
+        app1.write(0);
+        app1.write(tiff.array(), 0, tiff.capacity());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        writeSegment(out, 0xE1, app1.toByteArray());
+        out.write(0xFF);
+        out.write(0xD9);
+        return out.toByteArray();
+    }
+
+    private static void writeSegment(ByteArrayOutputStream out, int marker, byte[] payload) {
+        out.write(0xFF);
+        out.write(marker);
+        out.write((payload.length + 2) >> 8);
+        out.write(payload.length + 2);
+        out.write(payload, 0, payload.length);
+    }
+
+    private static int countDifferences(byte[] a, byte[] b) {
+        int differences = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                differences++;
+            }
+        }
+        return differences;
+    }
+
+    private static int readShort(byte[] data, int index) {
+        return (data[index] & 0xFF) << 8 | (data[index + 1] & 0xFF);
+    }
+
+}
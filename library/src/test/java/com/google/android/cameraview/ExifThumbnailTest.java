@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class ExifThumbnailTest {
+
+    private static final byte[] THUMBNAIL = {
+            (byte) 0xFF, (byte) 0xD8, 1, 2, 3, 4, 5, (byte) 0xFF, (byte) 0xD9,
+    };
+
+    private static final byte[] IMAGE = {
+            (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9,
+    };
+
+    @Test
+    public void testExtractBigEndian() {
+        byte[] jpeg = withThumbnail(ByteOrder.BIG_ENDIAN, THUMBNAIL, 0);
+        assertThat(ExifThumbnail.extract(ByteBuffer.wrap(jpeg)), is(THUMBNAIL));
+    }
+
+    @Test
+    public void testExtractLittleEndian() {
+        byte[] jpeg = withThumbnail(ByteOrder.LITTLE_ENDIAN, THUMBNAIL, 0);
+        assertThat(ExifThumbnail.extract(ByteBuffer.wrap(jpeg)), is(THUMBNAIL));
+    }
+
+    @Test
+    public void testExtractFromPosition() {
+        byte[] jpeg = withThumbnail(ByteOrder.BIG_ENDIAN, THUMBNAIL, 0);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(jpeg.length + 3);
+        buffer.position(3);
+        buffer.put(jpeg);
+        buffer.position(3);
+        assertThat(ExifThumbnail.extract(buffer), is(THUMBNAIL));
+        assertThat(buffer.position(), is(3));
+    }
+
+    @Test
+    public void testNoThumbnail() {
+        assertThat(ExifThumbnail.extract(ByteBuffer.wrap(IMAGE)), is(nullValue()));
+        byte[] onlyOrientation = ExifOrientation.insert(IMAGE, 90);
+        assertThat(ExifThumbnail.extract(ByteBuffer.wrap(onlyOrientation)), is(nullValue()));
+    }
+
+    @Test
+    public void testThumbnailOutsideSegment() {
+        byte[] jpeg = withThumbnail(ByteOrder.BIG_ENDIAN, THUMBNAIL, 1000);
+        assertThat(ExifThumbnail.extract(ByteBuffer.wrap(jpeg)), is(nullValue()));
+    }
+
+    @Test
+    public void testThumbnailNotJpeg() {
+        byte[] jpeg = withThumbnail(ByteOrder.BIG_ENDIAN, new byte[]{1, 2, 3, 4, 5}, 0);
+        assertThat(ExifThumbnail.extract(ByteBuffer.wrap(jpeg)), is(nullValue()));
+    }
+
+    @Test
+    public void testTruncated() {
+        byte[] jpeg = withThumbnail(ByteOrder.LITTLE_ENDIAN, THUMBNAIL, 0);
+        for (int length = 0; length < jpeg.length - IMAGE.length + 2; length++) {
+            ByteBuffer buffer = ByteBuffer.wrap(jpeg, 0, length);
+            assertThat(ExifThumbnail.extract(buffer), is(nullValue()));
+        }
+    }
+
+    /**
+     * Adds an EXIF segment with an orientation tag in IFD0 and the thumbnail in IFD1.
+     *
+     * @param offsetError Added to the offset of the thumbnail.
+     */
+    static byte[] withThumbnail(ByteOrder order, byte[] thumbnail, int offsetError) {
+        // Header, IFD0 with one entry, IFD1 with two entries, thumbnail
+        int ifd1 = 8 + 2 + 12 + 4;
+        int data = ifd1 + 2 + 2 * 12 + 4;
+        ByteBuffer tiff = ByteBuffer.allocate(data + thumbnail.length).order(order);
+        byte mark = (byte) (order == ByteOrder.BIG_ENDIAN ? 'M' : 'I');
+        tiff.put(mark).put(mark).putShort((short) 42).putInt(8);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) 1)
+                .putShort((short) 0);
+        tiff.putInt(ifd1);
+        tiff.putShort((short) 2);
+        tiff.putShort((short) 0x0201).putShort((short) 4).putInt(1).putInt(data + offsetError);
+        tiff.putShort((short) 0x0202).putShort((short) 4).putInt(1).putInt(thumbnail.length);
+        tiff.putInt(0);
+        tiff.put(thumbnail);
+        int length = 2 + 6 + tiff.capacity();
+        ByteBuffer out = ByteBuffer.allocate(2 + 2 + length + IMAGE.length - 2);
+        out.put((byte) 0xFF).put((byte) 0xD8);
+        out.put((byte) 0xFF).put((byte) 0xE1).putShort((short) length);
+        out.put(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+        out.put(tiff.array());
+        out.put(IMAGE, 2, IMAGE.length - 2);
+        return out.array();
+    }
+
+}
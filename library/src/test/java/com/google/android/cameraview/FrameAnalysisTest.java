@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FrameAnalysisTest {
+
+    private static final int WIDTH = 4;
+
+    private static final int HEIGHT = 2;
+
+    private final GatedAnalyzer mAnalyzer = new GatedAnalyzer();
+
+    private final AtomicInteger mReleasedCount = new AtomicInteger();
+
+    private FrameAnalysis mAnalysis;
+
+    @After
+    public void tearDown() {
+        if (mAnalysis != null) {
+            mAnalysis.close();
+        }
+        mAnalyzer.mGate.release(100);
+    }
+
+    @Test
+    public void testKeepLatest() throws InterruptedException {
+        mAnalysis = new FrameAnalysis(mAnalyzer, FrameAnalysis.BACKPRESSURE_KEEP_LATEST, 1);
+        assertThat(mAnalysis.offer(frame(1)), is(true));
+        mAnalyzer.awaitStarted();
+        for (int i = 2; i <= 5; i++) {
+            assertThat(mAnalysis.offer(frame(i)), is(true));
+        }
+        assertThat(mAnalysis.getDroppedFrameCount(), is(3L));
+        mAnalyzer.mGate.release(2);
+        mAnalyzer.awaitStarted();
+        awaitAnalyzed(2);
+        assertThat(mAnalyzer.getFrames(), is(Arrays.asList(1, 5)));
+        assertThat(mAnalysis.getDroppedFrameCount(), is(3L));
+    }
+
+    @Test
+    public void testQueue() throws InterruptedException {
+        mAnalysis = new FrameAnalysis(mAnalyzer, FrameAnalysis.BACKPRESSURE_QUEUE, 2);
+        assertThat(mAnalysis.offer(frame(1)), is(true));
+        mAnalyzer.awaitStarted();
+        assertThat(mAnalysis.offer(frame(2)), is(true));
+        assertThat(mAnalysis.offer(frame(3)), is(true));
+        assertThat(mAnalysis.offer(frame(4)), is(false));
+        assertThat(mAnalysis.offer(frame(5)), is(false));
+        assertThat(mAnalysis.getDroppedFrameCount(), is(2L));
+        mAnalyzer.mGate.release(3);
+        awaitAnalyzed(3);
+        assertThat(mAnalyzer.getFrames(), is(Arrays.asList(1, 2, 3)));
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        mAnalysis = new FrameAnalysis(mAnalyzer, FrameAnalysis.BACKPRESSURE_BLOCK, 1);
+        assertThat(mAnalysis.offer(frame(1)), is(true));
+        mAnalyzer.awaitStarted();
+        assertThat(mAnalysis.offer(frame(2)), is(true));
+        final boolean[] offered = new boolean[1];
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                offered[0] = mAnalysis.offer(frame(3));
+            }
+        });
+        producer.start();
+        awaitWaiting(producer);
+        // The analyzer takes frame 2, which lets frame 3 in
+        mAnalyzer.mGate.release();
+        mAnalyzer.awaitStarted();
+        producer.join(1000);
+        assertThat(producer.isAlive(), is(false));
+        assertThat(offered[0], is(true));
+        mAnalyzer.mGate.release(2);
+        awaitAnalyzed(3);
+        assertThat(mAnalyzer.getFrames(), is(Arrays.asList(1, 2, 3)));
+        assertThat(mAnalysis.getDroppedFrameCount(), is(0L));
+    }
+
+    @Test
+    public void testBlockSurvivesThrowingAnalyzer() throws InterruptedException {
+        final List<RuntimeException> errors = new ArrayList<>();
+        mAnalysis = new FrameAnalysis(new FrameAnalysis.Analyzer() {
+            @Override
+            public void analyze(ByteBuffer data, int width, int height) {
+                throw new IllegalStateException("Frame " + data.get(0));
+            }
+        }, FrameAnalysis.BACKPRESSURE_BLOCK, 1);
+        mAnalysis.setErrorListener(new FrameAnalysis.ErrorListener() {
+            @Override
+            public void onAnalyzerError(RuntimeException e) {
+                synchronized (errors) {
+                    errors.add(e);
+                }
+            }
+        });
+        // Each offer waits for the previous frame to be taken, which needs a live worker
+        for (int i = 1; i <= 5; i++) {
+            assertThat(mAnalysis.offer(frame(i)), is(true));
+        }
+        awaitAnalyzed(5);
+        awaitReleased(5);
+        assertThat(mAnalysis.getFailedFrameCount(), is(5L));
+        assertThat(mAnalysis.getDroppedFrameCount(), is(0L));
+        // The errors are reported after the frames are counted
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            synchronized (errors) {
+                if (errors.size() == 5) {
+                    assertThat(errors.get(4).getMessage(), is("Frame 5"));
+                    break;
+                }
+            }
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testBlockedProducerIsReleasedByClose() throws InterruptedException {
+        mAnalysis = new FrameAnalysis(mAnalyzer, FrameAnalysis.BACKPRESSURE_BLOCK, 1);
+        mAnalysis.offer(frame(1));
+        mAnalyzer.awaitStarted();
+        mAnalysis.offer(frame(2));
+        final boolean[] offered = {true};
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                offered[0] = mAnalysis.offer(frame(3));
+            }
+        });
+        producer.start();
+        awaitWaiting(producer);
+        mAnalysis.close();
+        producer.join(1000);
+        assertThat(offered[0], is(false));
+        // Frame 2 was waiting
+        assertThat(mAnalysis.getDroppedFrameCount(), is(1L));
+    }
+
+    @Test
+    public void testAllFramesAreReleased() throws InterruptedException {
+        mAnalysis = new FrameAnalysis(mAnalyzer, FrameAnalysis.BACKPRESSURE_QUEUE, 1);
+        mAnalysis.offer(frame(1));
+        mAnalyzer.awaitStarted();
+        mAnalysis.offer(frame(2));
+        // Dropped
+        mAnalysis.offer(frame(3));
+        assertThat(mReleasedCount.get(), is(1));
+        mAnalyzer.mGate.release(2);
+        // Frame 2
+        mAnalyzer.awaitStarted();
+        awaitAnalyzed(2);
+        assertThat(mReleasedCount.get(), is(3));
+        mAnalysis.offer(frame(4));
+        mAnalyzer.awaitStarted();
+        mAnalysis.offer(frame(5));
+        // Frame 5 is waiting; frame 4 is released once its analysis returns
+        mAnalysis.close();
+        assertThat(mReleasedCount.get(), is(4));
+        mAnalyzer.mGate.release();
+        awaitReleased(5);
+    }
+
+    @Test
+    public void testHeldFrameLimit() {
+        mAnalysis = new FrameAnalysis(mAnalyzer, FrameAnalysis.BACKPRESSURE_QUEUE, 3);
+        assertThat(mAnalysis.getHeldFrameLimit(), is(4));
+        mAnalysis.close();
+        mAnalysis = new FrameAnalysis(mAnalyzer, FrameAnalysis.BACKPRESSURE_KEEP_LATEST, 3);
+        assertThat(mAnalysis.getHeldFrameLimit(), is(2));
+    }
+
+    @Test
+    public void testOfferAfterClose() {
+        mAnalysis = new FrameAnalysis(mAnalyzer, FrameAnalysis.BACKPRESSURE_KEEP_LATEST, 1);
+        mAnalysis.close();
+        assertThat(mAnalysis.offer(frame(1)), is(false));
+        assertThat(mAnalysis.getDroppedFrameCount(), is(0L));
+        assertThat(mReleasedCount.get(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownBackpressure() {
+        new FrameAnalysis(mAnalyzer, 3, 1);
+    }
+
+    private Frame frame(int number) {
+        byte[] data = new byte[YuvConverter.getFrameSize(WIDTH, HEIGHT)];
+        data[0] = (byte) number;
+        return Frame.share(data, WIDTH, HEIGHT, new Releasable() {
+            @Override
+            public void release() {
+                mReleasedCount.incrementAndGet();
+            }
+        }, 1, null)[0];
+    }
+
+    private void awaitAnalyzed(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mAnalysis.getAnalyzedFrameCount() < count) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitReleased(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mReleasedCount.get() < count) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.WAITING) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Records the number of each frame, and then waits for a permit before it returns.
+     */
+    private static class GatedAnalyzer implements FrameAnalysis.Analyzer {
+
+        final Semaphore mGate = new Semaphore(0);
+
+        private final Semaphore mStarted = new Semaphore(0);
+
+        private final List<Integer> mFrames = new ArrayList<>();
+
+        @Override
+        public void analyze(ByteBuffer data, int width, int height) {
+            synchronized (mFrames) {
+                mFrames.add((int) data.get(0));
+            }
+            mStarted.release();
+            mGate.acquireUninterruptibly();
+        }
+
+        void awaitStarted() throws InterruptedException {
+            assertTrue("Timed out", mStarted.tryAcquire(5, TimeUnit.SECONDS));
+        }
+
+        List<Integer> getFrames() {
+            synchronized (mFrames) {
+                return new ArrayList<>(mFrames);
+            }
+        }
+
+    }
+
+}
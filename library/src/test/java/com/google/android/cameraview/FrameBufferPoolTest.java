@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+public class FrameBufferPoolTest {
+
+    private static final int FRAME_SIZE = 640 * 480 * 3 / 2;
+
+    @Test
+    public void testBuffersAreReused() {
+        FrameBufferPool pool = new FrameBufferPool(3);
+        pool.configure(FRAME_SIZE);
+        assertThat(pool.getAllocationCount(), is(3));
+        Set<byte[]> seen = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+        // Drive synthetic frames through the pool the way the camera backends do
+        for (int frame = 0; frame < 1000; frame++) {
+            byte[] buffer = pool.acquire();
+            assertThat(buffer, is(notNullValue()));
+            assertThat(buffer.length, is(FRAME_SIZE));
+            buffer[0] = (byte) frame;
+            seen.add(buffer);
+            pool.release(buffer);
+        }
+        assertTrue(seen.size() <= 3);
+        assertThat(pool.getAllocationCount(), is(3));
+    }
+
+    @Test
+    public void testExhausted() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        pool.configure(FRAME_SIZE);
+        byte[] a = pool.acquire();
+        byte[] b = pool.acquire();
+        assertThat(pool.acquire(), is(nullValue()));
+        pool.release(a);
+        assertThat(pool.acquire(), is(a));
+        pool.release(b);
+        assertThat(pool.getAvailableCount(), is(1));
+    }
+
+    @Test
+    public void testReconfigureSameSize() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        pool.configure(FRAME_SIZE);
+        pool.acquire();
+        pool.acquire();
+        // e.g. the camera dropped the buffers it was holding
+        pool.configure(FRAME_SIZE);
+        assertThat(pool.getAvailableCount(), is(2));
+        assertThat(pool.getAllocationCount(), is(2));
+    }
+
+    @Test
+    public void testReconfigureNewSize() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        pool.configure(FRAME_SIZE);
+        byte[] old = pool.acquire();
+        pool.configure(FRAME_SIZE * 2);
+        assertThat(pool.getAllocationCount(), is(4));
+        assertThat(pool.getBufferSize(), is(FRAME_SIZE * 2));
+        // Buffers from the previous configuration are not taken back
+        pool.release(old);
+        assertThat(pool.getAvailableCount(), is(2));
+    }
+
+    @Test
+    public void testHeldBuffersSurviveReconfigure() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        pool.configure(FRAME_SIZE);
+        byte[] held = pool.acquire();
+        pool.hold(held);
+        pool.acquire();
+        pool.configure(FRAME_SIZE);
+        assertThat(pool.getAvailableCount(), is(1));
+        assertTrue(pool.acquire() != held);
+        pool.release(held);
+        assertThat(pool.acquire(), is(held));
+    }
+
+    @Test
+    public void testUnhold() {
+        FrameBufferPool pool = new FrameBufferPool(1);
+        pool.configure(FRAME_SIZE);
+        byte[] buffer = pool.acquire();
+        pool.hold(buffer);
+        assertThat(pool.unhold(buffer), is(true));
+        assertThat(pool.getAvailableCount(), is(0));
+        pool.configure(FRAME_SIZE);
+        assertThat(pool.getAvailableCount(), is(1));
+        pool.configure(FRAME_SIZE * 2);
+        assertThat(pool.unhold(buffer), is(false));
+    }
+
+    @Test
+    public void testHeldReleasablesAreReused() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        pool.configure(FRAME_SIZE);
+        Set<Releasable> seen =
+                Collections.newSetFromMap(new IdentityHashMap<Releasable, Boolean>());
+        for (int frame = 0; frame < 1000; frame++) {
+            byte[] buffer = pool.acquire();
+            Releasable releasable = pool.hold(buffer);
+            assertThat(releasable, is(notNullValue()));
+            seen.add(releasable);
+            releasable.release();
+        }
+        // One per buffer, created along with it
+        assertThat(seen.size(), is(2));
+        assertThat(pool.getAvailableCount(), is(2));
+    }
+
+    @Test
+    public void testHoldStaleBuffer() {
+        FrameBufferPool pool = new FrameBufferPool(1);
+        pool.configure(FRAME_SIZE);
+        byte[] old = pool.acquire();
+        pool.configure(FRAME_SIZE * 2);
+        assertThat(pool.hold(old), is(nullValue()));
+    }
+
+    @Test
+    public void testRecycler() {
+        FrameBufferPool pool = new FrameBufferPool(1);
+        final List<byte[]> recycled = new ArrayList<>();
+        final List<Runnable> tasks = new ArrayList<>();
+        pool.setRecycler(new FrameBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                recycled.add(buffer);
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        pool.configure(FRAME_SIZE);
+        byte[] buffer = pool.acquire();
+        pool.hold(buffer).release();
+        assertThat(recycled.size(), is(0));
+        tasks.get(0).run();
+        assertThat(recycled.get(0), is(buffer));
+        // The recycler takes the buffer instead of the pool
+        assertThat(pool.getAvailableCount(), is(0));
+    }
+
+    @Test
+    public void testDoubleRelease() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        pool.configure(FRAME_SIZE);
+        byte[] buffer = pool.acquire();
+        pool.release(buffer);
+        pool.release(buffer);
+        assertThat(pool.getAvailableCount(), is(2));
+    }
+
+    @Test
+    public void testCapacity() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        pool.configure(FRAME_SIZE);
+        pool.setCapacity(4);
+        assertThat(pool.getAvailableCount(), is(2));
+        pool.configure(FRAME_SIZE);
+        assertThat(pool.getAvailableCount(), is(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new FrameBufferPool(0);
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class FrameRateGovernorTest {
+
+    /**
+     * The interval of a 30 fps camera.
+     */
+    private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 30;
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * The virtual clock, advanced by {@link #nextFrame(FrameRateGovernor, long)}.
+     */
+    private long mNowNanos = 1000 * MILLIS;
+
+    @Test
+    public void testDeliversEveryFrameBelowTarget() {
+        FrameRateGovernor governor = new FrameRateGovernor(30, 1);
+        Random random = new Random(42);
+        for (int i = 0; i < 300; i++) {
+            // Up to 2 ms of jitter
+            assertThat(nextFrame(governor, FRAME_NANOS + (random.nextInt(5) - 2) * MILLIS),
+                    is(true));
+        }
+        assertThat(governor.getSkippedFrameCount(), is(0L));
+    }
+
+    @Test
+    public void testTargetRate() {
+        FrameRateGovernor governor = new FrameRateGovernor(10, 1);
+        Random random = new Random(42);
+        List<Integer> delivered = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            if (nextFrame(governor, FRAME_NANOS + (random.nextInt(5) - 2) * MILLIS)) {
+                delivered.add(i);
+            }
+        }
+        // Every third frame, despite the jitter
+        assertThat(delivered.size(), is(100));
+        for (int i = 1; i < delivered.size(); i++) {
+            assertThat(delivered.get(i) - delivered.get(i - 1), is(3));
+        }
+        assertThat(governor.getDeliveredFrameCount(), is(100L));
+        assertThat(governor.getSkippedFrameCount(), is(200L));
+    }
+
+    @Test
+    public void testFractionalRatio() {
+        FrameRateGovernor governor = new FrameRateGovernor(12, 1);
+        int delivered = 0;
+        for (int i = 0; i < 300; i++) {
+            if (nextFrame(governor, FRAME_NANOS)) {
+                delivered++;
+            }
+        }
+        // 12 of 30 frames per second over 10 seconds
+        assertThat(delivered, is(120));
+    }
+
+    @Test
+    public void testAdaptsToLatency() {
+        FrameRateGovernor governor = new FrameRateGovernor(30, 0.5f);
+        for (int i = 0; i < 30; i++) {
+            governor.reportLatency(50 * MILLIS);
+        }
+        // 50 ms of work within half of the time: one frame per 100 ms
+        assertThat(governor.getIntervalNanos(), is(100 * MILLIS));
+        assertThat(countDelivered(governor, 300), is(100));
+        // The analyzer gets faster; the target rate takes over again
+        for (int i = 0; i < 60; i++) {
+            governor.reportLatency(5 * MILLIS);
+        }
+        assertThat(governor.getIntervalNanos(), is(FRAME_NANOS));
+        assertThat(countDelivered(governor, 300), is(300));
+    }
+
+    @Test
+    public void testLatencyIsAveraged() {
+        FrameRateGovernor governor = new FrameRateGovernor(30, 1);
+        for (int i = 0; i < 30; i++) {
+            governor.reportLatency(10 * MILLIS);
+        }
+        // A single slow frame only moves the average by an eighth
+        governor.reportLatency(410 * MILLIS);
+        assertThat(governor.getIntervalNanos(), is(60 * MILLIS));
+    }
+
+    @Test
+    public void testNoBurstAfterStall() {
+        FrameRateGovernor governor = new FrameRateGovernor(10, 1);
+        countDelivered(governor, 30);
+        // The camera stalls for a second
+        assertThat(nextFrame(governor, TimeUnit.SECONDS.toNanos(1)), is(true));
+        assertThat(nextFrame(governor, FRAME_NANOS), is(false));
+        assertThat(nextFrame(governor, FRAME_NANOS), is(false));
+        assertThat(nextFrame(governor, FRAME_NANOS), is(true));
+    }
+
+    @Test
+    public void testFirstFrameIsDelivered() {
+        assertThat(nextFrame(new FrameRateGovernor(1, 0.1f), 0), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFrameRate() {
+        new FrameRateGovernor(0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCpuBudget() {
+        new FrameRateGovernor(30, Float.NaN);
+    }
+
+    private boolean nextFrame(FrameRateGovernor governor, long elapsedNanos) {
+        mNowNanos += elapsedNanos;
+        return governor.shouldDeliver(mNowNanos);
+    }
+
+    private int countDelivered(FrameRateGovernor governor, int frames) {
+        int delivered = 0;
+        for (int i = 0; i < frames; i++) {
+            if (nextFrame(governor, FRAME_NANOS)) {
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FrameTest {
+
+    private final AtomicInteger mReleasedCount = new AtomicInteger();
+
+    private final Releasable mReleasable = new Releasable() {
+        @Override
+        public void release() {
+            mReleasedCount.incrementAndGet();
+        }
+    };
+
+    @Test
+    public void testSharedData() {
+        byte[] data = new byte[YuvConverter.getFrameSize(4, 2) + 10];
+        data[5] = 42;
+        Frame[] frames = Frame.share(data, 4, 2, mReleasable, 3, null);
+        assertThat(frames.length, is(3));
+        for (Frame frame : frames) {
+            ByteBuffer buffer = frame.getData();
+            assertThat(buffer.isReadOnly(), is(true));
+            assertThat(buffer.remaining(), is(12));
+            assertThat(buffer.get(5), is((byte) 42));
+            assertThat(frame.getWidth(), is(4));
+            assertThat(frame.getHeight(), is(2));
+        }
+        // Each consumer has its own position
+        frames[0].getData().position(4);
+        assertThat(frames[1].getData().position(), is(0));
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void testReadOnly() {
+        Frame.share(new byte[12], 4, 2, mReleasable, 1, null)[0].getData().put(0, (byte) 1);
+    }
+
+    @Test
+    public void testReleasedAfterLastHandle() {
+        Frame[] frames = Frame.share(new byte[12], 4, 2, mReleasable, 3, null);
+        frames[0].release();
+        frames[2].release();
+        // Releasing a handle twice does not count
+        frames[2].release();
+        assertThat(mReleasedCount.get(), is(0));
+        frames[1].release();
+        assertThat(mReleasedCount.get(), is(1));
+    }
+
+    @Test
+    public void testReleasedHandlesAreNotLeaks() throws InterruptedException {
+        final AtomicInteger leaks = new AtomicInteger();
+        LeakDetector detector = new LeakDetector(new LeakDetector.Listener() {
+            @Override
+            public void onLeak(Throwable allocationSite) {
+                leaks.incrementAndGet();
+            }
+        });
+        Frame[] frames = Frame.share(new byte[12], 4, 2, mReleasable, 2, detector);
+        frames[0].release();
+        frames = null;
+        LeakDetectorTest.awaitReports(detector, leaks, 1);
+        assertThat(leaks.get(), is(1));
+        assertThat(mReleasedCount.get(), is(0));
+    }
+
+}
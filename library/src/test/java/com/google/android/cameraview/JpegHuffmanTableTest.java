@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class JpegHuffmanTableTest {
+
+    @Test
+    public void testOptimalFavorsFrequentSymbols() {
+        int[] frequencies = new int[256];
+        frequencies[0] = 100;
+        frequencies[1] = 10;
+        frequencies[2] = 10;
+        JpegHuffmanTable table = JpegHuffmanTable.optimal(frequencies);
+        assertThat(table.mLengths[0], is(1));
+        assertThat(table.mLengths[1], is(2));
+        assertThat(table.mLengths[3], is(0));
+        assertPrefixFree(table);
+    }
+
+    @Test
+    public void testOptimalLimitsCodeLength() {
+        // Fibonacci frequencies make the unlimited code lengths grow by one for each symbol
+        int[] frequencies = new int[256];
+        int a = 1;
+        int b = 1;
+        for (int i = 0; i < 30; i++) {
+            frequencies[i] = a;
+            int next = a + b;
+            a = b;
+            b = next;
+        }
+        JpegHuffmanTable table = JpegHuffmanTable.optimal(frequencies);
+        for (int i = 0; i < 30; i++) {
+            assertThat(table.mLengths[i] >= 1 && table.mLengths[i] <= 16, is(true));
+        }
+        assertPrefixFree(table);
+    }
+
+    @Test
+    public void testOptimalSingleSymbol() {
+        int[] frequencies = new int[256];
+        frequencies[0x42] = 5;
+        JpegHuffmanTable table = JpegHuffmanTable.optimal(frequencies);
+        assertThat(table.mLengths[0x42], is(1));
+        // The code of all ones is reserved
+        assertThat(table.mCodes[0x42], is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsOversubscribedTable() {
+        int[] bits = new int[17];
+        bits[1] = 3;
+        new JpegHuffmanTable(bits, new int[]{0, 1, 2});
+    }
+
+    private static void assertPrefixFree(JpegHuffmanTable table) {
+        for (int i = 0; i < 256; i++) {
+            for (int j = 0; j < 256; j++) {
+                int li = table.mLengths[i];
+                int lj = table.mLengths[j];
+                if (i == j || li == 0 || lj == 0 || li > lj) {
+                    continue;
+                }
+                // No code is a prefix of a longer or equally long one
+                assertThat(table.mCodes[j] >> (lj - li) == table.mCodes[i], is(false));
+            }
+            if (table.mLengths[i] != 0) {
+                int allOnes = (1 << table.mLengths[i]) - 1;
+                assertThat(table.mCodes[i] == allOnes, is(false));
+            }
+        }
+    }
+
+}
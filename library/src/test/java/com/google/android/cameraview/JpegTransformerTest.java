@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+public class JpegTransformerTest {
+
+    private static final String METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+    @Test
+    public void testIdentityIsLossless() throws IOException {
+        byte[] jpeg = encode(colorImage(64, 48), 0, false);
+        assertSamePixels(decode(JpegTransformer.transform(jpeg, 0)), decode(jpeg));
+    }
+
+    @Test
+    public void testRotationsAreLossless() throws IOException {
+        byte[] jpeg = encode(colorImage(64, 48), 0, false);
+        BufferedImage original = decode(jpeg);
+        byte[] rotated = JpegTransformer.transform(jpeg, 90);
+        assertSize(decode(rotated), 48, 64);
+        assertSamePixels(decode(JpegTransformer.transform(rotated, 270)), original);
+        rotated = JpegTransformer.transform(jpeg, 180);
+        assertSize(decode(rotated), 64, 48);
+        assertSamePixels(decode(JpegTransformer.transform(rotated, -180)), original);
+    }
+
+    @Test
+    public void testRotationsMovePixels() throws IOException {
+        byte[] jpeg = encode(grayImage(40, 24), 0, false);
+        BufferedImage original = decode(jpeg);
+        for (int rotation = 90; rotation < 360; rotation += 90) {
+            BufferedImage rotated = decode(JpegTransformer.transform(jpeg, rotation));
+            // The inverse DCT rounds differently along rows and columns
+            assertSimilarPixels(rotated, rotate(original, rotation), 2);
+        }
+    }
+
+    @Test
+    public void testTrimsPartialMcus() throws IOException {
+        // 4:2:0, so the MCUs are 16x16
+        byte[] jpeg = encode(colorImage(50, 30), 0, false);
+        assertSize(decode(JpegTransformer.transform(jpeg, 0)), 50, 30);
+        assertSize(decode(JpegTransformer.transform(jpeg, 90)), 16, 50);
+        assertSize(decode(JpegTransformer.transform(jpeg, 180)), 48, 16);
+        assertSize(decode(JpegTransformer.transform(jpeg, 270)), 30, 48);
+    }
+
+    @Test
+    public void testCrop() throws IOException {
+        byte[] jpeg = encode(grayImage(64, 48), 0, false);
+        BufferedImage original = decode(jpeg);
+        // The corner moves to (16, 8)
+        BufferedImage cropped = decode(JpegTransformer.transform(jpeg, 0, 20, 12, 10, 10));
+        assertSize(cropped, 14, 14);
+        assertSamePixels(cropped, original.getSubimage(16, 8, 14, 14));
+    }
+
+    @Test
+    public void testCropAndRotate() throws IOException {
+        byte[] jpeg = encode(colorImage(64, 48), 0, false);
+        BufferedImage original = decode(jpeg);
+        byte[] cropped = JpegTransformer.transform(jpeg, 90, 16, 16, 32, 16);
+        assertSize(decode(cropped), 16, 32);
+        BufferedImage restored = decode(JpegTransformer.transform(cropped, 270));
+        // Chroma upsampling differs at the new edges
+        assertSimilarPixels(restored, copy(original.getSubimage(16, 16, 32, 16)), 24);
+        // Cropping in the middle of an MCU extends the crop to the next MCU, not past the edge
+        assertSize(decode(JpegTransformer.transform(jpeg, 180, 40, 0, 20, 40)), 32, 48);
+    }
+
+    @Test
+    public void testRestartIntervals() throws IOException {
+        byte[] jpeg = encode(colorImage(64, 48), 2, false);
+        assertThat(containsMarker(jpeg, 0xDD), is(true));
+        byte[] out = JpegTransformer.transform(jpeg, 0);
+        assertThat(containsMarker(out, 0xDD), is(false));
+        assertSamePixels(decode(out), decode(jpeg));
+    }
+
+    @Test
+    public void testExifOrientation() throws IOException {
+        byte[] jpeg = ExifOrientation.insert(encode(grayImage(16, 8), 0, false), 90);
+        assertThat(JpegTransformer.getExifRotation(jpeg), is(90));
+        byte[] upright = JpegTransformer.transform(jpeg, JpegTransformer.getExifRotation(jpeg));
+        assertThat(JpegTransformer.getExifRotation(upright), is(0));
+        assertSize(decode(upright), 8, 16);
+        // Metadata is kept as it is otherwise
+        assertThat(JpegTransformer.getExifRotation(JpegTransformer.transform(jpeg, 0)), is(90));
+    }
+
+    @Test
+    public void testSubmit() throws IOException {
+        final byte[] jpeg = encode(grayImage(16, 16), 0, false);
+        final byte[][] result = new byte[1][];
+        final IllegalArgumentException[] error = new IllegalArgumentException[1];
+        JpegTransformer transformer = new JpegTransformer(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        JpegTransformer.Listener listener = new JpegTransformer.Listener() {
+            @Override
+            public void onJpegTransformed(byte[] jpeg) {
+                result[0] = jpeg;
+            }
+
+            @Override
+            public void onJpegTransformFailed(IllegalArgumentException e) {
+                error[0] = e;
+            }
+        };
+        transformer.submit(jpeg, 90, listener);
+        assertThat(result[0], is(notNullValue()));
+        transformer.submit(jpeg, 0, 8, 8, 16, 16, listener);
+        assertThat(error[0], is(notNullValue()));
+    }
+
+    @Test
+    public void testRejectsProgressive() throws IOException {
+        assertRejected(encode(grayImage(16, 16), 0, true));
+    }
+
+    @Test
+    public void testRejectsMalformed() throws IOException {
+        byte[] jpeg = encode(colorImage(32, 32), 0, false);
+        assertRejected(new byte[]{1, 2, 3, 4});
+        assertRejected(Arrays.copyOf(jpeg, jpeg.length / 2));
+        assertRejected(Arrays.copyOf(jpeg, 100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsCropOutside() throws IOException {
+        JpegTransformer.transform(encode(grayImage(16, 16), 0, false), 0, 8, 8, 16, 16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsRotation() throws IOException {
+        JpegTransformer.transform(encode(grayImage(16, 16), 0, false), 45);
+    }
+
+    private static void assertRejected(byte[] jpeg) {
+        try {
+            JpegTransformer.transform(jpeg, 90);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Smooth gradients with some noise, like a photo.
+     */
+    private static BufferedImage colorImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(width * 31 + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = clamp(x * 255 / width + random.nextInt(16));
+                int g = clamp(y * 255 / height + random.nextInt(16));
+                int b = clamp((x + y) * 127 / (width + height) + random.nextInt(16));
+                image.setRGB(x, y, r << 16 | g << 8 | b);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage grayImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Random random = new Random(width * 31 + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int v = clamp((x * 3 + y * 5) % 256 + random.nextInt(16));
+                image.getRaster().setSample(x, y, 0, v);
+            }
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static byte[] encode(BufferedImage image, int restartInterval, boolean progressive)
+            throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.9f);
+        if (progressive) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        }
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image),
+                param);
+        if (restartInterval > 0) {
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(METADATA_FORMAT);
+            IIOMetadataNode markers =
+                    (IIOMetadataNode) root.getElementsByTagName("markerSequence").item(0);
+            IIOMetadataNode dri = new IIOMetadataNode("dri");
+            dri.setAttribute("interval", Integer.toString(restartInterval));
+            markers.insertBefore(dri, markers.getFirstChild());
+            metadata.setFromTree(METADATA_FORMAT, root);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageOutputStream stream = ImageIO.createImageOutputStream(out);
+        writer.setOutput(stream);
+        writer.write(null, new IIOImage(image, null, metadata), param);
+        stream.close();
+        writer.dispose();
+        return out.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    private static BufferedImage rotate(BufferedImage image, int rotation) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean transposed = rotation % 180 != 0;
+        BufferedImage rotated = new BufferedImage(transposed ? height : width,
+                transposed ? width : height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = image.getRGB(x, y);
+                if (rotation == 90) {
+                    rotated.setRGB(height - 1 - y, x, rgb);
+                } else if (rotation == 180) {
+                    rotated.setRGB(width - 1 - x, height - 1 - y, rgb);
+                } else {
+                    rotated.setRGB(y, width - 1 - x, rgb);
+                }
+            }
+        }
+        return rotated;
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        return rotate(rotate(image, 180), 180);
+    }
+
+    private static boolean containsMarker(byte[] jpeg, int marker) {
+        for (int i = 0; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) == marker) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void assertSize(BufferedImage image, int width, int height) {
+        assertThat(image.getWidth() + "x" + image.getHeight(), is(width + "x" + height));
+    }
+
+    private static void assertSamePixels(BufferedImage actual, BufferedImage expected) {
+        assertSimilarPixels(actual, expected, 0);
+    }
+
+    private static void assertSimilarPixels(BufferedImage actual, BufferedImage expected,
+            int tolerance) {
+        assertSize(actual, expected.getWidth(), expected.getHeight());
+        int maxDifference = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int a = actual.getRGB(x, y);
+                int e = expected.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int difference = Math.abs((a >> shift & 0xFF) - (e >> shift & 0xFF));
+                    maxDifference = Math.max(maxDifference, difference);
+                }
+            }
+        }
+        assertThat(maxDifference <= tolerance ? tolerance : maxDifference, is(tolerance));
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyTrackerTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyStats stats = new LatencyTracker().getStats();
+        assertThat(stats.getCount(), is(0));
+        assertThat(stats.getLastMillis(), is(0f));
+        assertThat(stats.getAverageMillis(), is(0f));
+    }
+
+    @Test
+    public void testRecord() {
+        LatencyTracker tracker = new LatencyTracker();
+        tracker.record(30000000L);
+        tracker.record(10000000L);
+        tracker.record(20000000L);
+        LatencyStats stats = tracker.getStats();
+        assertThat(stats.getCount(), is(3));
+        assertThat(stats.getLastMillis(), is(20f));
+        assertThat(stats.getMinMillis(), is(10f));
+        assertThat(stats.getMaxMillis(), is(30f));
+        assertThat(stats.getAverageMillis(), is(20f));
+        assertThat(stats.toString(), is("n=3 last=20.0ms avg=20.0ms min=10.0ms max=30.0ms"));
+    }
+
+    @Test
+    public void testBeginEnd() {
+        LatencyTracker tracker = new LatencyTracker();
+        assertFalse(tracker.end());
+        tracker.begin();
+        assertTrue(tracker.isMeasuring());
+        assertTrue(tracker.end());
+        assertFalse(tracker.isMeasuring());
+        // Only the first end counts
+        assertFalse(tracker.end());
+        assertThat(tracker.getStats().getCount(), is(1));
+    }
+
+    @Test
+    public void testCancel() {
+        LatencyTracker tracker = new LatencyTracker();
+        tracker.begin();
+        tracker.cancel();
+        assertFalse(tracker.end());
+        assertThat(tracker.getStats().getCount(), is(0));
+    }
+
+    @Test
+    public void testReset() {
+        LatencyTracker tracker = new LatencyTracker();
+        tracker.record(1000000L);
+        tracker.reset();
+        assertThat(tracker.getStats().getCount(), is(0));
+    }
+
+}
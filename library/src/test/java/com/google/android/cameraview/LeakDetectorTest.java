@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class LeakDetectorTest {
+
+    @Test
+    public void testReportsUnclosedObject() throws InterruptedException {
+        final AtomicInteger leaks = new AtomicInteger();
+        final AtomicReference<Throwable> site = new AtomicReference<>();
+        LeakDetector detector = new LeakDetector(new LeakDetector.Listener() {
+            @Override
+            public void onLeak(Throwable allocationSite) {
+                site.set(allocationSite);
+                leaks.incrementAndGet();
+            }
+        });
+        detector.track(new Object(), "A test object");
+        awaitReports(detector, leaks, 1);
+        assertThat(site.get().getMessage(), containsString("A test object"));
+        boolean found = false;
+        for (StackTraceElement element : site.get().getStackTrace()) {
+            found |= element.getMethodName().equals("testReportsUnclosedObject");
+        }
+        assertThat(found, is(true));
+    }
+
+    @Test
+    public void testClosedObjectIsNotReported() throws InterruptedException {
+        final AtomicInteger leaks = new AtomicInteger();
+        LeakDetector detector = new LeakDetector(new LeakDetector.Listener() {
+            @Override
+            public void onLeak(Throwable allocationSite) {
+                leaks.incrementAndGet();
+            }
+        });
+        detector.track(new Object(), "Closed").close();
+        // A leak tracked afterwards shows that the collector has run
+        detector.track(new Object(), "Leaked");
+        awaitReports(detector, leaks, 1);
+        Thread.sleep(50);
+        System.gc();
+        detector.poll();
+        assertThat(leaks.get(), is(1));
+    }
+
+    /**
+     * Runs the garbage collector until {@code detector} has made {@code count} reports.
+     */
+    static void awaitReports(LeakDetector detector, AtomicInteger leaks, int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (leaks.get() < count) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            System.gc();
+            Thread.sleep(10);
+            detector.poll();
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PictureSaverTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private final List<File> mSaved = Collections.synchronizedList(new ArrayList<File>());
+
+    private final List<File> mFailed = Collections.synchronizedList(new ArrayList<File>());
+
+    private final List<Boolean> mBackpressure =
+            Collections.synchronizedList(new ArrayList<Boolean>());
+
+    /**
+     * Holds up the writer thread after each picture until it is counted down.
+     */
+    private CountDownLatch mWriterGate = new CountDownLatch(0);
+
+    private final PictureSaver.Listener mListener = new PictureSaver.Listener() {
+        @Override
+        public void onPictureSaved(File file) {
+            mSaved.add(file);
+            try {
+                mWriterGate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void onPictureSaveFailed(File file, IOException e) {
+            mFailed.add(file);
+        }
+    };
+
+    private PictureSaver mSaver;
+
+    @After
+    public void tearDown() {
+        if (mSaver != null) {
+            mSaver.close();
+        }
+    }
+
+    private PictureSaver newSaver(int capacity, int fsyncPolicy) {
+        mSaver = new PictureSaver(capacity, fsyncPolicy, mListener);
+        mSaver.setBackpressureListener(new PictureSaver.BackpressureListener() {
+            @Override
+            public void onBackpressureChanged(boolean congested) {
+                mBackpressure.add(congested);
+            }
+        });
+        return mSaver;
+    }
+
+    private static byte[] picture(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testSaveHeapData() throws Exception {
+        PictureSaver saver = newSaver(4, PictureSaver.FSYNC_NONE);
+        File file = new File(mTemporaryFolder.getRoot(), "a.jpg");
+        // Larger than the staging buffer
+        byte[] data = picture(700 * 1024);
+        assertThat(saver.save(data, file), is(true));
+        assertThat(saver.awaitIdle(10, TimeUnit.SECONDS), is(true));
+        assertArrayEquals(data, read(file));
+        assertThat(mSaved.size(), is(1));
+        assertThat(mTemporaryFolder.getRoot().list().length, is(1));
+    }
+
+    @Test
+    public void testSaveDirectDataAndRelease() throws Exception {
+        PictureSaver saver = newSaver(4, PictureSaver.FSYNC_DATA);
+        File file = new File(mTemporaryFolder.getRoot(), "b.jpg");
+        byte[] data = picture(1000);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1100);
+        buffer.position(50);
+        buffer.put(data);
+        buffer.position(50);
+        buffer.limit(1050);
+        final AtomicInteger released = new AtomicInteger();
+        assertThat(saver.save(buffer, file, new Releasable() {
+            @Override
+            public void release() {
+                released.incrementAndGet();
+            }
+        }), is(true));
+        assertThat(saver.awaitIdle(10, TimeUnit.SECONDS), is(true));
+        assertArrayEquals(data, read(file));
+        assertThat(released.get(), is(1));
+        // The caller's buffer is left alone
+        assertThat(buffer.position(), is(50));
+    }
+
+    @Test
+    public void testReplaceExisting() throws Exception {
+        PictureSaver saver = newSaver(4, PictureSaver.FSYNC_ALL);
+        File file = new File(mTemporaryFolder.getRoot(), "c.jpg");
+        saver.save(picture(5000), file);
+        byte[] second = picture(10);
+        saver.save(second, file);
+        assertThat(saver.awaitIdle(10, TimeUnit.SECONDS), is(true));
+        assertArrayEquals(second, read(file));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        PictureSaver saver = newSaver(4, PictureSaver.FSYNC_NONE);
+        File file = new File(new File(mTemporaryFolder.getRoot(), "missing"), "d.jpg");
+        final AtomicInteger released = new AtomicInteger();
+        saver.save(ByteBuffer.wrap(picture(10)), file, new Releasable() {
+            @Override
+            public void release() {
+                released.incrementAndGet();
+            }
+        });
+        assertThat(saver.awaitIdle(10, TimeUnit.SECONDS), is(true));
+        assertThat(mFailed.size(), is(1));
+        assertThat(released.get(), is(1));
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        mWriterGate = new CountDownLatch(1);
+        PictureSaver saver = newSaver(4, PictureSaver.FSYNC_NONE);
+        File dir = mTemporaryFolder.getRoot();
+        for (int i = 0; i < 4; i++) {
+            assertThat(saver.save(picture(100), new File(dir, i + ".jpg")), is(true));
+        }
+        // Congested at three quarters of the capacity; full at the capacity
+        assertThat(saver.isCongested(), is(true));
+        assertThat(saver.save(picture(100), new File(dir, "rejected.jpg")), is(false));
+        assertThat(mBackpressure.size(), is(1));
+        assertThat(mBackpressure.get(0), is(true));
+        mWriterGate.countDown();
+        assertThat(saver.awaitIdle(10, TimeUnit.SECONDS), is(true));
+        assertThat(saver.isCongested(), is(false));
+        assertThat(mBackpressure.size(), is(2));
+        assertThat(mBackpressure.get(1), is(false));
+        assertThat(mSaved.size(), is(4));
+        assertTrue(!new File(dir, "rejected.jpg").exists());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        PictureSaver saver = newSaver(2, PictureSaver.FSYNC_NONE);
+        File file = new File(mTemporaryFolder.getRoot(), "e.jpg");
+        saver.save(picture(10), file);
+        saver.close();
+        assertThat(saver.save(picture(10), file), is(false));
+        assertThat(saver.awaitIdle(10, TimeUnit.SECONDS), is(true));
+        assertThat(mSaved.size(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFsyncPolicy() {
+        new PictureSaver(1, 3, null);
+    }
+
+}
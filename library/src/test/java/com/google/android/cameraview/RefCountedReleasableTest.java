@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class RefCountedReleasableTest {
+
+    @Test
+    public void testReleasedAfterLastReference() {
+        CountingReleasable target = new CountingReleasable();
+        RefCountedReleasable shared = new RefCountedReleasable(target, 2);
+        Releasable a = shared.newReference();
+        Releasable b = shared.newReference();
+        a.release();
+        assertThat(target.count, is(0));
+        b.release();
+        assertThat(target.count, is(1));
+    }
+
+    @Test
+    public void testReleaseIsIdempotent() {
+        CountingReleasable target = new CountingReleasable();
+        RefCountedReleasable shared = new RefCountedReleasable(target, 2);
+        Releasable a = shared.newReference();
+        Releasable b = shared.newReference();
+        a.release();
+        a.release();
+        assertThat(target.count, is(0));
+        b.release();
+        b.release();
+        assertThat(target.count, is(1));
+    }
+
+    @Test
+    public void testNoUsers() {
+        CountingReleasable target = new CountingReleasable();
+        new RefCountedReleasable(target, 0);
+        assertThat(target.count, is(1));
+    }
+
+    private static class CountingReleasable implements Releasable {
+
+        int count;
+
+        @Override
+        public void release() {
+            count++;
+        }
+
+    }
+
+}
@@ -17,10 +17,22 @@
 package com.google.android.cameraview;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
 public class SizeMapTest {
 
     @Test
@@ -52,4 +64,163 @@ public class SizeMapTest {
         assertThat(map.ratios().size(), is(0));
     }
 
+    @Test
+    public void testAdd_returnValue() {
+        SizeMap map = new SizeMap();
+        assertTrue(map.add(new Size(640, 480)));
+        assertFalse(map.add(new Size(640, 480)));
+        assertTrue(map.add(new Size(1280, 960)));
+    }
+
+    @Test
+    public void testSizes_sorted() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(1920, 1080));
+        map.add(new Size(640, 360));
+        map.add(new Size(3840, 2160));
+        map.add(new Size(1280, 720));
+        SortedSet<Size> sizes = map.sizes(AspectRatio.of(16, 9));
+        assertThat(new ArrayList<>(sizes), is(Arrays.asList(new Size(640, 360),
+                new Size(1280, 720), new Size(1920, 1080), new Size(3840, 2160))));
+        assertThat(sizes.first(), is(new Size(640, 360)));
+        assertThat(sizes.last(), is(new Size(3840, 2160)));
+        assertTrue(sizes.contains(new Size(1280, 720)));
+        assertFalse(sizes.contains(new Size(1280, 960)));
+    }
+
+    @Test
+    public void testSizes_missing() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(640, 480));
+        assertThat(map.sizes(AspectRatio.of(16, 9)), is(nullValue()));
+    }
+
+    @Test
+    public void testSizes_subSets() {
+        SizeMap map = new SizeMap();
+        for (int i = 1; i <= 5; i++) {
+            map.add(new Size(160 * i, 120 * i));
+        }
+        SortedSet<Size> sizes = map.sizes(AspectRatio.of(4, 3));
+        assertThat(sizes.headSet(new Size(480, 360)).size(), is(2));
+        assertThat(sizes.tailSet(new Size(480, 360)).first(), is(new Size(480, 360)));
+        SortedSet<Size> middle = sizes.subSet(new Size(320, 240), new Size(800, 600));
+        assertThat(middle.size(), is(3));
+        assertThat(middle.last(), is(new Size(640, 480)));
+        assertThat(middle.headSet(new Size(480, 360)).size(), is(1));
+    }
+
+    @Test
+    public void testViews_live() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(640, 480));
+        SortedSet<Size> sizes = map.sizes(AspectRatio.of(4, 3));
+        map.add(new Size(320, 240));
+        assertThat(sizes.size(), is(2));
+        assertThat(sizes.first(), is(new Size(320, 240)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testViews_readOnlySizes() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(640, 480));
+        map.sizes(AspectRatio.of(4, 3)).add(new Size(320, 240));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testViews_readOnlyRatios() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(640, 480));
+        Iterator<AspectRatio> iterator = map.ratios().iterator();
+        iterator.next();
+        iterator.remove();
+    }
+
+    @Test
+    public void testRemove() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(640, 480));
+        map.add(new Size(1280, 720));
+        map.add(new Size(1000, 1000));
+        map.remove(AspectRatio.of(16, 9));
+        assertThat(map.ratios().size(), is(2));
+        assertFalse(map.ratios().contains(AspectRatio.of(16, 9)));
+        assertThat(map.sizes(AspectRatio.of(16, 9)), is(nullValue()));
+        assertThat(map.sizes(AspectRatio.of(1, 1)).first(), is(new Size(1000, 1000)));
+        map.add(new Size(1920, 1080));
+        assertThat(map.sizes(AspectRatio.of(16, 9)).size(), is(1));
+    }
+
+    @Test
+    public void testManySizes() {
+        // Some devices report more than 200 sizes over dozens of ratios
+        SizeMap map = new SizeMap();
+        List<Size> all = new ArrayList<>();
+        for (int w = 64; w <= 4096; w += 64) {
+            for (int h : new int[]{w * 3 / 4, w * 9 / 16, w, w * 2 / 3}) {
+                all.add(new Size(w, h));
+            }
+        }
+        Collections.shuffle(all, new Random(42));
+        for (Size size : all) {
+            map.add(size);
+        }
+        int total = 0;
+        for (AspectRatio ratio : map.ratios()) {
+            SortedSet<Size> expected = new TreeSet<>();
+            for (Size size : all) {
+                if (ratio.matches(size)) {
+                    expected.add(size);
+                }
+            }
+            assertThat(new ArrayList<>(map.sizes(ratio)), is(new ArrayList<>(expected)));
+            total += expected.size();
+        }
+        assertThat(total, is(all.size()));
+        assertThat(map.ratios().contains(AspectRatio.of(4, 3)), is(true));
+    }
+
+    @Test
+    public void testAllSizes() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(1920, 1080));
+        map.add(new Size(640, 480));
+        map.add(new Size(1280, 960));
+        map.add(new Size(1280, 720));
+        assertThat(map.allSizes(), is(Arrays.asList(new Size(640, 480), new Size(1280, 720),
+                new Size(1280, 960), new Size(1920, 1080))));
+    }
+
+    @Test
+    public void testSizeList() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(1920, 1080));
+        map.add(new Size(640, 480));
+        map.add(new Size(1280, 720));
+        List<Size> list = map.sizeList(AspectRatio.of(16, 9));
+        assertThat(list, is(Arrays.asList(new Size(1280, 720), new Size(1920, 1080))));
+        assertTrue(map.sizeList(AspectRatio.of(16, 9)) == list);
+        assertThat(map.sizeList(AspectRatio.of(1, 1)), is(nullValue()));
+        // A view; it follows the map
+        map.add(new Size(3840, 2160));
+        assertThat(list.size(), is(3));
+    }
+
+    @Test
+    public void testContains() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(1920, 1080));
+        assertThat(map.contains(new Size(1920, 1080)), is(true));
+        assertThat(map.contains(new Size(1280, 720)), is(false));
+        assertThat(map.contains(new Size(640, 480)), is(false));
+    }
+
+    @Test
+    public void testToString() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(640, 480));
+        map.add(new Size(320, 240));
+        assertThat(map.toString(), is("{4:3=[320x240, 640x480]}"));
+    }
+
 }
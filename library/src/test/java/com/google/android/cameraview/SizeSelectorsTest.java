@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SizeSelectorsTest {
+
+    private static final AspectRatio RATIO_4_3 = AspectRatio.of(4, 3);
+
+    private static final AspectRatio RATIO_16_9 = AspectRatio.of(16, 9);
+
+    @Test
+    public void testSmallestCovering() {
+        SizeMap map = sizes();
+        SizeSelector selector = SizeSelectors.smallestCovering();
+        assertThat(select(selector, map, RATIO_16_9, 1920, 1080), is(new Size(1920, 1080)));
+        assertThat(select(selector, map, RATIO_16_9, 1000, 500), is(new Size(1280, 720)));
+        // Nothing covers; take the largest
+        assertThat(select(selector, map, RATIO_16_9, 5000, 3000), is(new Size(3840, 2160)));
+        // Nothing to cover; take the smallest
+        assertThat(select(selector, map, RATIO_4_3, 0, 0), is(new Size(640, 480)));
+    }
+
+    @Test
+    public void testSmallestCovering_fixed() {
+        SizeSelector selector = SizeSelectors.smallestCovering(2000, 1500);
+        assertThat(select(selector, sizes(), RATIO_4_3, 0, 0), is(new Size(2592, 1944)));
+    }
+
+    @Test
+    public void testLargest() {
+        SizeSelector selector = SizeSelectors.largest();
+        assertThat(select(selector, sizes(), RATIO_4_3, 0, 0), is(new Size(4032, 3024)));
+        assertThat(select(selector, sizes(), RATIO_16_9, 0, 0), is(new Size(3840, 2160)));
+    }
+
+    @Test
+    public void testLargest_missingRatio() {
+        // Falls back to all the sizes
+        SizeSelector selector = SizeSelectors.largest();
+        assertThat(select(selector, sizes(), AspectRatio.of(1, 1), 0, 0),
+                is(new Size(4032, 3024)));
+    }
+
+    @Test
+    public void testMaxMegapixels() {
+        SizeSelector selector = SizeSelectors.maxMegapixels(5.1f);
+        assertThat(select(selector, sizes(), RATIO_4_3, 0, 0), is(new Size(2592, 1944)));
+        assertThat(select(SizeSelectors.maxMegapixels(0.1f), sizes(), RATIO_4_3, 0, 0),
+                is(new Size(640, 480)));
+    }
+
+    @Test
+    public void testClosestRatio() {
+        SizeMap map = sizes();
+        map.add(new Size(2340, 1080)); // 19.5:9
+        AspectRatio ratio = AspectRatio.of(2, 1);
+        assertThat(select(SizeSelectors.closestRatio(0.1f), map, ratio, 0, 0),
+                is(new Size(2340, 1080)));
+        // 16:9 is 11% off 2:1
+        map.add(new Size(2160, 1080)); // 2:1
+        assertThat(select(SizeSelectors.closestRatio(0.1f), map, ratio, 0, 0),
+                is(new Size(2160, 1080)));
+        assertThat(select(SizeSelectors.closestRatio(0.01f), sizes(), ratio, 0, 0),
+                is(new Size(4032, 3024)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxMegapixels_invalid() {
+        SizeSelectors.maxMegapixels(0f);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnsupportedSize() {
+        SizeSelector selector = new SizeSelector() {
+            @NonNull
+            @Override
+            public Size select(@NonNull List<Size> candidates, @NonNull AspectRatio ratio,
+                    int width, int height) {
+                return new Size(1, 1);
+            }
+        };
+        select(selector, sizes(), RATIO_4_3, 0, 0);
+    }
+
+    @Test
+    public void testOnlyRatioIsOffered() {
+        final List<List<Size>> offered = new ArrayList<>();
+        SizeSelector selector = new SizeSelector() {
+            @NonNull
+            @Override
+            public Size select(@NonNull List<Size> candidates, @NonNull AspectRatio ratio,
+                    int width, int height) {
+                offered.add(new ArrayList<>(candidates));
+                return candidates.get(0);
+            }
+        };
+        assertThat(select(selector, sizes(), RATIO_16_9, 0, 0), is(new Size(1280, 720)));
+        assertThat(offered.get(0), is(Arrays.asList(new Size(1280, 720), new Size(1920, 1080),
+                new Size(3840, 2160))));
+        // The camera does not have 1:1; all the sizes are offered
+        select(selector, sizes(), AspectRatio.of(1, 1), 0, 0);
+        assertThat(offered.get(1).size(), is(7));
+    }
+
+    @Test
+    public void testOtherRatioFallsBack() {
+        SizeSelector selector = new SizeSelector() {
+            @NonNull
+            @Override
+            public Size select(@NonNull List<Size> candidates, @NonNull AspectRatio ratio,
+                    int width, int height) {
+                return new Size(4032, 3024);
+            }
+        };
+        // Supported, but 4:3; the default selector chooses among the 16:9 sizes instead
+        assertThat(select(selector, sizes(), RATIO_16_9, 1000, 500), is(new Size(1280, 720)));
+        // Without 1:1 sizes, any supported size is accepted
+        assertThat(select(selector, sizes(), AspectRatio.of(1, 1), 0, 0),
+                is(new Size(4032, 3024)));
+    }
+
+    static Size select(SizeSelector selector, SizeMap map, AspectRatio ratio, int width,
+            int height) {
+        return SizeSelection.select(selector, SizeSelectors.smallestCovering(), map, ratio, width,
+                height);
+    }
+
+    static SizeMap sizes() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(640, 480));
+        map.add(new Size(1280, 960));
+        map.add(new Size(2592, 1944));
+        map.add(new Size(4032, 3024));
+        map.add(new Size(1280, 720));
+        map.add(new Size(1920, 1080));
+        map.add(new Size(3840, 2160));
+        return map;
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class YuvConverterTest {
+
+    private final Random mRandom = new Random(42);
+
+    @Test
+    public void testFrameSize() {
+        assertThat(YuvConverter.getFrameSize(640, 480), is(640 * 480 * 3 / 2));
+        assertThat(YuvConverter.getFrameSize(7, 5), is(35 + 2 * 4 * 3));
+    }
+
+    @Test
+    public void testInterleavedVu() {
+        assertConverted(semiPlanar(64, 48, 64, 64, true));
+        assertConverted(semiPlanar(64, 48, 80, 96, true));
+    }
+
+    @Test
+    public void testInterleavedUv() {
+        assertConverted(semiPlanar(64, 48, 64, 64, false));
+        assertConverted(semiPlanar(64, 48, 72, 80, false));
+    }
+
+    @Test
+    public void testPlanar() {
+        assertConverted(planar(64, 48, 64, 32, 1));
+        assertConverted(planar(64, 48, 70, 40, 1));
+    }
+
+    @Test
+    public void testWidePixelStride() {
+        assertConverted(planar(64, 48, 64, 100, 3));
+    }
+
+    @Test
+    public void testOddSize() {
+        assertConverted(semiPlanar(7, 5, 8, 8, true));
+        assertConverted(semiPlanar(7, 5, 8, 8, false));
+        assertConverted(planar(7, 5, 7, 4, 1));
+    }
+
+    @Test
+    public void testReadOnlyPlanes() {
+        Planes planes = semiPlanar(32, 16, 32, 32, true);
+        planes.u = planes.u.asReadOnlyBuffer();
+        planes.v = planes.v.asReadOnlyBuffer();
+        assertConverted(planes);
+    }
+
+    @Test
+    public void testPositionsAreRestored() {
+        Planes planes = semiPlanar(32, 16, 40, 40, true);
+        YuvConverter converter = new YuvConverter();
+        byte[] out = new byte[YuvConverter.getFrameSize(32, 16)];
+        assertThat(convert(converter, planes, true, out), is(true));
+        assertThat(convert(converter, planes, false, out), is(true));
+        assertThat(planes.y.position(), is(0));
+        assertThat(planes.u.position(), is(0));
+        assertThat(planes.v.position(), is(0));
+    }
+
+    @Test
+    public void testReadsFromPosition() {
+        Planes planes = planar(16, 8, 16, 8, 1);
+        Planes shifted = new Planes(planes.width, planes.height, planes.yRowStride,
+                planes.uvRowStride, planes.uvPixelStride);
+        shifted.y = shift(planes.y, 3);
+        shifted.u = shift(planes.u, 5);
+        shifted.v = shift(planes.v, 1);
+        byte[] out = new byte[YuvConverter.getFrameSize(16, 8)];
+        assertThat(convert(new YuvConverter(), shifted, true, out), is(true));
+        assertThat(out, is(reference(planes, true)));
+        assertThat(shifted.u.position(), is(5));
+    }
+
+    @Test
+    public void testOutputTooSmall() {
+        Planes planes = planar(16, 8, 16, 8, 1);
+        byte[] out = new byte[YuvConverter.getFrameSize(16, 8) - 1];
+        YuvConverter converter = new YuvConverter();
+        assertThat(convert(converter, planes, true, out), is(false));
+        assertThat(convert(converter, planes, false, out), is(false));
+    }
+
+    @Test
+    public void testReusedForDifferentSizes() {
+        YuvConverter converter = new YuvConverter();
+        Planes small = planar(8, 4, 8, 8, 2);
+        Planes large = planar(32, 16, 32, 32, 2);
+        for (Planes planes : new Planes[]{small, large, small}) {
+            byte[] out = new byte[YuvConverter.getFrameSize(planes.width, planes.height)];
+            assertThat(convert(converter, planes, false, out), is(true));
+            assertThat(out, is(reference(planes, false)));
+        }
+    }
+
+    private void assertConverted(Planes planes) {
+        YuvConverter converter = new YuvConverter();
+        for (boolean nv21 : new boolean[]{true, false}) {
+            byte[] out = new byte[YuvConverter.getFrameSize(planes.width, planes.height)];
+            assertThat(convert(converter, planes, nv21, out), is(true));
+            assertThat(out, is(reference(planes, nv21)));
+        }
+    }
+
+    private static boolean convert(YuvConverter converter, Planes planes, boolean nv21,
+            byte[] out) {
+        if (nv21) {
+            return converter.toNv21(planes.y, planes.yRowStride, planes.u, planes.v,
+                    planes.uvRowStride, planes.uvPixelStride, planes.width, planes.height, out);
+        }
+        return converter.toI420(planes.y, planes.yRowStride, planes.u, planes.v,
+                planes.uvRowStride, planes.uvPixelStride, planes.width, planes.height, out);
+    }
+
+    /**
+     * Converts sample by sample with absolute reads.
+     */
+    private static byte[] reference(Planes planes, boolean nv21) {
+        int chromaWidth = (planes.width + 1) / 2;
+        int chromaHeight = (planes.height + 1) / 2;
+        byte[] out = new byte[YuvConverter.getFrameSize(planes.width, planes.height)];
+        int offset = 0;
+        for (int row = 0; row < planes.height; row++) {
+            for (int col = 0; col < planes.width; col++) {
+                out[offset++] = planes.y.get(planes.y.position() + row * planes.yRowStride + col);
+            }
+        }
+        int plane = chromaWidth * chromaHeight;
+        for (int row = 0; row < chromaHeight; row++) {
+            for (int col = 0; col < chromaWidth; col++) {
+                int index = row * planes.uvRowStride + col * planes.uvPixelStride;
+                byte u = planes.u.get(planes.u.position() + index);
+                byte v = planes.v.get(planes.v.position() + index);
+                if (nv21) {
+                    out[offset++] = v;
+                    out[offset++] = u;
+                } else {
+                    out[offset + plane] = v;
+                    out[offset++] = u;
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Creates a Y plane and one interleaved chroma plane that the U and V planes are views of,
+     * ending at their last sample like those of a camera.
+     */
+    private Planes semiPlanar(int width, int height, int yRowStride, int uvRowStride,
+            boolean vuOrder) {
+        Planes planes = new Planes(width, height, yRowStride, uvRowStride, 2);
+        planes.y = randomPlane(yRowStride * (height - 1) + width);
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        ByteBuffer chroma = randomPlane(uvRowStride * (chromaHeight - 1) + 2 * chromaWidth);
+        int planeLength = chroma.capacity() - 1;
+        planes.v = view(chroma, vuOrder ? 0 : 1, planeLength);
+        planes.u = view(chroma, vuOrder ? 1 : 0, planeLength);
+        return planes;
+    }
+
+    private Planes planar(int width, int height, int yRowStride, int uvRowStride,
+            int uvPixelStride) {
+        Planes planes = new Planes(width, height, yRowStride, uvRowStride, uvPixelStride);
+        planes.y = randomPlane(yRowStride * (height - 1) + width);
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int length = uvRowStride * (chromaHeight - 1) + (chromaWidth - 1) * uvPixelStride + 1;
+        planes.u = randomPlane(length);
+        planes.v = randomPlane(length);
+        return planes;
+    }
+
+    private ByteBuffer randomPlane(int length) {
+        byte[] data = new byte[length];
+        mRandom.nextBytes(data);
+        return ByteBuffer.wrap(data);
+    }
+
+    private static ByteBuffer view(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+
+    /**
+     * Copies {@code plane} behind {@code padding} bytes and positions the copy at its data.
+     */
+    private ByteBuffer shift(ByteBuffer plane, int padding) {
+        ByteBuffer shifted = randomPlane(padding + plane.capacity());
+        shifted.position(padding);
+        shifted.put(plane.duplicate());
+        shifted.position(padding);
+        return shifted;
+    }
+
+    private static class Planes {
+
+        final int width;
+
+        final int height;
+
+        final int yRowStride;
+
+        final int uvRowStride;
+
+        final int uvPixelStride;
+
+        ByteBuffer y;
+
+        ByteBuffer u;
+
+        ByteBuffer v;
+
+        Planes(int width, int height, int yRowStride, int uvRowStride, int uvPixelStride) {
+            this.width = width;
+            this.height = height;
+            this.yRowStride = yRowStride;
+            this.uvRowStride = uvRowStride;
+            this.uvPixelStride = uvPixelStride;
+        }
+
+    }
+
+}
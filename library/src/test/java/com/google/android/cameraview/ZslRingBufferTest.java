@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ZslRingBufferTest {
+
+    /**
+     * 30 fps in nanoseconds.
+     */
+    private static final long FRAME = 33333333L;
+
+    private final List<String> mRecycled = new ArrayList<>();
+
+    private final ZslRingBuffer.Recycler<String> mRecycler = new ZslRingBuffer.Recycler<String>() {
+        @Override
+        public void recycle(String frame) {
+            mRecycled.add(frame);
+        }
+    };
+
+    private ZslRingBuffer<String> fill(int capacity, int frames) {
+        ZslRingBuffer<String> ring = new ZslRingBuffer<>(capacity, mRecycler);
+        for (int i = 0; i < frames; i++) {
+            ring.add("frame" + i, i * FRAME);
+        }
+        return ring;
+    }
+
+    @Test
+    public void testEmpty() {
+        ZslRingBuffer<String> ring = new ZslRingBuffer<>(3, mRecycler);
+        assertThat(ring.take(0), is(nullValue()));
+    }
+
+    @Test
+    public void testOldestIsRecycled() {
+        ZslRingBuffer<String> ring = fill(3, 5);
+        assertThat(ring.size(), is(3));
+        assertThat(mRecycled.size(), is(2));
+        assertThat(mRecycled.get(0), is("frame0"));
+        assertThat(mRecycled.get(1), is("frame1"));
+    }
+
+    @Test
+    public void testTakeClosest() {
+        ZslRingBuffer<String> ring = fill(4, 10);
+        // frames 6 to 9 remain; the tap is closest to frame 7
+        assertThat(ring.take(7 * FRAME + FRAME / 3), is("frame7"));
+        assertThat(ring.size(), is(3));
+        assertThat(ring.take(7 * FRAME + FRAME / 3), is("frame8"));
+        assertThat(ring.take(0), is("frame6"));
+        assertThat(ring.take(Long.MAX_VALUE), is("frame9"));
+        assertThat(ring.take(0), is(nullValue()));
+    }
+
+    @Test
+    public void testTakeTieChoosesNewer() {
+        ZslRingBuffer<String> ring = new ZslRingBuffer<>(3, mRecycler);
+        ring.add("older", 0);
+        ring.add("newer", 2 * FRAME);
+        assertThat(ring.take(FRAME), is("newer"));
+    }
+
+    @Test
+    public void testTakeKeepsOrder() {
+        ZslRingBuffer<String> ring = fill(4, 6);
+        // frames 2 to 5 remain
+        assertThat(ring.take(3 * FRAME), is("frame3"));
+        ring.add("frame6", 6 * FRAME);
+        ring.add("frame7", 7 * FRAME);
+        // frame 2 was the oldest after the gap was closed
+        assertThat(mRecycled.get(mRecycled.size() - 1), is("frame2"));
+        assertThat(ring.take(0), is("frame4"));
+        assertThat(ring.take(Long.MAX_VALUE), is("frame7"));
+    }
+
+    @Test
+    public void testLateTapAfterWrap() {
+        ZslRingBuffer<String> ring = fill(3, 100);
+        assertThat(ring.take(98 * FRAME + 1), is("frame98"));
+    }
+
+    @Test
+    public void testClear() {
+        ZslRingBuffer<String> ring = fill(3, 4);
+        mRecycled.clear();
+        ring.clear();
+        assertThat(ring.size(), is(0));
+        assertThat(mRecycled.size(), is(3));
+        assertThat(mRecycled.get(0), is("frame1"));
+        ring.add("next", 0);
+        assertThat(ring.take(0), is("next"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new ZslRingBuffer<>(0, mRecycler);
+    }
+
+}